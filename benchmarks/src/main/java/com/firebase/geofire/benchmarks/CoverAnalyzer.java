@@ -0,0 +1,268 @@
+package com.firebase.geofire.benchmarks;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.core.CostModelPlanner;
+import com.firebase.geofire.core.DefaultQueryPlanner;
+import com.firebase.geofire.core.GeoHashCoverage;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.QueryPlanner;
+import com.firebase.geofire.core.UniformKeyDensity;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Sweeps a grid of latitudes and radii and reports how well the plans of one or more {@link QueryPlanner}s cover
+ * the circle of a query: the number of ranges, the area they cover compared to the area of the circle and the
+ * number of keys they download under a uniform density, and what the plan costs under a {@link CostModelPlanner}
+ * cost model. Besides the default planner, a cost model planner for that density is always compared. Every cell of
+ * the grid is sampled at random longitudes, as the cover depends on where the center falls within its geo hash. The
+ * report is CSV with one row per planner and cell, so planners can be compared side by side.
+ *
+ * <pre>
+ * java -cp benchmarks.jar com.firebase.geofire.benchmarks.CoverAnalyzer \
+ *     --latitudes 0,45,70 --radii 0.5,5,50 --density 200 --planner mine=com.example.MyPlanner
+ * </pre>
+ */
+public final class CoverAnalyzer {
+
+    static final String HEADER = "planner,latitude,radius_km,samples,ranges_mean,ranges_max,"
+            + "covered_km2_mean,circle_km2,cover_ratio_mean,cover_ratio_max,keys_downloaded_mean,keys_in_radius,"
+            + "cost_mean";
+
+    private static final double SQUARE_METERS_PER_SQUARE_KILOMETER = 1000 * 1000;
+
+    private final Map<String, QueryPlanner> planners = new LinkedHashMap<>();
+    private double[] latitudes = { 0, 15, 30, 45, 60, 75 };
+    private double[] radii = { 0.1, 0.5, 1, 5, 10, 50, 100, 500 };
+    private double density = 100;
+    private double rangeCost = 100;
+    private double keyCost = 1;
+    private int samples = 100;
+    private long seed = 42;
+
+    /**
+     * Adds a planner to compare. The default and the cost model planner are always included.
+     */
+    public CoverAnalyzer planner(String name, QueryPlanner planner) {
+        if (name == null || planner == null) {
+            throw new NullPointerException();
+        }
+        this.planners.put(name, planner);
+        return this;
+    }
+
+    public CoverAnalyzer latitudes(double... latitudes) {
+        this.latitudes = latitudes.clone();
+        return this;
+    }
+
+    /**
+     * @param radii The radii of the queries, in kilometers
+     */
+    public CoverAnalyzer radii(double... radii) {
+        this.radii = radii.clone();
+        return this;
+    }
+
+    /**
+     * @param density The number of keys per square kilometer
+     */
+    public CoverAnalyzer density(double density) {
+        if (density < 0) {
+            throw new IllegalArgumentException("Density must not be negative!");
+        }
+        this.density = density;
+        return this;
+    }
+
+    /**
+     * Sets the cost model every plan is priced with, also used by the cost model planner.
+     *
+     * @param rangeCost The cost of listening to a range
+     * @param keyCost   The cost of downloading a key
+     */
+    public CoverAnalyzer costs(double rangeCost, double keyCost) {
+        if (rangeCost < 0 || keyCost < 0) {
+            throw new IllegalArgumentException("Costs must not be negative!");
+        }
+        this.rangeCost = rangeCost;
+        this.keyCost = keyCost;
+        return this;
+    }
+
+    /**
+     * @param samples The number of centers per latitude and radius
+     */
+    public CoverAnalyzer samples(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("Number of samples must be larger than zero!");
+        }
+        this.samples = samples;
+        return this;
+    }
+
+    public CoverAnalyzer seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the header and one row per latitude, radius and planner.
+     */
+    public void run(PrintWriter out) {
+        CostModelPlanner costModel = new CostModelPlanner(this.rangeCost, this.keyCost,
+                new UniformKeyDensity(this.density));
+        Map<String, QueryPlanner> planners = new LinkedHashMap<>();
+        planners.put("default", DefaultQueryPlanner.INSTANCE);
+        planners.put("cost", costModel);
+        planners.putAll(this.planners);
+        out.println(HEADER);
+        for (double latitude: this.latitudes) {
+            for (double radius: this.radii) {
+                // every planner sees the same centers
+                double[] longitudes = new double[this.samples];
+                Random random = new Random(this.seed);
+                for (int i = 0; i < this.samples; i++) {
+                    longitudes[i] = random.nextDouble() * 360 - 180;
+                }
+                for (Map.Entry<String, QueryPlanner> entry: planners.entrySet()) {
+                    analyze(out, costModel, entry.getKey(), entry.getValue(), latitude, radius, longitudes);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private void analyze(PrintWriter out, CostModelPlanner costModel, String name, QueryPlanner planner,
+                         double latitude, double radius, double[] longitudes) {
+        double circleArea = GeoHashCoverage.circleArea(radius * 1000) / SQUARE_METERS_PER_SQUARE_KILOMETER;
+        long rangesSum = 0;
+        int rangesMax = 0;
+        double coveredSum = 0;
+        double ratioMax = 0;
+        double costSum = 0;
+        for (double longitude: longitudes) {
+            Set<GeoHashQuery> plan = planner.plan(new GeoLocation(latitude, longitude), radius * 1000);
+            double covered = GeoHashCoverage.area(plan) / SQUARE_METERS_PER_SQUARE_KILOMETER;
+            rangesSum += plan.size();
+            rangesMax = Math.max(rangesMax, plan.size());
+            coveredSum += covered;
+            ratioMax = Math.max(ratioMax, covered / circleArea);
+            costSum += costModel.cost(plan);
+        }
+        double coveredMean = coveredSum / longitudes.length;
+        out.println(String.format(Locale.US, "%s,%s,%s,%d,%.2f,%d,%.6g,%.6g,%.3f,%.3f,%.6g,%.6g,%.6g",
+                name, latitude, radius, longitudes.length, (double) rangesSum / longitudes.length, rangesMax,
+                coveredMean, circleArea, coveredMean / circleArea, ratioMax, coveredMean * this.density,
+                circleArea * this.density, costSum / longitudes.length));
+    }
+
+    public static void main(String[] args) throws IOException, ReflectiveOperationException {
+        CoverAnalyzer analyzer = new CoverAnalyzer();
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + option);
+                return;
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--latitudes":
+                    analyzer.latitudes(parseList(value));
+                    break;
+                case "--radii":
+                    analyzer.radii(parseList(value));
+                    break;
+                case "--density":
+                    analyzer.density(Double.parseDouble(value));
+                    break;
+                case "--range-cost":
+                    analyzer.costs(Double.parseDouble(value), analyzer.keyCost);
+                    break;
+                case "--key-cost":
+                    analyzer.costs(analyzer.rangeCost, Double.parseDouble(value));
+                    break;
+                case "--samples":
+                    analyzer.samples(Integer.parseInt(value));
+                    break;
+                case "--seed":
+                    analyzer.seed(Long.parseLong(value));
+                    break;
+                case "--planner":
+                    int separator = value.indexOf('=');
+                    if (separator < 0) {
+                        usage("Expected name=class for --planner: " + value);
+                        return;
+                    }
+                    analyzer.planner(value.substring(0, separator), loadPlanner(value.substring(separator + 1)));
+                    break;
+                case "--out":
+                    output = value;
+                    break;
+                default:
+                    usage("Unknown option " + option);
+                    return;
+            }
+        }
+        if (output == null) {
+            analyzer.run(new PrintWriter(new OutputStreamWriter(System.out, Charset.forName("UTF-8"))));
+        } else {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output),
+                    Charset.forName("UTF-8")))) {
+                analyzer.run(out);
+            }
+        }
+    }
+
+    /**
+     * Instantiates a planner by the name of its class, which has a public constructor without arguments or a public
+     * static INSTANCE field.
+     */
+    static QueryPlanner loadPlanner(String className) throws ReflectiveOperationException {
+        Class<? extends QueryPlanner> type = Class.forName(className).asSubclass(QueryPlanner.class);
+        try {
+            return type.cast(type.getField("INSTANCE").get(null));
+        } catch (NoSuchFieldException e) {
+            return type.getConstructor().newInstance();
+        }
+    }
+
+    private static double[] parseList(String value) {
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static void usage(String error) {
+        List<String> lines = new ArrayList<>();
+        lines.add(error);
+        lines.add("Options:");
+        lines.add("  --latitudes <list>      latitudes of the centers, default 0,15,30,45,60,75");
+        lines.add("  --radii <list>          radii in kilometers, default 0.1,0.5,1,5,10,50,100,500");
+        lines.add("  --density <number>      keys per square kilometer, default 100");
+        lines.add("  --range-cost <number>   cost of listening to a range, default 100");
+        lines.add("  --key-cost <number>     cost of downloading a key, default 1");
+        lines.add("  --samples <number>      centers per latitude and radius, default 100");
+        lines.add("  --seed <number>         seed of the random longitudes, default 42");
+        lines.add("  --planner <name=class>  an additional planner to compare, may be repeated");
+        lines.add("  --out <file>            write the CSV report to a file instead of standard out");
+        for (String line: lines) {
+            System.err.println(line);
+        }
+        System.exit(1);
+    }
+}
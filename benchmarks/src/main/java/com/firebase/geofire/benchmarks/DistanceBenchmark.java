@@ -0,0 +1,77 @@
+package com.firebase.geofire.benchmarks;
+
+import com.firebase.geofire.util.DistanceKernel;
+import com.firebase.geofire.util.GeoUtils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The distance check that decides for every key update whether the key is inside of a query, one at a time and with
+ * the {@link DistanceKernel} that checks all keys of a query at once. Put geofire-vector on the class path and pass
+ * {@code --add-modules jdk.incubator.vector} to the forked JVM to compare the SIMD kernel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    private double[] coordinates;
+    private double[] latitudes;
+    private double[] longitudes;
+    private boolean[] within;
+    private DistanceKernel kernel;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.coordinates = Locations.around(37.7853889, -122.4056973, 0.5, 3);
+        this.latitudes = new double[Locations.COUNT];
+        this.longitudes = new double[Locations.COUNT];
+        for (int i = 0; i < Locations.COUNT; i++) {
+            this.latitudes[i] = this.coordinates[2 * i];
+            this.longitudes[i] = this.coordinates[2 * i + 1];
+        }
+        this.within = new boolean[Locations.COUNT];
+        this.kernel = GeoUtils.getDistanceKernel();
+    }
+
+    @Benchmark
+    public double distance() {
+        int i = this.index;
+        this.index = (i + 1) & Locations.MASK;
+        return GeoUtils.distance(this.coordinates[2 * i], this.coordinates[2 * i + 1], 37.7853889, -122.4056973);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Locations.COUNT)
+    public int countWithinRadius() {
+        int count = 0;
+        for (int i = 0; i < Locations.COUNT; i++) {
+            if (GeoUtils.distance(this.coordinates[2 * i], this.coordinates[2 * i + 1], 37.7853889, -122.4056973)
+                    <= 25000) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Locations.COUNT)
+    public int kernelWithinRadius() {
+        return this.kernel.withinRadius(37.7853889, -122.4056973, 25000, this.latitudes, this.longitudes,
+                Locations.COUNT, this.within);
+    }
+}
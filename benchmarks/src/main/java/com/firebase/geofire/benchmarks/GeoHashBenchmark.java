@@ -0,0 +1,89 @@
+package com.firebase.geofire.benchmarks;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.util.Base32Utils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Geohash encoding and decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashBenchmark {
+
+    @Param({"10", "22"})
+    public int precision;
+
+    private double[] coordinates;
+    private String[] geoHashes;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.coordinates = Locations.global(1);
+        this.geoHashes = new String[Locations.COUNT];
+        for (int i = 0; i < Locations.COUNT; i++) {
+            this.geoHashes[i] = new GeoHash(this.coordinates[2 * i], this.coordinates[2 * i + 1], this.precision)
+                    .getGeoHashString();
+        }
+    }
+
+    private int next() {
+        this.index = (this.index + 1) & Locations.MASK;
+        return this.index;
+    }
+
+    @Benchmark
+    public String encode() {
+        int i = this.next();
+        return new GeoHash(this.coordinates[2 * i], this.coordinates[2 * i + 1], this.precision).getGeoHashString();
+    }
+
+    @Benchmark
+    public long encodeToLong() {
+        int i = this.next();
+        // packed geohashes are limited to 12 characters
+        return GeoHash.toLong(this.coordinates[2 * i], this.coordinates[2 * i + 1],
+                Math.min(this.precision, GeoHash.MAX_LONG_PRECISION));
+    }
+
+    @Benchmark
+    public GeoHash parse() {
+        return new GeoHash(this.geoHashes[this.next()]);
+    }
+
+    @Benchmark
+    public int base32Decode() {
+        String geoHash = this.geoHashes[this.next()];
+        int value = 0;
+        for (int i = 0; i < geoHash.length(); i++) {
+            value = value * 31 + Base32Utils.base32CharToValue(geoHash.charAt(i));
+        }
+        return value;
+    }
+
+    @Benchmark
+    public char base32Encode() {
+        return Base32Utils.valueToBase32Char(this.next() & 31);
+    }
+
+    @Benchmark
+    public boolean base32Validate() {
+        return Base32Utils.isValidBase32String(this.geoHashes[this.next()]);
+    }
+}
@@ -0,0 +1,51 @@
+package com.firebase.geofire.benchmarks;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.core.GeoHashQuery;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Covering a circle with geohash ranges, which happens on every change of a query's center or radius.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoHashQueryBenchmark {
+
+    /** The radius in meters */
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public double radius;
+
+    private GeoLocation[] centers;
+    private int index;
+
+    @Setup
+    public void setup() {
+        double[] coordinates = Locations.global(2);
+        this.centers = new GeoLocation[Locations.COUNT];
+        for (int i = 0; i < Locations.COUNT; i++) {
+            this.centers[i] = new GeoLocation(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+    }
+
+    @Benchmark
+    public Set<GeoHashQuery> queriesAtLocation() {
+        this.index = (this.index + 1) & Locations.MASK;
+        return GeoHashQuery.queriesAtLocation(this.centers[this.index], this.radius);
+    }
+}
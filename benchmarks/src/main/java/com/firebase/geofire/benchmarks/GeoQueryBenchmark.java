@@ -0,0 +1,214 @@
+package com.firebase.geofire.benchmarks;
+
+import com.firebase.geofire.GeoFire;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoQuery;
+import com.firebase.geofire.GeoQueryEventListener;
+import com.firebase.geofire.GeoQueryPrimitiveEventListener;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.google.firebase.database.DatabaseError;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Event processing of a GeoQuery. An InMemoryGeoStore stands in for the database, so the measured time is spent in
+ * the store's notification thread, GeoQuery and the event dispatch only. The store notifies its subscribers on its own
+ * thread, as its contract requires: a store that notifies on the writing thread would call into GeoQuery with the
+ * store's write lock held, while changing the center of a query subscribes with the query's lock held.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoQueryBenchmark {
+
+    private static final double LATITUDE = 37.7853889;
+    private static final double LONGITUDE = -122.4056973;
+    // every key stays within about 1km of the center, so updates only ever move keys inside of the query
+    private static final double SPREAD_DEGREES = 0.01;
+    private static final double RADIUS_KILOMETERS = 5;
+    // writers stop once this many events wait for dispatch, so the event queue does not grow without bounds
+    private static final int MAX_EVENTS_IN_FLIGHT = 1024;
+
+    @State(Scope.Benchmark)
+    public static class QueryState {
+
+        /** The number of keys in the query besides the ones every writer thread adds */
+        @Param({"1000", "100000"})
+        public int keys;
+
+        /** A GeoQueryEventListener or a GeoQueryPrimitiveEventListener, whose key events allocate nothing */
+        @Param({"event", "primitive"})
+        public String listener;
+
+        GeoFire geoFire;
+        GeoQuery query;
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicInteger writers = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() throws InterruptedException {
+            this.geoFire = new GeoFire(new InMemoryGeoStore());
+            double[] coordinates = Locations.around(LATITUDE, LONGITUDE, SPREAD_DEGREES, 4);
+            for (int i = 0; i < this.keys; i++) {
+                int j = i & Locations.MASK;
+                this.geoFire.setLocation("key" + i, new GeoLocation(coordinates[2 * j], coordinates[2 * j + 1]));
+            }
+            final CountDownLatch ready = new CountDownLatch(1);
+            this.query = this.geoFire.queryAtLocation(new GeoLocation(LATITUDE, LONGITUDE), RADIUS_KILOMETERS);
+            if (this.listener.equals("primitive")) {
+                this.query.addGeoQueryPrimitiveEventListener(new GeoQueryPrimitiveEventListener() {
+                    @Override
+                    public void onKeyEvent(String key, double latitude, double longitude, int type) {
+                        if (type == KEY_MOVED) {
+                            QueryState.this.delivered.incrementAndGet();
+                        }
+                    }
+
+                    @Override
+                    public void onGeoQueryReady() {
+                        ready.countDown();
+                    }
+
+                    @Override
+                    public void onGeoQueryError(DatabaseError error) {
+                        throw error.toException();
+                    }
+                });
+            } else {
+                this.query.addGeoQueryEventListener(new GeoQueryEventListener() {
+                    @Override
+                    public void onKeyEntered(String key, GeoLocation location) {
+                    }
+
+                    @Override
+                    public void onKeyExited(String key) {
+                    }
+
+                    @Override
+                    public void onKeyMoved(String key, GeoLocation location) {
+                        QueryState.this.delivered.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onGeoQueryReady() {
+                        ready.countDown();
+                    }
+
+                    @Override
+                    public void onGeoQueryError(DatabaseError error) {
+                        throw error.toException();
+                    }
+                });
+            }
+            ready.await();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            this.query.removeAllListeners();
+        }
+
+        void awaitDelivered(long count) {
+            while (this.delivered.get() < count) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriterState {
+        private static final int KEYS_PER_WRITER = 64;
+
+        private String[] keys;
+        private GeoLocation[] first;
+        private GeoLocation[] second;
+        private int index;
+        private boolean useSecond;
+
+        @Setup(Level.Trial)
+        public void setup(QueryState queryState) {
+            // every writer updates keys of its own, so each write moves a key and raises exactly one event
+            int writer = queryState.writers.getAndIncrement();
+            double[] coordinates = Locations.around(LATITUDE, LONGITUDE, SPREAD_DEGREES, 100 + writer);
+            this.keys = new String[KEYS_PER_WRITER];
+            this.first = new GeoLocation[KEYS_PER_WRITER];
+            this.second = new GeoLocation[KEYS_PER_WRITER];
+            for (int i = 0; i < KEYS_PER_WRITER; i++) {
+                this.keys[i] = "writer" + writer + "-" + i;
+                this.first[i] = new GeoLocation(coordinates[2 * i], coordinates[2 * i + 1]);
+                this.second[i] = new GeoLocation(coordinates[2 * i] + 0.0001, coordinates[2 * i + 1]);
+                queryState.geoFire.setLocation(this.keys[i], this.first[i]);
+            }
+            this.useSecond = true;
+        }
+
+        long write(QueryState queryState) {
+            int i = this.index;
+            queryState.geoFire.setLocation(this.keys[i], this.useSecond ? this.second[i] : this.first[i]);
+            this.index = i + 1;
+            if (this.index == KEYS_PER_WRITER) {
+                this.index = 0;
+                this.useSecond = !this.useSecond;
+            }
+            return queryState.written.incrementAndGet();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CenterState {
+        private boolean moved;
+
+        GeoLocation next() {
+            this.moved = !this.moved;
+            // a few meters, so no key enters or exits the query
+            return new GeoLocation(this.moved ? LATITUDE + 0.00001 : LATITUDE, LONGITUDE);
+        }
+    }
+
+    /**
+     * Time from a write until its event reached the listener.
+     */
+    @Benchmark
+    @Threads(1)
+    public void updateKey(QueryState queryState, WriterState writerState) {
+        queryState.awaitDelivered(writerState.write(queryState));
+    }
+
+    /**
+     * Writers that compete for the query's lock with each other and with changes of the query's center.
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void contendedUpdateKey(QueryState queryState, WriterState writerState) {
+        queryState.awaitDelivered(writerState.write(queryState) - MAX_EVENTS_IN_FLIGHT);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedSetCenter(QueryState queryState, CenterState centerState) {
+        queryState.query.setCenter(centerState.next());
+    }
+}
@@ -0,0 +1,41 @@
+package com.firebase.geofire.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Random coordinates shared by the benchmarks. A fixed seed keeps runs of different releases comparable.
+ */
+final class Locations {
+
+    static final int COUNT = 1024;
+    static final int MASK = COUNT - 1;
+
+    private Locations() {
+    }
+
+    /**
+     * @return COUNT latitudes and longitudes, interleaved, within the given distance in degrees around a center
+     */
+    static double[] around(double latitude, double longitude, double degrees, long seed) {
+        Random random = new Random(seed);
+        double[] coordinates = new double[COUNT * 2];
+        for (int i = 0; i < COUNT; i++) {
+            coordinates[2 * i] = latitude + (random.nextDouble() * 2 - 1) * degrees;
+            coordinates[2 * i + 1] = longitude + (random.nextDouble() * 2 - 1) * degrees;
+        }
+        return coordinates;
+    }
+
+    /**
+     * @return COUNT latitudes and longitudes, interleaved, spread over the whole globe
+     */
+    static double[] global(long seed) {
+        Random random = new Random(seed);
+        double[] coordinates = new double[COUNT * 2];
+        for (int i = 0; i < COUNT; i++) {
+            coordinates[2 * i] = random.nextDouble() * 180 - 90;
+            coordinates[2 * i + 1] = random.nextDouble() * 360 - 180;
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The ids of the keys in a GeoQuery ordered by their distance from its center, kept up to date one key at a time.
+ * Keys with the same distance are ordered by their id. The nearest keys up to a limit are ranked, the keys beyond it
+ * are outranked. Keys that move between the two while another key is set or removed are recorded as rank changes.
+ * This class is not thread safe, GeoQuery only uses it while holding its lock.
+ */
+final class DistanceOrder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] distances = new double[INITIAL_CAPACITY];
+    private boolean[] contained = new boolean[INITIAL_CAPACITY];
+    private final Comparator<Integer> comparator = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer id1, Integer id2) {
+            int result = Double.compare(DistanceOrder.this.distances[id1], DistanceOrder.this.distances[id2]);
+            return result != 0 ? result : Integer.compare(id1, id2);
+        }
+    };
+    private final TreeSet<Integer> ranked = new TreeSet<>(this.comparator);
+    // only used if there are more keys than the limit
+    private final TreeSet<Integer> outranked = new TreeSet<>(this.comparator);
+    private final List<Integer> rankChanges = new ArrayList<>();
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Adds a key or updates its distance.
+     */
+    void set(int id, double distance) {
+        if (id >= this.distances.length) {
+            int capacity = Math.max(id + 1, this.distances.length * 2);
+            this.distances = Arrays.copyOf(this.distances, capacity);
+            this.contained = Arrays.copyOf(this.contained, capacity);
+        }
+        if (this.contained[id]) {
+            if (this.distances[id] == distance) {
+                return;
+            }
+            // removed with its old distance, the trees find it by its distance
+            this.unlink(id);
+        }
+        this.distances[id] = distance;
+        this.contained[id] = true;
+        if (this.ranked.size() < this.limit) {
+            this.ranked.add(id);
+        } else if (this.comparator.compare(id, this.ranked.last()) < 0) {
+            this.demote(this.ranked.last());
+            this.ranked.add(id);
+        } else {
+            this.outranked.add(id);
+        }
+    }
+
+    void remove(int id) {
+        if (id < this.contained.length && this.contained[id]) {
+            this.unlink(id);
+            this.contained[id] = false;
+        }
+    }
+
+    private void unlink(int id) {
+        if (this.ranked.remove(id)) {
+            if (!this.outranked.isEmpty()) {
+                this.promote(this.outranked.first());
+            }
+        } else {
+            this.outranked.remove(id);
+        }
+    }
+
+    private void promote(int id) {
+        this.outranked.remove(id);
+        this.ranked.add(id);
+        this.rankChanges.add(id);
+    }
+
+    private void demote(int id) {
+        this.ranked.remove(id);
+        this.outranked.add(id);
+        this.rankChanges.add(id);
+    }
+
+    /**
+     * Sets the number of keys that are ranked.
+     */
+    void setLimit(int limit) {
+        this.limit = limit;
+        while (this.ranked.size() > limit) {
+            this.demote(this.ranked.last());
+        }
+        while (this.ranked.size() < limit && !this.outranked.isEmpty()) {
+            this.promote(this.outranked.first());
+        }
+    }
+
+    boolean contains(int id) {
+        return id < this.contained.length && this.contained[id];
+    }
+
+    boolean isRanked(int id) {
+        return this.contains(id) && this.ranked.contains(id);
+    }
+
+    double distance(int id) {
+        return this.distances[id];
+    }
+
+    /**
+     * @return The number of ranked keys
+     */
+    int rankedCount() {
+        return this.ranked.size();
+    }
+
+    /**
+     * @return The distance of the farthest ranked key, 0 if there is none
+     */
+    double farthestRankedDistance() {
+        return this.ranked.isEmpty() ? 0 : this.distances[this.ranked.last()];
+    }
+
+    /**
+     * @return The ranked ids, nearest first
+     */
+    Iterator<Integer> iterator() {
+        return this.ranked.iterator();
+    }
+
+    /**
+     * @return The ids of the keys that were promoted or demoted since the last call to {@link #clearRankChanges()},
+     * the key that was set or removed itself is not included
+     */
+    List<Integer> rankChanges() {
+        return this.rankChanges;
+    }
+
+    void clearRankChanges() {
+        this.rankChanges.clear();
+    }
+
+    void clear() {
+        this.ranked.clear();
+        this.outranked.clear();
+        this.rankChanges.clear();
+        Arrays.fill(this.contained, false);
+    }
+}
@@ -34,27 +34,66 @@ import java.util.Objects;
 
 /**
  * GeoQuery notifies listeners with this interface about dataSnapshots that entered, exited, or moved within the query.
+ * It wraps a {@link GeoQueryEventListener} or a {@link GeoQueryDistanceEventListener}, which get keys instead.
  */
 final class EventListenerBridge implements GeoQueryDataEventListener {
     private final GeoQueryEventListener listener;
+    private final GeoQueryDistanceEventListener distanceListener;
 
     public EventListenerBridge(final GeoQueryEventListener listener) {
         this.listener = listener;
+        this.distanceListener = null;
+    }
+
+    public EventListenerBridge(final GeoQueryDistanceEventListener distanceListener) {
+        this.listener = null;
+        this.distanceListener = distanceListener;
+    }
+
+    /**
+     * @return The listener this bridge delivers the events to
+     */
+    Object getListener() {
+        return this.listener != null ? this.listener : this.distanceListener;
     }
 
     @Override
     public void onDataEntered(final DataSnapshot dataSnapshot, final GeoLocation location) {
-        listener.onKeyEntered(dataSnapshot.getKey(), location);
+        onKeyEntered(dataSnapshot.getKey(), location, Double.NaN);
     }
 
     @Override
     public void onDataExited(final DataSnapshot dataSnapshot) {
-        listener.onKeyExited(dataSnapshot.getKey());
+        onKeyExited(dataSnapshot.getKey());
     }
 
     @Override
     public void onDataMoved(final DataSnapshot dataSnapshot, final GeoLocation location) {
-        listener.onKeyMoved(dataSnapshot.getKey(), location);
+        onKeyMoved(dataSnapshot.getKey(), location, Double.NaN);
+    }
+
+    void onKeyEntered(final String key, final GeoLocation location, final double distance) {
+        if (listener != null) {
+            listener.onKeyEntered(key, location);
+        } else {
+            distanceListener.onKeyEntered(key, location, distance);
+        }
+    }
+
+    void onKeyExited(final String key) {
+        if (listener != null) {
+            listener.onKeyExited(key);
+        } else {
+            distanceListener.onKeyExited(key);
+        }
+    }
+
+    void onKeyMoved(final String key, final GeoLocation location, final double distance) {
+        if (listener != null) {
+            listener.onKeyMoved(key, location);
+        } else {
+            distanceListener.onKeyMoved(key, location, distance);
+        }
     }
 
     @Override
@@ -64,12 +103,20 @@ final class EventListenerBridge implements GeoQueryDataEventListener {
 
     @Override
     public void onGeoQueryReady() {
-        listener.onGeoQueryReady();
+        if (listener != null) {
+            listener.onGeoQueryReady();
+        } else {
+            distanceListener.onGeoQueryReady();
+        }
     }
 
     @Override
     public void onGeoQueryError(final DatabaseError error) {
-        listener.onGeoQueryError(error);
+        if (listener != null) {
+            listener.onGeoQueryError(error);
+        } else {
+            distanceListener.onGeoQueryError(error);
+        }
     }
 
     @Override
@@ -81,11 +128,11 @@ final class EventListenerBridge implements GeoQueryDataEventListener {
             return false;
         }
         final EventListenerBridge that = (EventListenerBridge) o;
-        return listener.equals(that.listener);
+        return Objects.equals(listener, that.listener) && Objects.equals(distanceListener, that.distanceListener);
     }
 
     @Override
     public int hashCode() {
-        return listener.hashCode();
+        return listener != null ? listener.hashCode() : distanceListener.hashCode();
     }
 }
@@ -1,5 +1,10 @@
 package com.firebase.geofire;
 
 interface EventRaiser {
-    void raiseEvent(Runnable r);
+    /**
+     * @param listener The listener the event is delivered to, or null if it isn't delivered to a listener
+     * @param key      The key the event is about, or null if it is about the whole query
+     * @param r        Delivers the event
+     */
+    void raiseEvent(Object listener, String key, Runnable r);
 }
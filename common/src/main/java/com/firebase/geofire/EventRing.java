@@ -0,0 +1,241 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import java.util.logging.Level;
+
+import static com.firebase.geofire.GeoFire.LOGGER;
+
+/**
+ * Delivers the events of primitive listeners in order on a thread of its own. Events are written into the slots of a
+ * ring of preallocated arrays and read back from them, so publishing and delivering a key event creates no objects.
+ * The ring doubles its capacity when it is full instead of blocking, since the listeners may call back into a query
+ * that is publishing; once it is large enough for the peak backlog it doesn't allocate anymore. After the ring was
+ * empty for a while it shrinks back to its initial capacity, and its thread stops once the ring is empty and no
+ * primitive listeners are left. The number of events in the ring is reported as
+ * {@link com.firebase.geofire.metrics.GeoFireMetrics#EVENT_RING_DEPTH}.
+ */
+final class EventRing {
+
+    // the type of a slot that holds a runnable instead of a key event
+    private static final int RUNNABLE = -1;
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    private static final long IDLE_MILLIS = 10000;
+
+    private final GeoFire geoFire;
+    // the time the ring has to be empty before it shrinks
+    private final long idleMillis;
+    // the slots, the capacity is a power of two
+    private Object[] targets;
+    private String[] keys;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] types;
+    // the first slot to deliver and the number of slots to deliver
+    private int head;
+    private int size;
+    private boolean waiting;
+    private Thread thread;
+    // the primitive listeners of all queries
+    private int listeners;
+
+    EventRing(GeoFire geoFire) {
+        this(geoFire, IDLE_MILLIS);
+    }
+
+    EventRing(GeoFire geoFire, long idleMillis) {
+        this.geoFire = geoFire;
+        this.idleMillis = idleMillis;
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        this.targets = new Object[capacity];
+        this.keys = new String[capacity];
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.types = new int[capacity];
+    }
+
+    /**
+     * @param type The type of the event, one of the types in {@link GeoQueryPrimitiveEventListener}
+     */
+    synchronized void publish(GeoQueryPrimitiveEventListener listener, String key, double latitude, double longitude,
+                              int type) {
+        this.add(listener, key, latitude, longitude, type);
+    }
+
+    /**
+     * Delivers the runnable in order with the key events, for the events of primitive listeners that are rare enough
+     * to allocate.
+     */
+    synchronized void publish(Runnable r) {
+        this.add(r, null, 0, 0, RUNNABLE);
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    synchronized int capacity() {
+        return this.targets.length;
+    }
+
+    synchronized boolean isRunning() {
+        return this.thread != null;
+    }
+
+    /**
+     * @param delta The number of primitive listeners that were added, or removed if negative
+     */
+    synchronized void primitiveListenersChanged(int delta) {
+        this.listeners += delta;
+        if (this.listeners == 0 && this.waiting) {
+            this.notify();
+        }
+    }
+
+    private void add(Object target, String key, double latitude, double longitude, int type) {
+        if (this.size == this.targets.length) {
+            this.grow();
+        }
+        int slot = (this.head + this.size) & (this.targets.length - 1);
+        this.targets[slot] = target;
+        this.keys[slot] = key;
+        this.latitudes[slot] = latitude;
+        this.longitudes[slot] = longitude;
+        this.types[slot] = type;
+        this.size++;
+        if (this.thread == null) {
+            this.thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    EventRing.this.deliverEvents();
+                }
+            }, "GeoFire event ring");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        } else if (this.waiting) {
+            this.notify();
+        }
+    }
+
+    private void grow() {
+        Object[] targets = this.targets;
+        String[] keys = this.keys;
+        double[] latitudes = this.latitudes;
+        double[] longitudes = this.longitudes;
+        int[] types = this.types;
+        this.allocate(targets.length * 2);
+        for (int i = 0; i < this.size; i++) {
+            int slot = (this.head + i) & (targets.length - 1);
+            this.targets[i] = targets[slot];
+            this.keys[i] = keys[slot];
+            this.latitudes[i] = latitudes[slot];
+            this.longitudes[i] = longitudes[slot];
+            this.types[i] = types[slot];
+        }
+        this.head = 0;
+    }
+
+    private void shrink() {
+        if (this.targets.length > INITIAL_CAPACITY) {
+            // the ring is empty, there is nothing to copy
+            this.allocate(INITIAL_CAPACITY);
+            this.head = 0;
+        }
+    }
+
+    private void deliverEvents() {
+        while (true) {
+            Object target;
+            String key;
+            double latitude;
+            double longitude;
+            int type;
+            synchronized (this) {
+                while (this.size == 0) {
+                    if (this.listeners <= 0) {
+                        // the next event starts a new thread
+                        this.thread = null;
+                        this.shrink();
+                        return;
+                    }
+                    this.waiting = true;
+                    try {
+                        this.wait(this.idleMillis);
+                    } catch (InterruptedException e) {
+                        this.thread = null;
+                        Thread.currentThread().interrupt();
+                        return;
+                    } finally {
+                        this.waiting = false;
+                    }
+                    if (this.size == 0) {
+                        this.shrink();
+                    }
+                }
+                int slot = this.head;
+                target = this.targets[slot];
+                key = this.keys[slot];
+                latitude = this.latitudes[slot];
+                longitude = this.longitudes[slot];
+                type = this.types[slot];
+                // the slot is reused, it must not hold on to the listener and key
+                this.targets[slot] = null;
+                this.keys[slot] = null;
+                this.head = (slot + 1) & (this.targets.length - 1);
+                this.size--;
+            }
+            try {
+                if (type == RUNNABLE) {
+                    ((Runnable) target).run();
+                } else {
+                    this.countEvent(type);
+                    ((GeoQueryPrimitiveEventListener) target).onKeyEvent(key, latitude, longitude, type);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Listener threw an exception", e);
+            }
+        }
+    }
+
+    private void countEvent(int type) {
+        Instruments instruments = this.geoFire.getInstruments();
+        if (type == GeoQueryPrimitiveEventListener.KEY_ENTERED) {
+            instruments.keyEnteredEvents.increment();
+        } else if (type == GeoQueryPrimitiveEventListener.KEY_MOVED) {
+            instruments.keyMovedEvents.increment();
+        } else {
+            instruments.keyExitedEvents.increment();
+        }
+    }
+}
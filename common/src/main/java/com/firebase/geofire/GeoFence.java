@@ -0,0 +1,227 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.List;
+
+/**
+ * A circle or polygon that a {@link GeoFenceEngine} watches keys entering and exiting.
+ *
+ * Polygons are simple polygons whose edges are straight lines between their vertices in latitude and longitude. They
+ * must not cross the 180th meridian or contain a pole.
+ */
+public final class GeoFence {
+
+    private static final double EARTH_MEAN_RADIUS = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS)/2;
+
+    private final String id;
+    private final GeoLocation center;
+    // the radius of a circle, in meters, or -1 for a polygon
+    private final double radius;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    // the bounding box, west is larger than east if the box crosses the 180th meridian
+    private final double south;
+    private final double north;
+    private final double west;
+    private final double east;
+
+    private GeoFence(String id, GeoLocation center, double radius, double[] latitudes, double[] longitudes,
+                     double south, double north, double west, double east) {
+        this.id = id;
+        this.center = center;
+        this.radius = radius;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.south = south;
+        this.north = north;
+        this.west = west;
+        this.east = east;
+    }
+
+    /**
+     * Creates a circular fence.
+     *
+     * @param id The id of the fence
+     * @param center The center of the circle
+     * @param radius The radius of the circle, in kilometers
+     * @return The fence
+     */
+    public static GeoFence circle(String id, GeoLocation center, double radius) {
+        if (id == null || center == null) {
+            throw new NullPointerException();
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative!");
+        }
+        double meters = GeoUtils.capRadius(radius) * 1000;
+        double angle = meters/EARTH_MEAN_RADIUS;
+        double latitudeDelta = Math.toDegrees(angle);
+        double south = center.latitude - latitudeDelta;
+        double north = center.latitude + latitudeDelta;
+        double sinAngle = Math.sin(angle);
+        double cosLatitude = Math.cos(Math.toRadians(center.latitude));
+        if (south <= -90 || north >= 90 || sinAngle >= cosLatitude) {
+            // the circle contains a pole
+            return new GeoFence(id, center, meters, null, null, Math.max(-90, south), Math.min(90, north), -180, 180);
+        }
+        double longitudeDelta = Math.toDegrees(Math.asin(sinAngle/cosLatitude));
+        return new GeoFence(id, center, meters, null, null, south, north,
+                GeoUtils.wrapLongitude(center.longitude - longitudeDelta),
+                GeoUtils.wrapLongitude(center.longitude + longitudeDelta));
+    }
+
+    /**
+     * Creates a polygonal fence.
+     *
+     * @param id The id of the fence
+     * @param vertices The vertices of the polygon, in order
+     * @return The fence
+     */
+    public static GeoFence polygon(String id, List<GeoLocation> vertices) {
+        if (id == null || vertices == null) {
+            throw new NullPointerException();
+        }
+        if (vertices.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices!");
+        }
+        double[] latitudes = new double[vertices.size()];
+        double[] longitudes = new double[vertices.size()];
+        double south = 90;
+        double north = -90;
+        double west = 180;
+        double east = -180;
+        for (int i = 0; i < latitudes.length; i++) {
+            GeoLocation vertex = vertices.get(i);
+            latitudes[i] = vertex.latitude;
+            longitudes[i] = vertex.longitude;
+            south = Math.min(south, vertex.latitude);
+            north = Math.max(north, vertex.latitude);
+            west = Math.min(west, vertex.longitude);
+            east = Math.max(east, vertex.longitude);
+        }
+        // the circle around the bounding box, its farthest points from the center are its corners
+        GeoLocation center = new GeoLocation((south + north)/2, (west + east)/2);
+        return new GeoFence(id, center, -1, latitudes, longitudes, south, north, west, east);
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * @return Whether the fence is a circle
+     */
+    public boolean isCircle() {
+        return this.radius >= 0;
+    }
+
+    /**
+     * @param location A location
+     * @return Whether the location is inside of the fence
+     */
+    public boolean contains(GeoLocation location) {
+        return this.contains(location.latitude, location.longitude);
+    }
+
+    boolean contains(double latitude, double longitude) {
+        if (this.isCircle()) {
+            return GeoUtils.distance(latitude, longitude, this.center.latitude, this.center.longitude) <= this.radius;
+        }
+        if (latitude < this.south || latitude > this.north || longitude < this.west || longitude > this.east) {
+            return false;
+        }
+        // count the edges a ray to the east crosses
+        boolean inside = false;
+        for (int i = 0, j = this.latitudes.length - 1; i < this.latitudes.length; j = i++) {
+            if ((this.latitudes[i] > latitude) != (this.latitudes[j] > latitude)) {
+                double crossing = this.longitudes[j] + (latitude - this.latitudes[j])
+                        * (this.longitudes[i] - this.longitudes[j])/(this.latitudes[i] - this.latitudes[j]);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    double getSouth() {
+        return this.south;
+    }
+
+    double getNorth() {
+        return this.north;
+    }
+
+    double getWest() {
+        return this.west;
+    }
+
+    double getEast() {
+        return this.east;
+    }
+
+    /**
+     * @return The center of a circle that contains the fence
+     */
+    GeoLocation getCoverCenter() {
+        return this.center;
+    }
+
+    /**
+     * @return The radius of a circle that contains the fence, in meters
+     */
+    double getCoverRadius() {
+        if (this.isCircle()) {
+            return this.radius;
+        }
+        double radius = 0;
+        double[] latitudes = { this.south, this.north };
+        double[] longitudes = { this.west, this.east };
+        for (double latitude: latitudes) {
+            for (double longitude: longitudes) {
+                radius = Math.max(radius, GeoUtils.distance(this.center.latitude, this.center.longitude,
+                        latitude, longitude));
+            }
+        }
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        if (this.isCircle()) {
+            return "GeoFence{id='" + this.id + "', center=" + this.center + ", radius=" + this.radius/1000 + "}";
+        }
+        return "GeoFence{id='" + this.id + "', vertices=" + this.latitudes.length + "}";
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.trace.GeoFireTracer;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Watches keys entering and exiting many fences at once. A GeoFenceEngine subscribes to the geo hash ranges of all
+ * of its fences together, so ranges shared by nearby fences are subscribed once, and evaluates every location update
+ * once against the fences near the location, found with an index of the fences by geo hash cell. This replaces one
+ * {@link GeoQuery} per fence. The GeoFenceEngine class is thread safe.
+ *
+ * Ranges are subscribed as they are planned for each fence and counted by the fences that need them, so adding or
+ * removing a fence only subscribes or cancels the ranges of that fence that no other fence has, and only evaluates
+ * the keys in the index cells of that fence again.
+ *
+ * Fences can be added and removed at any time. Keys in an added fence enter it, keys in a removed fence do not exit
+ * it.
+ */
+public class GeoFenceEngine {
+    private static final int GEO_HASH_PRECISION = GeoHash.DEFAULT_PRECISION;
+
+    private class RangeListener implements GeoStore.RangeListener {
+        private final GeoHashQuery query;
+        private GeoStore.Subscription subscription;
+        // the number of fences whose plans have the range
+        private int fenceCount;
+
+        RangeListener(GeoHashQuery query) {
+            this.query = query;
+        }
+
+        private boolean isActive() {
+            // events of a range that was already cancelled are dropped
+            return GeoFenceEngine.this.rangeListeners.get(this.query) == this;
+        }
+
+        @Override
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoFenceEngine.this) {
+                if (this.isActive()) {
+                    GeoFenceEngine.this.updateKey(key, latitude, longitude);
+                }
+            }
+        }
+
+        @Override
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoFenceEngine.this) {
+                if (this.isActive()) {
+                    GeoFenceEngine.this.updateKey(key, latitude, longitude);
+                }
+            }
+        }
+
+        @Override
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            synchronized (GeoFenceEngine.this) {
+                if (this.isActive()) {
+                    GeoFenceEngine.this.childRemoved(key);
+                }
+            }
+        }
+
+        @Override
+        public void onRangeLoaded() {
+            synchronized (GeoFenceEngine.this) {
+                if (this.isActive()) {
+                    GeoFenceEngine.this.outstandingQueries.remove(this.query);
+                    GeoFenceEngine.this.checkAndFireReady();
+                }
+            }
+        }
+
+        @Override
+        public void onRangeError(final DatabaseError databaseError) {
+            synchronized (GeoFenceEngine.this) {
+                if (this.isActive()) {
+                    GeoFenceEngine.this.fireError(databaseError);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of subscribed ranges that contain every geo hash, to check whether a location is watched at all. The
+     * bounds of all ranges split the geo hashes into segments, adding or removing a range splits or merges the
+     * segments at its bounds and only changes the segments it spans.
+     */
+    private static final class WatchedRanges {
+        // the number of ranges that contain every segment by the first geo hash of the segment
+        private final TreeMap<Long, Integer> segments = new TreeMap<>();
+        // the number of ranges that start or end at every segment bound
+        private final Map<Long, Integer> boundCounts = new HashMap<>();
+
+        void add(long start, long end) {
+            if (start >= end) {
+                // a range without a geo hash of the precision
+                return;
+            }
+            this.addBound(start);
+            this.addBound(end);
+            for (Map.Entry<Long, Integer> segment: this.segments.subMap(start, end).entrySet()) {
+                segment.setValue(segment.getValue() + 1);
+            }
+        }
+
+        void remove(long start, long end) {
+            if (start >= end) {
+                return;
+            }
+            for (Map.Entry<Long, Integer> segment: this.segments.subMap(start, end).entrySet()) {
+                segment.setValue(segment.getValue() - 1);
+            }
+            this.removeBound(start);
+            this.removeBound(end);
+        }
+
+        private void addBound(long bound) {
+            Integer count = this.boundCounts.get(bound);
+            this.boundCounts.put(bound, count == null ? 1 : count + 1);
+            if (count == null) {
+                Map.Entry<Long, Integer> segment = this.segments.lowerEntry(bound);
+                this.segments.put(bound, segment == null ? 0 : segment.getValue());
+            }
+        }
+
+        private void removeBound(long bound) {
+            int count = this.boundCounts.get(bound);
+            if (count == 1) {
+                // no range starts or ends here anymore, so the segment has the count of the one before it
+                this.boundCounts.remove(bound);
+                this.segments.remove(bound);
+            } else {
+                this.boundCounts.put(bound, count - 1);
+            }
+        }
+
+        boolean contains(long geoHash) {
+            Map.Entry<Long, Integer> segment = this.segments.floorEntry(geoHash);
+            return segment != null && segment.getValue() > 0;
+        }
+
+        void clear() {
+            this.segments.clear();
+            this.boundCounts.clear();
+        }
+    }
+
+    private static final class KeyState {
+        private double latitude;
+        private double longitude;
+        private long geoHash;
+        private List<GeoFence> fences = Collections.emptyList();
+    }
+
+    private static final GeoFence[] NO_FENCES = new GeoFence[0];
+
+    private final GeoFire geoFire;
+    private final Set<GeoFenceEventListener> eventListeners = new HashSet<>();
+    private final Map<String, GeoFence> fences = new LinkedHashMap<>();
+    private final GeoFenceIndex index = new GeoFenceIndex();
+    private final Map<String, KeyState> keys = new HashMap<>();
+    // the keys by geo hash, to find the keys in the index cells of a fence
+    private final TreeMap<Long, Set<String>> keysByGeoHash = new TreeMap<>();
+    // the ranges planned for every fence by fence id, while the engine has listeners
+    private final Map<String, Set<GeoHashQuery>> plans = new HashMap<>();
+    private final Map<GeoHashQuery, RangeListener> rangeListeners = new HashMap<>();
+    private final WatchedRanges watchedRanges = new WatchedRanges();
+    private final Set<GeoHashQuery> outstandingQueries = new HashSet<>();
+    private boolean settingUpQueries;
+    // reused to collect the fences of a location
+    private final List<GeoFence> containing = new ArrayList<>();
+
+    GeoFenceEngine(GeoFire geoFire) {
+        this.geoFire = geoFire;
+    }
+
+    /**
+     * Adds a fence. Keys that are inside the fence enter it.
+     *
+     * @throws IllegalArgumentException If a fence with the same id was already added
+     *
+     * @param fence The fence to add
+     */
+    public synchronized void addFence(GeoFence fence) {
+        this.addFences(Collections.singletonList(fence));
+    }
+
+    /**
+     * Adds several fences at once, subscribing to their ranges only once.
+     *
+     * @throws IllegalArgumentException If a fence with the same id was already added or is in the list twice
+     *
+     * @param fences The fences to add
+     */
+    public synchronized void addFences(List<GeoFence> fences) {
+        Set<String> ids = new HashSet<>();
+        for (GeoFence fence: fences) {
+            if (this.fences.containsKey(fence.getId()) || !ids.add(fence.getId())) {
+                throw new IllegalArgumentException("Added a fence with the same id twice to a GeoFenceEngine!");
+            }
+        }
+        for (GeoFence fence: fences) {
+            this.fences.put(fence.getId(), fence);
+            this.index.add(fence);
+        }
+        if (!this.eventListeners.isEmpty()) {
+            this.settingUpQueries = true;
+            try {
+                for (GeoFence fence: fences) {
+                    this.subscribeFence(fence);
+                }
+            } finally {
+                this.settingUpQueries = false;
+            }
+            // keys that were watched before are evaluated against the added fences
+            for (GeoFence fence: fences) {
+                for (String key: this.keysInCells(fence)) {
+                    this.updateFences(key, this.keys.get(key));
+                }
+            }
+            this.checkAndFireReady();
+        }
+    }
+
+    /**
+     * Removes a fence.
+     *
+     * @param fenceId The id of the fence
+     * @return Whether a fence with this id was removed
+     */
+    public synchronized boolean removeFence(String fenceId) {
+        GeoFence fence = this.fences.remove(fenceId);
+        if (fence == null) {
+            return false;
+        }
+        // only keys in the index cells of the fence can be in it
+        for (String key: this.keysInCells(fence)) {
+            KeyState state = this.keys.get(key);
+            if (state.fences.contains(fence)) {
+                List<GeoFence> remaining = new ArrayList<>(state.fences);
+                remaining.remove(fence);
+                state.fences = remaining;
+            }
+        }
+        this.index.remove(fence);
+        if (!this.eventListeners.isEmpty()) {
+            // keys in cancelled ranges that no other range contains are no longer watched
+            List<String> removed = new ArrayList<>();
+            for (GeoHashQuery query: this.unsubscribeFence(fence)) {
+                long start = query.getStartLong(GEO_HASH_PRECISION);
+                long end = query.getEndLong(GEO_HASH_PRECISION);
+                if (start >= end) {
+                    continue;
+                }
+                for (Set<String> keys: this.keysByGeoHash.subMap(start, end).values()) {
+                    for (String key: keys) {
+                        if (!this.watchedRanges.contains(this.keys.get(key).geoHash)) {
+                            removed.add(key);
+                        }
+                    }
+                }
+            }
+            for (String key: removed) {
+                if (this.keys.containsKey(key)) {
+                    this.removeKey(key);
+                }
+            }
+            this.checkAndFireReady();
+        }
+        return true;
+    }
+
+    /**
+     * @param fenceId The id of a fence
+     * @return The fence with this id or null
+     */
+    public synchronized GeoFence getFence(String fenceId) {
+        return this.fences.get(fenceId);
+    }
+
+    /**
+     * @return The fences of this engine, in the order they were added
+     */
+    public synchronized List<GeoFence> getFences() {
+        return new ArrayList<>(this.fences.values());
+    }
+
+    /**
+     * @param key A key
+     * @return The ids of the fences the key is in
+     */
+    public synchronized List<String> getFenceIds(String key) {
+        KeyState state = this.keys.get(key);
+        List<String> ids = new ArrayList<>();
+        if (state != null) {
+            for (GeoFence fence: state.fences) {
+                ids.add(fence.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Adds a new GeoFenceEventListener to this engine.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoFenceEventListener(GeoFenceEventListener listener) {
+        if (!this.eventListeners.add(listener)) {
+            throw new IllegalArgumentException("Added the same listener twice to a GeoFenceEngine!");
+        }
+        if (this.eventListeners.size() == 1) {
+            this.setupQueries();
+        } else {
+            this.fireInitialEvents(listener);
+        }
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoFenceEventListener(GeoFenceEventListener listener) {
+        if (!this.eventListeners.remove(listener)) {
+            throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
+        }
+        if (this.eventListeners.isEmpty()) {
+            this.reset();
+        }
+    }
+
+    /**
+     * Removes all event listeners from this engine.
+     */
+    public synchronized void removeAllListeners() {
+        this.eventListeners.clear();
+        this.reset();
+    }
+
+    private void updateKey(final String key, double latitude, double longitude) {
+        KeyState state = this.keys.get(key);
+        long geoHash = GeoHash.toLong(latitude, longitude, GEO_HASH_PRECISION);
+        if (state == null) {
+            state = new KeyState();
+            this.keys.put(key, state);
+            this.indexKey(key, geoHash);
+        } else if (state.geoHash != geoHash) {
+            this.unindexKey(key, state.geoHash);
+            this.indexKey(key, geoHash);
+        }
+        state.latitude = latitude;
+        state.longitude = longitude;
+        state.geoHash = geoHash;
+        this.updateFences(key, state);
+    }
+
+    /**
+     * Evaluates the location of a key against the fences near it and fires the events for the fences it entered
+     * and exited.
+     */
+    private void updateFences(final String key, KeyState state) {
+        this.containing.clear();
+        this.index.findContaining(state.latitude, state.longitude, this.containing);
+        List<GeoFence> previous = state.fences;
+        if (this.containing.isEmpty() && previous.isEmpty()) {
+            return;
+        }
+        final GeoLocation location = new GeoLocation(state.latitude, state.longitude);
+        for (final GeoFence fence: this.containing) {
+            if (!previous.contains(fence)) {
+                for (final GeoFenceEventListener listener: this.eventListeners) {
+                    this.geoFire.raiseEvent(listener, key, new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onKeyEntered(fence.getId(), key, location);
+                        }
+                    });
+                }
+            }
+        }
+        for (GeoFence fence: previous) {
+            if (!this.containing.contains(fence)) {
+                this.fireExited(fence, key);
+            }
+        }
+        state.fences = this.containing.isEmpty()
+                ? Collections.<GeoFence>emptyList()
+                : Arrays.asList(this.containing.toArray(NO_FENCES));
+    }
+
+    private void fireExited(final GeoFence fence, final String key) {
+        for (final GeoFenceEventListener listener: this.eventListeners) {
+            this.geoFire.raiseEvent(listener, key, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onKeyExited(fence.getId(), key);
+                }
+            });
+        }
+    }
+
+    private void removeKey(String key) {
+        KeyState state = this.keys.remove(key);
+        this.unindexKey(key, state.geoHash);
+        for (GeoFence fence: state.fences) {
+            this.fireExited(fence, key);
+        }
+    }
+
+    private void indexKey(String key, long geoHash) {
+        Set<String> keys = this.keysByGeoHash.get(geoHash);
+        if (keys == null) {
+            keys = new HashSet<>(2);
+            this.keysByGeoHash.put(geoHash, keys);
+        }
+        keys.add(key);
+    }
+
+    private void unindexKey(String key, long geoHash) {
+        Set<String> keys = this.keysByGeoHash.get(geoHash);
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            this.keysByGeoHash.remove(geoHash);
+        }
+    }
+
+    /**
+     * @return The keys in the index cells of a fence, which are all keys that can be in the fence
+     */
+    private List<String> keysInCells(GeoFence fence) {
+        List<String> keys = new ArrayList<>();
+        long[] ranges = this.index.cellRanges(fence, GEO_HASH_PRECISION);
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (Set<String> cellKeys: this.keysByGeoHash.subMap(ranges[i], ranges[i + 1]).values()) {
+                keys.addAll(cellKeys);
+            }
+        }
+        return keys;
+    }
+
+    private void childRemoved(final String key) {
+        if (this.keys.containsKey(key)) {
+            this.geoFire.getStore().getLocation(key, new LocationCallback() {
+                @Override
+                public void onLocationResult(String key, GeoLocation location) {
+                    synchronized (GeoFenceEngine.this) {
+                        if ((location == null || !GeoFenceEngine.this.watchedRanges.contains(
+                                GeoHash.toLong(location.latitude, location.longitude, GEO_HASH_PRECISION)))
+                                && GeoFenceEngine.this.keys.containsKey(key)) {
+                            GeoFenceEngine.this.removeKey(key);
+                        }
+                    }
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    synchronized (GeoFenceEngine.this) {
+                        // the key stays tracked, the listeners learn that it may be stale
+                        GeoFenceEngine.this.fireError(databaseError);
+                    }
+                }
+            });
+        }
+    }
+
+    private void fireError(final DatabaseError databaseError) {
+        for (final GeoFenceEventListener listener: this.eventListeners) {
+            this.geoFire.raiseEvent(listener, null, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onGeoFencesError(databaseError);
+                }
+            });
+        }
+    }
+
+    private void setupQueries() {
+        this.settingUpQueries = true;
+        try {
+            for (GeoFence fence: this.fences.values()) {
+                this.subscribeFence(fence);
+            }
+        } finally {
+            this.settingUpQueries = false;
+        }
+        this.checkAndFireReady();
+    }
+
+    /**
+     * Plans the ranges of a fence and subscribes the ones that no other fence has.
+     */
+    private void subscribeFence(GeoFence fence) {
+        Set<GeoHashQuery> plan = this.geoFire.getQueryPlanner().plan(fence.getCoverCenter(), fence.getCoverRadius());
+        this.plans.put(fence.getId(), plan);
+        GeoFireTracer tracer = this.geoFire.getTracer();
+        GeoStore store = this.geoFire.getStore();
+        for (GeoHashQuery query: plan) {
+            RangeListener rangeListener = this.rangeListeners.get(query);
+            if (rangeListener != null) {
+                rangeListener.fenceCount++;
+                continue;
+            }
+            this.outstandingQueries.add(query);
+            this.watchedRanges.add(query.getStartLong(GEO_HASH_PRECISION), query.getEndLong(GEO_HASH_PRECISION));
+            // registered first, so a range that is loaded while subscribing is not taken as cancelled
+            rangeListener = new RangeListener(query);
+            rangeListener.fenceCount = 1;
+            this.rangeListeners.put(query, rangeListener);
+            rangeListener.subscription = store.subscribe(query.getStartValue(), query.getEndValue(), rangeListener);
+            this.geoFire.rangeSubscribed();
+            tracer.rangeSubscribed(query.getStartValue(), query.getEndValue());
+        }
+    }
+
+    /**
+     * Cancels the ranges of a fence that no other fence has.
+     *
+     * @return The cancelled ranges
+     */
+    private List<GeoHashQuery> unsubscribeFence(GeoFence fence) {
+        GeoFireTracer tracer = this.geoFire.getTracer();
+        List<GeoHashQuery> cancelled = new ArrayList<>();
+        for (GeoHashQuery query: this.plans.remove(fence.getId())) {
+            RangeListener rangeListener = this.rangeListeners.get(query);
+            if (--rangeListener.fenceCount > 0) {
+                continue;
+            }
+            this.rangeListeners.remove(query);
+            rangeListener.subscription.cancel();
+            this.geoFire.rangeUnsubscribed();
+            tracer.rangeUnsubscribed(query.getStartValue(), query.getEndValue());
+            this.outstandingQueries.remove(query);
+            this.watchedRanges.remove(query.getStartLong(GEO_HASH_PRECISION), query.getEndLong(GEO_HASH_PRECISION));
+            cancelled.add(query);
+        }
+        return cancelled;
+    }
+
+    private void reset() {
+        GeoFireTracer tracer = this.geoFire.getTracer();
+        for (RangeListener rangeListener: this.rangeListeners.values()) {
+            rangeListener.subscription.cancel();
+            this.geoFire.rangeUnsubscribed();
+            tracer.rangeUnsubscribed(rangeListener.query.getStartValue(), rangeListener.query.getEndValue());
+        }
+        this.rangeListeners.clear();
+        this.outstandingQueries.clear();
+        this.plans.clear();
+        this.watchedRanges.clear();
+        this.keys.clear();
+        this.keysByGeoHash.clear();
+    }
+
+    private void fireInitialEvents(final GeoFenceEventListener listener) {
+        for (Map.Entry<String, KeyState> entry: this.keys.entrySet()) {
+            final String key = entry.getKey();
+            KeyState state = entry.getValue();
+            final GeoLocation location = new GeoLocation(state.latitude, state.longitude);
+            for (final GeoFence fence: state.fences) {
+                this.geoFire.raiseEvent(listener, key, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onKeyEntered(fence.getId(), key, location);
+                    }
+                });
+            }
+        }
+        if (this.outstandingQueries.isEmpty()) {
+            this.geoFire.raiseEvent(listener, null, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onGeoFencesReady();
+                }
+            });
+        }
+    }
+
+    private void checkAndFireReady() {
+        // setupQueries checks once it is done, ranges can load while they are subscribed
+        if (!this.settingUpQueries && this.outstandingQueries.isEmpty()) {
+            for (final GeoFenceEventListener listener: this.eventListeners) {
+                this.geoFire.raiseEvent(listener, null, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onGeoFencesReady();
+                    }
+                });
+            }
+        }
+    }
+}
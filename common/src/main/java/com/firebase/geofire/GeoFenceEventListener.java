@@ -0,0 +1,71 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * GeoFenceEngine notifies listeners with this interface about keys that entered or exited its fences.
+ */
+public interface GeoFenceEventListener {
+
+    /**
+     * Called if a key entered a fence. This method is called for every key currently in a fence at the time of
+     * adding the listener.
+     *
+     * This method is called once per key and fence, and is only called again if onKeyExited was called for the same
+     * fence in the meantime.
+     *
+     * @param fenceId The id of the fence
+     * @param key The key that entered the fence
+     * @param location The location for this key as a GeoLocation object
+     */
+    void onKeyEntered(String fenceId, String key, GeoLocation location);
+
+    /**
+     * Called if a key exited a fence. This method is only called if onKeyEntered was called for the key and fence.
+     *
+     * @param fenceId The id of the fence
+     * @param key The key that exited the fence
+     */
+    void onKeyExited(String fenceId, String key);
+
+    /**
+     * Called once all initial GeoFire data has been loaded and the relevant events have been fired for the fences.
+     * Every time fences are added or removed, this observer will be called after the appropriate key entered or key
+     * exited events have been fired.
+     */
+    void onGeoFencesReady();
+
+    /**
+     * Called in case an error occurred while retrieving locations for the fences, e.g. violating security rules.
+     * @param error The error that occurred
+     */
+    void onGeoFencesError(DatabaseError error);
+}
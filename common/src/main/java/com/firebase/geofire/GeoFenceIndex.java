@@ -0,0 +1,172 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the fences that contain a location. Every fence is added to the geo hash cells that its bounding box
+ * overlaps, at the finest precision where these are at most {@link #MAX_CELLS} cells, so a lookup only tests the
+ * fences in the cells of the location at every precision. This class is not thread safe.
+ */
+final class GeoFenceIndex {
+
+    // 8 characters are cells of about 38 by 19 meters
+    static final int MAX_PRECISION = 8;
+    static final int MAX_CELLS = 4;
+
+    private static final int LONG_PRECISION = GeoHash.MAX_LONG_PRECISION;
+    private static final int PRECISION_SHIFT = 4;
+    // bounding boxes are widened a little, locations on the border of a cell are in the cell on either side
+    private static final double EPSILON = 1e-9;
+
+    private final Map<Long, List<GeoFence>> cells = new HashMap<>();
+    // the number of fences at every precision, precision 0 is the whole earth
+    private final int[] fences = new int[MAX_PRECISION + 1];
+
+    void add(GeoFence fence) {
+        int precision = precision(fence);
+        for (long cell: cells(fence, precision)) {
+            List<GeoFence> list = this.cells.get(cell);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                this.cells.put(cell, list);
+            }
+            list.add(fence);
+        }
+        this.fences[precision]++;
+    }
+
+    void remove(GeoFence fence) {
+        int precision = precision(fence);
+        for (long cell: cells(fence, precision)) {
+            List<GeoFence> list = this.cells.get(cell);
+            list.remove(fence);
+            if (list.isEmpty()) {
+                this.cells.remove(cell);
+            }
+        }
+        this.fences[precision]--;
+    }
+
+    /**
+     * Adds the fences that contain a location to a list.
+     */
+    void findContaining(double latitude, double longitude, List<GeoFence> result) {
+        long geoHash = GeoHash.toLong(latitude, longitude, LONG_PRECISION);
+        for (int precision = 0; precision <= MAX_PRECISION; precision++) {
+            if (this.fences[precision] == 0) {
+                continue;
+            }
+            long prefix = geoHash >>> ((LONG_PRECISION - precision) * Base32Utils.BITS_PER_BASE32_CHAR);
+            List<GeoFence> list = this.cells.get((prefix << PRECISION_SHIFT) | precision);
+            if (list != null) {
+                for (int i = 0; i < list.size(); i++) {
+                    GeoFence fence = list.get(i);
+                    if (fence.contains(latitude, longitude)) {
+                        result.add(fence);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param geoHashPrecision A precision of at least {@link #MAX_PRECISION}
+     * @return The packed geo hashes of the precision in the cells of a fence, as inclusive starts and exclusive ends
+     */
+    long[] cellRanges(GeoFence fence, int geoHashPrecision) {
+        int precision = precision(fence);
+        long[] cells = cells(fence, precision);
+        long[] ranges = new long[2 * cells.length];
+        int shift = (geoHashPrecision - precision) * Base32Utils.BITS_PER_BASE32_CHAR;
+        for (int i = 0; i < cells.length; i++) {
+            long prefix = cells[i] >>> PRECISION_SHIFT;
+            ranges[2 * i] = prefix << shift;
+            ranges[2 * i + 1] = (prefix + 1) << shift;
+        }
+        return ranges;
+    }
+
+    private static int precision(GeoFence fence) {
+        for (int precision = MAX_PRECISION; precision > 0; precision--) {
+            if (cells(fence, precision) != null) {
+                return precision;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return The keys of the cells the bounding box of the fence overlaps, or null if there are more than MAX_CELLS
+     */
+    private static long[] cells(GeoFence fence, int precision) {
+        if (precision == 0) {
+            return new long[] { 0 };
+        }
+        int bits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        long latitudeCount = 1L << (bits/2);
+        long longitudeCount = 1L << ((bits + 1)/2);
+        double latitudeSize = 180.0/latitudeCount;
+        double longitudeSize = 360.0/longitudeCount;
+
+        long firstLatitude = Math.max(0, (long) Math.floor((fence.getSouth() - EPSILON + 90)/latitudeSize));
+        long lastLatitude = Math.min(latitudeCount - 1,
+                (long) Math.floor((fence.getNorth() + EPSILON + 90)/latitudeSize));
+        long firstLongitude = (long) Math.floor((fence.getWest() - EPSILON + 180)/longitudeSize);
+        long lastLongitude = (long) Math.floor((fence.getEast() + EPSILON + 180)/longitudeSize);
+        if (fence.getEast() < fence.getWest()) {
+            // the box crosses the 180th meridian
+            lastLongitude += longitudeCount;
+        }
+        long longitudeSpan = Math.min(longitudeCount, lastLongitude - firstLongitude + 1);
+        long count = (lastLatitude - firstLatitude + 1) * longitudeSpan;
+        if (count > MAX_CELLS) {
+            return null;
+        }
+        long[] cells = new long[(int) count];
+        int i = 0;
+        for (long latitudeIndex = firstLatitude; latitudeIndex <= lastLatitude; latitudeIndex++) {
+            for (long j = 0; j < longitudeSpan; j++) {
+                long longitudeIndex = (((firstLongitude + j) % longitudeCount) + longitudeCount) % longitudeCount;
+                // the geo hash of the center of the cell is the geo hash of the cell
+                double latitude = -90 + (latitudeIndex + 0.5) * latitudeSize;
+                double longitude = -180 + (longitudeIndex + 0.5) * longitudeSize;
+                cells[i++] = (GeoHash.toLong(latitude, longitude, precision) << PRECISION_SHIFT) | precision;
+            }
+        }
+        return cells;
+    }
+}
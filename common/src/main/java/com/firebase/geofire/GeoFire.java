@@ -30,16 +30,33 @@ package com.firebase.geofire;
 
 import static com.firebase.geofire.util.GeoUtils.capRadius;
 
+import com.firebase.geofire.core.DefaultQueryPlanner;
 import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.KeyHistogram;
+import com.firebase.geofire.core.QueryPlanner;
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.NoOpMetrics;
+import com.firebase.geofire.store.FirebaseGeoStore;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.trace.GeoFireTracer;
+import com.firebase.geofire.trace.NoOpTracer;
+import com.firebase.geofire.util.GeoUtils;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.GenericTypeIndicator;
-import com.google.firebase.database.ValueEventListener;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -48,6 +65,15 @@ import java.util.logging.Logger;
 public class GeoFire {
     public static Logger LOGGER = Logger.getLogger("GeoFire");
 
+    // Coordinates are compared after rounding to 7 decimal places (about a centimeter) when suppressing writes
+    private static final double COORDINATE_ROUNDING = 1e7;
+
+    /**
+     * The default number of keys whose last written location is remembered, see
+     * {@link #setLastWrittenLocationLimit(int)}.
+     */
+    public static final int DEFAULT_LAST_WRITTEN_LOCATION_LIMIT = 100000;
+
     /**
      * A listener that can be used to be notified about a successful write or an error on writing.
      */
@@ -63,34 +89,47 @@ public class GeoFire {
     }
 
     /**
-     * A small wrapper class to forward any events to the LocationEventListener.
+     * The locations this instance wrote last, by key, with the most recently written key last. Access has to be
+     * synchronized on the map.
      */
-    private static class LocationValueEventListener implements ValueEventListener {
+    private static final class LastWrittenLocations extends LinkedHashMap<String, GeoLocation> {
+        private static final long serialVersionUID = 1L;
 
-        private final LocationCallback callback;
+        private int limit;
 
-        LocationValueEventListener(LocationCallback callback) {
-            this.callback = callback;
+        LastWrittenLocations(int limit) {
+            super(16, 0.75f, true);
+            this.limit = limit;
         }
 
-        @Override
-        public void onDataChange(DataSnapshot dataSnapshot) {
-            if (dataSnapshot.getValue() == null) {
-                this.callback.onLocationResult(dataSnapshot.getKey(), null);
-            } else {
-                GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-                if (location != null) {
-                    this.callback.onLocationResult(dataSnapshot.getKey(), location);
-                } else {
-                    String message = "GeoFire data has invalid format: " + dataSnapshot.getValue();
-                    this.callback.onCancelled(DatabaseError.fromException(new Throwable(message)));
-                }
+        void setLimit(int limit) {
+            this.limit = limit;
+            Iterator<String> keys = this.keySet().iterator();
+            while (this.size() > limit) {
+                keys.next();
+                keys.remove();
             }
         }
 
         @Override
-        public void onCancelled(DatabaseError databaseError) {
-            this.callback.onCancelled(databaseError);
+        protected boolean removeEldestEntry(Map.Entry<String, GeoLocation> eldest) {
+            return this.size() > this.limit;
+        }
+    }
+
+    private static final class DefaultTracer {
+        static final GeoFireTracer INSTANCE = load();
+
+        private static GeoFireTracer load() {
+            try {
+                Iterator<GeoFireTracer> tracers = ServiceLoader.load(GeoFireTracer.class).iterator();
+                if (tracers.hasNext()) {
+                    return tracers.next();
+                }
+            } catch (ServiceConfigurationError e) {
+                LOGGER.log(Level.WARNING, "Could not load GeoFireTracer", e);
+            }
+            return NoOpTracer.INSTANCE;
         }
     }
 
@@ -115,8 +154,24 @@ public class GeoFire {
         }
     }
 
-    private final DatabaseReference databaseReference;
-    private final EventRaiser eventRaiser;
+    private final GeoStore store;
+    private final EventRaiser threadEventRaiser = new ThreadEventRaiser();
+    private volatile EventRaiser eventRaiser = this.threadEventRaiser;
+    private final Map<Object, String> dispatchLanes = Collections.synchronizedMap(new WeakHashMap<Object, String>());
+    // delivers the events of primitive listeners, created for the first of them
+    private volatile EventRing eventRing;
+    private volatile WriteBehindBuffer writeBehindBuffer;
+    private volatile double minimumMovement;
+    private volatile LastWrittenLocations lastWrittenLocations;
+    private int lastWrittenLocationLimit = DEFAULT_LAST_WRITTEN_LOCATION_LIMIT;
+    private final AtomicLong suppressedWrites = new AtomicLong();
+    private volatile GeoFireMetrics metrics = NoOpMetrics.INSTANCE;
+    private volatile Instruments instruments = Instruments.NONE;
+    private volatile GeoFireTracer tracer = DefaultTracer.INSTANCE;
+    private volatile QueryPlanner queryPlanner = DefaultQueryPlanner.INSTANCE;
+    private volatile KeyHistogram keyHistogram;
+    private final AtomicInteger rangeSubscriptions = new AtomicInteger();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
 
     /**
      * Creates a new GeoFire instance at the given Firebase reference.
@@ -124,19 +179,45 @@ public class GeoFire {
      * @param databaseReference The Firebase reference this GeoFire instance uses
      */
     public GeoFire(DatabaseReference databaseReference) {
-        this.databaseReference = databaseReference;
-        this.eventRaiser = new ThreadEventRaiser();
+        this(new FirebaseGeoStore(databaseReference));
     }
 
     /**
-     * @return The Firebase reference this GeoFire instance uses
+     * Creates a new GeoFire instance that keeps its locations in the given store.
+     *
+     * @param store The store this GeoFire instance uses
+     */
+    public GeoFire(GeoStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return The Firebase reference this GeoFire instance uses or null if it does not use the Firebase Realtime
+     * Database as its store
      */
     public DatabaseReference getDatabaseReference() {
-        return this.databaseReference;
+        if (this.store instanceof FirebaseGeoStore) {
+            return ((FirebaseGeoStore) this.store).getDatabaseReference();
+        }
+        return null;
+    }
+
+    /**
+     * @return The store this GeoFire instance uses
+     */
+    public GeoStore getStore() {
+        return this.store;
     }
 
+    /**
+     * @throws IllegalStateException If this GeoFire instance does not use the Firebase Realtime Database as its store
+     */
     DatabaseReference getDatabaseRefForKey(String key) {
-        return this.databaseReference.child(key);
+        DatabaseReference databaseReference = this.getDatabaseReference();
+        if (databaseReference == null) {
+            throw new IllegalStateException("GeoFire does not use the Firebase Realtime Database as its store!");
+        }
+        return databaseReference.child(key);
     }
 
     /**
@@ -150,7 +231,8 @@ public class GeoFire {
     }
 
     /**
-     * Sets the location for a given key.
+     * Sets the location for a given key. The write is skipped if the key moved less than the minimum movement set with
+     * {@link #setMinimumMovement(double)}.
      *
      * @param key                The key to save the location for
      * @param location           The location of this key
@@ -158,25 +240,112 @@ public class GeoFire {
      *                           error occurred
      */
     public void setLocation(final String key, final GeoLocation location, final CompletionListener completionListener) {
-        if (key == null) {
+        this.setLocation(key, location, this.minimumMovement, completionListener);
+    }
+
+    /**
+     * Sets the location for a given key, unless the key moved less than minimumMovement meters since the location
+     * that was last written for it by this GeoFire instance. Writes that would not change the stored geo hash and
+     * coordinates are skipped as well. For skipped writes the completion listener is called immediately without an
+     * error.
+     *
+     * @throws IllegalArgumentException If minimumMovement is negative
+     *
+     * @param key                The key to save the location for
+     * @param location           The location of this key
+     * @param minimumMovement    The distance in meters the key has to move for the location to be written
+     * @param completionListener A listener that is called once the location was successfully saved on the server or an
+     *                           error occurred
+     */
+    public void setLocation(final String key, final GeoLocation location, double minimumMovement,
+                            final CompletionListener completionListener) {
+        if (key == null || location == null) {
             throw new NullPointerException();
         }
-        DatabaseReference keyRef = this.getDatabaseRefForKey(key);
-        GeoHash geoHash = new GeoHash(location);
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("g", geoHash.getGeoHashString());
-        updates.put("l", Arrays.asList(location.latitude, location.longitude));
-        if (completionListener != null) {
-            keyRef.setValue(updates, geoHash.getGeoHashString(), new DatabaseReference.CompletionListener() {
-                @Override
-                public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
-                    completionListener.onComplete(key, databaseError);
+        if (minimumMovement < 0) {
+            throw new IllegalArgumentException("Minimum movement must not be negative!");
+        }
+        final LastWrittenLocations lastWritten = (minimumMovement > 0)
+                ? this.getLastWrittenLocations() : this.lastWrittenLocations;
+        if (lastWritten == null) {
+            this.writeLocation(key, location, completionListener);
+            return;
+        }
+        boolean redundant;
+        synchronized (lastWritten) {
+            GeoLocation previous = lastWritten.get(key);
+            redundant = previous != null && isRedundantWrite(previous, location, minimumMovement);
+            if (!redundant) {
+                lastWritten.put(key, location);
+            }
+        }
+        if (redundant) {
+            this.suppressedWrites.incrementAndGet();
+            if (completionListener != null) {
+                completionListener.onComplete(key, null);
+            }
+            return;
+        }
+        this.writeLocation(key, location, new CompletionListener() {
+            @Override
+            public void onComplete(String key, DatabaseError error) {
+                if (error != null) {
+                    // The server may not hold this location, so the next write must not be suppressed
+                    synchronized (lastWritten) {
+                        if (location.equals(lastWritten.get(key))) {
+                            lastWritten.remove(key);
+                        }
+                    }
                 }
-            });
-        } else {
-            Object priority = geoHash.getGeoHashString();
-            keyRef.setValueAsync(updates, priority);
+                if (completionListener != null) {
+                    completionListener.onComplete(key, error);
+                }
+            }
+        });
+    }
+
+    private static boolean isRedundantWrite(GeoLocation previous, GeoLocation location, double minimumMovement) {
+        if (minimumMovement > 0 && GeoUtils.distance(previous, location) < minimumMovement) {
+            return true;
+        }
+        return Math.round(previous.latitude * COORDINATE_ROUNDING) == Math.round(location.latitude * COORDINATE_ROUNDING)
+                && Math.round(previous.longitude * COORDINATE_ROUNDING) == Math.round(location.longitude * COORDINATE_ROUNDING)
+                && new GeoHash(previous).equals(new GeoHash(location));
+    }
+
+    private synchronized LastWrittenLocations getLastWrittenLocations() {
+        if (this.lastWrittenLocations == null) {
+            this.lastWrittenLocations = new LastWrittenLocations(this.lastWrittenLocationLimit);
+        }
+        return this.lastWrittenLocations;
+    }
+
+    private void writeLocation(final String key, final GeoLocation location, final CompletionListener completionListener) {
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null && buffer.setLocation(key, location, completionListener)) {
+            return;
+        }
+        this.store.setLocation(key, location, wrapCompletionListener(key, completionListener));
+    }
+
+    /**
+     * Writes the locations of several keys as a single update. A null location removes the key.
+     */
+    void writeLocations(Map<String, GeoLocation> locations, GeoStore.CompletionListener completionListener) {
+        this.store.setLocations(locations, completionListener);
+    }
+
+    private static GeoStore.CompletionListener wrapCompletionListener(final String key,
+                                                                      final CompletionListener completionListener) {
+        if (completionListener == null) {
+            return null;
         }
+        return new GeoStore.CompletionListener() {
+            @Override
+            public void onComplete(DatabaseError error) {
+                completionListener.onComplete(key, error);
+            }
+        };
     }
 
     /**
@@ -199,19 +368,349 @@ public class GeoFire {
         if (key == null) {
             throw new NullPointerException();
         }
-        DatabaseReference keyRef = this.getDatabaseRefForKey(key);
-        if (completionListener != null) {
-            keyRef.setValue(null, new DatabaseReference.CompletionListener() {
-                @Override
-                public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
-                    completionListener.onComplete(key, databaseError);
-                }
-            });
+        LastWrittenLocations lastWritten = this.lastWrittenLocations;
+        if (lastWritten != null) {
+            synchronized (lastWritten) {
+                lastWritten.remove(key);
+            }
+        }
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null && buffer.removeLocation(key, completionListener)) {
+            return;
+        }
+        this.store.removeLocation(key, wrapCompletionListener(key, completionListener));
+    }
+
+    /**
+     * Sets the distance in meters a key has to move before setLocation writes its new location. A value of zero, the
+     * default, writes every location. Once a minimum movement was set, this GeoFire instance remembers the last
+     * location it wrote for every key, up to {@link #setLastWrittenLocationLimit(int)} keys, and also skips writes
+     * that would not change the stored location.
+     *
+     * @throws IllegalArgumentException If minimumMovement is negative
+     *
+     * @param minimumMovement The minimum movement in meters
+     */
+    public void setMinimumMovement(double minimumMovement) {
+        if (minimumMovement < 0) {
+            throw new IllegalArgumentException("Minimum movement must not be negative!");
+        }
+        if (minimumMovement > 0) {
+            this.getLastWrittenLocations();
+        }
+        this.minimumMovement = minimumMovement;
+    }
+
+    /**
+     * @return The distance in meters a key has to move before setLocation writes its new location
+     */
+    public double getMinimumMovement() {
+        return this.minimumMovement;
+    }
+
+    /**
+     * Sets the number of keys whose last written location this GeoFire instance remembers to skip writes of keys
+     * that did not move far enough. Beyond the limit the keys that were written least recently are forgotten, and
+     * their next location is written regardless of the distance they moved. The default is
+     * {@link #DEFAULT_LAST_WRITTEN_LOCATION_LIMIT}.
+     *
+     * @throws IllegalArgumentException If limit is not positive
+     *
+     * @param limit The maximal number of remembered locations
+     */
+    public synchronized void setLastWrittenLocationLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Last written location limit must be larger than zero!");
+        }
+        this.lastWrittenLocationLimit = limit;
+        LastWrittenLocations lastWritten = this.lastWrittenLocations;
+        if (lastWritten != null) {
+            synchronized (lastWritten) {
+                lastWritten.setLimit(limit);
+            }
+        }
+    }
+
+    /**
+     * @return The number of keys whose last written location this GeoFire instance remembers at most
+     */
+    public synchronized int getLastWrittenLocationLimit() {
+        return this.lastWrittenLocationLimit;
+    }
+
+    /**
+     * Forgets the last written location of every key, so the next location of every key is written.
+     */
+    public void clearLastWrittenLocations() {
+        LastWrittenLocations lastWritten = this.lastWrittenLocations;
+        if (lastWritten != null) {
+            synchronized (lastWritten) {
+                lastWritten.clear();
+            }
+        }
+    }
+
+    /**
+     * @return The number of setLocation calls that were skipped because the key did not move far enough
+     */
+    public long getSuppressedWriteCount() {
+        return this.suppressedWrites.get();
+    }
+
+    /**
+     * Enables write-behind for this GeoFire. Subsequent calls to setLocation and removeLocation only record the newest
+     * location for each key; pending updates are written as one batch every flushIntervalMillis, or as soon as
+     * flushThreshold keys are pending, whichever happens first. Completion listeners are called once the batch that
+     * contains the update was saved on the server.
+     *
+     * @throws IllegalStateException If write-behind is already enabled
+     *
+     * @param flushIntervalMillis The maximal time in milliseconds an update stays in the buffer
+     * @param flushThreshold      The number of pending keys that triggers an immediate flush
+     * @param maxInFlightBatches  The maximal number of batches that are sent to the server but not yet completed. While
+     *                            this limit is reached updates keep being coalesced in the buffer.
+     * @return The buffer, which can be used to flush manually and to read the write counters
+     */
+    public synchronized WriteBehindBuffer enableWriteBehind(long flushIntervalMillis, int flushThreshold,
+                                                            int maxInFlightBatches) {
+        if (this.writeBehindBuffer != null) {
+            throw new IllegalStateException("Write-behind is already enabled for this GeoFire!");
+        }
+        this.writeBehindBuffer = new WriteBehindBuffer(this, flushIntervalMillis, flushThreshold, maxInFlightBatches);
+        return this.writeBehindBuffer;
+    }
+
+    /**
+     * Flushes all pending updates and disables write-behind for this GeoFire. Does nothing if write-behind is not
+     * enabled.
+     */
+    public synchronized void disableWriteBehind() {
+        WriteBehindBuffer buffer = this.writeBehindBuffer;
+        if (buffer != null) {
+            this.writeBehindBuffer = null;
+            buffer.close();
+        }
+    }
+
+    /**
+     * @return The write-behind buffer of this GeoFire or null if write-behind is not enabled
+     */
+    public WriteBehindBuffer getWriteBehindBuffer() {
+        return this.writeBehindBuffer;
+    }
+
+    /**
+     * Sets the metrics this GeoFire instance and its queries report to. By default nothing is reported.
+     *
+     * @throws NullPointerException If metrics is null
+     *
+     * @param metrics The metrics, e.g. a {@link com.firebase.geofire.metrics.SimpleMetrics}
+     */
+    public synchronized void setMetrics(GeoFireMetrics metrics) {
+        if (metrics == null) {
+            throw new NullPointerException();
+        }
+        metrics.gauge(GeoFireMetrics.RANGE_SUBSCRIPTIONS, new GeoFireMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return GeoFire.this.rangeSubscriptions.get();
+            }
+        });
+        metrics.gauge(GeoFireMetrics.PENDING_EVENTS, new GeoFireMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                EventRing eventRing = GeoFire.this.eventRing;
+                return GeoFire.this.pendingEvents.get() + (eventRing != null ? eventRing.size() : 0);
+            }
+        });
+        metrics.gauge(GeoFireMetrics.EVENT_RING_DEPTH, new GeoFireMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                EventRing eventRing = GeoFire.this.eventRing;
+                return eventRing != null ? eventRing.size() : 0;
+            }
+        });
+        this.instruments = new Instruments(metrics);
+        this.metrics = metrics;
+        if (this.eventRaiser instanceof LaneEventRaiser) {
+            ((LaneEventRaiser) this.eventRaiser).setMetrics(this.instruments.enabled ? metrics : null);
+        }
+    }
+
+    /**
+     * @return The metrics this GeoFire instance reports to
+     */
+    public GeoFireMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Delivers the events of every listener in its own lane on the given executor. The events of a lane are delivered
+     * one at a time in the order they were raised, so a listener that blocks holds back its own events but not the
+     * events of other listeners. Events of different lanes are delivered in any order. By default all events are
+     * delivered in order on a single thread. The executor should be set before listeners are added.
+     *
+     * If metrics are set, every lane reports the events it has yet to deliver to the gauge
+     * {@link GeoFireMetrics#LANE_PENDING_EVENTS} and the time until they were delivered to the histogram
+     * {@link GeoFireMetrics#LANE_EVENT_LATENCY_NANOS}, followed by the name of the lane. Listeners without a lane set
+     * with {@link #setDispatchLane(Object, String)} report under the class name of the listener.
+     *
+     * @param executor The executor that runs the lanes, e.g. a thread pool, or null to deliver all events on a single
+     *                 thread
+     */
+    public void setDispatchExecutor(Executor executor) {
+        this.setDispatchExecutor(executor, 1);
+    }
+
+    /**
+     * Delivers the events of every listener in its own lane on the given executor like
+     * {@link #setDispatchExecutor(Executor)}, and splits every lane into partitions by the key of its events. The
+     * events for a key are delivered in the order they were raised, but events for different keys are delivered
+     * concurrently, so listeners have to be thread safe. Ready, error and progress events are delivered once all
+     * events raised before them were delivered, and the events raised after them wait until they were delivered.
+     *
+     * @throws IllegalArgumentException If keyPartitions is smaller than one
+     *
+     * @param executor      The executor that runs the lanes, e.g. a thread pool, or null to deliver all events on a
+     *                      single thread
+     * @param keyPartitions The number of partitions of every lane, e.g. the number of threads of the executor
+     */
+    public synchronized void setDispatchExecutor(Executor executor, int keyPartitions) {
+        if (keyPartitions < 1) {
+            throw new IllegalArgumentException("Number of key partitions must be at least one!");
+        }
+        if (executor == null) {
+            this.eventRaiser = this.threadEventRaiser;
+        } else {
+            this.eventRaiser = new LaneEventRaiser(executor, keyPartitions, this.dispatchLanes,
+                    this.instruments.enabled ? this.metrics : null);
+        }
+    }
+
+    /**
+     * @return The executor that runs the dispatch lanes or null if all events are delivered on a single thread
+     */
+    public Executor getDispatchExecutor() {
+        EventRaiser eventRaiser = this.eventRaiser;
+        return eventRaiser instanceof LaneEventRaiser ? ((LaneEventRaiser) eventRaiser).getExecutor() : null;
+    }
+
+    /**
+     * @return The number of partitions of every dispatch lane, which is one if events aren't partitioned by key
+     */
+    public int getDispatchKeyPartitions() {
+        EventRaiser eventRaiser = this.eventRaiser;
+        return eventRaiser instanceof LaneEventRaiser ? ((LaneEventRaiser) eventRaiser).getKeyPartitions() : 1;
+    }
+
+    /**
+     * Puts a listener into a named dispatch lane. Listeners in the same lane receive their events one at a time and in
+     * the order they were raised, as if they were a single listener. Lanes are only used after an executor was set
+     * with {@link #setDispatchExecutor(Executor)}.
+     *
+     * @throws NullPointerException If listener is null
+     *
+     * @param listener A listener of a query, a fence engine or a one-shot query
+     * @param lane     The name of the lane or null to give the listener a lane of its own
+     */
+    public void setDispatchLane(Object listener, String lane) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        if (lane == null) {
+            this.dispatchLanes.remove(listener);
         } else {
-            keyRef.removeValueAsync();
+            this.dispatchLanes.put(listener, lane);
         }
     }
 
+    /**
+     * Sets the tracer for the queries of this GeoFire instance.
+     *
+     * @throws NullPointerException If tracer is null
+     *
+     * @param tracer The tracer or {@link NoOpTracer#INSTANCE} to disable tracing
+     */
+    public void setTracer(GeoFireTracer tracer) {
+        if (tracer == null) {
+            throw new NullPointerException();
+        }
+        this.tracer = tracer;
+    }
+
+    /**
+     * @return The tracer for the queries of this GeoFire instance
+     */
+    public GeoFireTracer getTracer() {
+        return this.tracer;
+    }
+
+    /**
+     * Sets the planner that chooses the geo hash ranges of queries. Queries use the new planner the next time
+     * their center or radius changes.
+     *
+     * @throws NullPointerException If queryPlanner is null
+     *
+     * @param queryPlanner The planner or {@link DefaultQueryPlanner#INSTANCE}
+     */
+    public void setQueryPlanner(QueryPlanner queryPlanner) {
+        if (queryPlanner == null) {
+            throw new NullPointerException();
+        }
+        this.queryPlanner = queryPlanner;
+    }
+
+    /**
+     * @return The planner that chooses the geo hash ranges of queries
+     */
+    public QueryPlanner getQueryPlanner() {
+        return this.queryPlanner;
+    }
+
+    /**
+     * Sets a histogram that learns the number of keys per geo hash prefix from the queries of this GeoFire instance.
+     * Whenever a query is ready, the counts within its ranges are replaced by the keys it downloaded. Queries whose
+     * {@link OutOfRadiusPolicy} evicts keys outside of the radius are not learned from. A {@link
+     * com.firebase.geofire.core.CostModelPlanner} with the histogram as its density plans queries by it.
+     *
+     * @param keyHistogram The histogram or null to stop learning
+     */
+    public void setKeyHistogram(KeyHistogram keyHistogram) {
+        this.keyHistogram = keyHistogram;
+    }
+
+    /**
+     * @return The histogram the queries of this GeoFire instance learn, or null
+     */
+    public KeyHistogram getKeyHistogram() {
+        return this.keyHistogram;
+    }
+
+    Instruments getInstruments() {
+        return this.instruments;
+    }
+
+    EventRing getEventRing() {
+        EventRing eventRing = this.eventRing;
+        if (eventRing == null) {
+            synchronized (this) {
+                if (this.eventRing == null) {
+                    this.eventRing = new EventRing(this);
+                }
+                eventRing = this.eventRing;
+            }
+        }
+        return eventRing;
+    }
+
+    void rangeSubscribed() {
+        this.rangeSubscriptions.incrementAndGet();
+    }
+
+    void rangeUnsubscribed() {
+        this.rangeSubscriptions.decrementAndGet();
+    }
+
     /**
      * Gets the current location for a key and calls the callback with the current value.
      *
@@ -219,9 +718,7 @@ public class GeoFire {
      * @param callback The callback that is called once the location is retrieved
      */
     public void getLocation(String key, LocationCallback callback) {
-        DatabaseReference keyRef = this.getDatabaseRefForKey(key);
-        LocationValueEventListener valueListener = new LocationValueEventListener(callback);
-        keyRef.addListenerForSingleValueEvent(valueListener);
+        this.store.getLocation(key, callback);
     }
 
     /**
@@ -236,7 +733,52 @@ public class GeoFire {
         return new GeoQuery(this, center, capRadius(radius));
     }
 
-    public void raiseEvent(Runnable r) {
-        this.eventRaiser.raiseEvent(r);
+    /**
+     * Reads the keys within the given radius of a location once. Unlike a GeoQuery, no listeners stay attached: the
+     * ranges are read with single reads if the store supports them, or subscribed until they are loaded. The
+     * callback is called once with all keys found, or with the first error.
+     *
+     * @param center   The center of the query
+     * @param radius   The radius of the query, in kilometers. The maximum radius that is
+     *                 supported is about 8587km. If a radius bigger than this is passed we'll cap it.
+     * @param callback The callback that receives the keys, nearest first
+     */
+    public void queryOnce(GeoLocation center, double radius, GeoQueryResultCallback callback) {
+        if (center == null || callback == null) {
+            throw new NullPointerException();
+        }
+        new OneShotQuery(this, center, capRadius(radius) * 1000, callback).start();
+    }
+
+    /**
+     * Returns a new GeoFenceEngine, which watches keys entering and exiting many fences with one set of
+     * subscriptions.
+     *
+     * @return The new GeoFenceEngine object
+     */
+    public GeoFenceEngine createGeoFenceEngine() {
+        return new GeoFenceEngine(this);
+    }
+
+    public void raiseEvent(final Runnable r) {
+        this.raiseEvent(null, null, r);
+    }
+
+    void raiseEvent(Object listener, String key, final Runnable r) {
+        if (!this.instruments.enabled) {
+            this.eventRaiser.raiseEvent(listener, key, r);
+            return;
+        }
+        this.pendingEvents.incrementAndGet();
+        this.eventRaiser.raiseEvent(listener, key, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                } finally {
+                    GeoFire.this.pendingEvents.decrementAndGet();
+                }
+            }
+        });
     }
 }
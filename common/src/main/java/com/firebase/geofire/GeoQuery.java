@@ -29,83 +29,297 @@
 package com.firebase.geofire;
 
 import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCoverage;
 import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.GeoHashRanges;
+import com.firebase.geofire.core.KeyHistogram;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.trace.GeoFireTracer;
 import com.firebase.geofire.util.GeoUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.Query;
-import com.google.firebase.database.ValueEventListener;
 
 import static com.firebase.geofire.util.GeoUtils.capRadius;
 
 /**
  * A GeoQuery object can be used for geo queries in a given circle. The GeoQuery class is thread safe.
+ *
+ * As long as only GeoQueryEventListeners are attached, a query keeps just the key and location of every key and
+ * drops the data snapshots right away. Once a GeoQueryDataEventListener is added, the snapshots of the keys in the
+ * query are loaded again before the listener receives its first events.
+ *
+ * What is kept for keys inside the subscribed geohash ranges but outside of the radius is controlled by an
+ * {@link OutOfRadiusPolicy}.
  */
 public class GeoQuery {
     private static final int KILOMETER_TO_METER = 1000;
+    private static final int GEO_HASH_PRECISION = GeoHash.DEFAULT_PRECISION;
+    // a limited query shrinks its search radius to this multiple of the distance of its farthest key
+    private static final double SEARCH_RADIUS_SLACK = 1.5;
+    private static final double MIN_SEARCH_RADIUS = 10;
+    // far larger than the error of a distance kernel, keys closer to the radius are tested with the exact distance
+    private static final double KERNEL_RELATIVE_TOLERANCE = 1e-9;
+    private static final double KERNEL_ABSOLUTE_TOLERANCE = 1e-6;
+    private static final GeoQueryDataEventListener[] NO_LISTENERS = new GeoQueryDataEventListener[0];
+
+    private class RangeListener implements GeoStore.RangeListener {
+        private final GeoHashQuery query;
+        private GeoStore.Subscription subscription;
+        // keys whose entered events wait until the range is loaded, to fire them nearest first
+        private final List<String> deferredKeys = new ArrayList<>();
+
+        RangeListener(GeoHashQuery query) {
+            this.query = query;
+        }
+
+        private boolean isActive() {
+            // events of a range that was already cancelled are dropped
+            return GeoQuery.this.rangeListeners.get(this.query) == this;
+        }
 
-    private static class LocationInfo {
-        final GeoLocation location;
-        final boolean inGeoQuery;
-        final GeoHash geoHash;
-        final DataSnapshot dataSnapshot;
+        private RangeListener loadingRange() {
+            boolean loading = GeoQuery.this.distanceOrder != null
+                    && GeoQuery.this.outstandingQueries.contains(this.query);
+            return loading ? this : null;
+        }
 
-        public LocationInfo(GeoLocation location, boolean inGeoQuery, DataSnapshot dataSnapshot) {
-            this.location = location;
-            this.inGeoQuery = inGeoQuery;
-            this.geoHash = new GeoHash(location);
-            this.dataSnapshot = dataSnapshot;
+        @Override
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoQuery.this) {
+                if (this.isActive()) {
+                    GeoQuery.this.rangeEntryUpdated(key, latitude, longitude, dataSnapshot, this.loadingRange());
+                }
+            }
+        }
+
+        @Override
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoQuery.this) {
+                if (this.isActive()) {
+                    GeoQuery.this.rangeEntryUpdated(key, latitude, longitude, dataSnapshot, this.loadingRange());
+                }
+            }
+        }
+
+        @Override
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            synchronized (GeoQuery.this) {
+                if (this.isActive()) {
+                    GeoQuery.this.childRemoved(key);
+                }
+            }
+        }
+
+        @Override
+        public void onRangeLoaded() {
+            synchronized (GeoQuery.this) {
+                if (this.isActive()) {
+                    GeoQuery.this.outstandingQueries.remove(this.query);
+                    GeoQuery.this.fireDeferredEntered(this);
+                    GeoQuery.this.fireRangeLoaded(this.query);
+                    GeoQuery.this.checkAndFireReady();
+                }
+            }
+        }
+
+        @Override
+        public void onRangeError(final DatabaseError databaseError) {
+            synchronized (GeoQuery.this) {
+                if (!this.isActive()) {
+                    return;
+                }
+                // the range may never load, the keys it has so far are not held back
+                GeoQuery.this.fireDeferredEntered(this);
+                final Instruments instruments = GeoQuery.this.geoFire.getInstruments();
+                for (final GeoQueryDataEventListener listener: GeoQuery.this.listenerArray) {
+                    GeoQuery.this.raiseEvent(listener, null, new Runnable() {
+                        @Override
+                        public void run() {
+                            instruments.errorEvents.increment();
+                            listener.onGeoQueryError(databaseError);
+                        }
+                    });
+                }
+            }
         }
     }
 
-    private final ChildEventListener childEventLister = new ChildEventListener() {
+    /**
+     * Loads the data snapshots of a range once, for keys whose snapshots were dropped while no data listener was
+     * attached.
+     */
+    private class SnapshotLoader implements GeoStore.RangeListener {
+        private GeoStore.Subscription subscription;
+        private boolean done;
+
         @Override
-        public void onChildAdded(DataSnapshot dataSnapshot, String s) {
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childAdded(dataSnapshot);
+                this.fillDataSnapshot(key, dataSnapshot);
             }
         }
 
         @Override
-        public void onChildChanged(DataSnapshot dataSnapshot, String s) {
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childChanged(dataSnapshot);
+                this.fillDataSnapshot(key, dataSnapshot);
             }
         }
 
         @Override
-        public void onChildRemoved(DataSnapshot dataSnapshot) {
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            // handled by the range listener
+        }
+
+        @Override
+        public void onRangeLoaded() {
             synchronized (GeoQuery.this) {
-                GeoQuery.this.childRemoved(dataSnapshot);
+                this.finish();
             }
         }
 
         @Override
-        public synchronized void onChildMoved(DataSnapshot dataSnapshot, String s) {
-            // ignore, this should be handled by onChildChanged
+        public void onRangeError(DatabaseError error) {
+            // the range listener reports the error, the pending listeners get whatever was loaded
+            synchronized (GeoQuery.this) {
+                this.finish();
+            }
+        }
+
+        private void fillDataSnapshot(String key, DataSnapshot dataSnapshot) {
+            // snapshots delivered by the range listeners are never older, so only missing ones are filled in
+            int id = GeoQuery.this.locations.find(key);
+            if (!this.done && dataSnapshot != null && id != LocationTable.NOT_FOUND
+                    && GeoQuery.this.locations.dataSnapshot(id) == null
+                    && (GeoQuery.this.locations.isInQuery(id) || !GeoQuery.this.outOfRadiusPolicy.dropsDataSnapshots())) {
+                GeoQuery.this.locations.setDataSnapshot(id, dataSnapshot);
+            }
+        }
+
+        private void finish() {
+            if (this.done) {
+                return;
+            }
+            this.done = true;
+            if (this.subscription != null) {
+                this.subscription.cancel();
+            }
+            GeoQuery.this.snapshotLoaders.remove(this);
+            if (GeoQuery.this.snapshotLoaders.isEmpty()) {
+                GeoQuery.this.addPendingListeners();
+            }
+        }
+    }
+
+    /**
+     * Reads a range that is still subscribed once more, to find the keys that were evicted by the out of radius
+     * policy after the center or radius changed.
+     */
+    private class RangeRescan implements GeoStore.RangeListener {
+        private GeoStore.Subscription subscription;
+        private boolean done;
+
+        @Override
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoQuery.this) {
+                this.addMissingKey(key, latitude, longitude, dataSnapshot);
+            }
+        }
+
+        @Override
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            synchronized (GeoQuery.this) {
+                this.addMissingKey(key, latitude, longitude, dataSnapshot);
+            }
+        }
+
+        @Override
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            // handled by the range listener
+        }
+
+        @Override
+        public void onRangeLoaded() {
+            synchronized (GeoQuery.this) {
+                this.finish();
+            }
         }
 
         @Override
-        public synchronized void onCancelled(DatabaseError databaseError) {
-            // ignore, our API does not support onCancelled
+        public void onRangeError(DatabaseError error) {
+            // the range listener reports the error
+            synchronized (GeoQuery.this) {
+                this.finish();
+            }
         }
-    };
+
+        private void addMissingKey(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            // keys that are still known are kept up to date by the range listeners
+            if (!this.done && GeoQuery.this.locations.find(key) == LocationTable.NOT_FOUND) {
+                GeoQuery.this.rangeEntryUpdated(key, latitude, longitude, dataSnapshot, null);
+            }
+        }
+
+        private void finish() {
+            if (this.done) {
+                return;
+            }
+            this.done = true;
+            if (this.subscription != null) {
+                this.subscription.cancel();
+            }
+            GeoQuery.this.rangeRescans.remove(this);
+            GeoQuery.this.checkAndFireReady();
+        }
+    }
 
     private final GeoFire geoFire;
     private final Set<GeoQueryDataEventListener> eventListeners = new HashSet<>();
-    private final Map<GeoHashQuery, Query> firebaseQueries = new HashMap<>();
+    // the event listeners as an array that is iterated without creating an iterator for every event
+    private GeoQueryDataEventListener[] listenerArray = NO_LISTENERS;
+    private int primitiveListenerCount;
+    // data listeners that wait for the snapshots of the keys already in the query
+    private final Set<GeoQueryDataEventListener> pendingListeners = new HashSet<>();
+    private final Set<GeoQueryProgressListener> progressListeners = new HashSet<>();
+    private final List<SnapshotLoader> snapshotLoaders = new ArrayList<>();
+    private int dataListenerCount;
+    private final Map<GeoHashQuery, RangeListener> rangeListeners = new HashMap<>();
     private final Set<GeoHashQuery> outstandingQueries = new HashSet<>();
-    private final Map<String, LocationInfo> locationInfos = new HashMap<>();
+    private final LocationTable locations = new LocationTable();
+    private OutOfRadiusPolicy outOfRadiusPolicy = OutOfRadiusPolicy.RETAIN;
+    // true if keys in the subscribed ranges were evicted since the ranges were last read
+    private boolean evictedKeys;
+    private final List<RangeRescan> rangeRescans = new ArrayList<>();
+    private boolean settingUpQueries;
+    // when the current setupQueries started, if metrics are enabled and the query is not ready yet
+    private long readyStartNanos;
+    private GeoFireTracer.Span readySpan;
+    // events raised so far, to measure the events raised by one update
+    private int raisedEvents;
     private GeoLocation center;
     private double radius;
     private Set<GeoHashQuery> queries;
+    // the geo hash queries as sorted ranges of packed geo hashes, for containment checks
+    private GeoHashRanges queryRanges;
+    // the keys in the query by their distance from the center, if the query is distance ordered
+    private DistanceOrder distanceOrder;
+    // the maximum number of keys the listeners know, 0 if not limited
+    private int resultLimit;
+    // the radius the ranges are planned for, a limited query plans for less than its radius once it found its keys
+    private double searchRadius;
+    private boolean adjustingSearchRadius;
+    // true if the listeners were told that the query is ready for the current center and radius
+    private boolean readyFired;
 
     /**
      * Creates a new GeoQuery object centered at the given location and with the given radius.
@@ -120,204 +334,815 @@ public class GeoQuery {
         this.radius = radius * KILOMETER_TO_METER; // Convert from kilometers to meters.
     }
 
-    private boolean locationIsInQuery(GeoLocation location) {
-        return GeoUtils.distance(location, center) <= this.radius;
+    private boolean locationIsInQuery(double latitude, double longitude) {
+        return GeoUtils.distance(latitude, longitude, center.latitude, center.longitude) <= this.radius;
+    }
+
+    private void rangeEntryUpdated(String key, double latitude, double longitude, DataSnapshot dataSnapshot,
+                                   RangeListener loadingRange) {
+        GeoFireTracer.Span span = this.geoFire.getTracer().startDispatch(key);
+        int raisedEvents = this.raisedEvents;
+        Instruments instruments = this.geoFire.getInstruments();
+        if (instruments.enabled) {
+            instruments.keysReceived.increment();
+            if (this.locationIsInQuery(latitude, longitude)) {
+                instruments.keysInRadius.increment();
+            }
+        }
+        this.updateLocationInfo(key, latitude, longitude, dataSnapshot, loadingRange);
+        this.evictOutOfRadiusKeys();
+        span.end(this.raisedEvents - raisedEvents);
+        this.adjustSearchRadius();
+    }
+
+    private void raiseEvent(Object listener, String key, Runnable r) {
+        this.raisedEvents++;
+        if (listener instanceof PrimitiveListenerBridge) {
+            // in order with the key events of the listener
+            this.geoFire.getEventRing().publish(r);
+        } else {
+            this.geoFire.raiseEvent(listener, key, r);
+        }
+    }
+
+    /**
+     * Publishes a key event of a primitive listener to the event ring, which doesn't create any objects.
+     *
+     * @return False if the listener isn't a primitive listener, its event has to be raised
+     */
+    private boolean publishKeyEvent(GeoQueryDataEventListener listener, String key, double latitude, double longitude,
+                                    int type) {
+        if (!(listener instanceof PrimitiveListenerBridge)) {
+            return false;
+        }
+        this.raisedEvents++;
+        this.geoFire.getEventRing().publish(((PrimitiveListenerBridge) listener).getListener(), key, latitude,
+                longitude, type);
+        return true;
+    }
+
+    /**
+     * @return Whether a listener other than a primitive listener needs a GeoLocation for its events
+     */
+    private boolean needsGeoLocations() {
+        return this.primitiveListenerCount < this.listenerArray.length;
+    }
+
+    private void eventListenersChanged() {
+        int primitiveListenerCount = this.primitiveListenerCount;
+        this.listenerArray = this.eventListeners.toArray(NO_LISTENERS);
+        this.primitiveListenerCount = 0;
+        for (GeoQueryDataEventListener listener: this.listenerArray) {
+            if (listener instanceof PrimitiveListenerBridge) {
+                this.primitiveListenerCount++;
+            }
+        }
+        if (this.primitiveListenerCount != primitiveListenerCount) {
+            // the thread of the event ring stops once no primitive listeners are left
+            this.geoFire.getEventRing().primitiveListenersChanged(this.primitiveListenerCount - primitiveListenerCount);
+        }
+    }
+
+    private static boolean isDataListener(GeoQueryDataEventListener listener) {
+        return !(listener instanceof EventListenerBridge) && !(listener instanceof PrimitiveListenerBridge);
     }
 
-    private void updateLocationInfo(final DataSnapshot dataSnapshot, final GeoLocation location) {
-        String key = dataSnapshot.getKey();
-        LocationInfo oldInfo = this.locationInfos.get(key);
-        boolean isNew = oldInfo == null;
-        final boolean changedLocation = oldInfo != null && !oldInfo.location.equals(location);
-        boolean wasInQuery = oldInfo != null && oldInfo.inGeoQuery;
+    private void updateLocationInfo(final String key, double latitude, double longitude,
+                                    final DataSnapshot dataSnapshot, RangeListener loadingRange) {
+        double distance = GeoUtils.distance(latitude, longitude, center.latitude, center.longitude);
+        this.updateLocationInfo(key, latitude, longitude, dataSnapshot, distance <= this.radius, distance,
+                loadingRange);
+    }
 
-        boolean isInQuery = this.locationIsInQuery(location);
-        if ((isNew || !wasInQuery) && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
+    /**
+     * @param loadingRange The range that is still loading the key, if its entered event is deferred until then
+     */
+    private void updateLocationInfo(final String key, double latitude, double longitude,
+                                    final DataSnapshot dataSnapshot, boolean isInQuery, final double distance,
+                                    RangeListener loadingRange) {
+        final Instruments instruments = this.geoFire.getInstruments();
+        int id = this.locations.find(key);
+        boolean isNew = id == LocationTable.NOT_FOUND;
+        final boolean changedLocation = !isNew && (Double.compare(this.locations.latitude(id), latitude) != 0
+                || Double.compare(this.locations.longitude(id), longitude) != 0);
+        boolean wasDeferred = !isNew && this.locations.isDeferred(id);
+        boolean wasCandidate = !isNew && this.locations.isInQuery(id) && !wasDeferred;
+        // the listeners don't know keys whose entered event is deferred yet or that are beyond the result limit
+        boolean wasInQuery = wasCandidate && !this.locations.isOutranked(id);
+        // a deferred key waits for the range that deferred it, unless it leaves the query
+        boolean defer = isInQuery && !wasCandidate && (wasDeferred || loadingRange != null);
+
+        if (defer && !wasDeferred) {
+            loadingRange.deferredKeys.add(key);
+        }
+        if (isNew) {
+            id = this.locations.add(key);
+        }
+        boolean keepsDataSnapshot = this.retainsDataSnapshots()
+                && (isInQuery || !this.outOfRadiusPolicy.dropsDataSnapshots());
+        this.locations.set(id, latitude, longitude, GeoHash.toLong(latitude, longitude, GEO_HASH_PRECISION),
+                isInQuery, keepsDataSnapshot ? dataSnapshot : null);
+        this.locations.setDeferred(id, defer);
+        if (this.distanceOrder != null) {
+            if (isInQuery && !defer) {
+                this.distanceOrder.set(id, distance);
+            } else {
+                this.distanceOrder.remove(id);
+            }
+        }
+        boolean isKnown = isInQuery && !defer && (this.distanceOrder == null || this.distanceOrder.isRanked(id));
+        this.locations.setOutranked(id, isInQuery && !defer && !isKnown);
+
+        // keys pushed beyond the result limit exit before the key that pushed them enters
+        this.fireRankExits();
+        if (!wasInQuery && isKnown) {
+            final GeoLocation location = this.needsGeoLocations() ? new GeoLocation(latitude, longitude) : null;
+            for (final GeoQueryDataEventListener listener: this.listenerArray) {
+                if (this.publishKeyEvent(listener, key, latitude, longitude,
+                        GeoQueryPrimitiveEventListener.KEY_ENTERED)) {
+                    continue;
+                }
+                this.raiseEvent(listener, key, new Runnable() {
                     @Override
                     public void run() {
-                        listener.onDataEntered(dataSnapshot, location);
+                        fireDataEntered(instruments, listener, key, dataSnapshot, location, distance);
                     }
                 });
             }
-        } else if (!isNew && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
+        } else if (wasInQuery && isKnown) {
+            final GeoLocation location = this.needsGeoLocations() ? new GeoLocation(latitude, longitude) : null;
+            for (final GeoQueryDataEventListener listener: this.listenerArray) {
+                if (listener instanceof PrimitiveListenerBridge) {
+                    if (changedLocation) {
+                        this.publishKeyEvent(listener, key, latitude, longitude,
+                                GeoQueryPrimitiveEventListener.KEY_MOVED);
+                    }
+                    continue;
+                }
+                this.raiseEvent(listener, key, new Runnable() {
                     @Override
                     public void run() {
                         if (changedLocation) {
-                            listener.onDataMoved(dataSnapshot, location);
+                            fireDataMoved(instruments, listener, key, dataSnapshot, location, distance);
                         }
 
+                        if (isDataListener(listener)) {
+                            instruments.dataChangedEvents.increment();
+                        }
                         listener.onDataChanged(dataSnapshot, location);
                     }
                 });
             }
-        } else if (wasInQuery && !isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
+        } else if (wasInQuery) {
+            for (final GeoQueryDataEventListener listener: this.listenerArray) {
+                if (this.publishKeyEvent(listener, key, latitude, longitude,
+                        GeoQueryPrimitiveEventListener.KEY_EXITED)) {
+                    continue;
+                }
+                this.raiseEvent(listener, key, new Runnable() {
                     @Override
                     public void run() {
-                        listener.onDataExited(dataSnapshot);
+                        fireDataExited(instruments, listener, key, dataSnapshot);
                     }
                 });
             }
         }
-        LocationInfo newInfo = new LocationInfo(location, this.locationIsInQuery(location), dataSnapshot);
-        this.locationInfos.put(key, newInfo);
+        this.fireRankEntries();
     }
 
-    private boolean geoHashQueriesContainGeoHash(GeoHash geoHash) {
-        if (this.queries == null) {
-            return false;
+    /**
+     * Fires the exited events of the keys that were pushed beyond the result limit.
+     */
+    private void fireRankExits() {
+        if (this.distanceOrder == null) {
+            return;
+        }
+        for (int id: this.distanceOrder.rankChanges()) {
+            if (!this.distanceOrder.isRanked(id) && !this.locations.isOutranked(id)) {
+                this.locations.setOutranked(id, true);
+                this.raiseExited(id);
+            }
+        }
+    }
+
+    /**
+     * Fires the entered events of the keys that moved up into the result limit and forgets the rank changes.
+     */
+    private void fireRankEntries() {
+        if (this.distanceOrder == null) {
+            return;
+        }
+        for (int id: this.distanceOrder.rankChanges()) {
+            if (this.distanceOrder.isRanked(id) && this.locations.isOutranked(id)) {
+                this.locations.setOutranked(id, false);
+                this.raiseEntered(id, this.distanceOrder.distance(id));
+            }
+        }
+        this.distanceOrder.clearRankChanges();
+    }
+
+    private void raiseEntered(int id, final double distance) {
+        final Instruments instruments = this.geoFire.getInstruments();
+        final String key = this.locations.key(id);
+        final DataSnapshot dataSnapshot = this.locations.dataSnapshot(id);
+        double latitude = this.locations.latitude(id);
+        double longitude = this.locations.longitude(id);
+        final GeoLocation location = this.needsGeoLocations() ? new GeoLocation(latitude, longitude) : null;
+        for (final GeoQueryDataEventListener listener: this.listenerArray) {
+            if (this.publishKeyEvent(listener, key, latitude, longitude, GeoQueryPrimitiveEventListener.KEY_ENTERED)) {
+                continue;
+            }
+            this.raiseEvent(listener, key, new Runnable() {
+                @Override
+                public void run() {
+                    fireDataEntered(instruments, listener, key, dataSnapshot, location, distance);
+                }
+            });
         }
-        for (GeoHashQuery query: this.queries) {
-            if (query.containsGeoHash(geoHash)) {
-                return true;
+    }
+
+    private void raiseExited(int id) {
+        final Instruments instruments = this.geoFire.getInstruments();
+        final String key = this.locations.key(id);
+        final DataSnapshot dataSnapshot = this.locations.dataSnapshot(id);
+        for (final GeoQueryDataEventListener listener: this.listenerArray) {
+            if (this.publishKeyEvent(listener, key, this.locations.latitude(id), this.locations.longitude(id),
+                    GeoQueryPrimitiveEventListener.KEY_EXITED)) {
+                continue;
             }
+            this.raiseEvent(listener, key, new Runnable() {
+                @Override
+                public void run() {
+                    fireDataExited(instruments, listener, key, dataSnapshot);
+                }
+            });
+        }
+    }
+
+    private void evictOutOfRadiusKeys() {
+        int maxKeys = this.outOfRadiusPolicy.getMaxKeys();
+        while (this.locations.outOfQueryCount() > maxKeys) {
+            this.locations.remove(this.locations.oldestOutOfQuery());
+            this.evictedKeys = true;
         }
-        return false;
+    }
+
+    // Key listeners are called directly, so they also work with stores that do not provide data snapshots
+
+    private static void fireDataEntered(Instruments instruments, GeoQueryDataEventListener listener, String key,
+                                        DataSnapshot dataSnapshot, GeoLocation location, double distance) {
+        instruments.keyEnteredEvents.increment();
+        if (listener instanceof EventListenerBridge) {
+            ((EventListenerBridge) listener).onKeyEntered(key, location, distance);
+        } else {
+            listener.onDataEntered(dataSnapshot, location);
+        }
+    }
+
+    private static void fireDataMoved(Instruments instruments, GeoQueryDataEventListener listener, String key,
+                                      DataSnapshot dataSnapshot, GeoLocation location, double distance) {
+        instruments.keyMovedEvents.increment();
+        if (listener instanceof EventListenerBridge) {
+            ((EventListenerBridge) listener).onKeyMoved(key, location, distance);
+        } else {
+            listener.onDataMoved(dataSnapshot, location);
+        }
+    }
+
+    private static void fireDataExited(Instruments instruments, GeoQueryDataEventListener listener, String key,
+                                       DataSnapshot dataSnapshot) {
+        instruments.keyExitedEvents.increment();
+        if (listener instanceof EventListenerBridge) {
+            ((EventListenerBridge) listener).onKeyExited(key);
+        } else {
+            listener.onDataExited(dataSnapshot);
+        }
+    }
+
+    private boolean geoHashQueriesContainGeoHash(long geoHash) {
+        return this.queryRanges != null && this.queryRanges.contains(geoHash);
     }
 
     private void reset() {
-        for(Map.Entry<GeoHashQuery, Query> entry: this.firebaseQueries.entrySet()) {
-            entry.getValue().removeEventListener(this.childEventLister);
+        GeoFireTracer tracer = this.geoFire.getTracer();
+        for (RangeListener rangeListener: this.rangeListeners.values()) {
+            rangeListener.subscription.cancel();
+            this.geoFire.rangeUnsubscribed();
+            tracer.rangeUnsubscribed(rangeListener.query.getStartValue(), rangeListener.query.getEndValue());
         }
+        this.cancelSnapshotLoaders();
+        this.cancelRangeRescans();
+        this.evictedKeys = false;
+        this.readyStartNanos = 0;
+        this.abandonReadySpan();
         this.outstandingQueries.clear();
-        this.firebaseQueries.clear();
+        this.rangeListeners.clear();
         this.queries = null;
-        this.locationInfos.clear();
+        this.queryRanges = null;
+        this.locations.clear();
+        if (this.distanceOrder != null) {
+            this.distanceOrder.clear();
+        }
     }
 
     private boolean hasListeners() {
-        return !this.eventListeners.isEmpty();
+        return !this.eventListeners.isEmpty() || !this.pendingListeners.isEmpty();
+    }
+
+    private boolean retainsDataSnapshots() {
+        return this.dataListenerCount > 0;
+    }
+
+    private void loadDataSnapshots() {
+        if (!this.snapshotLoaders.isEmpty()) {
+            // a load is already running, it also covers the keys the new listener needs
+            return;
+        }
+        GeoStore store = this.geoFire.getStore();
+        List<GeoHashQuery> loadedQueries = new ArrayList<>(this.queries);
+        // all loaders are registered first, stores may load a range while subscribing
+        for (int i = 0; i < loadedQueries.size(); i++) {
+            this.snapshotLoaders.add(new SnapshotLoader());
+        }
+        List<SnapshotLoader> loaders = new ArrayList<>(this.snapshotLoaders);
+        for (int i = 0; i < loaders.size(); i++) {
+            SnapshotLoader loader = loaders.get(i);
+            GeoHashQuery query = loadedQueries.get(i);
+            loader.subscription = store.subscribe(query.getStartValue(), query.getEndValue(), loader);
+            if (loader.done) {
+                loader.subscription.cancel();
+            }
+        }
+    }
+
+    private void cancelSnapshotLoaders() {
+        for (SnapshotLoader loader: this.snapshotLoaders) {
+            loader.done = true;
+            if (loader.subscription != null) {
+                loader.subscription.cancel();
+            }
+        }
+        this.snapshotLoaders.clear();
+    }
+
+    private void cancelRangeRescans() {
+        for (RangeRescan rescan: this.rangeRescans) {
+            rescan.done = true;
+            if (rescan.subscription != null) {
+                rescan.subscription.cancel();
+            }
+        }
+        this.rangeRescans.clear();
+    }
+
+    private void addPendingListeners() {
+        for (GeoQueryDataEventListener listener: this.pendingListeners) {
+            this.eventListeners.add(listener);
+            this.fireInitialEvents(listener);
+        }
+        this.pendingListeners.clear();
+        this.eventListenersChanged();
+    }
+
+    private void fireInitialEvents(final GeoQueryDataEventListener listener) {
+        final Instruments instruments = this.geoFire.getInstruments();
+        for (int id: this.idsInQuery()) {
+            final String key = this.locations.key(id);
+            final DataSnapshot dataSnapshot = this.locations.dataSnapshot(id);
+            if (this.publishKeyEvent(listener, key, this.locations.latitude(id), this.locations.longitude(id),
+                    GeoQueryPrimitiveEventListener.KEY_ENTERED)) {
+                continue;
+            }
+            final GeoLocation location = new GeoLocation(this.locations.latitude(id), this.locations.longitude(id));
+            final double distance = this.distanceOrder != null ? this.distanceOrder.distance(id)
+                    : GeoUtils.distance(location.latitude, location.longitude, center.latitude, center.longitude);
+            this.raiseEvent(listener, key, new Runnable() {
+                @Override
+                public void run() {
+                    fireDataEntered(instruments, listener, key, dataSnapshot, location, distance);
+                }
+            });
+        }
+        if (this.canFireReady()) {
+            this.raiseEvent(listener, null, new Runnable() {
+                @Override
+                public void run() {
+                    instruments.readyEvents.increment();
+                    listener.onGeoQueryReady();
+                }
+            });
+        }
+    }
+
+    private void fireRangeLoaded(final GeoHashQuery range) {
+        if (this.progressListeners.isEmpty()) {
+            return;
+        }
+        final int totalRanges = this.queries.size();
+        final int loadedRanges = totalRanges - this.outstandingQueries.size();
+        double totalArea = GeoHashCoverage.area(this.queries);
+        final double fractionLoaded = totalArea > 0
+                ? Math.max(0, 1 - GeoHashCoverage.area(this.outstandingQueries)/totalArea) : 1;
+        for (final GeoQueryProgressListener listener: this.progressListeners) {
+            this.raiseEvent(listener, null, new Runnable() {
+                @Override
+                public void run() {
+                    listener.onRangeLoaded(range, loadedRanges, totalRanges, fractionLoaded);
+                }
+            });
+        }
     }
 
     private boolean canFireReady() {
-        return this.outstandingQueries.isEmpty();
+        return this.outstandingQueries.isEmpty() && this.rangeRescans.isEmpty();
     }
 
     private void checkAndFireReady() {
-        if (canFireReady()) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
+        // setupQueries checks once it is done, ranges can load while they are subscribed
+        if (!this.settingUpQueries && canFireReady()) {
+            final Instruments instruments = this.geoFire.getInstruments();
+            if (this.readyStartNanos != 0) {
+                instruments.readyTimeNanos.record(System.nanoTime() - this.readyStartNanos);
+                this.readyStartNanos = 0;
+            }
+            if (this.readySpan != null) {
+                int keysInQuery = this.locations.size() - this.locations.outOfQueryCount();
+                this.readySpan.end(keysInQuery);
+                this.readySpan = null;
+            }
+            this.observeKeyHistogram();
+            // changing the search radius loads ranges again, the listeners were told already
+            if (!this.readyFired) {
+                this.readyFired = true;
+                for (final GeoQueryDataEventListener listener: this.listenerArray) {
+                    this.raiseEvent(listener, null, new Runnable() {
+                        @Override
+                        public void run() {
+                            instruments.readyEvents.increment();
+                            listener.onGeoQueryReady();
+                        }
+                    });
+                }
             }
+            this.adjustSearchRadius();
         }
     }
 
-    private void addValueToReadyListener(final Query firebase, final GeoHashQuery query) {
-        firebase.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                synchronized (GeoQuery.this) {
-                    GeoQuery.this.outstandingQueries.remove(query);
-                    GeoQuery.this.checkAndFireReady();
-                }
+    /**
+     * Shrinks the ranges of a limited query that is ready to the circle around its nearest keys, or widens them
+     * again if keys beyond them might be nearer than the ones it found.
+     */
+    private void adjustSearchRadius() {
+        if (this.queries == null || this.settingUpQueries || !this.canFireReady()) {
+            return;
+        }
+        double searchRadius = this.radius;
+        if (this.resultLimit > 0) {
+            int rankedCount = this.distanceOrder.rankedCount();
+            double farthest = this.distanceOrder.farthestRankedDistance();
+            if (rankedCount < this.resultLimit || farthest > this.searchRadius) {
+                searchRadius = Math.min(this.radius, Math.max(this.searchRadius * 2, farthest));
+            } else if (farthest * SEARCH_RADIUS_SLACK < this.searchRadius / 2) {
+                searchRadius = Math.max(farthest * SEARCH_RADIUS_SLACK, MIN_SEARCH_RADIUS);
+            } else {
+                searchRadius = this.searchRadius;
             }
+        }
+        if (searchRadius != this.searchRadius) {
+            this.searchRadius = searchRadius;
+            this.adjustingSearchRadius = true;
+            try {
+                this.setupQueries();
+            } finally {
+                this.adjustingSearchRadius = false;
+            }
+        }
+    }
 
-            @Override
-            public void onCancelled(final DatabaseError databaseError) {
-                synchronized (GeoQuery.this) {
-                    for (final GeoQueryDataEventListener listener : GeoQuery.this.eventListeners) {
-                        GeoQuery.this.geoFire.raiseEvent(new Runnable() {
-                            @Override
-                            public void run() {
-                                listener.onGeoQueryError(databaseError);
-                            }
-                        });
-                    }
-                }
+    /**
+     * @return The radius the first ranges of a query are planned for. A limited query plans for the smallest of the
+     * radii halved from its radius that the key histogram expects to hold twice its limit.
+     */
+    private double initialSearchRadius() {
+        KeyHistogram histogram = this.geoFire.getKeyHistogram();
+        if (this.resultLimit == 0 || histogram == null) {
+            return this.radius;
+        }
+        double searchRadius = this.radius;
+        while (searchRadius / 2 >= MIN_SEARCH_RADIUS) {
+            double radius = searchRadius / 2;
+            Set<GeoHashQuery> plan = this.geoFire.getQueryPlanner().plan(this.center, radius);
+            // the ranges cover more than the circle, the keys are taken as spread evenly in them
+            double expectedKeys = GeoHashCoverage.expectedKeys(plan, histogram)
+                    * GeoHashCoverage.circleArea(radius) / GeoHashCoverage.area(plan);
+            if (expectedKeys < 2 * this.resultLimit) {
+                break;
             }
-        });
+            searchRadius = radius;
+        }
+        return searchRadius;
+    }
+
+    private void observeKeyHistogram() {
+        KeyHistogram histogram = this.geoFire.getKeyHistogram();
+        // without all keys in the ranges the histogram would learn too few
+        if (histogram == null || this.outOfRadiusPolicy.getMaxKeys() != Integer.MAX_VALUE) {
+            return;
+        }
+        long[] geoHashes = new long[this.locations.size()];
+        int count = 0;
+        for (int id = 0; id < this.locations.limit(); id++) {
+            if (this.locations.isUsed(id)) {
+                geoHashes[count++] = this.locations.geoHash(id);
+            }
+        }
+        histogram.observe(this.queries, geoHashes, count, GEO_HASH_PRECISION);
+    }
+
+    private void abandonReadySpan() {
+        if (this.readySpan != null) {
+            this.readySpan.abandon();
+            this.readySpan = null;
+        }
     }
 
     private void setupQueries() {
         Set<GeoHashQuery> oldQueries = (this.queries == null) ? new HashSet<GeoHashQuery>() : this.queries;
-        Set<GeoHashQuery> newQueries = GeoHashQuery.queriesAtLocation(center, radius);
+        if (!this.adjustingSearchRadius) {
+            this.readyFired = false;
+            this.searchRadius = this.initialSearchRadius();
+        }
+        GeoFireTracer tracer = this.geoFire.getTracer();
+        // adjusting the search radius of a limited query is part of loading it, not a change of its criteria
+        if (!this.adjustingSearchRadius) {
+            this.abandonReadySpan();
+            this.readySpan = tracer.startReady(this.center.latitude, this.center.longitude, this.radius);
+        }
+        GeoFireTracer.Span coverSpan = tracer.startCover(this.center.latitude, this.center.longitude,
+                this.searchRadius);
+        Set<GeoHashQuery> newQueries = this.geoFire.getQueryPlanner().plan(this.center, this.searchRadius);
+        coverSpan.end(newQueries.size());
+        Instruments instruments = this.geoFire.getInstruments();
+        if (instruments.enabled) {
+            instruments.coverRanges.record(newQueries.size());
+            this.readyStartNanos = System.nanoTime();
+        }
+        if (this.outOfRadiusPolicy.dropsDataSnapshots() && this.retainsDataSnapshots()) {
+            // keys outside of the old radius have no snapshot to enter the query with, they are read again instead
+            for (int id = 0; id < this.locations.limit(); id++) {
+                if (this.locations.isUsed(id) && !this.locations.isInQuery(id)) {
+                    this.locations.remove(id);
+                    this.evictedKeys = true;
+                }
+            }
+        }
+        boolean rescan = this.evictedKeys;
+        this.evictedKeys = false;
+        this.cancelRangeRescans();
         this.queries = newQueries;
+        this.queryRanges = GeoHashRanges.of(newQueries, GEO_HASH_PRECISION);
         for (GeoHashQuery query: oldQueries) {
             if (!newQueries.contains(query)) {
-                firebaseQueries.get(query).removeEventListener(this.childEventLister);
-                firebaseQueries.remove(query);
+                RangeListener cancelled = rangeListeners.remove(query);
+                cancelled.subscription.cancel();
+                this.releaseDeferredKeys(cancelled);
+                this.geoFire.rangeUnsubscribed();
+                tracer.rangeUnsubscribed(query.getStartValue(), query.getEndValue());
                 outstandingQueries.remove(query);
             }
         }
-        for (final GeoHashQuery query: newQueries) {
-            if (!oldQueries.contains(query)) {
-                outstandingQueries.add(query);
-                DatabaseReference databaseReference = this.geoFire.getDatabaseReference();
-                Query firebaseQuery = databaseReference.orderByChild("g").startAt(query.getStartValue()).endAt(query.getEndValue());
-                firebaseQuery.addChildEventListener(this.childEventLister);
-                addValueToReadyListener(firebaseQuery, query);
-                firebaseQueries.put(query, firebaseQuery);
+        GeoStore store = this.geoFire.getStore();
+        this.settingUpQueries = true;
+        try {
+            for (final GeoHashQuery query: this.subscriptionOrder(newQueries)) {
+                if (!oldQueries.contains(query)) {
+                    outstandingQueries.add(query);
+                    // registered first, so a range that is loaded while subscribing is not taken as cancelled
+                    RangeListener rangeListener = new RangeListener(query);
+                    rangeListeners.put(query, rangeListener);
+                    rangeListener.subscription = store.subscribe(query.getStartValue(), query.getEndValue(),
+                            rangeListener);
+                    this.geoFire.rangeSubscribed();
+                    tracer.rangeSubscribed(query.getStartValue(), query.getEndValue());
+                } else if (rescan) {
+                    RangeRescan rangeRescan = new RangeRescan();
+                    this.rangeRescans.add(rangeRescan);
+                    rangeRescan.subscription = store.subscribe(query.getStartValue(), query.getEndValue(), rangeRescan);
+                    if (rangeRescan.done) {
+                        rangeRescan.subscription.cancel();
+                    }
+                }
             }
+        } finally {
+            this.settingUpQueries = false;
         }
-        for (Map.Entry<String, LocationInfo> info: this.locationInfos.entrySet()) {
-            LocationInfo oldLocationInfo = info.getValue();
-
-            if (oldLocationInfo != null) {
-                updateLocationInfo(oldLocationInfo.dataSnapshot, oldLocationInfo.location);
+        // the distances of all keys to the new center are computed at once
+        int limit = this.locations.limit();
+        double[] distances = new double[limit];
+        GeoUtils.getDistanceKernel().distances(this.center.latitude, this.center.longitude,
+                this.locations.latitudes(), this.locations.longitudes(), limit, distances);
+        if (this.distanceOrder != null) {
+            // all keys are ranked by their new distances first, so keys only enter or exit once
+            for (int id = 0; id < limit; id++) {
+                if (this.locations.isUsed(id) && this.isInQuery(id, distances[id]) && !this.locations.isDeferred(id)) {
+                    this.distanceOrder.set(id, distances[id]);
+                } else {
+                    this.distanceOrder.remove(id);
+                }
+            }
+            this.distanceOrder.clearRankChanges();
+        }
+        for (int id = 0; id < limit; id++) {
+            if (this.locations.isUsed(id)) {
+                updateLocationInfo(this.locations.key(id), this.locations.latitude(id), this.locations.longitude(id),
+                        this.locations.dataSnapshot(id), this.isInQuery(id, distances[id]), distances[id], null);
             }
         }
         // remove locations that are not part of the geo query anymore
-        Iterator<Map.Entry<String, LocationInfo>> it = this.locationInfos.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, LocationInfo> entry = it.next();
-            if (!this.geoHashQueriesContainGeoHash(entry.getValue().geoHash)) {
-                it.remove();
+        for (int id = 0; id < this.locations.limit(); id++) {
+            if (this.locations.isUsed(id) && !this.geoHashQueriesContainGeoHash(this.locations.geoHash(id))) {
+                this.removeLocation(id);
             }
         }
+        this.evictOutOfRadiusKeys();
 
         checkAndFireReady();
     }
 
-    private void childAdded(DataSnapshot dataSnapshot) {
-        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-        if (location != null) {
-            this.updateLocationInfo(dataSnapshot, location);
+    /**
+     * Tests a key against the radius with a distance from the {@link com.firebase.geofire.util.DistanceKernel}. The
+     * kernel may differ from {@link GeoUtils#distance(double, double, double, double)} in the last bits, so a key that
+     * close to the radius is tested again with the exact distance, which keys updated one at a time are tested with.
+     */
+    private boolean isInQuery(int id, double distance) {
+        boolean inQuery;
+        if (Math.abs(distance - this.radius) <= this.radius * KERNEL_RELATIVE_TOLERANCE + KERNEL_ABSOLUTE_TOLERANCE) {
+            inQuery = GeoUtils.distance(this.locations.latitude(id), this.locations.longitude(id),
+                    this.center.latitude, this.center.longitude) <= this.radius;
         } else {
-            throw new AssertionError("Got Datasnapshot without location with key " + dataSnapshot.getKey());
+            inQuery = distance <= this.radius;
         }
+        // keys that a limited query with a smaller search radius doesn't read anymore leave the query
+        return inQuery && this.geoHashQueriesContainGeoHash(this.locations.geoHash(id));
     }
 
-    private void childChanged(DataSnapshot dataSnapshot) {
-        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-        if (location != null) {
-            this.updateLocationInfo(dataSnapshot, location);
-        } else {
-            throw new AssertionError("Got Datasnapshot without location with key " + dataSnapshot.getKey());
+    /**
+     * @return The ids of the keys the listeners know to be in the query, nearest first if the query is distance
+     * ordered
+     */
+    private List<Integer> idsInQuery() {
+        List<Integer> ids = new ArrayList<>();
+        if (this.distanceOrder != null) {
+            Iterator<Integer> iterator = this.distanceOrder.iterator();
+            while (iterator.hasNext()) {
+                ids.add(iterator.next());
+            }
+            return ids;
+        }
+        for (int id = 0; id < this.locations.limit(); id++) {
+            if (this.locations.isUsed(id) && this.locations.isInQuery(id) && !this.locations.isDeferred(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private void removeLocation(int id) {
+        this.locations.remove(id);
+        if (this.distanceOrder != null) {
+            this.distanceOrder.remove(id);
+        }
+    }
+
+    /**
+     * @return The queries in the order they are subscribed, nearest to the center first if the query is distance
+     * ordered, so the closest keys are loaded first
+     */
+    private List<GeoHashQuery> subscriptionOrder(Set<GeoHashQuery> queries) {
+        List<GeoHashQuery> ordered = new ArrayList<>(queries);
+        if (this.distanceOrder == null) {
+            return ordered;
+        }
+        final Map<GeoHashQuery, Double> distances = new HashMap<>();
+        for (GeoHashQuery query: ordered) {
+            distances.put(query, GeoHashCoverage.distance(query, this.center));
+        }
+        Collections.sort(ordered, new Comparator<GeoHashQuery>() {
+            @Override
+            public int compare(GeoHashQuery query1, GeoHashQuery query2) {
+                return Double.compare(distances.get(query1), distances.get(query2));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Fires the entered events a range deferred until it was loaded, nearest first.
+     */
+    private void fireDeferredEntered(RangeListener range) {
+        if (range.deferredKeys.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        final int[] ids = new int[range.deferredKeys.size()];
+        final double[] distances = new double[ids.length];
+        Integer[] order = new Integer[ids.length];
+        for (String key: range.deferredKeys) {
+            int id = this.locations.find(key);
+            // keys that left the query in the meantime are not deferred anymore
+            if (id != LocationTable.NOT_FOUND && this.locations.isDeferred(id)) {
+                this.locations.setDeferred(id, false);
+                ids[count] = id;
+                distances[count] = GeoUtils.distance(this.locations.latitude(id), this.locations.longitude(id),
+                        center.latitude, center.longitude);
+                order[count] = count;
+                count++;
+            }
+        }
+        range.deferredKeys.clear();
+        Arrays.sort(order, 0, count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer index1, Integer index2) {
+                return Double.compare(distances[index1], distances[index2]);
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            int id = ids[order[i]];
+            double distance = distances[order[i]];
+            if (this.distanceOrder != null) {
+                this.distanceOrder.set(id, distance);
+            }
+            if (this.distanceOrder == null || this.distanceOrder.isRanked(id)) {
+                this.fireRankExits();
+                this.raiseEntered(id, distance);
+            } else {
+                this.locations.setOutranked(id, true);
+            }
+            this.fireRankEntries();
         }
     }
 
-    private void childRemoved(DataSnapshot dataSnapshot) {
-        final String key = dataSnapshot.getKey();
-        final LocationInfo info = this.locationInfos.get(key);
-        if (info != null) {
-            this.geoFire.getDatabaseRefForKey(key).addListenerForSingleValueEvent(new ValueEventListener() {
+    /**
+     * Makes the keys deferred by a cancelled range unknown to the listeners again, so they enter once they are
+     * tested against the new center and radius.
+     */
+    private void releaseDeferredKeys(RangeListener range) {
+        for (String key: range.deferredKeys) {
+            int id = this.locations.find(key);
+            if (id != LocationTable.NOT_FOUND && this.locations.isDeferred(id)) {
+                this.locations.setDeferred(id, false);
+                this.locations.set(id, this.locations.latitude(id), this.locations.longitude(id),
+                        this.locations.geoHash(id), false, this.locations.dataSnapshot(id));
+            }
+        }
+        range.deferredKeys.clear();
+    }
+
+    private void childRemoved(final String key) {
+        if (this.locations.find(key) != LocationTable.NOT_FOUND) {
+            final GeoFireTracer.Span span = this.geoFire.getTracer().startChildRemovedRead(key);
+            this.geoFire.getStore().getLocation(key, new LocationCallback() {
                 @Override
-                public void onDataChange(final DataSnapshot dataSnapshot) {
+                public void onLocationResult(final String key, GeoLocation location) {
                     synchronized(GeoQuery.this) {
-                        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-                        GeoHash hash = (location != null) ? new GeoHash(location) : null;
-                        if (hash == null || !GeoQuery.this.geoHashQueriesContainGeoHash(hash)) {
-                            final LocationInfo info = locationInfos.remove(key);
-
-                            if (info != null && info.inGeoQuery) {
-                                for (final GeoQueryDataEventListener listener: GeoQuery.this.eventListeners) {
-                                    GeoQuery.this.geoFire.raiseEvent(new Runnable() {
+                        if (location == null || !GeoQuery.this.geoHashQueriesContainGeoHash(
+                                GeoHash.toLong(location.latitude, location.longitude, GEO_HASH_PRECISION))) {
+                            int id = GeoQuery.this.locations.find(key);
+                            if (id == LocationTable.NOT_FOUND) {
+                                span.end(0);
+                                return;
+                            }
+                            // the listeners don't know keys whose entered event is deferred yet or that are
+                            // beyond the result limit
+                            boolean wasInQuery = GeoQuery.this.locations.isInQuery(id)
+                                    && !GeoQuery.this.locations.isDeferred(id)
+                                    && !GeoQuery.this.locations.isOutranked(id);
+                            final DataSnapshot dataSnapshot = GeoQuery.this.locations.dataSnapshot(id);
+                            double latitude = GeoQuery.this.locations.latitude(id);
+                            double longitude = GeoQuery.this.locations.longitude(id);
+                            GeoQuery.this.removeLocation(id);
+
+                            if (wasInQuery) {
+                                final Instruments instruments = GeoQuery.this.geoFire.getInstruments();
+                                for (final GeoQueryDataEventListener listener: GeoQuery.this.listenerArray) {
+                                    if (GeoQuery.this.publishKeyEvent(listener, key, latitude, longitude,
+                                            GeoQueryPrimitiveEventListener.KEY_EXITED)) {
+                                        continue;
+                                    }
+                                    GeoQuery.this.raiseEvent(listener, key, new Runnable() {
                                         @Override
                                         public void run() {
-                                            listener.onDataExited(info.dataSnapshot);
+                                            fireDataExited(instruments, listener, key, dataSnapshot);
                                         }
                                     });
                                 }
                             }
+                            // the nearest outranked key takes its place
+                            GeoQuery.this.fireRankEntries();
+                            GeoQuery.this.adjustSearchRadius();
+                            span.end(wasInQuery ? 1 : 0);
+                        } else {
+                            span.end(0);
                         }
                     }
                 }
@@ -325,6 +1150,7 @@ public class GeoQuery {
                 @Override
                 public void onCancelled(DatabaseError databaseError) {
                     // tough luck
+                    span.end(0);
                 }
             });
         }
@@ -341,6 +1167,17 @@ public class GeoQuery {
         addGeoQueryDataEventListener(new EventListenerBridge(listener));
     }
 
+    /**
+     * Adds a new GeoQueryDistanceEventListener to this GeoQuery.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoQueryDistanceEventListener(final GeoQueryDistanceEventListener listener) {
+        addGeoQueryDataEventListener(new EventListenerBridge(listener));
+    }
+
     /**
      * Adds a new GeoQueryEventListener to this GeoQuery.
      *
@@ -349,34 +1186,25 @@ public class GeoQuery {
      * @param listener The listener to add
      */
     public synchronized void addGeoQueryDataEventListener(final GeoQueryDataEventListener listener) {
-        if (eventListeners.contains(listener)) {
+        if (eventListeners.contains(listener) || pendingListeners.contains(listener)) {
             throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
         }
-        eventListeners.add(listener);
+        boolean isDataListener = isDataListener(listener);
+        boolean hadDataSnapshots = this.retainsDataSnapshots();
+        if (isDataListener) {
+            this.dataListenerCount++;
+        }
         if (this.queries == null) {
+            eventListeners.add(listener);
+            this.eventListenersChanged();
             this.setupQueries();
+        } else if (isDataListener && !hadDataSnapshots && this.locations.size() > 0) {
+            pendingListeners.add(listener);
+            this.loadDataSnapshots();
         } else {
-            for (final Map.Entry<String, LocationInfo> entry: this.locationInfos.entrySet()) {
-                final String key = entry.getKey();
-                final LocationInfo info = entry.getValue();
-
-                if (info.inGeoQuery) {
-                    this.geoFire.raiseEvent(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onDataEntered(info.dataSnapshot, info.location);
-                        }
-                    });
-                }
-            }
-            if (this.canFireReady()) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
-            }
+            eventListeners.add(listener);
+            this.eventListenersChanged();
+            this.fireInitialEvents(listener);
         }
     }
 
@@ -391,6 +1219,40 @@ public class GeoQuery {
         removeGeoQueryEventListener(new EventListenerBridge(listener));
     }
 
+    /**
+     * Adds a new GeoQueryPrimitiveEventListener to this GeoQuery. Its events are delivered in order on a thread of
+     * their own instead of with the events of other listeners, and don't go through dispatch lanes.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoQueryPrimitiveEventListener(final GeoQueryPrimitiveEventListener listener) {
+        addGeoQueryDataEventListener(new PrimitiveListenerBridge(listener));
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoQueryPrimitiveEventListener(GeoQueryPrimitiveEventListener listener) {
+        removeGeoQueryEventListener(new PrimitiveListenerBridge(listener));
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoQueryDistanceEventListener(GeoQueryDistanceEventListener listener) {
+        removeGeoQueryEventListener(new EventListenerBridge(listener));
+    }
+
     /**
      * Removes an event listener.
      *
@@ -399,12 +1261,48 @@ public class GeoQuery {
      * @param listener The listener to remove
      */
     public synchronized void removeGeoQueryEventListener(final GeoQueryDataEventListener listener) {
-        if (!eventListeners.contains(listener)) {
+        if (!eventListeners.remove(listener) && !pendingListeners.remove(listener)) {
             throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
         }
-        eventListeners.remove(listener);
+        this.eventListenersChanged();
+        if (isDataListener(listener)) {
+            this.dataListenerCount--;
+        }
         if (!this.hasListeners()) {
             reset();
+        } else if (!this.retainsDataSnapshots()) {
+            this.cancelSnapshotLoaders();
+            this.locations.clearDataSnapshots();
+        }
+    }
+
+    /**
+     * Adds a listener that is notified every time a geohash range of this GeoQuery was loaded. Progress listeners
+     * don't start the query, it loads its ranges while event listeners are attached.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public synchronized void addGeoQueryProgressListener(GeoQueryProgressListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        if (!this.progressListeners.add(listener)) {
+            throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
+        }
+    }
+
+    /**
+     * Removes a progress listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeGeoQueryProgressListener(GeoQueryProgressListener listener) {
+        if (!this.progressListeners.remove(listener)) {
+            throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
         }
     }
 
@@ -413,9 +1311,146 @@ public class GeoQuery {
      */
     public synchronized void removeAllListeners() {
         eventListeners.clear();
+        this.eventListenersChanged();
+        pendingListeners.clear();
+        this.progressListeners.clear();
+        this.dataListenerCount = 0;
         reset();
     }
 
+    /**
+     * Returns whether this query keeps its keys ordered by distance, see {@link #setDistanceOrdered(boolean)}.
+     * @return Whether this query is distance ordered
+     */
+    public synchronized boolean isDistanceOrdered() {
+        return this.distanceOrder != null;
+    }
+
+    /**
+     * Sets whether this query keeps the keys in its radius ordered by their distance from the center, updated with
+     * every event, so {@link #getKeysByDistance(int)} is cheap. A distance ordered query also loads the ranges
+     * closest to the center first and holds back the entered events of a range until it is loaded, to fire them
+     * nearest first. Keys still enter nearest first within each range only, as ranges load concurrently.
+     * @throws IllegalStateException If distance ordering is turned off while the query has a result limit
+     * @param distanceOrdered Whether this query is distance ordered
+     */
+    public synchronized void setDistanceOrdered(boolean distanceOrdered) {
+        if (!distanceOrdered) {
+            if (this.resultLimit > 0) {
+                throw new IllegalStateException("A GeoQuery with a result limit is always distance ordered!");
+            }
+            this.distanceOrder = null;
+        } else if (this.distanceOrder == null) {
+            List<Integer> ids = this.idsInQuery();
+            this.distanceOrder = new DistanceOrder();
+            for (int id: ids) {
+                this.distanceOrder.set(id, GeoUtils.distance(this.locations.latitude(id),
+                        this.locations.longitude(id), center.latitude, center.longitude));
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of keys in this query, see {@link #setResultLimit(int)}.
+     * @return The result limit, or 0 if the number of keys is not limited
+     */
+    public synchronized int getResultLimit() {
+        return this.resultLimit;
+    }
+
+    /**
+     * Limits this query to the keys nearest to its center. Listeners only know the nearest keys in the radius up to
+     * the limit: a key that is pushed beyond the limit by a nearer key exits the query and the next key enters once
+     * a key leaves. A limited query is distance ordered.
+     *
+     * Once it is ready, a limited query shrinks the geohash ranges it listens to around the keys it found, so it
+     * stops downloading keys that can't be among the nearest, and widens them again if fewer keys are left in them.
+     * With a {@link KeyHistogram} set on its GeoFire it starts with the radius the histogram expects to hold enough
+     * keys.
+     * @throws IllegalArgumentException If the limit is negative
+     * @param limit The maximum number of keys, or 0 to not limit the number of keys
+     */
+    public synchronized void setResultLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Result limit must not be negative!");
+        }
+        this.resultLimit = limit;
+        if (limit > 0) {
+            this.setDistanceOrdered(true);
+        }
+        if (this.distanceOrder != null) {
+            this.distanceOrder.setLimit(limit > 0 ? limit : Integer.MAX_VALUE);
+            this.fireRankExits();
+            this.fireRankEntries();
+        }
+        this.adjustSearchRadius();
+    }
+
+    /**
+     * Returns the keys in the radius of this query that the listeners were notified about, nearest first. This is
+     * cheap for a distance ordered query and sorts all keys otherwise.
+     * @param maxKeys The maximum number of keys to return
+     * @return The keys, nearest first
+     */
+    public synchronized List<String> getKeysByDistance(int maxKeys) {
+        if (maxKeys < 0) {
+            throw new IllegalArgumentException("Number of keys must not be negative!");
+        }
+        List<String> keys = new ArrayList<>();
+        if (this.distanceOrder != null) {
+            Iterator<Integer> iterator = this.distanceOrder.iterator();
+            while (keys.size() < maxKeys && iterator.hasNext()) {
+                keys.add(this.locations.key(iterator.next()));
+            }
+            return keys;
+        }
+        List<Integer> ids = this.idsInQuery();
+        final double[] distances = new double[this.locations.limit()];
+        for (int id: ids) {
+            distances[id] = GeoUtils.distance(this.locations.latitude(id), this.locations.longitude(id),
+                    center.latitude, center.longitude);
+        }
+        Collections.sort(ids, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer id1, Integer id2) {
+                return Double.compare(distances[id1], distances[id2]);
+            }
+        });
+        for (int i = 0; i < Math.min(maxKeys, ids.size()); i++) {
+            keys.add(this.locations.key(ids.get(i)));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the policy for keys inside the subscribed geohash ranges but outside of the radius.
+     * @return The current policy
+     */
+    public synchronized OutOfRadiusPolicy getOutOfRadiusPolicy() {
+        return this.outOfRadiusPolicy;
+    }
+
+    /**
+     * Sets the policy for keys inside the subscribed geohash ranges but outside of the radius. The policy is applied
+     * to the keys this query already knows right away.
+     * @throws NullPointerException If the policy is null
+     * @param policy The new policy
+     */
+    public synchronized void setOutOfRadiusPolicy(OutOfRadiusPolicy policy) {
+        if (policy == null) {
+            throw new NullPointerException();
+        }
+        this.outOfRadiusPolicy = policy;
+        if (policy.dropsDataSnapshots()) {
+            for (int id = 0; id < this.locations.limit(); id++) {
+                if (this.locations.isUsed(id) && !this.locations.isInQuery(id)) {
+                    this.locations.setDataSnapshot(id, null);
+                }
+            }
+        }
+        this.evictOutOfRadiusKeys();
+    }
+
     /**
      * Returns the current center of this query.
      * @return The current center
@@ -0,0 +1,72 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * GeoQuery notifies listeners with this interface about keys that entered, exited, or moved within the query, with
+ * the coordinates of the key instead of a GeoLocation. The events of these listeners are delivered from preallocated
+ * slots on a thread of their own, so a query that only has these listeners creates no objects for its key events.
+ */
+public interface GeoQueryPrimitiveEventListener {
+
+    /** Event type: the key entered the search area */
+    int KEY_ENTERED = 0;
+
+    /** Event type: the key moved within the search area */
+    int KEY_MOVED = 1;
+
+    /** Event type: the key exited the search area, the coordinates are its last known location */
+    int KEY_EXITED = 2;
+
+    /**
+     * Called if a key entered, moved within or exited the search area of the GeoQuery, in the same cases as the
+     * methods of a {@link GeoQueryEventListener}.
+     *
+     * @param key       The key of the event
+     * @param latitude  The latitude of the key
+     * @param longitude The longitude of the key
+     * @param type      The type of the event, {@link #KEY_ENTERED}, {@link #KEY_MOVED} or {@link #KEY_EXITED}
+     */
+    void onKeyEvent(String key, double latitude, double longitude, int type);
+
+    /**
+     * Called once all initial GeoFire data has been loaded and the relevant events have been fired for this query.
+     * Every time the query criteria is updated, this observer will be called after the updated query has fired the
+     * appropriate key entered or key exited events.
+     */
+    void onGeoQueryReady();
+
+    /**
+     * Called in case an error occurred while retrieving locations for a query, e.g. violating security rules.
+     * @param error The error that occurred while retrieving the query
+     */
+    void onGeoQueryError(DatabaseError error);
+}
@@ -0,0 +1,49 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHashQuery;
+
+/**
+ * GeoQuery notifies listeners with this interface every time one of its geo hash ranges was loaded, so consumers can
+ * act on partial results before the query is ready.
+ */
+public interface GeoQueryProgressListener {
+
+    /**
+     * Called once a range of the query was loaded, after the key entered events for the keys in the range. Ranges
+     * that the query still listens to after its center or radius changed count as loaded.
+     *
+     * @param range The range that was loaded
+     * @param loadedRanges The number of ranges of the query that are loaded
+     * @param totalRanges The number of ranges of the query
+     * @param fractionLoaded The share of the area of all ranges that is loaded, between 0 and 1
+     */
+    void onRangeLoaded(GeoHashQuery range, int loadedRanges, int totalRanges, double fractionLoaded);
+}
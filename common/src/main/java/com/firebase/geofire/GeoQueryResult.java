@@ -0,0 +1,91 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.google.firebase.database.DataSnapshot;
+
+/**
+ * A key that a one-shot query found within its radius, see {@link GeoFire#queryOnce}.
+ */
+public final class GeoQueryResult {
+
+    private final String key;
+    private final GeoLocation location;
+    private final double distance;
+    private final DataSnapshot dataSnapshot;
+
+    GeoQueryResult(String key, GeoLocation location, double distance, DataSnapshot dataSnapshot) {
+        this.key = key;
+        this.location = location;
+        this.distance = distance;
+        this.dataSnapshot = dataSnapshot;
+    }
+
+    public String getKey() {
+        return this.key;
+    }
+
+    public GeoLocation getLocation() {
+        return this.location;
+    }
+
+    /**
+     * @return The distance from the center of the query, in meters
+     */
+    public double getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * @return The snapshot of the key or null if the store does not provide snapshots
+     */
+    public DataSnapshot getDataSnapshot() {
+        return this.dataSnapshot;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GeoQueryResult that = (GeoQueryResult) o;
+
+        return this.key.equals(that.key) && this.location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.key.hashCode() + this.location.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "GeoQueryResult(" + this.key + ", " + this.location + ", " + this.distance + ")";
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.NoOpMetrics;
+
+/**
+ * The instruments GeoFire and GeoQuery update, created once from the metrics set on a GeoFire instance.
+ */
+final class Instruments {
+
+    static final Instruments NONE = new Instruments(NoOpMetrics.INSTANCE);
+
+    final boolean enabled;
+    final GeoFireMetrics.Counter keyEnteredEvents;
+    final GeoFireMetrics.Counter keyExitedEvents;
+    final GeoFireMetrics.Counter keyMovedEvents;
+    final GeoFireMetrics.Counter dataChangedEvents;
+    final GeoFireMetrics.Counter readyEvents;
+    final GeoFireMetrics.Counter errorEvents;
+    final GeoFireMetrics.Counter keysReceived;
+    final GeoFireMetrics.Counter keysInRadius;
+    final GeoFireMetrics.Histogram coverRanges;
+    final GeoFireMetrics.Histogram readyTimeNanos;
+
+    Instruments(GeoFireMetrics metrics) {
+        this.enabled = metrics != NoOpMetrics.INSTANCE;
+        this.keyEnteredEvents = metrics.counter(GeoFireMetrics.KEY_ENTERED_EVENTS);
+        this.keyExitedEvents = metrics.counter(GeoFireMetrics.KEY_EXITED_EVENTS);
+        this.keyMovedEvents = metrics.counter(GeoFireMetrics.KEY_MOVED_EVENTS);
+        this.dataChangedEvents = metrics.counter(GeoFireMetrics.DATA_CHANGED_EVENTS);
+        this.readyEvents = metrics.counter(GeoFireMetrics.READY_EVENTS);
+        this.errorEvents = metrics.counter(GeoFireMetrics.ERROR_EVENTS);
+        this.keysReceived = metrics.counter(GeoFireMetrics.KEYS_RECEIVED);
+        this.keysInRadius = metrics.counter(GeoFireMetrics.KEYS_IN_RADIUS);
+        this.coverRanges = metrics.histogram(GeoFireMetrics.COVER_RANGES);
+        this.readyTimeNanos = metrics.histogram(GeoFireMetrics.READY_TIME_NANOS);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.metrics.GeoFireMetrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import static com.firebase.geofire.GeoFire.LOGGER;
+
+/**
+ * Delivers the events of every listener, or of every named group of listeners, in its own lane. A lane delivers its
+ * events one at a time and in the order they were raised on a shared executor, so a listener that blocks only holds
+ * back the events of its own lane.
+ *
+ * A lane can be split into partitions by the key of its events. Events for the same key are delivered in order by
+ * the same partition, while the partitions deliver events for different keys concurrently. Events without a key,
+ * such as ready events, are barriers: they are delivered once all events raised before them were delivered, and the
+ * events raised after them wait until they were delivered.
+ *
+ * If the executor rejects a partition or a barrier, for example after it was shut down, its events are dropped and
+ * logged, and the lane takes the events raised after them again.
+ */
+final class LaneEventRaiser implements EventRaiser {
+
+    // the lane of events that aren't delivered to a listener
+    private static final String DEFAULT_LANE = "default";
+
+    // the events a partition delivers before it lets other lanes use its thread
+    private static final int MAX_BATCH = 64;
+
+    private final Executor executor;
+    private final int keyPartitions;
+    private final Map<Object, String> laneNames;
+    // guarded by itself, as are the lanes in it, which are dropped once they are idle
+    private final Map<Object, Lane> lanes = new HashMap<>();
+    private final ConcurrentMap<String, LaneInstruments> instruments = new ConcurrentHashMap<>();
+    private volatile GeoFireMetrics metrics;
+
+    /**
+     * @param executor      The executor that runs the lanes
+     * @param keyPartitions The number of partitions of every lane
+     * @param laneNames     The names of the lanes of listeners that share a lane, read whenever an event is raised
+     * @param metrics       The metrics the lanes report to, or null
+     */
+    LaneEventRaiser(Executor executor, int keyPartitions, Map<Object, String> laneNames, GeoFireMetrics metrics) {
+        this.executor = executor;
+        this.keyPartitions = keyPartitions;
+        this.laneNames = laneNames;
+        this.metrics = metrics;
+    }
+
+    Executor getExecutor() {
+        return this.executor;
+    }
+
+    int getKeyPartitions() {
+        return this.keyPartitions;
+    }
+
+    void setMetrics(GeoFireMetrics metrics) {
+        this.metrics = metrics;
+        this.instruments.clear();
+    }
+
+    @Override
+    public void raiseEvent(Object listener, String key, Runnable r) {
+        if (listener instanceof EventListenerBridge) {
+            listener = ((EventListenerBridge) listener).getListener();
+        }
+        String name = listener != null ? this.laneNames.get(listener) : DEFAULT_LANE;
+        // listeners without a name get their own lane and share the instruments of their class
+        Object laneKey = name != null ? name : listener;
+        LaneInstruments laneInstruments = this.instruments(name != null ? name : listener.getClass().getName());
+        Event event = new Event(r, key, laneInstruments != null ? System.nanoTime() : 0, laneInstruments);
+        if (laneInstruments != null) {
+            laneInstruments.pendingEvents.incrementAndGet();
+        }
+        List<Runnable> started = new ArrayList<>(1);
+        synchronized (this.lanes) {
+            Lane lane = this.lanes.get(laneKey);
+            if (lane == null) {
+                lane = new Lane(laneKey);
+                this.lanes.put(laneKey, lane);
+            }
+            lane.dispatch(event, started);
+        }
+        this.execute(started);
+    }
+
+    private void execute(List<Runnable> runnables) {
+        for (Runnable runnable: runnables) {
+            try {
+                this.executor.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                this.rejected(runnable, e);
+            }
+        }
+    }
+
+    /**
+     * Drops the events of a partition or barrier the executor rejected, so its lane is not left scheduled forever.
+     */
+    private void rejected(Runnable runnable, RejectedExecutionException e) {
+        List<Event> dropped = new ArrayList<>();
+        List<Runnable> started = new ArrayList<>(1);
+        synchronized (this.lanes) {
+            if (runnable instanceof Partition) {
+                ((Partition) runnable).reject(dropped, started);
+            } else {
+                ((Lane) runnable).reject(dropped, started);
+            }
+        }
+        LOGGER.log(Level.SEVERE, "Executor rejected a dispatch lane, dropped " + dropped.size() + " events", e);
+        for (Event event: dropped) {
+            if (event.instruments != null) {
+                event.instruments.pendingEvents.decrementAndGet();
+            }
+        }
+        this.execute(started);
+    }
+
+    private LaneInstruments instruments(String name) {
+        GeoFireMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return null;
+        }
+        LaneInstruments laneInstruments = this.instruments.get(name);
+        if (laneInstruments == null) {
+            LaneInstruments newInstruments = new LaneInstruments(metrics, name);
+            laneInstruments = this.instruments.putIfAbsent(name, newInstruments);
+            if (laneInstruments == null) {
+                laneInstruments = newInstruments;
+                final AtomicInteger pendingEvents = newInstruments.pendingEvents;
+                metrics.gauge(GeoFireMetrics.LANE_PENDING_EVENTS + name, new GeoFireMetrics.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return pendingEvents.get();
+                    }
+                });
+            }
+        }
+        return laneInstruments;
+    }
+
+    private static void deliver(Event event) {
+        try {
+            event.runnable.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Listener threw an exception", e);
+        } finally {
+            if (event.instruments != null) {
+                event.instruments.pendingEvents.decrementAndGet();
+                event.instruments.eventLatencyNanos.record(System.nanoTime() - event.raisedNanos);
+            }
+        }
+    }
+
+    private static final class Event {
+        private final Runnable runnable;
+        private final String key;
+        private final long raisedNanos;
+        private final LaneInstruments instruments;
+
+        Event(Runnable runnable, String key, long raisedNanos, LaneInstruments instruments) {
+            this.runnable = runnable;
+            this.key = key;
+            this.raisedNanos = raisedNanos;
+            this.instruments = instruments;
+        }
+    }
+
+    private static final class LaneInstruments {
+        private final AtomicInteger pendingEvents = new AtomicInteger();
+        private final GeoFireMetrics.Histogram eventLatencyNanos;
+
+        LaneInstruments(GeoFireMetrics metrics, String name) {
+            this.eventLatencyNanos = metrics.histogram(GeoFireMetrics.LANE_EVENT_LATENCY_NANOS + name);
+        }
+    }
+
+    private final class Lane implements Runnable {
+        private final Object key;
+        private final Partition[] partitions;
+        // the events raised while a barrier waits or is delivered, in the order they were raised
+        private final ArrayDeque<Event> backlog = new ArrayDeque<>();
+        private Event barrier;
+        private int runningPartitions;
+
+        Lane(Object key) {
+            this.key = key;
+            this.partitions = new Partition[LaneEventRaiser.this.keyPartitions];
+            for (int i = 0; i < this.partitions.length; i++) {
+                this.partitions[i] = new Partition(this);
+            }
+        }
+
+        /**
+         * Queues an event, called with the lanes locked.
+         *
+         * @param started Receives the partitions or barriers to run
+         */
+        void dispatch(Event event, List<Runnable> started) {
+            if (this.barrier != null) {
+                this.backlog.add(event);
+                return;
+            }
+            Partition partition;
+            if (this.partitions.length == 1) {
+                partition = this.partitions[0];
+            } else if (event.key == null) {
+                this.barrier = event;
+                if (this.runningPartitions == 0) {
+                    started.add(this);
+                }
+                return;
+            } else {
+                partition = this.partitions[(event.key.hashCode() & Integer.MAX_VALUE) % this.partitions.length];
+            }
+            partition.events.add(event);
+            if (!partition.scheduled) {
+                partition.scheduled = true;
+                this.runningPartitions++;
+                started.add(partition);
+            }
+        }
+
+        /**
+         * Called with the lanes locked once a partition ran out of events.
+         */
+        void partitionIdle(List<Runnable> started) {
+            this.runningPartitions--;
+            if (this.runningPartitions == 0) {
+                if (this.barrier != null) {
+                    started.add(this);
+                } else {
+                    LaneEventRaiser.this.lanes.remove(this.key);
+                }
+            }
+        }
+
+        /**
+         * Delivers the barrier and then queues the events that waited for it.
+         */
+        @Override
+        public void run() {
+            deliver(this.barrier);
+            List<Runnable> started = new ArrayList<>();
+            synchronized (LaneEventRaiser.this.lanes) {
+                this.barrierDone(started);
+            }
+            LaneEventRaiser.this.execute(started);
+        }
+
+        /**
+         * Drops the barrier the executor rejected, called with the lanes locked.
+         */
+        void reject(List<Event> dropped, List<Runnable> started) {
+            dropped.add(this.barrier);
+            this.barrierDone(started);
+        }
+
+        private void barrierDone(List<Runnable> started) {
+            this.barrier = null;
+            while (this.barrier == null && !this.backlog.isEmpty()) {
+                this.dispatch(this.backlog.poll(), started);
+            }
+            if (this.barrier == null && this.runningPartitions == 0) {
+                LaneEventRaiser.this.lanes.remove(this.key);
+            }
+        }
+    }
+
+    private final class Partition implements Runnable {
+        private final Lane lane;
+        private final ArrayDeque<Event> events = new ArrayDeque<>();
+        private boolean scheduled;
+
+        Partition(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Event event;
+                List<Runnable> started = null;
+                synchronized (LaneEventRaiser.this.lanes) {
+                    event = this.events.poll();
+                    if (event == null) {
+                        this.scheduled = false;
+                        started = new ArrayList<>(1);
+                        this.lane.partitionIdle(started);
+                    }
+                }
+                if (event == null) {
+                    LaneEventRaiser.this.execute(started);
+                    return;
+                }
+                deliver(event);
+            }
+            // the partition still has events, they are delivered after the lanes that are waiting for a thread
+            LaneEventRaiser.this.execute(Collections.<Runnable>singletonList(this));
+        }
+
+        /**
+         * Drops the events of the partition the executor rejected, called with the lanes locked.
+         */
+        void reject(List<Event> dropped, List<Runnable> started) {
+            dropped.addAll(this.events);
+            this.events.clear();
+            this.scheduled = false;
+            this.lane.partitionIdle(started);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.google.firebase.database.DataSnapshot;
+import java.util.Arrays;
+
+/**
+ * The locations a GeoQuery knows about, stored in parallel primitive arrays indexed by a key id instead of one object
+ * per key. Updates overwrite the arrays in place, so only adding a key and growing the table allocate.
+ *
+ * Keys are mapped to their ids by an open-addressing hash table with linear probing. Ids of removed keys are reused.
+ * Keys outside of the query are kept in a list ordered by their last update, so the oldest of them can be evicted.
+ * This class is not thread safe, GeoQuery only uses it while holding its lock.
+ */
+final class LocationTable {
+
+    static final int NOT_FOUND = -1;
+
+    private static final byte USED = 1;
+    private static final byte IN_QUERY = 2;
+    private static final byte OUT_OF_QUERY = 4;
+    private static final byte DEFERRED = 8;
+    private static final byte OUTRANKED = 16;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private long[] geoHashes = new long[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private DataSnapshot[] dataSnapshots = new DataSnapshot[INITIAL_CAPACITY];
+
+    // doubly linked list of the keys outside of the query, least recently updated first
+    private int[] previousOutOfQuery = new int[INITIAL_CAPACITY];
+    private int[] nextOutOfQuery = new int[INITIAL_CAPACITY];
+    private int oldestOutOfQuery = NOT_FOUND;
+    private int newestOutOfQuery = NOT_FOUND;
+    private int outOfQueryCount;
+
+    // id + 1 for every key, 0 for empty buckets
+    private int[] buckets = new int[INITIAL_CAPACITY * 2];
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeIdCount;
+    private int limit;
+    private int size;
+
+    /**
+     * @return The number of keys in this table
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return An upper bound for the ids in use, ids below it are in use if {@link #isUsed(int)} returns true
+     */
+    int limit() {
+        return this.limit;
+    }
+
+    boolean isUsed(int id) {
+        return (this.flags[id] & USED) != 0;
+    }
+
+    String key(int id) {
+        return this.keys[id];
+    }
+
+    double latitude(int id) {
+        return this.latitudes[id];
+    }
+
+    double longitude(int id) {
+        return this.longitudes[id];
+    }
+
+    /**
+     * @return The latitudes of all ids below {@link #limit()}, only valid until the next key is added
+     */
+    double[] latitudes() {
+        return this.latitudes;
+    }
+
+    /**
+     * @return The longitudes of all ids below {@link #limit()}, only valid until the next key is added
+     */
+    double[] longitudes() {
+        return this.longitudes;
+    }
+
+    long geoHash(int id) {
+        return this.geoHashes[id];
+    }
+
+    boolean isInQuery(int id) {
+        return (this.flags[id] & IN_QUERY) != 0;
+    }
+
+    DataSnapshot dataSnapshot(int id) {
+        return this.dataSnapshots[id];
+    }
+
+    /**
+     * @return The number of keys that are not in the query
+     */
+    int outOfQueryCount() {
+        return this.outOfQueryCount;
+    }
+
+    /**
+     * @return The id of the least recently updated key that is not in the query, or NOT_FOUND if there is none
+     */
+    int oldestOutOfQuery() {
+        return this.oldestOutOfQuery;
+    }
+
+    /**
+     * @return The id of the key or NOT_FOUND if the table doesn't contain the key
+     */
+    int find(String key) {
+        int mask = this.buckets.length - 1;
+        for (int bucket = hash(key) & mask; this.buckets[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int id = this.buckets[bucket] - 1;
+            if (this.keys[id].equals(key)) {
+                return id;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds a key that is not in the table yet. The location of the new key has to be set with
+     * {@link #set(int, double, double, long, boolean, DataSnapshot)}.
+     *
+     * @return The id of the key
+     */
+    int add(String key) {
+        int id;
+        if (this.freeIdCount > 0) {
+            id = this.freeIds[--this.freeIdCount];
+        } else {
+            if (this.limit == this.keys.length) {
+                this.grow();
+            }
+            id = this.limit++;
+        }
+        this.keys[id] = key;
+        this.flags[id] = USED;
+        this.insertBucket(id);
+        this.size++;
+        return id;
+    }
+
+    void set(int id, double latitude, double longitude, long geoHash, boolean inQuery, DataSnapshot dataSnapshot) {
+        this.latitudes[id] = latitude;
+        this.longitudes[id] = longitude;
+        this.geoHashes[id] = geoHash;
+        this.dataSnapshots[id] = dataSnapshot;
+        this.unlinkOutOfQuery(id);
+        byte kept = (byte) (this.flags[id] & (DEFERRED | OUTRANKED));
+        if (inQuery) {
+            this.flags[id] = (byte) (USED | IN_QUERY | kept);
+        } else {
+            this.flags[id] = (byte) (USED | OUT_OF_QUERY | kept);
+            this.previousOutOfQuery[id] = this.newestOutOfQuery;
+            this.nextOutOfQuery[id] = NOT_FOUND;
+            if (this.newestOutOfQuery == NOT_FOUND) {
+                this.oldestOutOfQuery = id;
+            } else {
+                this.nextOutOfQuery[this.newestOutOfQuery] = id;
+            }
+            this.newestOutOfQuery = id;
+            this.outOfQueryCount++;
+        }
+    }
+
+    private void unlinkOutOfQuery(int id) {
+        if ((this.flags[id] & OUT_OF_QUERY) == 0) {
+            return;
+        }
+        int previous = this.previousOutOfQuery[id];
+        int next = this.nextOutOfQuery[id];
+        if (previous == NOT_FOUND) {
+            this.oldestOutOfQuery = next;
+        } else {
+            this.nextOutOfQuery[previous] = next;
+        }
+        if (next == NOT_FOUND) {
+            this.newestOutOfQuery = previous;
+        } else {
+            this.previousOutOfQuery[next] = previous;
+        }
+        this.flags[id] &= ~OUT_OF_QUERY;
+        this.outOfQueryCount--;
+    }
+
+    /**
+     * @return Whether the entered event of the key waits until its range is loaded
+     */
+    boolean isDeferred(int id) {
+        return (this.flags[id] & DEFERRED) != 0;
+    }
+
+    void setDeferred(int id, boolean deferred) {
+        if (deferred) {
+            this.flags[id] |= DEFERRED;
+        } else {
+            this.flags[id] &= ~DEFERRED;
+        }
+    }
+
+    /**
+     * @return Whether the key is beyond the result limit of the query, so the listeners don't know it
+     */
+    boolean isOutranked(int id) {
+        return (this.flags[id] & OUTRANKED) != 0;
+    }
+
+    void setOutranked(int id, boolean outranked) {
+        if (outranked) {
+            this.flags[id] |= OUTRANKED;
+        } else {
+            this.flags[id] &= ~OUTRANKED;
+        }
+    }
+
+    void setDataSnapshot(int id, DataSnapshot dataSnapshot) {
+        this.dataSnapshots[id] = dataSnapshot;
+    }
+
+    /**
+     * Drops the data snapshots of all keys, keeping their locations.
+     */
+    void clearDataSnapshots() {
+        Arrays.fill(this.dataSnapshots, 0, this.limit, null);
+    }
+
+    void remove(int id) {
+        int mask = this.buckets.length - 1;
+        int bucket = hash(this.keys[id]) & mask;
+        while (this.buckets[bucket] != id + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        // shift the following buckets back, so lookups never have to skip removed keys
+        int next = (bucket + 1) & mask;
+        while (this.buckets[next] != 0) {
+            int home = hash(this.keys[this.buckets[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - bucket) & mask)) {
+                this.buckets[bucket] = this.buckets[next];
+                bucket = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.buckets[bucket] = 0;
+
+        this.unlinkOutOfQuery(id);
+        this.keys[id] = null;
+        this.dataSnapshots[id] = null;
+        this.flags[id] = 0;
+        if (this.freeIdCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length * 2);
+        }
+        this.freeIds[this.freeIdCount++] = id;
+        this.size--;
+    }
+
+    void clear() {
+        Arrays.fill(this.keys, 0, this.limit, null);
+        Arrays.fill(this.dataSnapshots, 0, this.limit, null);
+        Arrays.fill(this.flags, 0, this.limit, (byte) 0);
+        Arrays.fill(this.buckets, 0);
+        this.oldestOutOfQuery = NOT_FOUND;
+        this.newestOutOfQuery = NOT_FOUND;
+        this.outOfQueryCount = 0;
+        this.freeIdCount = 0;
+        this.limit = 0;
+        this.size = 0;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void insertBucket(int id) {
+        int mask = this.buckets.length - 1;
+        int bucket = hash(this.keys[id]) & mask;
+        while (this.buckets[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        this.buckets[bucket] = id + 1;
+    }
+
+    private void grow() {
+        int capacity = this.keys.length * 2;
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+        this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+        this.geoHashes = Arrays.copyOf(this.geoHashes, capacity);
+        this.flags = Arrays.copyOf(this.flags, capacity);
+        this.dataSnapshots = Arrays.copyOf(this.dataSnapshots, capacity);
+        this.previousOutOfQuery = Arrays.copyOf(this.previousOutOfQuery, capacity);
+        this.nextOutOfQuery = Arrays.copyOf(this.nextOutOfQuery, capacity);
+        // keep the load factor of the hash table at or below one half
+        this.buckets = new int[capacity * 2];
+        for (int id = 0; id < this.limit; id++) {
+            if (this.isUsed(id)) {
+                this.insertBucket(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.RangeReader;
+import com.firebase.geofire.util.GeoUtils;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the keys within a circle once for {@link GeoFire#queryOnce}. The ranges are read with a {@link RangeReader}
+ * if the store implements it, otherwise every range is subscribed until it is loaded. Keys outside of the radius are
+ * dropped as they arrive, so only the results are kept.
+ */
+final class OneShotQuery {
+
+    private class RangeRead implements GeoStore.RangeListener {
+        private GeoStore.Subscription subscription;
+        private boolean loaded;
+
+        @Override
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            OneShotQuery.this.entryRead(key, latitude, longitude, dataSnapshot);
+        }
+
+        @Override
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            OneShotQuery.this.entryRead(key, latitude, longitude, dataSnapshot);
+        }
+
+        @Override
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            // the results are a snapshot of the ranges while they were read
+        }
+
+        @Override
+        public void onRangeLoaded() {
+            synchronized (OneShotQuery.this) {
+                if (this.loaded) {
+                    return;
+                }
+                this.loaded = true;
+                if (this.subscription != null) {
+                    this.subscription.cancel();
+                }
+                OneShotQuery.this.rangeLoaded();
+            }
+        }
+
+        @Override
+        public void onRangeError(DatabaseError error) {
+            OneShotQuery.this.fail(error);
+        }
+    }
+
+    private final GeoFire geoFire;
+    private final GeoLocation center;
+    private final double radius;
+    private final GeoQueryResultCallback callback;
+    private final List<RangeRead> reads = new ArrayList<>();
+    private final Map<String, GeoQueryResult> results = new HashMap<>();
+    private int outstandingRanges;
+    private boolean done;
+
+    /**
+     * @param radius The radius of the query, in meters
+     */
+    OneShotQuery(GeoFire geoFire, GeoLocation center, double radius, GeoQueryResultCallback callback) {
+        this.geoFire = geoFire;
+        this.center = center;
+        this.radius = radius;
+        this.callback = callback;
+    }
+
+    synchronized void start() {
+        Set<GeoHashQuery> queries = this.geoFire.getQueryPlanner().plan(this.center, this.radius);
+        GeoStore store = this.geoFire.getStore();
+        RangeReader reader = store instanceof RangeReader ? (RangeReader) store : null;
+        this.outstandingRanges = queries.size();
+        // all reads are registered first, stores may load a range while it is read
+        for (int i = 0; i < queries.size(); i++) {
+            this.reads.add(new RangeRead());
+        }
+        int i = 0;
+        for (GeoHashQuery query: queries) {
+            RangeRead read = this.reads.get(i++);
+            if (reader != null) {
+                reader.read(query.getStartValue(), query.getEndValue(), read);
+            } else {
+                read.subscription = store.subscribe(query.getStartValue(), query.getEndValue(), read);
+                if (read.loaded || this.done) {
+                    read.subscription.cancel();
+                }
+            }
+        }
+        if (queries.isEmpty()) {
+            this.finish();
+        }
+    }
+
+    private synchronized void entryRead(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+        if (this.done) {
+            return;
+        }
+        double distance = GeoUtils.distance(latitude, longitude, this.center.latitude, this.center.longitude);
+        if (distance <= this.radius) {
+            // overlapping ranges deliver a key more than once
+            this.results.put(key, new GeoQueryResult(key, new GeoLocation(latitude, longitude), distance,
+                    dataSnapshot));
+        } else {
+            this.results.remove(key);
+        }
+    }
+
+    private void rangeLoaded() {
+        this.outstandingRanges--;
+        if (this.outstandingRanges == 0 && !this.done) {
+            this.finish();
+        }
+    }
+
+    private void finish() {
+        this.done = true;
+        final List<GeoQueryResult> results = new ArrayList<>(this.results.values());
+        this.results.clear();
+        Collections.sort(results, new Comparator<GeoQueryResult>() {
+            @Override
+            public int compare(GeoQueryResult result1, GeoQueryResult result2) {
+                return Double.compare(result1.getDistance(), result2.getDistance());
+            }
+        });
+        this.geoFire.raiseEvent(callback, null, new Runnable() {
+            @Override
+            public void run() {
+                callback.onQueryResult(results);
+            }
+        });
+    }
+
+    private synchronized void fail(final DatabaseError error) {
+        if (this.done) {
+            return;
+        }
+        this.done = true;
+        this.results.clear();
+        for (RangeRead read: this.reads) {
+            if (read.subscription != null) {
+                read.subscription.cancel();
+            }
+        }
+        this.geoFire.raiseEvent(callback, null, new Runnable() {
+            @Override
+            public void run() {
+                callback.onCancelled(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package com.firebase.geofire;
+
+/**
+ * Decides what a GeoQuery keeps for keys that are inside the geohash ranges it subscribes to, but outside of its
+ * radius. Those keys are not part of the result, but they can outnumber the keys in the query by far.
+ *
+ * Keys that are dropped by a policy are derived again when they change in the store, or by reading the ranges again
+ * once the center or radius of the query changes.
+ */
+public final class OutOfRadiusPolicy {
+
+    /** Keeps the location and data snapshot of every key. This is the default. */
+    public static final OutOfRadiusPolicy RETAIN = new OutOfRadiusPolicy(false, Integer.MAX_VALUE);
+
+    /** Keeps only the location of keys outside of the radius and drops their data snapshots. */
+    public static final OutOfRadiusPolicy COMPACT = new OutOfRadiusPolicy(true, Integer.MAX_VALUE);
+
+    /** Keeps nothing for keys outside of the radius. */
+    public static final OutOfRadiusPolicy DROP = new OutOfRadiusPolicy(true, 0);
+
+    private final boolean dropsDataSnapshots;
+    private final int maxKeys;
+
+    private OutOfRadiusPolicy(boolean dropsDataSnapshots, int maxKeys) {
+        this.dropsDataSnapshots = dropsDataSnapshots;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Keeps the locations of at most the given number of keys outside of the radius, evicting the least recently
+     * updated ones first. Data snapshots of keys outside of the radius are dropped.
+     *
+     * @throws IllegalArgumentException If maxKeys is negative
+     * @param maxKeys The maximum number of keys outside of the radius to keep
+     * @return The policy
+     */
+    public static OutOfRadiusPolicy leastRecentlyUpdated(int maxKeys) {
+        if (maxKeys < 0) {
+            throw new IllegalArgumentException("The maximum number of keys must not be negative!");
+        }
+        return new OutOfRadiusPolicy(true, maxKeys);
+    }
+
+    boolean dropsDataSnapshots() {
+        return this.dropsDataSnapshots;
+    }
+
+    int getMaxKeys() {
+        return this.maxKeys;
+    }
+
+    @Override
+    public String toString() {
+        if (this == RETAIN) {
+            return "OutOfRadiusPolicy.RETAIN";
+        } else if (this == DROP) {
+            return "OutOfRadiusPolicy.DROP";
+        } else if (this.maxKeys == Integer.MAX_VALUE) {
+            return "OutOfRadiusPolicy.COMPACT";
+        } else {
+            return "OutOfRadiusPolicy.leastRecentlyUpdated(" + this.maxKeys + ")";
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * GeoQuery keeps a {@link GeoQueryPrimitiveEventListener} with its other listeners in this bridge. Key events of the
+ * listener are published to the event ring of GeoFire directly, only the ready and error events go through the
+ * bridge.
+ */
+final class PrimitiveListenerBridge implements GeoQueryDataEventListener {
+    private final GeoQueryPrimitiveEventListener listener;
+
+    PrimitiveListenerBridge(GeoQueryPrimitiveEventListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        this.listener = listener;
+    }
+
+    GeoQueryPrimitiveEventListener getListener() {
+        return this.listener;
+    }
+
+    @Override
+    public void onDataEntered(DataSnapshot dataSnapshot, GeoLocation location) {
+        // No-op, key events are published to the event ring.
+    }
+
+    @Override
+    public void onDataExited(DataSnapshot dataSnapshot) {
+        // No-op, key events are published to the event ring.
+    }
+
+    @Override
+    public void onDataMoved(DataSnapshot dataSnapshot, GeoLocation location) {
+        // No-op, key events are published to the event ring.
+    }
+
+    @Override
+    public void onDataChanged(DataSnapshot dataSnapshot, GeoLocation location) {
+        // No-op.
+    }
+
+    @Override
+    public void onGeoQueryReady() {
+        this.listener.onGeoQueryReady();
+    }
+
+    @Override
+    public void onGeoQueryError(DatabaseError error) {
+        this.listener.onGeoQueryError(error);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return this.listener.equals(((PrimitiveListenerBridge) o).listener);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.listener.hashCode();
+    }
+}
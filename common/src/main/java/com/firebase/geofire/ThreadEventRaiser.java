@@ -12,7 +12,7 @@ class ThreadEventRaiser implements EventRaiser {
     }
 
     @Override
-    public void raiseEvent(Runnable r) {
+    public void raiseEvent(Object listener, String key, Runnable r) {
         this.executorService.submit(r);
     }
 }
@@ -0,0 +1,240 @@
+/*
+ * Firebase GeoFire Java Library
+ *
+ * Copyright © 2014 Firebase - All Rights Reserved
+ * https://www.firebase.com
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binaryform must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY FIREBASE AS IS AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO
+ * EVENT SHALL FIREBASE BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE
+ * OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.firebase.geofire;
+
+import com.firebase.geofire.store.GeoStore;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-behind buffer for a GeoFire instance. Location updates are held locally and only the newest location for
+ * every key is written, batched into a single multi-path update, once the flush interval has passed or the number of
+ * pending keys reaches the flush threshold. The WriteBehindBuffer class is thread safe.
+ *
+ * A buffer is created with {@link GeoFire#enableWriteBehind(long, int, int)}.
+ */
+public final class WriteBehindBuffer {
+
+    private static class PendingWrite {
+        // null if the key is to be removed
+        GeoLocation location;
+        final List<GeoFire.CompletionListener> completionListeners = new ArrayList<>(1);
+
+        PendingWrite(GeoLocation location) {
+            this.location = location;
+        }
+    }
+
+    private final GeoFire geoFire;
+    private final int flushThreshold;
+    private final int maxInFlightBatches;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private int inFlightBatches;
+    private boolean closed;
+
+    private final AtomicLong coalescedUpdates = new AtomicLong();
+    private final AtomicLong writtenUpdates = new AtomicLong();
+    private final AtomicLong writtenBatches = new AtomicLong();
+
+    WriteBehindBuffer(GeoFire geoFire, long flushIntervalMillis, int flushThreshold, int maxInFlightBatches) {
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be larger than zero!");
+        }
+        if (flushThreshold < 1) {
+            throw new IllegalArgumentException("Flush threshold must be larger than zero!");
+        }
+        if (maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("Maximum number of in-flight batches must be larger than zero!");
+        }
+        this.geoFire = geoFire;
+        this.flushThreshold = flushThreshold;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GeoFire-WriteBehind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return False if the buffer was closed and the update has to be written straight through
+     */
+    boolean setLocation(String key, GeoLocation location, GeoFire.CompletionListener completionListener) {
+        return this.enqueue(key, location, completionListener);
+    }
+
+    /**
+     * @return False if the buffer was closed and the removal has to be written straight through
+     */
+    boolean removeLocation(String key, GeoFire.CompletionListener completionListener) {
+        return this.enqueue(key, null, completionListener);
+    }
+
+    private boolean enqueue(String key, GeoLocation location, GeoFire.CompletionListener completionListener) {
+        boolean shouldFlush;
+        synchronized (this) {
+            if (this.closed) {
+                return false;
+            }
+            PendingWrite pending = this.pendingWrites.get(key);
+            if (pending == null) {
+                pending = new PendingWrite(location);
+                this.pendingWrites.put(key, pending);
+            } else {
+                pending.location = location;
+                this.coalescedUpdates.incrementAndGet();
+            }
+            if (completionListener != null) {
+                pending.completionListeners.add(completionListener);
+            }
+            shouldFlush = this.pendingWrites.size() >= this.flushThreshold;
+        }
+        if (shouldFlush) {
+            this.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Writes all pending updates as a single batch, unless the maximum number of in-flight batches is reached. In
+     * that case the updates stay pending and keep being coalesced until an earlier batch completes.
+     */
+    public void flush() {
+        this.flush(false);
+    }
+
+    private void flush(boolean ignoreInFlightLimit) {
+        final Map<String, PendingWrite> batch;
+        synchronized (this) {
+            if (this.pendingWrites.isEmpty()) {
+                return;
+            }
+            if (!ignoreInFlightLimit && this.inFlightBatches >= this.maxInFlightBatches) {
+                return;
+            }
+            batch = new LinkedHashMap<>(this.pendingWrites);
+            this.pendingWrites.clear();
+            this.inFlightBatches++;
+        }
+
+        Map<String, GeoLocation> locations = new LinkedHashMap<>(batch.size());
+        for (Map.Entry<String, PendingWrite> entry: batch.entrySet()) {
+            locations.put(entry.getKey(), entry.getValue().location);
+        }
+        this.writtenUpdates.addAndGet(batch.size());
+        this.writtenBatches.incrementAndGet();
+        this.geoFire.writeLocations(locations, new GeoStore.CompletionListener() {
+            @Override
+            public void onComplete(DatabaseError error) {
+                boolean shouldFlush;
+                synchronized (WriteBehindBuffer.this) {
+                    WriteBehindBuffer.this.inFlightBatches--;
+                    shouldFlush = WriteBehindBuffer.this.pendingWrites.size() >= WriteBehindBuffer.this.flushThreshold;
+                }
+                for (Map.Entry<String, PendingWrite> entry: batch.entrySet()) {
+                    for (GeoFire.CompletionListener listener: entry.getValue().completionListeners) {
+                        listener.onComplete(entry.getKey(), error);
+                    }
+                }
+                if (shouldFlush) {
+                    WriteBehindBuffer.this.flush();
+                }
+            }
+        });
+    }
+
+    /**
+     * Flushes all pending updates, regardless of the in-flight limit, and stops the periodic flush. Only called by
+     * {@link GeoFire#disableWriteBehind()}, which detaches the buffer from its GeoFire first.
+     */
+    void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        this.scheduler.shutdown();
+        this.flush(true);
+    }
+
+    /**
+     * @return The number of updates that were replaced by a newer update for the same key before being written
+     */
+    public long getCoalescedCount() {
+        return this.coalescedUpdates.get();
+    }
+
+    /**
+     * @return The number of key updates that were sent to the database
+     */
+    public long getWrittenCount() {
+        return this.writtenUpdates.get();
+    }
+
+    /**
+     * @return The number of batches that were sent to the database
+     */
+    public long getBatchCount() {
+        return this.writtenBatches.get();
+    }
+
+    /**
+     * @return The number of keys with an update that was not yet sent to the database
+     */
+    public synchronized int getPendingCount() {
+        return this.pendingWrites.size();
+    }
+
+    /**
+     * @return The number of batches sent to the database that did not complete yet
+     */
+    public synchronized int getInFlightCount() {
+        return this.inFlightBatches;
+    }
+}
@@ -0,0 +1,387 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.Base32Utils;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plans queries by weighing the cost of listening to a range against the cost of downloading keys. For each
+ * precision around the one of {@link GeoHashQuery#queriesAtLocation(GeoLocation, double)} it covers the circle with
+ * the geo hash cells that intersect it, merges adjacent cells into ranges and keeps the precision with the lowest
+ * expected cost:
+ *
+ * <pre>
+ * rangeCost * ranges + keyCost * expected keys in the ranges
+ * </pre>
+ *
+ * A high range cost favors a few coarse ranges, a high key cost favors many small ranges that follow the circle
+ * closely. Cells of the chosen precision on the edge of the circle are then subdivided further as long as the keys
+ * outside of the circle they would no longer download cost more than the extra ranges, so with a skewed density like
+ * a {@link KeyHistogram} dense cells are covered finely and sparse cells stay coarse.
+ */
+public final class CostModelPlanner implements QueryPlanner {
+
+    // ranges must not be more precise than the geo hashes GeoFire stores
+    private static final int MAX_BITS = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    private static final int LONG_PRECISION = GeoHash.MAX_LONG_PRECISION;
+    private static final int LONG_BITS = LONG_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // the precisions tried around the precision of the bounding box
+    private static final int COARSER_BITS = 2;
+    private static final int FINER_BITS = 8;
+
+    // precisions that need more cells to cover the circle are not considered
+    private static final int MAX_CELLS = 1024;
+
+    // the number of cells that may be subdivided per plan
+    private static final int MAX_SUBDIVISIONS = 1024;
+
+    // cells this close to the circle are included, to be safe from rounding errors
+    private static final double TOLERANCE = 0.001;
+
+    private final double rangeCost;
+    private final double keyCost;
+    private final KeyDensity density;
+
+    /**
+     * @param rangeCost The cost of listening to a range
+     * @param keyCost   The cost of downloading a key
+     * @param density   The density of the keys
+     */
+    public CostModelPlanner(double rangeCost, double keyCost, KeyDensity density) {
+        if (density == null) {
+            throw new NullPointerException();
+        }
+        if (rangeCost < 0 || keyCost < 0) {
+            throw new IllegalArgumentException("Costs must not be negative!");
+        }
+        this.rangeCost = rangeCost;
+        this.keyCost = keyCost;
+        this.density = density;
+    }
+
+    public double getRangeCost() {
+        return this.rangeCost;
+    }
+
+    public double getKeyCost() {
+        return this.keyCost;
+    }
+
+    public KeyDensity getDensity() {
+        return this.density;
+    }
+
+    /**
+     * Returns the expected cost of any plan under this cost model, e.g. to compare it to the plans of other planners.
+     *
+     * @param queries The ranges of the plan
+     * @return The expected cost of the plan
+     */
+    public double cost(Collection<GeoHashQuery> queries) {
+        return this.rangeCost * queries.size() + this.keyCost * GeoHashCoverage.expectedKeys(queries, this.density);
+    }
+
+    @Override
+    public Set<GeoHashQuery> plan(GeoLocation center, double radius) {
+        int boundingBoxBits = Math.max(1, Math.min(MAX_BITS, GeoHashQuery.Utils.bitsForBoundingBox(center, radius)));
+        int bits = Math.max(1, boundingBoxBits - COARSER_BITS);
+        List<Cell> cells = cellsInCircle(center, radius, bits);
+        while (cells == null) {
+            // close to the poles even the bounding box precision can need too many cells, one bit needs two
+            bits--;
+            cells = cellsInCircle(center, radius, bits);
+        }
+        int finestBits = Math.min(MAX_BITS, boundingBoxBits + FINER_BITS);
+        List<Cell> bestCells = null;
+        double[] bestKeys = null;
+        long[] bestRanges = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        while (cells != null) {
+            double[] keys = new double[cells.size()];
+            double totalKeys = 0;
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = this.density.expectedKeys(cells.get(i).value(), cells.get(i).bits);
+                totalKeys += keys[i];
+            }
+            long[] ranges = ranges(cells);
+            double cost = this.rangeCost * (ranges.length/2) + this.keyCost * totalKeys;
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestCells = cells;
+                bestKeys = keys;
+                bestRanges = ranges;
+            }
+            bits++;
+            cells = (bits <= finestBits) ? cellsInCircle(center, radius, bits) : null;
+        }
+
+        // subdivide the cells of the best precision where the density makes it worthwhile
+        List<Cell> subdivided = new ArrayList<>();
+        int[] budget = { MAX_SUBDIVISIONS };
+        for (int i = 0; i < bestKeys.length; i++) {
+            this.subdivide(bestCells.get(i), bestKeys[i], center, radius, subdivided, budget);
+        }
+        if (subdivided.size() > bestCells.size()) {
+            double subdividedKeys = 0;
+            for (Cell cell: subdivided) {
+                subdividedKeys += this.density.expectedKeys(cell.value(), cell.bits);
+            }
+            long[] ranges = ranges(subdivided);
+            if (this.rangeCost * (ranges.length/2) + this.keyCost * subdividedKeys < bestCost) {
+                bestRanges = ranges;
+            }
+        }
+        return toQueries(bestRanges);
+    }
+
+    /**
+     * Subdivides a cell if leaving out its parts outside of the circle saves more than the ranges that the gaps add.
+     * A cell whose keys cost less than a range or that lies within the circle is kept as it is.
+     *
+     * @return The cost of the keys and gaps of the cells added to the result
+     */
+    private double subdivide(Cell cell, double keys, GeoLocation center, double radius, List<Cell> result,
+                             int[] budget) {
+        double keepCost = this.keyCost * keys;
+        if (keepCost <= this.rangeCost || cell.bits >= MAX_BITS || budget[0] <= 0 || cell.isWithin(center, radius)) {
+            result.add(cell);
+            return keepCost;
+        }
+        budget[0]--;
+        int size = result.size();
+        double cost = 0;
+        for (Cell child: cell.children()) {
+            if (child.distance(center) <= radius + TOLERANCE) {
+                double childKeys = this.density.expectedKeys(child.value(), child.bits);
+                cost += this.subdivide(child, childKeys, center, radius, result, budget);
+            } else {
+                // the gap left by the child splits a range
+                cost += this.rangeCost;
+            }
+        }
+        if (cost < keepCost) {
+            return cost;
+        }
+        result.subList(size, result.size()).clear();
+        result.add(cell);
+        return keepCost;
+    }
+
+    /**
+     * @return The cells of the given precision that intersect the circle, or null if there are too many of them
+     */
+    private static List<Cell> cellsInCircle(GeoLocation center, double radius, int bits) {
+        int latitudeBits = bits/2;
+        int longitudeBits = (bits + 1)/2;
+        double latitudeSize = 180.0/(1L << latitudeBits);
+        double longitudeSize = 360.0/(1L << longitudeBits);
+
+        double angle = (radius + TOLERANCE)/GeoHashCoverage.EARTH_MEAN_RADIUS;
+        double latitudeDelta = Math.toDegrees(angle);
+        double south = center.latitude - latitudeDelta;
+        double north = center.latitude + latitudeDelta;
+        long lastLatitudeIndex = (1L << latitudeBits) - 1;
+        long firstLatitude = Math.max(0, (long) Math.floor((south + 90)/latitudeSize));
+        long lastLatitude = Math.min(lastLatitudeIndex, (long) Math.floor((north + 90)/latitudeSize));
+
+        long longitudeCount = 1L << longitudeBits;
+        long firstLongitude;
+        long longitudeSpan;
+        double sinAngle = Math.sin(angle);
+        double cosLatitude = Math.cos(Math.toRadians(center.latitude));
+        if (north >= 90 || south <= -90 || angle >= Math.PI/2 || sinAngle >= cosLatitude) {
+            // the circle contains a pole
+            firstLongitude = 0;
+            longitudeSpan = longitudeCount;
+        } else {
+            double longitudeDelta = Math.toDegrees(Math.asin(sinAngle/cosLatitude));
+            firstLongitude = (long) Math.floor((center.longitude - longitudeDelta + 180)/longitudeSize);
+            long lastLongitude = (long) Math.floor((center.longitude + longitudeDelta + 180)/longitudeSize);
+            longitudeSpan = Math.min(longitudeCount, lastLongitude - firstLongitude + 1);
+            firstLongitude = ((firstLongitude % longitudeCount) + longitudeCount) % longitudeCount;
+        }
+
+        if ((lastLatitude - firstLatitude + 1) * longitudeSpan > MAX_CELLS) {
+            return null;
+        }
+        List<Cell> cells = new ArrayList<>();
+        for (long latitudeIndex = firstLatitude; latitudeIndex <= lastLatitude; latitudeIndex++) {
+            for (long i = 0; i < longitudeSpan; i++) {
+                Cell cell = new Cell(latitudeIndex, (firstLongitude + i) % longitudeCount, bits);
+                if (cell.distance(center) <= radius + TOLERANCE) {
+                    cells.add(cell);
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return The start and end of the ranges of the cells at a precision of 60 bits, adjacent cells are merged
+     */
+    private static long[] ranges(List<Cell> cells) {
+        long[] starts = new long[cells.size()];
+        long[] ends = new long[cells.size()];
+        for (int i = 0; i < starts.length; i++) {
+            Cell cell = cells.get(i);
+            starts[i] = cell.value() << (LONG_BITS - cell.bits);
+            ends[i] = starts[i] + (1L << (LONG_BITS - cell.bits));
+        }
+        // the cells do not overlap, so their starts and ends sort in the same order
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            if (count > 0 && ends[count - 1] == starts[i]) {
+                ends[count - 1] = ends[i];
+            } else {
+                starts[count] = starts[i];
+                ends[count] = ends[i];
+                count++;
+            }
+        }
+        long[] ranges = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            ranges[2 * i] = starts[i];
+            ranges[2 * i + 1] = ends[i];
+        }
+        return ranges;
+    }
+
+    private static Set<GeoHashQuery> toQueries(long[] ranges) {
+        Set<GeoHashQuery> queries = new HashSet<>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            queries.add(GeoHashCoverage.toQuery(ranges[i], ranges[i + 1]));
+        }
+        return queries;
+    }
+
+    @Override
+    public String toString() {
+        return "CostModelPlanner{" +
+                "rangeCost=" + this.rangeCost +
+                ", keyCost=" + this.keyCost +
+                ", density=" + this.density +
+                '}';
+    }
+
+    /**
+     * A geo hash cell, by the indices of its latitude and longitude intervals.
+     */
+    private static final class Cell {
+        private final long latitudeIndex;
+        private final long longitudeIndex;
+        private final int bits;
+
+        Cell(long latitudeIndex, long longitudeIndex, int bits) {
+            this.latitudeIndex = latitudeIndex;
+            this.longitudeIndex = longitudeIndex;
+            this.bits = bits;
+        }
+
+        /**
+         * @return The bits of the geo hash of the cell, the first bit halves the longitude
+         */
+        long value() {
+            int latitudeBits = this.bits/2;
+            int longitudeBits = (this.bits + 1)/2;
+            long value = 0;
+            for (int i = 0; i < this.bits; i++) {
+                if (i % 2 == 0) {
+                    longitudeBits--;
+                    value = (value << 1) | ((this.longitudeIndex >>> longitudeBits) & 1);
+                } else {
+                    latitudeBits--;
+                    value = (value << 1) | ((this.latitudeIndex >>> latitudeBits) & 1);
+                }
+            }
+            return value;
+        }
+
+        /**
+         * @return The distance from a location to the closest point of the cell, in meters
+         */
+        double distance(GeoLocation location) {
+            double latitudeSize = 180.0/(1L << (this.bits/2));
+            double longitudeSize = 360.0/(1L << ((this.bits + 1)/2));
+            double south = -90 + this.latitudeIndex * latitudeSize;
+            double north = south + latitudeSize;
+            double west = -180 + this.longitudeIndex * longitudeSize;
+
+            double eastOfWest = (((location.longitude - west) % 360) + 360) % 360;
+            if (eastOfWest <= longitudeSize) {
+                return GeoUtils.distance(location.latitude, location.longitude,
+                        clamp(location.latitude, south, north), location.longitude);
+            }
+            // the closest point is on the closer of the meridians bounding the cell
+            double gap;
+            double longitude;
+            if (eastOfWest - longitudeSize <= 360 - eastOfWest) {
+                gap = eastOfWest - longitudeSize;
+                longitude = west + longitudeSize;
+            } else {
+                gap = 360 - eastOfWest;
+                longitude = west;
+            }
+            double closest;
+            if (gap >= 90) {
+                closest = location.latitude >= 0 ? 90 : -90;
+            } else {
+                double tangent = Math.tan(Math.toRadians(location.latitude));
+                closest = Math.toDegrees(Math.atan(tangent/Math.cos(Math.toRadians(gap))));
+            }
+            return GeoUtils.distance(location.latitude, location.longitude, clamp(closest, south, north), longitude);
+        }
+
+        /**
+         * @return The two halves of the cell with one more bit
+         */
+        Cell[] children() {
+            if (this.bits % 2 == 0) {
+                // the next bit halves the longitude
+                return new Cell[] {
+                        new Cell(this.latitudeIndex, this.longitudeIndex * 2, this.bits + 1),
+                        new Cell(this.latitudeIndex, this.longitudeIndex * 2 + 1, this.bits + 1)
+                };
+            } else {
+                return new Cell[] {
+                        new Cell(this.latitudeIndex * 2, this.longitudeIndex, this.bits + 1),
+                        new Cell(this.latitudeIndex * 2 + 1, this.longitudeIndex, this.bits + 1)
+                };
+            }
+        }
+
+        /**
+         * @return Whether the whole cell is within the circle, the farthest point of a cell is one of its corners
+         * unless it spans the meridian opposite of the center
+         */
+        boolean isWithin(GeoLocation center, double radius) {
+            double latitudeSize = 180.0/(1L << (this.bits/2));
+            double longitudeSize = 360.0/(1L << ((this.bits + 1)/2));
+            double south = -90 + this.latitudeIndex * latitudeSize;
+            double west = -180 + this.longitudeIndex * longitudeSize;
+            if ((((center.longitude + 180 - west) % 360) + 360) % 360 <= longitudeSize) {
+                // along the meridian opposite of the center the distance is largest within a parallel
+                return false;
+            }
+            return GeoUtils.distance(center.latitude, center.longitude, south, west) <= radius
+                    && GeoUtils.distance(center.latitude, center.longitude, south, west + longitudeSize) <= radius
+                    && GeoUtils.distance(center.latitude, center.longitude, south + latitudeSize, west) <= radius
+                    && GeoUtils.distance(center.latitude, center.longitude, south + latitudeSize,
+                            west + longitudeSize) <= radius;
+        }
+
+        private static double clamp(double value, double min, double max) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+}
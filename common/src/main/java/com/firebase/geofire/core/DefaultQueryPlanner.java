@@ -0,0 +1,27 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+
+import java.util.Set;
+
+/**
+ * Plans queries with {@link GeoHashQuery#queriesAtLocation(GeoLocation, double)}, which covers the bounding box of
+ * the circle with the geo hashes of its center and its eight neighbors.
+ */
+public final class DefaultQueryPlanner implements QueryPlanner {
+
+    public static final DefaultQueryPlanner INSTANCE = new DefaultQueryPlanner();
+
+    private DefaultQueryPlanner() {
+    }
+
+    @Override
+    public Set<GeoHashQuery> plan(GeoLocation center, double radius) {
+        return GeoHashQuery.queriesAtLocation(center, radius);
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultQueryPlanner";
+    }
+}
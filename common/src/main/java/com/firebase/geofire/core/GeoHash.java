@@ -9,7 +9,7 @@ public class GeoHash {
     private final String geoHash;
 
     // The default precision of a geohash
-    private static final int DEFAULT_PRECISION = 10;
+    public static final int DEFAULT_PRECISION = 10;
 
     // The maximal precision of a geohash
     public static final int MAX_PRECISION = 22;
@@ -17,6 +17,9 @@ public class GeoHash {
     // The maximal number of bits precision for a geohash
     public static final int MAX_PRECISION_BITS = MAX_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
 
+    // The maximal precision of a geohash that fits into a long
+    public static final int MAX_LONG_PRECISION = 12;
+
     public GeoHash(double latitude, double longitude) {
         this(latitude, longitude, DEFAULT_PRECISION);
     }
@@ -71,6 +74,142 @@ public class GeoHash {
         return this.geoHash;
     }
 
+    /**
+     * Packs a geo hash into a long, 5 bits per character with the last character in the lowest bits. Geo hashes of
+     * the same precision compare the same as longs and as strings.
+     *
+     * @param hash A geo hash with at most MAX_LONG_PRECISION characters
+     * @return The packed geo hash
+     */
+    public static long toLong(String hash) {
+        if (hash.length() > MAX_LONG_PRECISION) {
+            throw new IllegalArgumentException("GeoHash is too long to fit into a long: " + hash);
+        }
+        long value = 0;
+        for (int i = 0; i < hash.length(); i++) {
+            value = (value << Base32Utils.BITS_PER_BASE32_CHAR) | Base32Utils.base32CharToValue(hash.charAt(i));
+        }
+        return value;
+    }
+
+    /**
+     * Computes the packed geo hash of a location without creating a GeoHash. The result is the same as packing the
+     * geo hash string of the location with {@link #toLong(String)}.
+     *
+     * @param latitude  The latitude of the location
+     * @param longitude The longitude of the location
+     * @param precision The number of characters of the geo hash, at most MAX_LONG_PRECISION
+     * @return The packed geo hash
+     */
+    public static long toLong(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_LONG_PRECISION) {
+            throw new IllegalArgumentException("Precision of a packed GeoHash must be between 1 and " + MAX_LONG_PRECISION + "!");
+        }
+        if (!GeoLocation.coordinatesValid(latitude, longitude)) {
+            throw new IllegalArgumentException(String.format(US, "Not valid location coordinates: [%f, %f]", latitude, longitude));
+        }
+        double longitudeMin = -180;
+        double longitudeMax = 180;
+        double latitudeMin = -90;
+        double latitudeMax = 90;
+        long value = 0;
+        for (int bit = 0; bit < precision * Base32Utils.BITS_PER_BASE32_CHAR; bit++) {
+            if (bit % 2 == 0) {
+                double mid = (longitudeMin + longitudeMax)/2;
+                if (longitude > mid) {
+                    value = (value << 1) + 1;
+                    longitudeMin = mid;
+                } else {
+                    value = value << 1;
+                    longitudeMax = mid;
+                }
+            } else {
+                double mid = (latitudeMin + latitudeMax)/2;
+                if (latitude > mid) {
+                    value = (value << 1) + 1;
+                    latitudeMin = mid;
+                } else {
+                    value = value << 1;
+                    latitudeMax = mid;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Unpacks a geo hash packed by {@link #toLong(String)}.
+     *
+     * @param value     The packed geo hash
+     * @param precision The number of characters of the geo hash
+     * @return The geo hash
+     */
+    public static String fromLong(long value, int precision) {
+        if (precision < 0 || precision > MAX_LONG_PRECISION) {
+            throw new IllegalArgumentException("Precision of a packed GeoHash must be less than " + (MAX_LONG_PRECISION + 1) + "!");
+        }
+        char[] buffer = new char[precision];
+        for (int i = precision - 1; i >= 0; i--) {
+            buffer[i] = Base32Utils.valueToBase32Char((int) (value & 31));
+            value >>>= Base32Utils.BITS_PER_BASE32_CHAR;
+        }
+        return new String(buffer);
+    }
+
+    /**
+     * Returns the smallest packed geo hash of the given precision that is not smaller than a range bound. The bound
+     * may be of any length and may contain '~', which sorts after every geo hash character, like the bounds of
+     * {@link GeoHashQuery}.
+     *
+     * @param bound     The inclusive start of a range
+     * @param precision The precision of the geo hashes in the range
+     * @return The packed start of the range, or 32^precision if no geo hash of this precision is in the range
+     */
+    public static long lowerBoundToLong(String bound, int precision) {
+        long value = 0;
+        int length = Math.min(bound.length(), precision);
+        for (int i = 0; i < length; i++) {
+            char c = bound.charAt(i);
+            if (c == '~') {
+                // every hash with this prefix is smaller, continue at the next prefix
+                return (value + 1) << (Base32Utils.BITS_PER_BASE32_CHAR * (precision - i));
+            }
+            value = (value << Base32Utils.BITS_PER_BASE32_CHAR) | Base32Utils.base32CharToValue(c);
+        }
+        if (bound.length() > precision) {
+            // the hash equal to the prefix of the bound is smaller than the bound
+            return value + 1;
+        }
+        return value << (Base32Utils.BITS_PER_BASE32_CHAR * (precision - length));
+    }
+
+    /**
+     * Returns the largest packed geo hash of the given precision that is not larger than a range bound. The bound
+     * may be of any length and may contain '~', which sorts after every geo hash character, like the bounds of
+     * {@link GeoHashQuery}.
+     *
+     * @param bound     The inclusive end of a range
+     * @param precision The precision of the geo hashes in the range
+     * @return The packed end of the range, or -1 if no geo hash of this precision is in the range
+     */
+    public static long upperBoundToLong(String bound, int precision) {
+        long value = 0;
+        int length = Math.min(bound.length(), precision);
+        for (int i = 0; i < length; i++) {
+            char c = bound.charAt(i);
+            if (c == '~') {
+                // every hash with this prefix is smaller
+                return ((value + 1) << (Base32Utils.BITS_PER_BASE32_CHAR * (precision - i))) - 1;
+            }
+            value = (value << Base32Utils.BITS_PER_BASE32_CHAR) | Base32Utils.base32CharToValue(c);
+        }
+        if (bound.length() >= precision) {
+            return value;
+        }
+        // hashes that start with a shorter bound are larger than the bound
+        return (value << (Base32Utils.BITS_PER_BASE32_CHAR * (precision - length))) - 1;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
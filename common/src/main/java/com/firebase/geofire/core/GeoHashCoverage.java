@@ -0,0 +1,218 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.Base32Utils;
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Measures the area of the earth covered by geo hash ranges and the number of keys in them, to compare how much a
+ * plan downloads with the circle it was planned for. Areas are in square meters on a sphere with the mean radius of
+ * the earth, like {@link com.firebase.geofire.util.GeoUtils#distance(double, double, double, double)}.
+ */
+public final class GeoHashCoverage {
+
+    static final double EARTH_MEAN_RADIUS = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS)/2;
+
+    private static final int PRECISION = GeoHash.MAX_LONG_PRECISION;
+    private static final int PRECISION_BITS = PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // the area of a cell, to measure ranges like keys of a density
+    private static final KeyDensity AREA = new KeyDensity() {
+        @Override
+        public double expectedKeys(long cell, int bits) {
+            return cellArea(cell, bits);
+        }
+    };
+
+    private GeoHashCoverage() {
+        throw new AssertionError("No instances.");
+    }
+
+    /**
+     * @param radius The radius of a circle, in meters
+     * @return The area of the circle on the earth, in square meters
+     */
+    public static double circleArea(double radius) {
+        double angle = Math.min(radius/EARTH_MEAN_RADIUS, Math.PI);
+        return 2 * Math.PI * EARTH_MEAN_RADIUS * EARTH_MEAN_RADIUS * (1 - Math.cos(angle));
+    }
+
+    /**
+     * Returns the area of the cell of a geo hash prefix.
+     *
+     * @param value The first bits of a geo hash, the last bit is the least significant
+     * @param bits  The number of bits, at most 64
+     * @return The area of the cell, in square meters
+     */
+    public static double cellArea(long value, int bits) {
+        if (bits < 0 || bits > Long.SIZE) {
+            throw new IllegalArgumentException("Number of bits must be between 0 and " + Long.SIZE + "!");
+        }
+        // the first bit halves the longitude, the bits alternate from there
+        int longitudeBits = (bits + 1)/2;
+        int latitudeBits = bits/2;
+        long latitudeIndex = 0;
+        for (int i = 0; i < bits; i++) {
+            int bit = bits - 1 - i;
+            if (i % 2 == 1) {
+                latitudeIndex = (latitudeIndex << 1) | ((value >>> bit) & 1);
+            }
+        }
+        double latitudeSize = 180/Math.pow(2, latitudeBits);
+        double south = Math.toRadians(-90 + latitudeIndex * latitudeSize);
+        double north = Math.toRadians(-90 + (latitudeIndex + 1) * latitudeSize);
+        double longitudeSize = Math.toRadians(360/Math.pow(2, longitudeBits));
+        return EARTH_MEAN_RADIUS * EARTH_MEAN_RADIUS * longitudeSize * (Math.sin(north) - Math.sin(south));
+    }
+
+    /**
+     * Returns the area of all geo hashes in a range. Ranges are measured at a precision of
+     * {@link GeoHash#MAX_LONG_PRECISION} characters, bounds of longer ranges are widened to it.
+     *
+     * @param query The range
+     * @return The area of the range, in square meters
+     */
+    public static double area(GeoHashQuery query) {
+        return sum(query, AREA);
+    }
+
+    /**
+     * @param queries Ranges that do not overlap, like the ranges of a plan
+     * @return The area of all ranges, in square meters
+     */
+    public static double area(Collection<GeoHashQuery> queries) {
+        return sum(queries, AREA);
+    }
+
+    /**
+     * Returns the number of keys a range downloads. Ranges are measured like by {@link #area(GeoHashQuery)}.
+     *
+     * @param query   The range
+     * @param density The density of the keys
+     * @return The expected number of keys in the range
+     */
+    public static double expectedKeys(GeoHashQuery query, KeyDensity density) {
+        return sum(query, density);
+    }
+
+    /**
+     * @param queries Ranges that do not overlap, like the ranges of a plan
+     * @param density The density of the keys
+     * @return The expected number of keys in all ranges
+     */
+    public static double expectedKeys(Collection<GeoHashQuery> queries, KeyDensity density) {
+        return sum(queries, density);
+    }
+
+    /**
+     * Estimates the distance from a location to the closest geo hash of a range, as the distance to the closest
+     * point of the latitudes and longitudes of its cells. It is 0 for a range that contains the location. Ranges are
+     * measured like by {@link #area(GeoHashQuery)}.
+     *
+     * @param query    The range
+     * @param location The location
+     * @return The distance, in meters
+     */
+    public static double distance(GeoHashQuery query, GeoLocation location) {
+        long[] blocks = blocks(query);
+        double distance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < blocks.length; i += 2) {
+            int bits = (int) blocks[i + 1];
+            distance = Math.min(distance, cellDistance(blocks[i] >>> (PRECISION_BITS - bits), bits, location));
+        }
+        return distance;
+    }
+
+    /**
+     * Splits a range into the largest aligned blocks, each of them is the cell of a shorter prefix. Ranges are split
+     * at a precision of {@link GeoHash#MAX_LONG_PRECISION} characters, bounds of longer ranges are widened to it.
+     *
+     * @param query The range
+     * @return The first geo hash of every block, packed at 60 bits, followed by the number of bits of its prefix
+     */
+    static long[] blocks(GeoHashQuery query) {
+        String start = query.getStartValue();
+        long from = GeoHash.lowerBoundToLong(start.substring(0, Math.min(start.length(), PRECISION)), PRECISION);
+        long to = GeoHash.lowerBoundToLong(query.getEndValue(), PRECISION);
+        // the blocks grow up to the middle of the range and shrink after it, at most two of every size
+        long[] blocks = new long[4 * (PRECISION_BITS + 1)];
+        int size = 0;
+        while (from < to) {
+            int blockBits = Math.min(Long.numberOfTrailingZeros(from), PRECISION_BITS);
+            while (blockBits > 0 && from + (1L << blockBits) > to) {
+                blockBits--;
+            }
+            blocks[size++] = from;
+            blocks[size++] = PRECISION_BITS - blockBits;
+            from += 1L << blockBits;
+        }
+        return Arrays.copyOf(blocks, size);
+    }
+
+    /**
+     * @param start The first geo hash of a range, packed at 60 bits
+     * @param end   The geo hash after the range, packed at 60 bits
+     * @return A query for the range, with the shortest bounds that still separate it
+     */
+    static GeoHashQuery toQuery(long start, long end) {
+        int zeros = Math.min(PRECISION_BITS,
+                Math.min(Long.numberOfTrailingZeros(start), Long.numberOfTrailingZeros(end)));
+        int precision = Math.max(1, PRECISION - zeros/Base32Utils.BITS_PER_BASE32_CHAR);
+        int shift = (PRECISION - precision) * Base32Utils.BITS_PER_BASE32_CHAR;
+        String startValue = GeoHash.fromLong(start >>> shift, precision);
+        String endValue = (end == 1L << PRECISION_BITS) ? "~" : GeoHash.fromLong(end >>> shift, precision);
+        return new GeoHashQuery(startValue, endValue);
+    }
+
+    private static double cellDistance(long value, int bits, GeoLocation location) {
+        int longitudeBits = (bits + 1)/2;
+        int latitudeBits = bits/2;
+        long latitudeIndex = 0;
+        long longitudeIndex = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit = (value >>> (bits - 1 - i)) & 1;
+            if (i % 2 == 0) {
+                longitudeIndex = (longitudeIndex << 1) | bit;
+            } else {
+                latitudeIndex = (latitudeIndex << 1) | bit;
+            }
+        }
+        double latitudeSize = 180/Math.pow(2, latitudeBits);
+        double longitudeSize = 360/Math.pow(2, longitudeBits);
+        double south = -90 + latitudeIndex * latitudeSize;
+        double west = -180 + longitudeIndex * longitudeSize;
+        double latitude = Math.max(south, Math.min(south + latitudeSize, location.latitude));
+        double eastOfWest = (((location.longitude - west) % 360) + 360) % 360;
+        double longitude;
+        if (eastOfWest <= longitudeSize) {
+            longitude = location.longitude;
+        } else if (eastOfWest - longitudeSize <= 360 - eastOfWest) {
+            longitude = west + longitudeSize;
+        } else {
+            longitude = west;
+        }
+        return GeoUtils.distance(location.latitude, location.longitude, latitude, longitude);
+    }
+
+    private static double sum(Collection<GeoHashQuery> queries, KeyDensity density) {
+        double sum = 0;
+        for (GeoHashQuery query: queries) {
+            sum += sum(query, density);
+        }
+        return sum;
+    }
+
+    private static double sum(GeoHashQuery query, KeyDensity density) {
+        long[] blocks = blocks(query);
+        double sum = 0;
+        for (int i = 0; i < blocks.length; i += 2) {
+            int bits = (int) blocks[i + 1];
+            sum += density.expectedKeys(blocks[i] >>> (PRECISION_BITS - bits), bits);
+        }
+        return sum;
+    }
+}
@@ -167,6 +167,33 @@ public class GeoHashQuery {
         return this.startValue.compareTo(hashStr) <= 0 && this.endValue.compareTo(hashStr) > 0;
     }
 
+    /**
+     * Returns whether a packed geo hash is in this query.
+     *
+     * @param geoHash   The geo hash, packed like {@link GeoHash#toLong(String)}
+     * @param precision The number of characters of the geo hash
+     * @return Whether the geo hash is in this query
+     */
+    public boolean containsGeoHash(long geoHash, int precision) {
+        return this.getStartLong(precision) <= geoHash && geoHash < this.getEndLong(precision);
+    }
+
+    /**
+     * @param precision The number of characters of the geo hashes, at most {@link GeoHash#MAX_LONG_PRECISION}
+     * @return The first packed geo hash of this precision in this query
+     */
+    public long getStartLong(int precision) {
+        return GeoHash.lowerBoundToLong(this.startValue, precision);
+    }
+
+    /**
+     * @param precision The number of characters of the geo hashes, at most {@link GeoHash#MAX_LONG_PRECISION}
+     * @return The packed geo hash of this precision after the last one in this query, 32^precision at the end
+     */
+    public long getEndLong(int precision) {
+        return GeoHash.lowerBoundToLong(this.endValue, precision);
+    }
+
     public String getStartValue() {
         return this.startValue;
     }
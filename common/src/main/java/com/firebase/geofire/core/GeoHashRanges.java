@@ -0,0 +1,154 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The geo hashes of a precision in a set of {@link GeoHashQuery}s, as sorted ranges of packed geo hashes that do not
+ * overlap. Whether a packed geo hash is in any of the queries is a binary search over the ranges, instead of
+ * comparing its string with the bounds of every query. GeoHashRanges are immutable.
+ */
+public final class GeoHashRanges {
+
+    private final int precision;
+    // the inclusive start and exclusive end of each range
+    private final long[] bounds;
+
+    private GeoHashRanges(int precision, long[] bounds) {
+        this.precision = precision;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Merges queries into ranges. Overlapping and touching queries are joined.
+     *
+     * @param queries   The queries
+     * @param precision The number of characters of the geo hashes, at most {@link GeoHash#MAX_LONG_PRECISION}
+     * @return The ranges
+     */
+    public static GeoHashRanges of(Collection<GeoHashQuery> queries, int precision) {
+        if (precision < 1 || precision > GeoHash.MAX_LONG_PRECISION) {
+            throw new IllegalArgumentException("Precision of GeoHashRanges must be between 1 and "
+                    + GeoHash.MAX_LONG_PRECISION + "!");
+        }
+        int count = queries.size();
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        int i = 0;
+        for (GeoHashQuery query: queries) {
+            starts[i] = query.getStartLong(precision);
+            ends[i] = query.getEndLong(precision);
+            // queries without a geo hash of this precision don't count
+            if (starts[i] < ends[i]) {
+                i++;
+            }
+        }
+        count = i;
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
+        // sweep the starts and ends, a range ends where no query is open
+        long[] bounds = new long[2 * count];
+        int size = 0;
+        int open = 0;
+        int j = 0;
+        for (i = 0; i < count; i++) {
+            while (ends[j] < starts[i]) {
+                if (--open == 0) {
+                    bounds[size++] = ends[j];
+                }
+                j++;
+            }
+            if (open++ == 0) {
+                bounds[size++] = starts[i];
+            }
+        }
+        if (count > 0) {
+            bounds[size++] = ends[count - 1];
+        }
+        return new GeoHashRanges(precision, Arrays.copyOf(bounds, size));
+    }
+
+    /**
+     * @param geoHash A geo hash of the precision of the ranges, packed like {@link GeoHash#toLong(String)}
+     * @return Whether the geo hash is in one of the ranges
+     */
+    public boolean contains(long geoHash) {
+        // the last range that starts at or before the geo hash
+        int low = 0;
+        int high = this.bounds.length/2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.bounds[2 * middle] <= geoHash) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && geoHash < this.bounds[2 * high + 1];
+    }
+
+    public int getPrecision() {
+        return this.precision;
+    }
+
+    /**
+     * @return The number of ranges
+     */
+    public int size() {
+        return this.bounds.length/2;
+    }
+
+    /**
+     * @return The first packed geo hash of a range
+     */
+    public long getStart(int index) {
+        return this.bounds[2 * index];
+    }
+
+    /**
+     * @return The packed geo hash after the last one of a range
+     */
+    public long getEnd(int index) {
+        return this.bounds[2 * index + 1];
+    }
+
+    /**
+     * @return A query for each range, with bounds of the precision of the ranges
+     */
+    public Set<GeoHashQuery> toQueries() {
+        long endOfWorld = 1L << (this.precision * Base32Utils.BITS_PER_BASE32_CHAR);
+        Set<GeoHashQuery> queries = new LinkedHashSet<>();
+        for (int i = 0; i < this.bounds.length; i += 2) {
+            queries.add(new GeoHashQuery(GeoHash.fromLong(this.bounds[i], this.precision),
+                    this.bounds[i + 1] == endOfWorld ? "~" : GeoHash.fromLong(this.bounds[i + 1], this.precision)));
+        }
+        return queries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GeoHashRanges that = (GeoHashRanges) o;
+
+        return this.precision == that.precision && Arrays.equals(this.bounds, that.bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.precision + Arrays.hashCode(this.bounds);
+    }
+
+    @Override
+    public String toString() {
+        return "GeoHashRanges{" +
+                "precision=" + this.precision +
+                ", ranges=" + this.size() +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package com.firebase.geofire.core;
+
+/**
+ * Estimates how many keys are stored in a geo hash cell, for planners that weigh the number of ranges of a query
+ * against the number of keys it downloads.
+ */
+public interface KeyDensity {
+
+    /**
+     * @param cell The first bits of the geo hashes in the cell, the last bit is the least significant
+     * @param bits The number of bits, at most {@link GeoHash#MAX_LONG_PRECISION} characters
+     * @return The expected number of keys in the cell
+     */
+    double expectedKeys(long cell, int bits);
+}
@@ -0,0 +1,197 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An approximate histogram of the number of keys per geo hash prefix. Counts are kept for disjoint geo hash cells,
+ * within a cell the keys are assumed to be spread evenly. Counts are set explicitly with
+ * {@link #setCount(String, double)} or learned from the keys a query downloaded with
+ * {@link #observe(Collection, long[], int, int)}, which counts them in cells of at most the precision of the
+ * histogram.
+ *
+ * <p>All methods are thread-safe, so a histogram can be learned by the queries of a GeoFire instance while a
+ * {@link CostModelPlanner} plans with it.</p>
+ */
+public final class KeyHistogram implements KeyDensity {
+
+    // 7 characters are cells of about 150 by 150 meters
+    public static final int DEFAULT_PRECISION = 7;
+
+    private static final int LONG_PRECISION = GeoHash.MAX_LONG_PRECISION;
+    private static final int LONG_BITS = LONG_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    private static final class Bucket {
+        private final int bits;
+        private double count;
+
+        Bucket(int bits, double count) {
+            this.bits = bits;
+            this.count = count;
+        }
+    }
+
+    private final int precisionBits;
+    // the counted cells by their first geo hash at 60 bits
+    private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+
+    public KeyHistogram() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision The number of characters of the finest cells keys are counted in
+     */
+    public KeyHistogram(int precision) {
+        if (precision < 1 || precision > LONG_PRECISION) {
+            throw new IllegalArgumentException("Precision of a KeyHistogram must be between 1 and " + LONG_PRECISION
+                    + "!");
+        }
+        this.precisionBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+    }
+
+    /**
+     * Sets the number of keys with a prefix, replacing all counts within it.
+     *
+     * @param prefix The geo hash prefix, at most {@link GeoHash#MAX_LONG_PRECISION} characters
+     * @param count  The number of keys
+     */
+    public synchronized void setCount(String prefix, double count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count must not be negative!");
+        }
+        if (prefix.length() > LONG_PRECISION) {
+            throw new IllegalArgumentException("Prefix must not be longer than " + LONG_PRECISION + " characters!");
+        }
+        int bits = prefix.length() * Base32Utils.BITS_PER_BASE32_CHAR;
+        long start = GeoHash.lowerBoundToLong(prefix, LONG_PRECISION);
+        this.clear(start, bits);
+        if (count > 0) {
+            this.buckets.put(start, new Bucket(bits, count));
+        }
+    }
+
+    /**
+     * @param prefix The geo hash prefix, at most {@link GeoHash#MAX_LONG_PRECISION} characters
+     * @return The expected number of keys with the prefix
+     */
+    public synchronized double getCount(String prefix) {
+        if (prefix.length() > LONG_PRECISION) {
+            throw new IllegalArgumentException("Prefix must not be longer than " + LONG_PRECISION + " characters!");
+        }
+        return this.expectedKeys(GeoHash.lowerBoundToLong(prefix, prefix.length()),
+                prefix.length() * Base32Utils.BITS_PER_BASE32_CHAR);
+    }
+
+    /**
+     * Learns the keys in fully loaded ranges. The counts within the ranges are replaced by the given keys, which
+     * must be all keys in the ranges. Keys outside of the ranges are ignored.
+     *
+     * @param ranges     The loaded ranges
+     * @param geoHashes  The geo hashes of the keys, packed like {@link GeoHash#toLong(String)}
+     * @param count      The number of geo hashes
+     * @param precision  The number of characters of the geo hashes
+     */
+    public synchronized void observe(Collection<GeoHashQuery> ranges, long[] geoHashes, int count, int precision) {
+        int hashBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        // the aligned blocks of the ranges by their start, with their number of bits
+        TreeMap<Long, Integer> blocks = new TreeMap<>();
+        for (GeoHashQuery range: ranges) {
+            long[] rangeBlocks = GeoHashCoverage.blocks(range);
+            for (int i = 0; i < rangeBlocks.length; i += 2) {
+                int bits = (int) rangeBlocks[i + 1];
+                // blocks finer than the geo hashes of the keys can't be counted
+                if (bits <= hashBits) {
+                    this.clear(rangeBlocks[i], bits);
+                    blocks.put(rangeBlocks[i], bits);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            long hash = geoHashes[i] << (LONG_BITS - hashBits);
+            Map.Entry<Long, Integer> block = blocks.floorEntry(hash);
+            if (block == null || hash >= block.getKey() + (1L << (LONG_BITS - block.getValue()))) {
+                continue;
+            }
+            // count in cells of the precision of the histogram, or of the block if that is finer
+            int cellBits = Math.min(hashBits, Math.max(this.precisionBits, block.getValue()));
+            long cell = (hash >>> (LONG_BITS - cellBits)) << (LONG_BITS - cellBits);
+            Bucket bucket = this.buckets.get(cell);
+            if (bucket == null) {
+                this.buckets.put(cell, new Bucket(cellBits, 1));
+            } else {
+                bucket.count++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized double expectedKeys(long cell, int bits) {
+        long start = cell << (LONG_BITS - bits);
+        long end = start + (1L << (LONG_BITS - bits));
+        Map.Entry<Long, Bucket> floor = this.buckets.floorEntry(start);
+        if (floor != null && floor.getValue().bits <= bits && end(floor) > start) {
+            // a bucket contains the cell
+            Bucket bucket = floor.getValue();
+            if (bucket.bits == bits) {
+                return bucket.count;
+            }
+            return bucket.count * GeoHashCoverage.cellArea(cell, bits)
+                    / GeoHashCoverage.cellArea(floor.getKey() >>> (LONG_BITS - bucket.bits), bucket.bits);
+        }
+        double count = 0;
+        for (Bucket bucket: this.buckets.subMap(start, end).values()) {
+            count += bucket.count;
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of cells with counts
+     */
+    public synchronized int size() {
+        return this.buckets.size();
+    }
+
+    public synchronized void clear() {
+        this.buckets.clear();
+    }
+
+    /**
+     * Removes the counts within a cell. A coarser cell that contains it keeps the share of its keys outside of it.
+     */
+    private void clear(long start, int bits) {
+        long end = start + (1L << (LONG_BITS - bits));
+        Map.Entry<Long, Bucket> floor = this.buckets.floorEntry(start);
+        if (floor != null && floor.getValue().bits < bits && end(floor) > start) {
+            Bucket container = floor.getValue();
+            this.buckets.remove(floor.getKey());
+            double area = GeoHashCoverage.cellArea(floor.getKey() >>> (LONG_BITS - container.bits), container.bits);
+            // the siblings of the cell and of its ancestors below the container share its keys
+            for (int siblingBits = container.bits + 1; siblingBits <= bits; siblingBits++) {
+                long sibling = (start >>> (LONG_BITS - siblingBits)) ^ 1;
+                double count = container.count * GeoHashCoverage.cellArea(sibling, siblingBits) / area;
+                if (count > 0) {
+                    this.buckets.put(sibling << (LONG_BITS - siblingBits), new Bucket(siblingBits, count));
+                }
+            }
+            return;
+        }
+        this.buckets.subMap(start, end).clear();
+    }
+
+    private static long end(Map.Entry<Long, Bucket> entry) {
+        return entry.getKey() + (1L << (LONG_BITS - entry.getValue().bits));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "KeyHistogram{" +
+                "precision=" + this.precisionBits/Base32Utils.BITS_PER_BASE32_CHAR +
+                ", cells=" + this.buckets.size() +
+                '}';
+    }
+}
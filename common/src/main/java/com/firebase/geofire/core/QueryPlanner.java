@@ -0,0 +1,19 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+
+import java.util.Set;
+
+/**
+ * Chooses the geo hash ranges a query listens to. The ranges must together contain every geo hash of a location
+ * within the radius, locations outside of the radius that fall into a range are downloaded and filtered out.
+ */
+public interface QueryPlanner {
+
+    /**
+     * @param center The center of the query
+     * @param radius The radius of the query, in meters
+     * @return The ranges covering the circle
+     */
+    Set<GeoHashQuery> plan(GeoLocation center, double radius);
+}
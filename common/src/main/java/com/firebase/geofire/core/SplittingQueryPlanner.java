@@ -0,0 +1,161 @@
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the ranges of another planner that are expected to hold many keys into smaller ranges. A query subscribes to
+ * all of its ranges at once, so the parts of a large range are loaded concurrently instead of one range holding back
+ * the ready event, and the progress of the query is reported in smaller steps.
+ *
+ * A large range is halved along the bits of its geo hashes until every part is expected to hold at most the given
+ * number of keys, then adjacent parts are joined again as long as they stay below it. Ranges that are small enough
+ * are kept as they are.
+ */
+public final class SplittingQueryPlanner implements QueryPlanner {
+
+    // ranges must not be more precise than the geo hashes GeoFire stores
+    private static final int MAX_BITS = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    private static final int LONG_PRECISION = GeoHash.MAX_LONG_PRECISION;
+    private static final int LONG_BITS = LONG_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // the number of parts a single range may be split into
+    private static final int MAX_PARTS = 256;
+
+    private final QueryPlanner planner;
+    private final KeyDensity density;
+    private final double maxKeysPerRange;
+
+    /**
+     * @param planner         The planner whose ranges are split
+     * @param density         The density of the keys
+     * @param maxKeysPerRange The number of keys a range is expected to hold at most
+     */
+    public SplittingQueryPlanner(QueryPlanner planner, KeyDensity density, double maxKeysPerRange) {
+        if (planner == null || density == null) {
+            throw new NullPointerException();
+        }
+        if (maxKeysPerRange <= 0) {
+            throw new IllegalArgumentException("Number of keys per range must be larger than zero!");
+        }
+        this.planner = planner;
+        this.density = density;
+        this.maxKeysPerRange = maxKeysPerRange;
+    }
+
+    public QueryPlanner getPlanner() {
+        return this.planner;
+    }
+
+    public KeyDensity getDensity() {
+        return this.density;
+    }
+
+    public double getMaxKeysPerRange() {
+        return this.maxKeysPerRange;
+    }
+
+    @Override
+    public Set<GeoHashQuery> plan(GeoLocation center, double radius) {
+        Set<GeoHashQuery> queries = new HashSet<>();
+        for (GeoHashQuery query: this.planner.plan(center, radius)) {
+            if (GeoHashCoverage.expectedKeys(query, this.density) <= this.maxKeysPerRange) {
+                queries.add(query);
+            } else {
+                queries.addAll(this.split(query));
+            }
+        }
+        return queries;
+    }
+
+    private Set<GeoHashQuery> split(GeoHashQuery query) {
+        long[] blocks = GeoHashCoverage.blocks(query);
+        Deque<Part> pending = new ArrayDeque<>();
+        for (int i = 0; i < blocks.length; i += 2) {
+            pending.add(this.part(blocks[i], (int) blocks[i + 1]));
+        }
+        List<Part> parts = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            Part part = pending.removeFirst();
+            if (part.keys > this.maxKeysPerRange && part.bits < MAX_BITS
+                    && parts.size() + pending.size() + 2 <= MAX_PARTS) {
+                long half = 1L << (LONG_BITS - part.bits - 1);
+                pending.addLast(this.part(part.start, part.bits + 1));
+                pending.addLast(this.part(part.start + half, part.bits + 1));
+            } else {
+                parts.add(part);
+            }
+        }
+        if (parts.isEmpty()) {
+            return Collections.singleton(query);
+        }
+        Collections.sort(parts, new Comparator<Part>() {
+            @Override
+            public int compare(Part part1, Part part2) {
+                return Long.compare(part1.start, part2.start);
+            }
+        });
+        // join adjacent parts again while they hold few enough keys together
+        Set<GeoHashQuery> queries = new HashSet<>();
+        long rangeStart = parts.get(0).start;
+        long rangeEnd = parts.get(0).end();
+        double rangeKeys = parts.get(0).keys;
+        for (int i = 1; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            if (part.start == rangeEnd && rangeKeys + part.keys <= this.maxKeysPerRange) {
+                rangeEnd = part.end();
+                rangeKeys += part.keys;
+            } else {
+                queries.add(GeoHashCoverage.toQuery(rangeStart, rangeEnd));
+                rangeStart = part.start;
+                rangeEnd = part.end();
+                rangeKeys = part.keys;
+            }
+        }
+        queries.add(GeoHashCoverage.toQuery(rangeStart, rangeEnd));
+        return queries;
+    }
+
+    private Part part(long start, int bits) {
+        return new Part(start, bits, this.density.expectedKeys(start >>> (LONG_BITS - bits), bits));
+    }
+
+    @Override
+    public String toString() {
+        return "SplittingQueryPlanner{" +
+                "planner=" + this.planner +
+                ", density=" + this.density +
+                ", maxKeysPerRange=" + this.maxKeysPerRange +
+                '}';
+    }
+
+    /**
+     * A geo hash cell of a range, with the number of keys it is expected to hold.
+     */
+    private static final class Part {
+        // the first geo hash of the cell at 60 bits
+        private final long start;
+        private final int bits;
+        private final double keys;
+
+        Part(long start, int bits, double keys) {
+            this.start = start;
+            this.bits = bits;
+            this.keys = keys;
+        }
+
+        long end() {
+            return this.start + (1L << (LONG_BITS - this.bits));
+        }
+    }
+}
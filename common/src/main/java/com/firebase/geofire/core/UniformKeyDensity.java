@@ -0,0 +1,29 @@
+package com.firebase.geofire.core;
+
+/**
+ * Keys that are spread evenly over the earth.
+ */
+public final class UniformKeyDensity implements KeyDensity {
+
+    private final double keysPerSquareMeter;
+
+    /**
+     * @param keysPerSquareKilometer The number of keys per square kilometer
+     */
+    public UniformKeyDensity(double keysPerSquareKilometer) {
+        if (keysPerSquareKilometer < 0) {
+            throw new IllegalArgumentException("Density must not be negative!");
+        }
+        this.keysPerSquareMeter = keysPerSquareKilometer/1000/1000;
+    }
+
+    @Override
+    public double expectedKeys(long cell, int bits) {
+        return GeoHashCoverage.cellArea(cell, bits) * this.keysPerSquareMeter;
+    }
+
+    @Override
+    public String toString() {
+        return "UniformKeyDensity{keysPerSquareKilometer=" + this.keysPerSquareMeter * 1000 * 1000 + "}";
+    }
+}
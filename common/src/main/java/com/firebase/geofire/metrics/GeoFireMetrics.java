@@ -0,0 +1,106 @@
+package com.firebase.geofire.metrics;
+
+/**
+ * Receives the metrics of a GeoFire instance and of its queries. Implementations adapt these calls to a metrics
+ * library; {@link SimpleMetrics} keeps them in memory. Instruments are created once when the metrics are set on a
+ * GeoFire instance and are then updated from any thread, so they have to be thread safe and cheap.
+ */
+public interface GeoFireMetrics {
+
+    /** Gauge: geohash range subscriptions of all queries that are currently active */
+    String RANGE_SUBSCRIPTIONS = "geofire.rangeSubscriptions";
+
+    /** Gauge: events that were raised but not yet delivered to their listeners */
+    String PENDING_EVENTS = "geofire.pendingEvents";
+
+    /** Gauge: events of primitive listeners that were raised but not yet delivered, part of the pending events */
+    String EVENT_RING_DEPTH = "geofire.eventRing.depth";
+
+    /**
+     * Gauge prefix: events of a dispatch lane that were raised but not yet delivered. The name of the gauge is this
+     * prefix followed by the name of the lane.
+     */
+    String LANE_PENDING_EVENTS = "geofire.lane.pendingEvents.";
+
+    /**
+     * Histogram prefix: nanoseconds from raising an event of a dispatch lane until its listener returned. The name of
+     * the histogram is this prefix followed by the name of the lane.
+     */
+    String LANE_EVENT_LATENCY_NANOS = "geofire.lane.eventLatencyNanos.";
+
+    /** Counter: key entered events delivered to listeners */
+    String KEY_ENTERED_EVENTS = "geofire.events.keyEntered";
+
+    /** Counter: key exited events delivered to listeners */
+    String KEY_EXITED_EVENTS = "geofire.events.keyExited";
+
+    /** Counter: key moved events delivered to listeners */
+    String KEY_MOVED_EVENTS = "geofire.events.keyMoved";
+
+    /** Counter: data changed events delivered to data listeners */
+    String DATA_CHANGED_EVENTS = "geofire.events.dataChanged";
+
+    /** Counter: ready events delivered to listeners */
+    String READY_EVENTS = "geofire.events.ready";
+
+    /** Counter: error events delivered to listeners */
+    String ERROR_EVENTS = "geofire.events.error";
+
+    /** Counter: key updates received from the subscribed geohash ranges */
+    String KEYS_RECEIVED = "geofire.keysReceived";
+
+    /**
+     * Counter: key updates received from the subscribed geohash ranges for keys inside of the radius. Together with
+     * {@link #KEYS_RECEIVED} this shows how much more than the circle the geohash ranges cover.
+     */
+    String KEYS_IN_RADIUS = "geofire.keysInRadius";
+
+    /** Histogram: the number of geohash ranges used to cover the circle of a query */
+    String COVER_RANGES = "geofire.coverRanges";
+
+    /** Histogram: nanoseconds from starting a query or changing its center or radius until the query is ready */
+    String READY_TIME_NANOS = "geofire.readyTimeNanos";
+
+    /**
+     * A monotonically increasing count.
+     */
+    interface Counter {
+        void increment();
+
+        void add(long delta);
+    }
+
+    /**
+     * Records the distribution of values.
+     */
+    interface Histogram {
+        void record(long value);
+    }
+
+    /**
+     * A value that is read whenever the metrics are collected.
+     */
+    interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * @param name The name of the counter
+     * @return The counter with the given name
+     */
+    Counter counter(String name);
+
+    /**
+     * @param name The name of the histogram
+     * @return The histogram with the given name
+     */
+    Histogram histogram(String name);
+
+    /**
+     * Registers a gauge.
+     *
+     * @param name  The name of the gauge
+     * @param gauge The gauge that provides the value
+     */
+    void gauge(String name, Gauge gauge);
+}
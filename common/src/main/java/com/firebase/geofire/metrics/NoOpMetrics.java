@@ -0,0 +1,42 @@
+package com.firebase.geofire.metrics;
+
+/**
+ * Metrics that discard everything. This is what GeoFire uses unless other metrics are set.
+ */
+public final class NoOpMetrics implements GeoFireMetrics {
+
+    public static final NoOpMetrics INSTANCE = new NoOpMetrics();
+
+    private static final Counter COUNTER = new Counter() {
+        @Override
+        public void increment() {
+        }
+
+        @Override
+        public void add(long delta) {
+        }
+    };
+
+    private static final Histogram HISTOGRAM = new Histogram() {
+        @Override
+        public void record(long value) {
+        }
+    };
+
+    private NoOpMetrics() {
+    }
+
+    @Override
+    public Counter counter(String name) {
+        return COUNTER;
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return HISTOGRAM;
+    }
+
+    @Override
+    public void gauge(String name, Gauge gauge) {
+    }
+}
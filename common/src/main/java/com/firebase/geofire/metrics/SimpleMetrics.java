@@ -0,0 +1,172 @@
+package com.firebase.geofire.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics that are kept in memory and can be read at any time, e.g. to log them or to export them periodically.
+ */
+public final class SimpleMetrics implements GeoFireMetrics {
+
+    /**
+     * A counter backed by an AtomicLong.
+     */
+    public static final class SimpleCounter implements Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        @Override
+        public void increment() {
+            this.value.incrementAndGet();
+        }
+
+        @Override
+        public void add(long delta) {
+            this.value.addAndGet(delta);
+        }
+
+        public long getValue() {
+            return this.value.get();
+        }
+
+        @Override
+        public String toString() {
+            return Long.toString(this.getValue());
+        }
+    }
+
+    /**
+     * A histogram that keeps the count, sum, minimum and maximum of the recorded values.
+     */
+    public static final class SimpleHistogram implements Histogram {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        @Override
+        public void record(long value) {
+            this.count.incrementAndGet();
+            this.sum.addAndGet(value);
+            long current;
+            while (value < (current = this.min.get()) && !this.min.compareAndSet(current, value)) {
+                // retry
+            }
+            while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+
+        public long getCount() {
+            return this.count.get();
+        }
+
+        public long getSum() {
+            return this.sum.get();
+        }
+
+        /**
+         * @return The smallest recorded value or 0 if nothing was recorded
+         */
+        public long getMin() {
+            return this.getCount() == 0 ? 0 : this.min.get();
+        }
+
+        /**
+         * @return The largest recorded value or 0 if nothing was recorded
+         */
+        public long getMax() {
+            return this.getCount() == 0 ? 0 : this.max.get();
+        }
+
+        /**
+         * @return The mean of the recorded values or 0 if nothing was recorded
+         */
+        public double getMean() {
+            long count = this.getCount();
+            return count == 0 ? 0 : (double) this.getSum() / count;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + this.getCount() + ", mean=" + this.getMean() + ", min=" + this.getMin()
+                    + ", max=" + this.getMax();
+        }
+    }
+
+    private final ConcurrentMap<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SimpleHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public SimpleCounter counter(String name) {
+        SimpleCounter counter = this.counters.get(name);
+        if (counter == null) {
+            SimpleCounter newCounter = new SimpleCounter();
+            counter = this.counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    @Override
+    public SimpleHistogram histogram(String name) {
+        SimpleHistogram histogram = this.histograms.get(name);
+        if (histogram == null) {
+            SimpleHistogram newHistogram = new SimpleHistogram();
+            histogram = this.histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public void gauge(String name, Gauge gauge) {
+        this.gauges.put(name, gauge);
+    }
+
+    /**
+     * @param name The name of the counter
+     * @return The value of the counter or 0 if there is no counter with that name
+     */
+    public long getCounterValue(String name) {
+        SimpleCounter counter = this.counters.get(name);
+        return counter == null ? 0 : counter.getValue();
+    }
+
+    /**
+     * @param name The name of the gauge
+     * @return The current value of the gauge or 0 if there is no gauge with that name
+     */
+    public long getGaugeValue(String name) {
+        Gauge gauge = this.gauges.get(name);
+        return gauge == null ? 0 : gauge.getValue();
+    }
+
+    /**
+     * @return All counters by name
+     */
+    public Map<String, SimpleCounter> getCounters() {
+        return Collections.unmodifiableMap(this.counters);
+    }
+
+    /**
+     * @return All histograms by name
+     */
+    public Map<String, SimpleHistogram> getHistograms() {
+        return Collections.unmodifiableMap(this.histograms);
+    }
+
+    /**
+     * @return All gauges by name
+     */
+    public Map<String, Gauge> getGauges() {
+        return Collections.unmodifiableMap(this.gauges);
+    }
+}
@@ -0,0 +1,233 @@
+package com.firebase.geofire.store;
+
+import com.firebase.geofire.GeoFire;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.LocationCallback;
+import com.firebase.geofire.core.GeoHash;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A GeoStore that keeps the locations in the Firebase Realtime Database. Every key is stored as a child of the
+ * database reference, with the geo hash in "g" and the coordinates in "l". This is the store used by GeoFire unless
+ * another store is passed in.
+ */
+public final class FirebaseGeoStore implements GeoStore, RangeReader {
+
+    /**
+     * A small wrapper class to forward any events to the LocationCallback.
+     */
+    private static class LocationValueEventListener implements ValueEventListener {
+
+        private final LocationCallback callback;
+
+        LocationValueEventListener(LocationCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            if (dataSnapshot.getValue() == null) {
+                this.callback.onLocationResult(dataSnapshot.getKey(), null);
+            } else {
+                GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
+                if (location != null) {
+                    this.callback.onLocationResult(dataSnapshot.getKey(), location);
+                } else {
+                    String message = "GeoFire data has invalid format: " + dataSnapshot.getValue();
+                    this.callback.onCancelled(DatabaseError.fromException(new Throwable(message)));
+                }
+            }
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            this.callback.onCancelled(databaseError);
+        }
+    }
+
+    private static class RangeSubscription implements Subscription, ChildEventListener, ValueEventListener {
+        private final Query query;
+        private final RangeListener listener;
+        // the single value event cannot be removed once added, so it's ignored after cancelling
+        private volatile boolean cancelled;
+
+        RangeSubscription(Query query, RangeListener listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+            GeoLocation location = getLocationOrFail(dataSnapshot);
+            this.listener.onEntryAdded(dataSnapshot.getKey(), location.latitude, location.longitude, dataSnapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+            GeoLocation location = getLocationOrFail(dataSnapshot);
+            this.listener.onEntryChanged(dataSnapshot.getKey(), location.latitude, location.longitude, dataSnapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+            this.listener.onEntryRemoved(dataSnapshot.getKey(), dataSnapshot);
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+            // ignore, this should be handled by onChildChanged
+        }
+
+        @Override
+        public void onDataChange(DataSnapshot dataSnapshot) {
+            if (!this.cancelled) {
+                this.listener.onRangeLoaded();
+            }
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            if (!this.cancelled) {
+                this.listener.onRangeError(databaseError);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            this.query.removeEventListener((ChildEventListener) this);
+        }
+
+        private static GeoLocation getLocationOrFail(DataSnapshot dataSnapshot) {
+            GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
+            if (location == null) {
+                throw new AssertionError("Got Datasnapshot without location with key " + dataSnapshot.getKey());
+            }
+            return location;
+        }
+    }
+
+    private final DatabaseReference databaseReference;
+
+    /**
+     * Creates a new store at the given Firebase reference.
+     *
+     * @param databaseReference The Firebase reference this store uses
+     */
+    public FirebaseGeoStore(DatabaseReference databaseReference) {
+        this.databaseReference = databaseReference;
+    }
+
+    /**
+     * @return The Firebase reference this store uses
+     */
+    public DatabaseReference getDatabaseReference() {
+        return this.databaseReference;
+    }
+
+    @Override
+    public Subscription subscribe(String startValue, String endValue, RangeListener listener) {
+        Query query = this.databaseReference.orderByChild("g").startAt(startValue).endAt(endValue);
+        RangeSubscription subscription = new RangeSubscription(query, listener);
+        query.addChildEventListener(subscription);
+        query.addListenerForSingleValueEvent(subscription);
+        return subscription;
+    }
+
+    @Override
+    public void read(String startValue, String endValue, final RangeListener listener) {
+        Query query = this.databaseReference.orderByChild("g").startAt(startValue).endAt(endValue);
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                for (DataSnapshot child: dataSnapshot.getChildren()) {
+                    GeoLocation location = RangeSubscription.getLocationOrFail(child);
+                    listener.onEntryAdded(child.getKey(), location.latitude, location.longitude, child);
+                }
+                listener.onRangeLoaded();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                listener.onRangeError(databaseError);
+            }
+        });
+    }
+
+    @Override
+    public void getLocation(String key, LocationCallback callback) {
+        DatabaseReference keyRef = this.databaseReference.child(key);
+        keyRef.addListenerForSingleValueEvent(new LocationValueEventListener(callback));
+    }
+
+    @Override
+    public void setLocation(String key, GeoLocation location, final CompletionListener completionListener) {
+        DatabaseReference keyRef = this.databaseReference.child(key);
+        GeoHash geoHash = new GeoHash(location);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("g", geoHash.getGeoHashString());
+        updates.put("l", Arrays.asList(location.latitude, location.longitude));
+        if (completionListener != null) {
+            keyRef.setValue(updates, geoHash.getGeoHashString(), new DatabaseReference.CompletionListener() {
+                @Override
+                public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
+                    completionListener.onComplete(databaseError);
+                }
+            });
+        } else {
+            Object priority = geoHash.getGeoHashString();
+            keyRef.setValueAsync(updates, priority);
+        }
+    }
+
+    @Override
+    public void removeLocation(String key, final CompletionListener completionListener) {
+        DatabaseReference keyRef = this.databaseReference.child(key);
+        if (completionListener != null) {
+            keyRef.setValue(null, new DatabaseReference.CompletionListener() {
+                @Override
+                public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
+                    completionListener.onComplete(databaseError);
+                }
+            });
+        } else {
+            keyRef.removeValueAsync();
+        }
+    }
+
+    @Override
+    public void setLocations(Map<String, GeoLocation> locations, final CompletionListener completionListener) {
+        Map<String, Object> updates = new HashMap<>(locations.size());
+        for (Map.Entry<String, GeoLocation> entry: locations.entrySet()) {
+            GeoLocation location = entry.getValue();
+            if (location == null) {
+                updates.put(entry.getKey(), null);
+            } else {
+                GeoHash geoHash = new GeoHash(location);
+                Map<String, Object> value = new HashMap<>();
+                value.put("g", geoHash.getGeoHashString());
+                value.put("l", Arrays.asList(location.latitude, location.longitude));
+                value.put(".priority", geoHash.getGeoHashString());
+                updates.put(entry.getKey(), value);
+            }
+        }
+        if (completionListener != null) {
+            this.databaseReference.updateChildren(updates, new DatabaseReference.CompletionListener() {
+                @Override
+                public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
+                    completionListener.onComplete(databaseError);
+                }
+            });
+        } else {
+            this.databaseReference.updateChildrenAsync(updates);
+        }
+    }
+}
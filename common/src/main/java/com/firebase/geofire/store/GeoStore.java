@@ -0,0 +1,131 @@
+package com.firebase.geofire.store;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.LocationCallback;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import java.util.Map;
+
+/**
+ * The storage used by GeoFire and GeoQuery. A GeoStore keeps a location for every key, ordered by the geo hash of
+ * the location, and notifies subscribers about keys inside a geo hash range.
+ *
+ * All callbacks of a store are delivered on the store's event thread, in the order the changes were applied. GeoQuery,
+ * GeoFenceEngine and the one-shot queries of GeoFire also support stores that deliver callbacks synchronously from
+ * within a call to the store, for example a local store whose executor runs tasks on the thread that submitted them.
+ * Such a store calls listeners while it holds its write lock, which deadlocks if another thread subscribes while it
+ * holds a lock that a listener takes, for example while it changes the center of a query, so it only suits single
+ * threaded use such as tests.
+ */
+public interface GeoStore {
+
+    /**
+     * A listener that is notified once a write was applied by the store or an error occurred.
+     */
+    interface CompletionListener {
+        /**
+         * @param error The error or null if no error occurred
+         */
+        void onComplete(DatabaseError error);
+    }
+
+    /**
+     * Receives the keys inside a subscribed geo hash range.
+     */
+    interface RangeListener {
+        /**
+         * Called for every key in the range when the subscription starts and for every key that enters the range
+         * afterwards.
+         *
+         * @param key          The key
+         * @param latitude     The latitude of the key
+         * @param longitude    The longitude of the key
+         * @param dataSnapshot The snapshot of the key or null if the store does not provide snapshots
+         */
+        void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot);
+
+        /**
+         * Called if a key inside the range changed and is still inside the range.
+         *
+         * @param key          The key
+         * @param latitude     The latitude of the key
+         * @param longitude    The longitude of the key
+         * @param dataSnapshot The snapshot of the key or null if the store does not provide snapshots
+         */
+        void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot);
+
+        /**
+         * Called if a key left the range, either because it was removed or because it moved out of the range.
+         *
+         * @param key          The key
+         * @param dataSnapshot The last snapshot of the key or null if the store does not provide snapshots
+         */
+        void onEntryRemoved(String key, DataSnapshot dataSnapshot);
+
+        /**
+         * Called once after the keys that were inside the range at the time of subscribing were delivered.
+         */
+        void onRangeLoaded();
+
+        /**
+         * Called if the range could not be subscribed, e.g. because of violated security rules.
+         *
+         * @param error The error that occurred
+         */
+        void onRangeError(DatabaseError error);
+    }
+
+    /**
+     * A subscription of a geo hash range.
+     */
+    interface Subscription {
+        /**
+         * Cancels this subscription. Once this method returned, the range listener receives no further callbacks
+         * except for one that was already being delivered.
+         */
+        void cancel();
+    }
+
+    /**
+     * Subscribes to all keys whose geo hash is between startValue and endValue, both inclusive.
+     *
+     * @param startValue The first geo hash of the range
+     * @param endValue   The last geo hash of the range
+     * @param listener   The listener that receives the keys in the range
+     * @return The subscription, which has to be cancelled once the range is no longer needed
+     */
+    Subscription subscribe(String startValue, String endValue, RangeListener listener);
+
+    /**
+     * Reads the current location for a key.
+     *
+     * @param key      The key whose location to get
+     * @param callback The callback that is called with the location or null if the key has no location
+     */
+    void getLocation(String key, LocationCallback callback);
+
+    /**
+     * Sets the location for a key.
+     *
+     * @param key                The key to save the location for
+     * @param location           The location of this key
+     * @param completionListener A listener that is called once the write was applied, may be null
+     */
+    void setLocation(String key, GeoLocation location, CompletionListener completionListener);
+
+    /**
+     * Removes the location for a key.
+     *
+     * @param key                The key to remove
+     * @param completionListener A listener that is called once the removal was applied, may be null
+     */
+    void removeLocation(String key, CompletionListener completionListener);
+
+    /**
+     * Sets the locations of several keys as a single atomic update. A null location removes the key.
+     *
+     * @param locations          The new locations by key
+     * @param completionListener A listener that is called once the whole update was applied, may be null
+     */
+    void setLocations(Map<String, GeoLocation> locations, CompletionListener completionListener);
+}
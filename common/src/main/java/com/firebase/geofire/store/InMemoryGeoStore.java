@@ -0,0 +1,81 @@
+package com.firebase.geofire.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A GeoStore that keeps all locations in memory, in a concurrent map sorted by geo hash. It has the same range
+ * semantics as the Firebase Realtime Database, which makes it a drop-in replacement for services that do not need
+ * to share their locations and for tests. The store does not provide data snapshots.
+ *
+ * Writes, subscriptions and reads of ranges are serialized, as subscriptions and reads scan their range while writes
+ * are blocked; looking up the location of a key never blocks. A write only notifies the subscriptions whose ranges
+ * contain the key. Callbacks are delivered on the executor passed in, or on a single store thread if none was passed
+ * in.
+ */
+public final class InMemoryGeoStore extends LocalGeoStore {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Entry> index = new ConcurrentSkipListMap<>();
+
+    /**
+     * Creates a new empty store that delivers its callbacks on its own thread.
+     */
+    public InMemoryGeoStore() {
+        this(newStoreExecutor("GeoFire-InMemoryGeoStore"));
+    }
+
+    /**
+     * Creates a new empty store.
+     *
+     * @param executor The executor callbacks are delivered on. It has to run tasks one at a time and in order.
+     *                 See {@link GeoStore} before using one that runs them on the thread that submitted them.
+     */
+    public InMemoryGeoStore(Executor executor) {
+        super(executor);
+    }
+
+    /**
+     * @return The number of keys in this store
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    @Override
+    Entry lookup(String key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    List<Entry> scan(String startValue, String endValue) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry: this.index.tailMap(startValue).values()) {
+            if (entry.geoHash.compareTo(endValue) > 0) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    @Override
+    void persist(List<String> keys, List<Entry> entries) {
+        // nothing to persist
+    }
+
+    @Override
+    Entry swap(String key, Entry entry) {
+        Entry oldEntry = (entry != null) ? this.entries.put(key, entry) : this.entries.remove(key);
+        if (oldEntry != null) {
+            this.index.remove(oldEntry.indexKey());
+        }
+        if (entry != null) {
+            this.index.put(entry.indexKey(), entry);
+        }
+        return oldEntry;
+    }
+}
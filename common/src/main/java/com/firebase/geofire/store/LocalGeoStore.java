@@ -0,0 +1,350 @@
+package com.firebase.geofire.store;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.LocationCallback;
+import com.firebase.geofire.core.GeoHash;
+import com.google.firebase.database.DatabaseError;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Base class for stores that keep their locations in this process. It implements the subscription and callback
+ * semantics of GeoStore, subclasses only decide how entries are kept.
+ *
+ * Writes, subscriptions and reads of ranges are serialized on the write lock, as subscriptions and reads scan their
+ * range under it. Callbacks are delivered on the executor passed in, in the order the writes were applied. A write
+ * only notifies the subscriptions whose ranges contain the old or the new geo hash of the key, which it finds in an
+ * index of the subscribed ranges, so its cost doesn't grow with the number of subscriptions. Subscribing or cancelling
+ * updates the index in place.
+ */
+abstract class LocalGeoStore implements GeoStore, RangeReader {
+
+    static final class Entry {
+        final String key;
+        final double latitude;
+        final double longitude;
+        final String geoHash;
+
+        Entry(String key, GeoLocation location) {
+            this(key, location.latitude, location.longitude);
+        }
+
+        Entry(String key, double latitude, double longitude) {
+            this(key, latitude, longitude, new GeoHash(latitude, longitude).getGeoHashString());
+        }
+
+        Entry(String key, double latitude, double longitude, String geoHash) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.geoHash = geoHash;
+        }
+
+        String indexKey() {
+            // all geo hashes have the same precision, so this sorts by geo hash first and key second
+            return this.geoHash + this.key;
+        }
+
+        boolean hasSameLocation(Entry other) {
+            return this.latitude == other.latitude && this.longitude == other.longitude;
+        }
+    }
+
+    private final class RangeSubscription implements Subscription {
+        final String startValue;
+        final String endValue;
+        final RangeListener listener;
+        volatile boolean cancelled;
+
+        RangeSubscription(String startValue, String endValue, RangeListener listener) {
+            this.startValue = startValue;
+            this.endValue = endValue;
+            this.listener = listener;
+        }
+
+        boolean contains(Entry entry) {
+            return entry != null
+                    && this.startValue.compareTo(entry.geoHash) <= 0 && this.endValue.compareTo(entry.geoHash) >= 0;
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            synchronized (LocalGeoStore.this.writeLock) {
+                if (LocalGeoStore.this.subscriptions.remove(this)) {
+                    LocalGeoStore.this.subscriptionIndex.remove(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * The subscriptions by range. The bounds of all subscriptions split the geo hashes into segments, and every segment
+     * has the subscriptions whose ranges contain it. Finding the subscriptions of a geo hash is a lookup of its segment
+     * instead of a comparison with the bounds of every subscription. Adding or cancelling a subscription splits or
+     * merges the segments at its bounds and changes only the segments its range spans. Guarded by the write lock.
+     */
+    private static final class SubscriptionIndex {
+        // the subscriptions of every segment by the first geo hash of the segment
+        private final TreeMap<String, List<RangeSubscription>> segments = new TreeMap<>();
+        // the number of subscriptions that start or end at every segment bound
+        private final Map<String, Integer> boundCounts = new HashMap<>();
+
+        void add(RangeSubscription subscription) {
+            String end = after(subscription.endValue);
+            this.addBound(subscription.startValue);
+            this.addBound(end);
+            for (List<RangeSubscription> segment: this.segments.subMap(subscription.startValue, end).values()) {
+                segment.add(subscription);
+            }
+        }
+
+        void remove(RangeSubscription subscription) {
+            String end = after(subscription.endValue);
+            for (List<RangeSubscription> segment: this.segments.subMap(subscription.startValue, end).values()) {
+                segment.remove(subscription);
+            }
+            this.removeBound(subscription.startValue);
+            this.removeBound(end);
+        }
+
+        private void addBound(String bound) {
+            Integer count = this.boundCounts.get(bound);
+            this.boundCounts.put(bound, count == null ? 1 : count + 1);
+            if (count == null) {
+                // split the segment the bound falls into, both parts start with its subscriptions
+                Map.Entry<String, List<RangeSubscription>> segment = this.segments.lowerEntry(bound);
+                this.segments.put(bound, segment == null
+                        ? new ArrayList<RangeSubscription>() : new ArrayList<>(segment.getValue()));
+            }
+        }
+
+        private void removeBound(String bound) {
+            int count = this.boundCounts.get(bound);
+            if (count == 1) {
+                // no range starts or ends here anymore, so the segment has the subscriptions of the one before it
+                this.boundCounts.remove(bound);
+                this.segments.remove(bound);
+            } else {
+                this.boundCounts.put(bound, count - 1);
+            }
+        }
+
+        // the smallest string after the given one, ranges include their end value
+        private static String after(String value) {
+            return value + '\u0000';
+        }
+
+        /**
+         * @return The subscriptions whose ranges contain the geo hash of the entry, none for a null entry
+         */
+        List<RangeSubscription> find(Entry entry) {
+            if (entry == null) {
+                return Collections.emptyList();
+            }
+            Map.Entry<String, List<RangeSubscription>> segment = this.segments.floorEntry(entry.geoHash);
+            return segment == null ? Collections.<RangeSubscription>emptyList() : segment.getValue();
+        }
+    }
+
+    static Executor newStoreExecutor(final String threadName) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    final Object writeLock = new Object();
+    private final Executor executor;
+    // guarded by the write lock
+    private final Set<RangeSubscription> subscriptions = new HashSet<>();
+    private final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+
+    LocalGeoStore(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return The current entry for the key or null if the key has no location
+     */
+    abstract Entry lookup(String key);
+
+    /**
+     * Returns all entries whose geo hash is between startValue and endValue, both inclusive. Called with the write
+     * lock held.
+     */
+    abstract List<Entry> scan(String startValue, String endValue);
+
+    /**
+     * Makes a write durable before it is applied. Called with the write lock held, a null entry removes the key.
+     *
+     * @throws IOException If the write could not be persisted, in which case it is not applied
+     */
+    abstract void persist(List<String> keys, List<Entry> entries) throws IOException;
+
+    /**
+     * Replaces the entry of a key, a null entry removes the key. Called with the write lock held.
+     *
+     * @return The previous entry or null if the key had no location
+     */
+    abstract Entry swap(String key, Entry entry);
+
+    @Override
+    public Subscription subscribe(String startValue, String endValue, RangeListener listener) {
+        final RangeSubscription subscription = new RangeSubscription(startValue, endValue, listener);
+        synchronized (this.writeLock) {
+            final List<Entry> initialEntries = this.scan(startValue, endValue);
+            this.subscriptions.add(subscription);
+            this.subscriptionIndex.add(subscription);
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Entry entry: initialEntries) {
+                        if (subscription.cancelled) {
+                            return;
+                        }
+                        subscription.listener.onEntryAdded(entry.key, entry.latitude, entry.longitude, null);
+                    }
+                    if (!subscription.cancelled) {
+                        subscription.listener.onRangeLoaded();
+                    }
+                }
+            });
+        }
+        return subscription;
+    }
+
+    @Override
+    public void read(String startValue, String endValue, final RangeListener listener) {
+        final List<Entry> entries;
+        synchronized (this.writeLock) {
+            entries = this.scan(startValue, endValue);
+        }
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Entry entry: entries) {
+                    listener.onEntryAdded(entry.key, entry.latitude, entry.longitude, null);
+                }
+                listener.onRangeLoaded();
+            }
+        });
+    }
+
+    @Override
+    public void getLocation(final String key, final LocationCallback callback) {
+        final Entry entry = this.lookup(key);
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (entry == null) {
+                    callback.onLocationResult(key, null);
+                } else {
+                    callback.onLocationResult(key, new GeoLocation(entry.latitude, entry.longitude));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void setLocation(String key, GeoLocation location, CompletionListener completionListener) {
+        this.write(Collections.singletonList(key), Collections.singletonList(new Entry(key, location)),
+                completionListener);
+    }
+
+    @Override
+    public void removeLocation(String key, CompletionListener completionListener) {
+        this.write(Collections.singletonList(key), Collections.<Entry>singletonList(null), completionListener);
+    }
+
+    @Override
+    public void setLocations(Map<String, GeoLocation> locations, CompletionListener completionListener) {
+        List<String> keys = new ArrayList<>(locations.size());
+        List<Entry> entries = new ArrayList<>(locations.size());
+        for (Map.Entry<String, GeoLocation> location: locations.entrySet()) {
+            keys.add(location.getKey());
+            entries.add(location.getValue() == null ? null : new Entry(location.getKey(), location.getValue()));
+        }
+        this.write(keys, entries, completionListener);
+    }
+
+    private void write(List<String> keys, List<Entry> entries, CompletionListener completionListener) {
+        synchronized (this.writeLock) {
+            try {
+                this.persist(keys, entries);
+            } catch (IOException e) {
+                this.complete(completionListener, DatabaseError.fromException(e));
+                return;
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                Entry entry = entries.get(i);
+                Entry oldEntry = this.swap(keys.get(i), entry);
+                for (RangeSubscription subscription: this.subscriptionIndex.find(oldEntry)) {
+                    this.notifySubscription(subscription, keys.get(i), oldEntry, entry);
+                }
+                for (RangeSubscription subscription: this.subscriptionIndex.find(entry)) {
+                    // subscriptions that contain both geo hashes were notified already
+                    if (!subscription.contains(oldEntry)) {
+                        this.notifySubscription(subscription, keys.get(i), oldEntry, entry);
+                    }
+                }
+            }
+            this.complete(completionListener, null);
+        }
+    }
+
+    private void notifySubscription(final RangeSubscription subscription, final String key, Entry oldEntry, final Entry entry) {
+        boolean wasInRange = subscription.contains(oldEntry);
+        boolean isInRange = subscription.contains(entry);
+        if (isInRange && (!wasInRange || !oldEntry.hasSameLocation(entry))) {
+            final boolean added = !wasInRange;
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (subscription.cancelled) {
+                        return;
+                    }
+                    if (added) {
+                        subscription.listener.onEntryAdded(key, entry.latitude, entry.longitude, null);
+                    } else {
+                        subscription.listener.onEntryChanged(key, entry.latitude, entry.longitude, null);
+                    }
+                }
+            });
+        } else if (wasInRange && !isInRange) {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!subscription.cancelled) {
+                        subscription.listener.onEntryRemoved(key, null);
+                    }
+                }
+            });
+        }
+    }
+
+    private void complete(final CompletionListener completionListener, final DatabaseError error) {
+        if (completionListener != null) {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    completionListener.onComplete(error);
+                }
+            });
+        }
+    }
+}
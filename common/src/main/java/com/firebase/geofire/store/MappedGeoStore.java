@@ -0,0 +1,546 @@
+package com.firebase.geofire.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A GeoStore that persists its locations in a local memory-mapped file, so queries keep working without a network
+ * connection and the data survives restarts.
+ *
+ * The file consists of a sorted segment and an append-only log. The segment holds the records sorted by geo hash,
+ * with one index sorted by geo hash and one sorted by key, and is read directly from the mapping; opening a store
+ * therefore doesn't parse it. Every write is appended to the log as a single record with a CRC32 checksum. When a
+ * store is opened, the log is replayed into memory and stops at the first incomplete or corrupt record, so a write
+ * that was torn by a crash is dropped as a whole. Once the log outgrows the segment, both are compacted into a new
+ * segment, which is written to a separate file and atomically renamed over the old one. The rename is forced to disk
+ * with its directory before any write goes to the new file.
+ *
+ * Unless syncWrites is set, writes are durable once the process exits, but may be lost if the machine crashes before
+ * the operating system wrote them to disk; call {@link #flush()} to force them. The file is limited to 2 GB.
+ */
+public final class MappedGeoStore extends LocalGeoStore implements Closeable {
+
+    private static final int MAGIC = 0x47454F53; // "GEOS"
+    private static final int VERSION = 1;
+
+    // header: magic, version, segment count, geo hash index offset, key index offset, log start, 8 bytes reserved
+    private static final int HEADER_SIZE = 32;
+    private static final int SEGMENT_COUNT_OFFSET = 8;
+    private static final int GEO_INDEX_OFFSET = 12;
+    private static final int KEY_INDEX_OFFSET = 16;
+    private static final int LOG_START_OFFSET = 20;
+
+    // log records: payload length, CRC32 of the payload, payload
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte OP_SET = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final int INITIAL_LOG_CAPACITY = 1 << 20;
+    private static final int MIN_COMPACTION_LOG_SIZE = 4 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Comparator<Entry> GEO_HASH_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            int result = a.geoHash.compareTo(b.geoHash);
+            return (result != 0) ? result : a.key.compareTo(b.key);
+        }
+    };
+
+    /**
+     * A read-only view of the sorted segment. Records are stored as geo hash length (byte), geo hash (ASCII),
+     * key length (int), key (UTF-8), latitude and longitude (double). Both indices are arrays of record offsets.
+     */
+    private static final class Segment {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int geoIndexOffset;
+        private final int keyIndexOffset;
+
+        Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.count = buffer.getInt(SEGMENT_COUNT_OFFSET);
+            this.geoIndexOffset = buffer.getInt(GEO_INDEX_OFFSET);
+            this.keyIndexOffset = buffer.getInt(KEY_INDEX_OFFSET);
+        }
+
+        private int recordByGeoHash(int i) {
+            return this.buffer.getInt(this.geoIndexOffset + 4 * i);
+        }
+
+        private int recordByKey(int i) {
+            return this.buffer.getInt(this.keyIndexOffset + 4 * i);
+        }
+
+        private String geoHashAt(int record) {
+            return readString(this.buffer, record + 1, this.buffer.get(record) & 0xFF);
+        }
+
+        private String keyAt(int record) {
+            int keyOffset = record + 1 + (this.buffer.get(record) & 0xFF);
+            return readString(this.buffer, keyOffset + 4, this.buffer.getInt(keyOffset));
+        }
+
+        private Entry entryAt(int record) {
+            String geoHash = this.geoHashAt(record);
+            int keyOffset = record + 1 + geoHash.length();
+            int keyLength = this.buffer.getInt(keyOffset);
+            String key = readString(this.buffer, keyOffset + 4, keyLength);
+            int locationOffset = keyOffset + 4 + keyLength;
+            return new Entry(key, this.buffer.getDouble(locationOffset), this.buffer.getDouble(locationOffset + 8), geoHash);
+        }
+
+        Entry find(String key) {
+            int low = 0;
+            int high = this.count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int record = this.recordByKey(mid);
+                int result = this.keyAt(record).compareTo(key);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return this.entryAt(record);
+                }
+            }
+            return null;
+        }
+
+        void scan(String startValue, String endValue, Map<String, Entry> overriddenKeys, Set<String> removedKeys,
+                  List<Entry> result) {
+            // find the first record with a geo hash not smaller than startValue
+            int low = 0;
+            int high = this.count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.geoHashAt(this.recordByGeoHash(mid)).compareTo(startValue) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < this.count; i++) {
+                int record = this.recordByGeoHash(i);
+                if (this.geoHashAt(record).compareTo(endValue) > 0) {
+                    break;
+                }
+                String key = this.keyAt(record);
+                if (!overriddenKeys.containsKey(key) && !removedKeys.contains(key)) {
+                    result.add(this.entryAt(record));
+                }
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private final Path path;
+    private final boolean syncWrites;
+
+    // all state below is guarded by the write lock
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private Segment segment;
+    private int logStart;
+    private int logEnd;
+    private int keyCount;
+    private boolean closed;
+    // keys written since the segment was created
+    private final Map<String, Entry> logEntries = new HashMap<>();
+    private final TreeMap<String, Entry> logIndex = new TreeMap<>();
+    private final Set<String> removedKeys = new HashSet<>();
+
+    /**
+     * Opens the store in the given file or creates it if it doesn't exist. Callbacks are delivered on the store's own
+     * thread.
+     *
+     * @param file The file of the store
+     * @throws IOException If the file cannot be opened or is not a store file
+     */
+    public MappedGeoStore(File file) throws IOException {
+        this(file, false, newStoreExecutor("GeoFire-MappedGeoStore"));
+    }
+
+    /**
+     * Opens the store in the given file or creates it if it doesn't exist.
+     *
+     * @param file       The file of the store
+     * @param syncWrites Whether every write is forced to disk before its completion listener is called
+     * @param executor   The executor callbacks are delivered on. It has to run tasks one at a time and in order.
+     *                   See {@link GeoStore} before using one that runs them on the thread that submitted them.
+     * @throws IOException If the file cannot be opened or is not a store file
+     */
+    public MappedGeoStore(File file, boolean syncWrites, Executor executor) throws IOException {
+        super(executor);
+        this.path = file.toPath();
+        this.syncWrites = syncWrites;
+        this.channel = FileChannel.open(this.path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            this.open();
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        long size = this.channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Store file is too large: " + this.path);
+        }
+        if (size < HEADER_SIZE || this.channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).getInt(0) == 0) {
+            // new file or a crash while it was created
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + INITIAL_LOG_CAPACITY);
+            writeHeader(this.buffer, 0, HEADER_SIZE, HEADER_SIZE, HEADER_SIZE);
+            this.buffer.force();
+        } else {
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a GeoFire store file: " + this.path);
+        }
+        if (this.buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported GeoFire store version " + this.buffer.getInt(4) + ": " + this.path);
+        }
+        this.logStart = this.buffer.getInt(LOG_START_OFFSET);
+        if (this.logStart < HEADER_SIZE || this.logStart > this.buffer.capacity()) {
+            throw new IOException("Corrupt GeoFire store file: " + this.path);
+        }
+        this.segment = new Segment(this.buffer);
+        this.keyCount = this.segment.count;
+        this.recover();
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int count, int geoIndexOffset, int keyIndexOffset, int logStart) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(SEGMENT_COUNT_OFFSET, count);
+        buffer.putInt(GEO_INDEX_OFFSET, geoIndexOffset);
+        buffer.putInt(KEY_INDEX_OFFSET, keyIndexOffset);
+        buffer.putInt(LOG_START_OFFSET, logStart);
+    }
+
+    private void recover() {
+        int capacity = this.buffer.capacity();
+        int position = this.logStart;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = this.buffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer view = this.buffer.duplicate();
+            view.position(position + RECORD_HEADER_SIZE);
+            view.get(payload);
+            if (checksum(payload) != this.buffer.getInt(position + 4)) {
+                break;
+            }
+            this.replay(ByteBuffer.wrap(payload));
+            position += RECORD_HEADER_SIZE + length;
+        }
+        this.logEnd = position;
+        // clear what's left of a torn write so it can't be mistaken for a record after the next append
+        for (int i = position; i < capacity; i++) {
+            if (this.buffer.get(i) != 0) {
+                this.buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private void replay(ByteBuffer payload) {
+        int operations = payload.getInt();
+        for (int i = 0; i < operations; i++) {
+            byte operation = payload.get();
+            byte[] keyBytes = new byte[payload.getInt()];
+            payload.get(keyBytes);
+            String key = new String(keyBytes, UTF8);
+            if (operation == OP_SET) {
+                this.swap(key, new Entry(key, payload.getDouble(), payload.getDouble()));
+            } else {
+                this.swap(key, null);
+            }
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return The number of keys in this store
+     */
+    public int size() {
+        synchronized (this.writeLock) {
+            return this.keyCount;
+        }
+    }
+
+    /**
+     * @return The number of bytes in the log that are not compacted into the sorted segment yet
+     */
+    public int getLogSize() {
+        synchronized (this.writeLock) {
+            return this.logEnd - this.logStart;
+        }
+    }
+
+    @Override
+    Entry lookup(String key) {
+        synchronized (this.writeLock) {
+            Entry entry = this.logEntries.get(key);
+            if (entry != null || this.removedKeys.contains(key)) {
+                return entry;
+            }
+            return this.segment.find(key);
+        }
+    }
+
+    @Override
+    List<Entry> scan(String startValue, String endValue) {
+        List<Entry> result = new ArrayList<>();
+        this.segment.scan(startValue, endValue, this.logEntries, this.removedKeys, result);
+        for (Entry entry: this.logIndex.tailMap(startValue).values()) {
+            if (entry.geoHash.compareTo(endValue) > 0) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    @Override
+    void persist(List<String> keys, List<Entry> entries) throws IOException {
+        if (this.closed) {
+            throw new IllegalStateException("The store is closed!");
+        }
+        if (this.logEnd - this.logStart > Math.max(MIN_COMPACTION_LOG_SIZE, this.logStart)) {
+            this.compactLocked();
+        }
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        int length = 4;
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] bytes = keys.get(i).getBytes(UTF8);
+            keyBytes.add(bytes);
+            length += 1 + 4 + bytes.length + ((entries.get(i) != null) ? 16 : 0);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.putInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Entry entry = entries.get(i);
+            payload.put((entry != null) ? OP_SET : OP_REMOVE);
+            payload.putInt(keyBytes.get(i).length);
+            payload.put(keyBytes.get(i));
+            if (entry != null) {
+                payload.putDouble(entry.latitude);
+                payload.putDouble(entry.longitude);
+            }
+        }
+        this.ensureCapacity((long) this.logEnd + RECORD_HEADER_SIZE + length);
+
+        // the length is written last, a record without it is ignored on recovery
+        ByteBuffer view = this.buffer.duplicate();
+        view.position(this.logEnd + RECORD_HEADER_SIZE);
+        view.put(payload.array());
+        this.buffer.putInt(this.logEnd + 4, checksum(payload.array()));
+        this.buffer.putInt(this.logEnd, length);
+        this.logEnd += RECORD_HEADER_SIZE + length;
+        if (this.syncWrites) {
+            this.buffer.force();
+        }
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        int capacity = this.buffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        long newCapacity = Math.min(Math.max(required, 2L * capacity), Integer.MAX_VALUE);
+        if (required > newCapacity) {
+            throw new IOException("GeoFire store file would exceed 2 GB: " + this.path);
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+    }
+
+    @Override
+    Entry swap(String key, Entry entry) {
+        Entry oldEntry = this.lookup(key);
+        Entry oldLogEntry = (entry != null) ? this.logEntries.put(key, entry) : this.logEntries.remove(key);
+        if (oldLogEntry != null) {
+            this.logIndex.remove(oldLogEntry.indexKey());
+        }
+        if (entry != null) {
+            this.logIndex.put(entry.indexKey(), entry);
+            this.removedKeys.remove(key);
+        } else if (this.segment.find(key) != null) {
+            this.removedKeys.add(key);
+        }
+        if (oldEntry == null && entry != null) {
+            this.keyCount++;
+        } else if (oldEntry != null && entry == null) {
+            this.keyCount--;
+        }
+        return oldEntry;
+    }
+
+    /**
+     * Merges the log into a new sorted segment. This happens automatically once the log grew larger than the
+     * segment, but can be called to speed up the next start.
+     *
+     * @throws IOException If the compacted file could not be written, in which case the store is unchanged
+     */
+    public void compact() throws IOException {
+        synchronized (this.writeLock) {
+            if (this.closed) {
+                throw new IllegalStateException("The store is closed!");
+            }
+            this.compactLocked();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        List<Entry> entries = this.scan("", "~");
+        Collections.sort(entries, GEO_HASH_ORDER);
+        int count = entries.size();
+
+        byte[][] keys = new byte[count][];
+        long size = HEADER_SIZE + 8L * count;
+        for (int i = 0; i < count; i++) {
+            keys[i] = entries.get(i).key.getBytes(UTF8);
+            size += 1 + entries.get(i).geoHash.length() + 4 + keys[i].length + 16;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("GeoFire store file would exceed 2 GB: " + this.path);
+        }
+
+        Path compactPath = this.path.resolveSibling(this.path.getFileName() + ".compact");
+        try (FileChannel compactChannel = FileChannel.open(compactPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer compactBuffer = compactChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int geoIndexOffset = (int) size - 8 * count;
+            int keyIndexOffset = geoIndexOffset + 4 * count;
+            int[] records = new int[count];
+            compactBuffer.position(HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                Entry entry = entries.get(i);
+                records[i] = compactBuffer.position();
+                compactBuffer.put((byte) entry.geoHash.length());
+                compactBuffer.put(entry.geoHash.getBytes(UTF8));
+                compactBuffer.putInt(keys[i].length);
+                compactBuffer.put(keys[i]);
+                compactBuffer.putDouble(entry.latitude);
+                compactBuffer.putDouble(entry.longitude);
+                compactBuffer.putInt(geoIndexOffset + 4 * i, records[i]);
+            }
+            Integer[] keyOrder = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keyOrder[i] = i;
+            }
+            final List<Entry> sortedEntries = entries;
+            Arrays.sort(keyOrder, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return sortedEntries.get(a).key.compareTo(sortedEntries.get(b).key);
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                compactBuffer.putInt(keyIndexOffset + 4 * i, records[keyOrder[i]]);
+            }
+            writeHeader(compactBuffer, count, geoIndexOffset, keyIndexOffset, (int) size);
+            compactBuffer.force();
+        }
+        Files.move(compactPath, this.path, StandardCopyOption.ATOMIC_MOVE);
+        // writes after the compaction go to the new file, they would be lost with the rename
+        forceDirectory(this.path.toAbsolutePath().getParent());
+
+        this.channel.close();
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.segment = new Segment(this.buffer);
+        this.logStart = (int) size;
+        this.logEnd = (int) size;
+        this.logEntries.clear();
+        this.logIndex.clear();
+        this.removedKeys.clear();
+    }
+
+    /**
+     * Forces the entries of a directory to disk, so a file renamed in it keeps its name after a crash. Platforms that
+     * can't open directories, like Windows, leave it to the file system.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel directoryChannel;
+        try {
+            directoryChannel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            directoryChannel.force(true);
+        } finally {
+            directoryChannel.close();
+        }
+    }
+
+    /**
+     * Forces all writes to disk.
+     */
+    public void flush() {
+        synchronized (this.writeLock) {
+            if (!this.closed) {
+                this.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Flushes all writes and closes the file. Writes after closing throw an IllegalStateException.
+     *
+     * @throws IOException If the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.writeLock) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.buffer.force();
+            // drop the preallocated space, the next open maps exactly the data
+            this.channel.truncate(this.logEnd);
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.firebase.geofire.store;
+
+import com.firebase.geofire.core.GeoHash;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A GeoStore that keeps its locations outside of the Java heap, in direct byte buffers, so the heap doesn't grow with
+ * the number of keys and the garbage collector never has to trace them. A key costs about 80 bytes of native memory
+ * plus its UTF-8 bytes, and a store holds up to about 53 million keys. The store does not provide data snapshots.
+ *
+ * Every key occupies a fixed-size slot with its coordinates and its geo hash packed into a long. Keys are stored in a
+ * separate arena and found through an open-addressing hash table. Range scans use a geo hash index made of a small
+ * sorted write buffer on the heap and two sorted runs, which are merged as the buffer fills up. Moving a key appends a
+ * new index record instead of rewriting the index; outdated records are recognized by a per-slot generation and
+ * dropped by the next merge.
+ *
+ * All operations are serialized on the write lock. Callbacks are delivered on the executor passed in, or on a single
+ * store thread if none was passed in.
+ */
+public final class OffHeapGeoStore extends LocalGeoStore {
+
+    private static final int PRECISION = GeoHash.DEFAULT_PRECISION;
+
+    // slots: latitude, longitude, packed geo hash (next free slot for free slots), key offset (-1 for free slots),
+    // generation, key hash, key length
+    private static final int SLOT_SIZE = 40;
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 8;
+    private static final int GEO_HASH = 16;
+    private static final int KEY_OFFSET = 24;
+    private static final int GENERATION = 28;
+    private static final int KEY_HASH = 32;
+    private static final int KEY_LENGTH = 36;
+
+    // hash table buckets: 0 for empty buckets, -1 for removed keys, slot + 1 otherwise
+    private static final int EMPTY_BUCKET = 0;
+    private static final int REMOVED_BUCKET = -1;
+
+    // slots live in a single buffer
+    private static final int MAX_KEYS = Integer.MAX_VALUE / SLOT_SIZE;
+
+    private static final int WRITE_BUFFER_CAPACITY = 4096;
+    private static final int MIN_KEY_ARENA_GARBAGE = 1 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * A run of index records sorted by geo hash. A record is the packed geo hash (long), the slot (int) and the
+     * generation of the slot at the time the record was written (int).
+     */
+    private static final class IndexRun {
+        static final int RECORD_SIZE = 16;
+
+        final ByteBuffer buffer;
+        int count;
+
+        IndexRun(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        long geoHashAt(int i) {
+            return this.buffer.getLong(i * RECORD_SIZE);
+        }
+
+        int slotAt(int i) {
+            return this.buffer.getInt(i * RECORD_SIZE + 8);
+        }
+
+        int generationAt(int i) {
+            return this.buffer.getInt(i * RECORD_SIZE + 12);
+        }
+
+        void put(int i, long geoHash, int slot, int generation) {
+            this.buffer.putLong(i * RECORD_SIZE, geoHash);
+            this.buffer.putInt(i * RECORD_SIZE + 8, slot);
+            this.buffer.putInt(i * RECORD_SIZE + 12, generation);
+        }
+
+        int lowerBound(long geoHash) {
+            int low = 0;
+            int high = this.count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.geoHashAt(mid) < geoHash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private ByteBuffer slots;
+    private int slotCount;
+    private int freeSlot = -1;
+
+    private ByteBuffer keyArena;
+    private int keyArenaEnd;
+    private int keyArenaGarbage;
+
+    private ByteBuffer buckets;
+    private int bucketMask;
+    private int usedBuckets;
+
+    // index records of recent writes, on the heap so inserting can shift them in place
+    private final IndexRun writeBuffer =
+            new IndexRun(ByteBuffer.allocate(WRITE_BUFFER_CAPACITY * IndexRun.RECORD_SIZE), 0);
+    private IndexRun recentRun = new IndexRun(ByteBuffer.allocateDirect(0), 0);
+    private IndexRun mainRun = new IndexRun(ByteBuffer.allocateDirect(0), 0);
+
+    private int size;
+
+    /**
+     * Creates a new empty store that delivers its callbacks on its own thread.
+     */
+    public OffHeapGeoStore() {
+        this(1024);
+    }
+
+    /**
+     * Creates a new empty store that delivers its callbacks on its own thread.
+     *
+     * @param expectedKeys The number of keys to allocate memory for, the store grows beyond it if needed
+     */
+    public OffHeapGeoStore(int expectedKeys) {
+        this(expectedKeys, newStoreExecutor("GeoFire-OffHeapGeoStore"));
+    }
+
+    /**
+     * Creates a new empty store.
+     *
+     * @param expectedKeys The number of keys to allocate memory for, the store grows beyond it if needed
+     * @param executor     The executor callbacks are delivered on. It has to run tasks one at a time and in order.
+     *                     See {@link GeoStore} before using one that runs them on the thread that submitted them.
+     */
+    public OffHeapGeoStore(int expectedKeys, Executor executor) {
+        super(executor);
+        if (expectedKeys < 1 || expectedKeys > MAX_KEYS) {
+            throw new IllegalArgumentException("The number of expected keys must be between 1 and " + MAX_KEYS + "!");
+        }
+        this.slots = ByteBuffer.allocateDirect(expectedKeys * SLOT_SIZE);
+        this.keyArena = ByteBuffer.allocateDirect(expectedKeys * 16);
+        int bucketCount = Integer.highestOneBit(Math.max(expectedKeys * 2 - 1, 1)) << 1;
+        this.buckets = ByteBuffer.allocateDirect(bucketCount * 4);
+        this.bucketMask = bucketCount - 1;
+    }
+
+    /**
+     * @return The number of keys in this store
+     */
+    public int size() {
+        synchronized (this.writeLock) {
+            return this.size;
+        }
+    }
+
+    /**
+     * @return The number of bytes of native memory currently allocated by this store
+     */
+    public long getOffHeapBytes() {
+        synchronized (this.writeLock) {
+            return (long) this.slots.capacity() + this.keyArena.capacity() + this.buckets.capacity()
+                    + this.recentRun.buffer.capacity() + this.mainRun.buffer.capacity();
+        }
+    }
+
+    @Override
+    Entry lookup(String key) {
+        synchronized (this.writeLock) {
+            int bucket = this.findBucket(key.getBytes(UTF8), hash(key));
+            return (bucket < 0) ? null : this.entryAt(this.buckets.getInt(bucket * 4) - 1);
+        }
+    }
+
+    @Override
+    List<Entry> scan(String startValue, String endValue) {
+        long start = GeoHash.lowerBoundToLong(startValue, PRECISION);
+        long end = GeoHash.upperBoundToLong(endValue, PRECISION);
+        List<Entry> result = new ArrayList<>();
+        if (start <= end) {
+            this.scan(this.mainRun, start, end, result);
+            this.scan(this.recentRun, start, end, result);
+            this.scan(this.writeBuffer, start, end, result);
+        }
+        return result;
+    }
+
+    private void scan(IndexRun run, long start, long end, List<Entry> result) {
+        for (int i = run.lowerBound(start); i < run.count && run.geoHashAt(i) <= end; i++) {
+            if (this.isCurrent(run, i)) {
+                result.add(this.entryAt(run.slotAt(i)));
+            }
+        }
+    }
+
+    private boolean isCurrent(IndexRun run, int i) {
+        int slot = run.slotAt(i);
+        return this.slots.getInt(slot * SLOT_SIZE + KEY_OFFSET) >= 0
+                && this.slots.getInt(slot * SLOT_SIZE + GENERATION) == run.generationAt(i);
+    }
+
+    @Override
+    void persist(List<String> keys, List<Entry> entries) {
+        // nothing to persist
+    }
+
+    @Override
+    Entry swap(String key, Entry entry) {
+        byte[] keyBytes = key.getBytes(UTF8);
+        int keyHash = hash(key);
+        int bucket = this.findBucket(keyBytes, keyHash);
+        int slot = (bucket < 0) ? -1 : this.buckets.getInt(bucket * 4) - 1;
+        Entry oldEntry = (slot < 0) ? null : this.entryAt(slot);
+        if (entry == null) {
+            if (slot >= 0) {
+                this.removeSlot(bucket, slot);
+            }
+            return oldEntry;
+        }
+        long geoHash = GeoHash.toLong(entry.geoHash);
+        int base;
+        if (slot < 0) {
+            slot = this.allocateSlot(keyBytes, keyHash);
+            base = slot * SLOT_SIZE;
+        } else {
+            base = slot * SLOT_SIZE;
+            if (this.slots.getLong(base + GEO_HASH) == geoHash) {
+                // same index position, no new index record needed
+                this.slots.putDouble(base + LATITUDE, entry.latitude);
+                this.slots.putDouble(base + LONGITUDE, entry.longitude);
+                return oldEntry;
+            }
+        }
+        int generation = this.slots.getInt(base + GENERATION) + 1;
+        this.slots.putDouble(base + LATITUDE, entry.latitude);
+        this.slots.putDouble(base + LONGITUDE, entry.longitude);
+        this.slots.putLong(base + GEO_HASH, geoHash);
+        this.slots.putInt(base + GENERATION, generation);
+        this.addIndexRecord(geoHash, slot, generation);
+        return oldEntry;
+    }
+
+    private Entry entryAt(int slot) {
+        int base = slot * SLOT_SIZE;
+        byte[] keyBytes = new byte[this.slots.getInt(base + KEY_LENGTH)];
+        ByteBuffer view = this.keyArena.duplicate();
+        view.position(this.slots.getInt(base + KEY_OFFSET));
+        view.get(keyBytes);
+        return new Entry(new String(keyBytes, UTF8), this.slots.getDouble(base + LATITUDE),
+                this.slots.getDouble(base + LONGITUDE), GeoHash.fromLong(this.slots.getLong(base + GEO_HASH), PRECISION));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int findBucket(byte[] keyBytes, int keyHash) {
+        for (int bucket = keyHash & this.bucketMask; ; bucket = (bucket + 1) & this.bucketMask) {
+            int value = this.buckets.getInt(bucket * 4);
+            if (value == EMPTY_BUCKET) {
+                return -1;
+            }
+            if (value != REMOVED_BUCKET && this.slotHasKey(value - 1, keyBytes, keyHash)) {
+                return bucket;
+            }
+        }
+    }
+
+    private boolean slotHasKey(int slot, byte[] keyBytes, int keyHash) {
+        int base = slot * SLOT_SIZE;
+        if (this.slots.getInt(base + KEY_HASH) != keyHash || this.slots.getInt(base + KEY_LENGTH) != keyBytes.length) {
+            return false;
+        }
+        int keyOffset = this.slots.getInt(base + KEY_OFFSET);
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (this.keyArena.get(keyOffset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int allocateSlot(byte[] keyBytes, int keyHash) {
+        // make room before taking the slot, compacting the arena and rehashing scan all slots
+        if (this.keyArenaEnd + keyBytes.length > this.keyArena.capacity()) {
+            this.compactOrGrowKeyArena(keyBytes.length);
+        }
+        if ((this.usedBuckets + 1) * 2 > this.bucketMask + 1) {
+            this.rehash((this.size + 1) * 4 > this.bucketMask + 1 ? (this.bucketMask + 1) * 2 : this.bucketMask + 1);
+        }
+        int slot;
+        if (this.freeSlot >= 0) {
+            slot = this.freeSlot;
+            this.freeSlot = (int) this.slots.getLong(slot * SLOT_SIZE + GEO_HASH);
+        } else {
+            if (this.slotCount == MAX_KEYS) {
+                throw new IllegalStateException("OffHeapGeoStore cannot hold more than " + MAX_KEYS + " keys!");
+            }
+            if ((this.slotCount + 1) * SLOT_SIZE > this.slots.capacity()) {
+                this.slots = grow(this.slots, (this.slotCount + 1) * SLOT_SIZE);
+            }
+            slot = this.slotCount++;
+        }
+        int base = slot * SLOT_SIZE;
+        ByteBuffer view = this.keyArena.duplicate();
+        view.position(this.keyArenaEnd);
+        view.put(keyBytes);
+        this.slots.putInt(base + KEY_OFFSET, this.keyArenaEnd);
+        this.slots.putInt(base + KEY_HASH, keyHash);
+        this.slots.putInt(base + KEY_LENGTH, keyBytes.length);
+        // a reused slot keeps counting its generations, so records of its previous key stay outdated
+        this.slots.putLong(base + GEO_HASH, -1);
+        this.keyArenaEnd += keyBytes.length;
+
+        int bucket = keyHash & this.bucketMask;
+        while (this.buckets.getInt(bucket * 4) != EMPTY_BUCKET) {
+            bucket = (bucket + 1) & this.bucketMask;
+        }
+        this.buckets.putInt(bucket * 4, slot + 1);
+        this.usedBuckets++;
+        this.size++;
+        return slot;
+    }
+
+    private void removeSlot(int bucket, int slot) {
+        int base = slot * SLOT_SIZE;
+        this.buckets.putInt(bucket * 4, REMOVED_BUCKET);
+        this.keyArenaGarbage += this.slots.getInt(base + KEY_LENGTH);
+        this.slots.putInt(base + KEY_OFFSET, -1);
+        this.slots.putInt(base + GENERATION, this.slots.getInt(base + GENERATION) + 1);
+        this.slots.putLong(base + GEO_HASH, this.freeSlot);
+        this.freeSlot = slot;
+        this.size--;
+    }
+
+    private void rehash(int bucketCount) {
+        // removed buckets are dropped, so usedBuckets only counts live keys afterwards
+        this.buckets = ByteBuffer.allocateDirect(bucketCount * 4);
+        this.bucketMask = bucketCount - 1;
+        this.usedBuckets = 0;
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            int base = slot * SLOT_SIZE;
+            if (this.slots.getInt(base + KEY_OFFSET) >= 0) {
+                int bucket = this.slots.getInt(base + KEY_HASH) & this.bucketMask;
+                while (this.buckets.getInt(bucket * 4) != EMPTY_BUCKET) {
+                    bucket = (bucket + 1) & this.bucketMask;
+                }
+                this.buckets.putInt(bucket * 4, slot + 1);
+                this.usedBuckets++;
+            }
+        }
+    }
+
+    private void compactOrGrowKeyArena(int additionalBytes) {
+        int liveBytes = this.keyArenaEnd - this.keyArenaGarbage;
+        int capacity = this.keyArena.capacity();
+        if (this.keyArenaGarbage < Math.max(MIN_KEY_ARENA_GARBAGE, capacity / 2)
+                || liveBytes + additionalBytes > capacity) {
+            capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(2L * capacity, (long) liveBytes + additionalBytes));
+        }
+        ByteBuffer arena = ByteBuffer.allocateDirect(capacity);
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            int base = slot * SLOT_SIZE;
+            int keyOffset = this.slots.getInt(base + KEY_OFFSET);
+            if (keyOffset >= 0) {
+                ByteBuffer key = this.keyArena.duplicate();
+                key.limit(keyOffset + this.slots.getInt(base + KEY_LENGTH));
+                key.position(keyOffset);
+                this.slots.putInt(base + KEY_OFFSET, arena.position());
+                arena.put(key);
+            }
+        }
+        this.keyArena = arena;
+        this.keyArenaEnd = arena.position();
+        this.keyArenaGarbage = 0;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int required) {
+        int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(2L * buffer.capacity(), required));
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        grown.put(source);
+        return grown;
+    }
+
+    private void addIndexRecord(long geoHash, int slot, int generation) {
+        if (this.writeBuffer.count == WRITE_BUFFER_CAPACITY) {
+            this.recentRun = this.merge(this.recentRun, this.writeBuffer);
+            this.writeBuffer.count = 0;
+            if (this.recentRun.count > Math.max(4 * WRITE_BUFFER_CAPACITY, this.mainRun.count / 8)) {
+                this.mainRun = this.merge(this.mainRun, this.recentRun);
+                this.recentRun = new IndexRun(ByteBuffer.allocateDirect(0), 0);
+            }
+        }
+        int position = this.writeBuffer.lowerBound(geoHash);
+        byte[] records = this.writeBuffer.buffer.array();
+        System.arraycopy(records, position * IndexRun.RECORD_SIZE, records, (position + 1) * IndexRun.RECORD_SIZE,
+                (this.writeBuffer.count - position) * IndexRun.RECORD_SIZE);
+        this.writeBuffer.put(position, geoHash, slot, generation);
+        this.writeBuffer.count++;
+    }
+
+    /**
+     * Merges two runs into a new one, dropping outdated records.
+     */
+    private IndexRun merge(IndexRun a, IndexRun b) {
+        int count = 0;
+        for (int i = 0; i < a.count; i++) {
+            count += this.isCurrent(a, i) ? 1 : 0;
+        }
+        for (int i = 0; i < b.count; i++) {
+            count += this.isCurrent(b, i) ? 1 : 0;
+        }
+        IndexRun merged = new IndexRun(ByteBuffer.allocateDirect(count * IndexRun.RECORD_SIZE), 0);
+        int i = 0;
+        int j = 0;
+        while (i < a.count || j < b.count) {
+            IndexRun run;
+            int index;
+            if (j >= b.count || (i < a.count && a.geoHashAt(i) <= b.geoHashAt(j))) {
+                run = a;
+                index = i++;
+            } else {
+                run = b;
+                index = j++;
+            }
+            if (this.isCurrent(run, index)) {
+                merged.put(merged.count++, run.geoHashAt(index), run.slotAt(index), run.generationAt(index));
+            }
+        }
+        return merged;
+    }
+}
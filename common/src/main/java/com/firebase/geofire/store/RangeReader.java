@@ -0,0 +1,20 @@
+package com.firebase.geofire.store;
+
+/**
+ * Implemented by GeoStores that can read a geo hash range once without subscribing to it. A one-shot query reads
+ * its ranges with this if the store implements it, and subscribes to every range until it is loaded otherwise.
+ */
+public interface RangeReader {
+
+    /**
+     * Reads all keys whose geo hash is between startValue and endValue, both inclusive, once. The listener receives
+     * {@link GeoStore.RangeListener#onEntryAdded} for every key and then {@link GeoStore.RangeListener#onRangeLoaded},
+     * or {@link GeoStore.RangeListener#onRangeError} if the range could not be read. Later changes to the range are
+     * not delivered.
+     *
+     * @param startValue The first geo hash of the range
+     * @param endValue   The last geo hash of the range
+     * @param listener   The listener that receives the keys in the range
+     */
+    void read(String startValue, String endValue, GeoStore.RangeListener listener);
+}
@@ -0,0 +1,65 @@
+package com.firebase.geofire.trace;
+
+/**
+ * Traces the lifecycle and the hot paths of GeoQuery, e.g. to correlate stalled queries with GC or thread activity
+ * in a profiler. Unless a tracer is set on a GeoFire instance, the first implementation registered with
+ * {@link java.util.ServiceLoader} under this interface is used, or {@link NoOpTracer} if there is none.
+ *
+ * Tracers are called while the query's lock is held, so they have to be fast and must not call back into GeoFire.
+ */
+public interface GeoFireTracer {
+
+    /**
+     * An operation that was started and has to be ended or abandoned.
+     */
+    interface Span {
+        /**
+         * @param count The number of items the operation handled, as described by the method that started it
+         */
+        void end(int count);
+
+        /**
+         * Ends an operation that was given up before it completed.
+         */
+        void abandon();
+    }
+
+    /**
+     * Starts computing the geohash ranges that cover the circle of a query. The radius is in meters.
+     *
+     * @return The span, which is ended with the number of ranges
+     */
+    Span startCover(double latitude, double longitude, double radius);
+
+    /**
+     * Starts waiting until a query that was started or whose center or radius changed is ready. The radius is in
+     * meters. Spans of queries that are stopped or changed again before they are ready are abandoned.
+     *
+     * @return The span, which is ended with the number of keys in the query
+     */
+    Span startReady(double latitude, double longitude, double radius);
+
+    /**
+     * Starts handling one update of a key received from the store, which raises one batch of events.
+     *
+     * @return The span, which is ended with the number of events raised
+     */
+    Span startDispatch(String key);
+
+    /**
+     * Starts the read that checks whether a key that was removed from a range left the query.
+     *
+     * @return The span, which is ended with 1 if the key left the query and 0 otherwise
+     */
+    Span startChildRemovedRead(String key);
+
+    /**
+     * Called after a query subscribed to a geohash range.
+     */
+    void rangeSubscribed(String startValue, String endValue);
+
+    /**
+     * Called after a query cancelled its subscription of a geohash range.
+     */
+    void rangeUnsubscribed(String startValue, String endValue);
+}
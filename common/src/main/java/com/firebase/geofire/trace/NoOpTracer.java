@@ -0,0 +1,51 @@
+package com.firebase.geofire.trace;
+
+/**
+ * A tracer that does nothing.
+ */
+public final class NoOpTracer implements GeoFireTracer {
+
+    public static final NoOpTracer INSTANCE = new NoOpTracer();
+
+    /** A span that does nothing when it is ended, for tracers that skip an operation */
+    public static final Span NO_SPAN = new Span() {
+        @Override
+        public void end(int count) {
+        }
+
+        @Override
+        public void abandon() {
+        }
+    };
+
+    private NoOpTracer() {
+    }
+
+    @Override
+    public Span startCover(double latitude, double longitude, double radius) {
+        return NO_SPAN;
+    }
+
+    @Override
+    public Span startReady(double latitude, double longitude, double radius) {
+        return NO_SPAN;
+    }
+
+    @Override
+    public Span startDispatch(String key) {
+        return NO_SPAN;
+    }
+
+    @Override
+    public Span startChildRemovedRead(String key) {
+        return NO_SPAN;
+    }
+
+    @Override
+    public void rangeSubscribed(String startValue, String endValue) {
+    }
+
+    @Override
+    public void rangeUnsubscribed(String startValue, String endValue) {
+    }
+}
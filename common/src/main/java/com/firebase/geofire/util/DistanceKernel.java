@@ -0,0 +1,43 @@
+package com.firebase.geofire.util;
+
+/**
+ * Computes the distances from one location to many locations at once, e.g. to filter all keys of a query by its
+ * radius. {@link GeoUtils#getDistanceKernel()} returns the first implementation registered with
+ * {@link java.util.ServiceLoader} under this interface, such as the SIMD kernel of the geofire-vector module, or
+ * {@link ScalarDistanceKernel} if there is none or it can't be loaded.
+ *
+ * The locations are given as parallel arrays of latitudes and longitudes. Implementations must be thread safe.
+ */
+public interface DistanceKernel {
+
+    /**
+     * Computes the distances from a center to locations. The distances are within a few ulps of
+     * {@link GeoUtils#distance(double, double, double, double)}.
+     *
+     * @param latitude   The latitude of the center
+     * @param longitude  The longitude of the center
+     * @param latitudes  The latitudes of the locations
+     * @param longitudes The longitudes of the locations
+     * @param count      The number of locations, from the start of the arrays
+     * @param distances  Receives the distances in meters
+     */
+    void distances(double latitude, double longitude, double[] latitudes, double[] longitudes, int count,
+                   double[] distances);
+
+    /**
+     * Tests which locations are within a radius of a center. The result for every location is exactly the same as
+     * comparing {@link GeoUtils#distance(double, double, double, double)} with the radius, so it agrees with
+     * locations that are tested one at a time.
+     *
+     * @param latitude   The latitude of the center
+     * @param longitude  The longitude of the center
+     * @param radius     The radius in meters
+     * @param latitudes  The latitudes of the locations
+     * @param longitudes The longitudes of the locations
+     * @param count      The number of locations, from the start of the arrays
+     * @param within     Receives whether each location is within the radius
+     * @return The number of locations within the radius
+     */
+    int withinRadius(double latitude, double longitude, double radius, double[] latitudes, double[] longitudes,
+                     int count, boolean[] within);
+}
@@ -2,15 +2,44 @@ package com.firebase.geofire.util;
 
 import com.firebase.geofire.GeoLocation;
 
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+
 import static com.firebase.geofire.GeoFire.LOGGER;
 
 public final class GeoUtils {
     private static final double MAX_SUPPORTED_RADIUS = 8587;
 
+    private static final class DefaultDistanceKernel {
+        static final DistanceKernel INSTANCE = load();
+
+        private static DistanceKernel load() {
+            try {
+                Iterator<DistanceKernel> kernels = ServiceLoader.load(DistanceKernel.class).iterator();
+                if (kernels.hasNext()) {
+                    return kernels.next();
+                }
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // e.g. the vector kernel without --add-modules jdk.incubator.vector
+                LOGGER.log(Level.WARNING, "Could not load DistanceKernel", e);
+            }
+            return ScalarDistanceKernel.INSTANCE;
+        }
+    }
+
     private GeoUtils() {
         throw new AssertionError("No instances.");
     }
 
+    /**
+     * @return The kernel that computes many distances at once, see {@link DistanceKernel}
+     */
+    public static DistanceKernel getDistanceKernel() {
+        return DefaultDistanceKernel.INSTANCE;
+    }
+
     public static double distance(GeoLocation location1, GeoLocation location2) {
         return distance(location1.latitude, location1.longitude, location2.latitude, location2.longitude);
     }
@@ -0,0 +1,34 @@
+package com.firebase.geofire.util;
+
+/**
+ * A {@link DistanceKernel} that computes one distance at a time with
+ * {@link GeoUtils#distance(double, double, double, double)}.
+ */
+public final class ScalarDistanceKernel implements DistanceKernel {
+
+    public static final ScalarDistanceKernel INSTANCE = new ScalarDistanceKernel();
+
+    private ScalarDistanceKernel() {
+    }
+
+    @Override
+    public void distances(double latitude, double longitude, double[] latitudes, double[] longitudes, int count,
+                          double[] distances) {
+        for (int i = 0; i < count; i++) {
+            distances[i] = GeoUtils.distance(latitudes[i], longitudes[i], latitude, longitude);
+        }
+    }
+
+    @Override
+    public int withinRadius(double latitude, double longitude, double radius, double[] latitudes,
+                            double[] longitudes, int count, boolean[] within) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            within[i] = GeoUtils.distance(latitudes[i], longitudes[i], latitude, longitude) <= radius;
+            if (within[i]) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CostModelPlanner;
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCoverage;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.UniformKeyDensity;
+import com.firebase.geofire.util.GeoUtils;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CostModelPlannerTest {
+
+    private static boolean contains(Set<GeoHashQuery> queries, GeoLocation location) {
+        GeoHash hash = new GeoHash(location);
+        for (GeoHashQuery query: queries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void plansContainEveryLocationInRadius() {
+        Random random = new Random(3);
+        CostModelPlanner[] planners = {
+                new CostModelPlanner(1000, 1, new UniformKeyDensity(100)),
+                new CostModelPlanner(1, 1000, new UniformKeyDensity(100))
+        };
+        for (int i = 0; i < 300; i++) {
+            GeoLocation center = new GeoLocation(random.nextDouble() * 178 - 89, random.nextDouble() * 360 - 180);
+            double radius = Math.pow(10, random.nextDouble() * 6);
+            for (CostModelPlanner planner: planners) {
+                Set<GeoHashQuery> queries = planner.plan(center, radius);
+                double degrees = Math.min(90, GeoUtils.distanceToLatitudeDegrees(radius) * 2);
+                for (int j = 0; j < 100; j++) {
+                    double latitude = center.latitude + (random.nextDouble() * 2 - 1) * degrees;
+                    double longitude = center.longitude + (random.nextDouble() * 2 - 1) * degrees * 10;
+                    GeoLocation location = new GeoLocation(Math.max(-90, Math.min(90, latitude)),
+                            GeoUtils.wrapLongitude(longitude));
+                    if (GeoUtils.distance(center, location) <= radius) {
+                        Assert.assertTrue(planner + " " + center + " " + radius + " " + location,
+                                contains(queries, location));
+                    }
+                }
+                Assert.assertTrue(contains(queries, center));
+            }
+        }
+    }
+
+    @Test
+    public void costTradesRangesForArea() {
+        GeoLocation center = new GeoLocation(37.7853889, -122.4056973);
+        double radius = 2000;
+        CostModelPlanner listenerBound = new CostModelPlanner(1000000, 1, new UniformKeyDensity(100));
+        CostModelPlanner downloadBound = new CostModelPlanner(1, 1000000, new UniformKeyDensity(100));
+        Set<GeoHashQuery> few = listenerBound.plan(center, radius);
+        Set<GeoHashQuery> tight = downloadBound.plan(center, radius);
+        Set<GeoHashQuery> defaults = GeoHashQuery.queriesAtLocation(center, radius);
+
+        Assert.assertTrue(few.size() < tight.size());
+        Assert.assertTrue(GeoHashCoverage.area(tight) < GeoHashCoverage.area(few));
+        Assert.assertTrue(GeoHashCoverage.area(tight) < GeoHashCoverage.area(defaults));
+        Assert.assertTrue(listenerBound.cost(few) <= listenerBound.cost(defaults));
+        Assert.assertTrue(downloadBound.cost(tight) <= downloadBound.cost(defaults));
+    }
+
+    @Test
+    public void circleAroundPole() {
+        CostModelPlanner planner = new CostModelPlanner(10, 1, new UniformKeyDensity(1));
+        Set<GeoHashQuery> queries = planner.plan(new GeoLocation(89.9, 0), 100000);
+        for (int longitude = -180; longitude < 180; longitude += 15) {
+            Assert.assertTrue(contains(queries, new GeoLocation(89.5, longitude)));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.SimpleMetrics;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class EventRingTest {
+
+    private static final GeoQueryPrimitiveEventListener NO_OP_LISTENER = new GeoQueryPrimitiveEventListener() {
+        @Override
+        public void onKeyEvent(String key, double latitude, double longitude, int type) {
+        }
+
+        @Override
+        public void onGeoQueryReady() {
+        }
+
+        @Override
+        public void onGeoQueryError(DatabaseError error) {
+        }
+    };
+
+    /**
+     * Blocks the thread of the ring until the returned latch is counted down.
+     */
+    private static CountDownLatch block(EventRing ring) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ring.publish(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static void awaitDelivery(EventRing ring) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        ring.publish(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void deliversEventsInOrderWhileGrowing() throws InterruptedException {
+        EventRing ring = new EventRing(new GeoFire(new InMemoryGeoStore()));
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        GeoQueryPrimitiveEventListener listener = new GeoQueryPrimitiveEventListener() {
+            @Override
+            public void onKeyEvent(String key, double latitude, double longitude, int type) {
+                events.add(key + " " + latitude + " " + longitude + " " + type);
+            }
+
+            @Override
+            public void onGeoQueryReady() {
+            }
+
+            @Override
+            public void onGeoQueryError(DatabaseError error) {
+            }
+        };
+        // the ring fills up while its thread is blocked and has to grow
+        ring.publish(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            ring.publish(listener, "key" + i, i, -i, i % 3);
+            expected.add("key" + i + " " + (double) i + " " + (double) -i + " " + i % 3);
+        }
+        Assert.assertEquals(5000, ring.size());
+        release.countDown();
+        ring.publish(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, events);
+        Assert.assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void shrinksWhenIdleAndStopsWithoutListeners() throws InterruptedException {
+        EventRing ring = new EventRing(new GeoFire(new InMemoryGeoStore()), 100);
+        ring.primitiveListenersChanged(1);
+        CountDownLatch release = block(ring);
+        for (int i = 0; i < 5000; i++) {
+            ring.publish(NO_OP_LISTENER, "key" + i, i, -i, i % 3);
+        }
+        Assert.assertTrue(ring.capacity() > EventRing.INITIAL_CAPACITY);
+        release.countDown();
+        awaitDelivery(ring);
+
+        // the thread waits for more events while listeners are left, and the ring shrinks while it is empty
+        long deadline = System.currentTimeMillis() + 10000;
+        while (ring.capacity() > EventRing.INITIAL_CAPACITY && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(EventRing.INITIAL_CAPACITY, ring.capacity());
+        Assert.assertTrue(ring.isRunning());
+
+        ring.primitiveListenersChanged(-1);
+        deadline = System.currentTimeMillis() + 10000;
+        while (ring.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(ring.isRunning());
+
+        // the next event starts the thread again
+        awaitDelivery(ring);
+    }
+
+    @Test
+    public void depthIsReported() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        SimpleMetrics metrics = new SimpleMetrics();
+        geoFire.setMetrics(metrics);
+        Assert.assertEquals(0, metrics.getGaugeValue(GeoFireMetrics.EVENT_RING_DEPTH));
+        EventRing ring = geoFire.getEventRing();
+        CountDownLatch release = block(ring);
+        for (int i = 0; i < 10; i++) {
+            ring.publish(NO_OP_LISTENER, "key" + i, i, -i, i % 3);
+        }
+        Assert.assertEquals(10, metrics.getGaugeValue(GeoFireMetrics.EVENT_RING_DEPTH));
+        Assert.assertEquals(10, metrics.getGaugeValue(GeoFireMetrics.PENDING_EVENTS));
+        release.countDown();
+        awaitDelivery(ring);
+        Assert.assertEquals(0, metrics.getGaugeValue(GeoFireMetrics.EVENT_RING_DEPTH));
+    }
+}
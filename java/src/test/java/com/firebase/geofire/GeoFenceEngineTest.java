@@ -0,0 +1,382 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoFenceEventTestListener;
+import com.firebase.geofire.testing.GeoQueryTestSupport;
+import com.firebase.geofire.trace.GeoFireTracer;
+import com.firebase.geofire.trace.NoOpTracer;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GeoFenceEngineTest {
+
+    /**
+     * Records the ranges that are subscribed and unsubscribed.
+     */
+    private static final class RangeTracer implements GeoFireTracer {
+        private final Set<GeoHashQuery> subscribed = new HashSet<>();
+        private final Set<GeoHashQuery> unsubscribed = new HashSet<>();
+
+        @Override
+        public Span startCover(double latitude, double longitude, double radius) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public Span startReady(double latitude, double longitude, double radius) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public Span startDispatch(String key) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public Span startChildRemovedRead(String key) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public synchronized void rangeSubscribed(String startValue, String endValue) {
+            this.subscribed.add(new GeoHashQuery(startValue, endValue));
+        }
+
+        @Override
+        public synchronized void rangeUnsubscribed(String startValue, String endValue) {
+            this.unsubscribed.add(new GeoHashQuery(startValue, endValue));
+        }
+
+        synchronized void clear() {
+            this.subscribed.clear();
+            this.unsubscribed.clear();
+        }
+    }
+
+    /**
+     * Fails every read of a single location.
+     */
+    private static final class FailingReadStore implements GeoStore {
+        private final InMemoryGeoStore store = GeoQueryTestSupport.synchronousStore();
+
+        @Override
+        public Subscription subscribe(String startValue, String endValue, RangeListener listener) {
+            return this.store.subscribe(startValue, endValue, listener);
+        }
+
+        @Override
+        public void getLocation(String key, LocationCallback callback) {
+            callback.onCancelled(DatabaseError.fromException(new Exception("Read failed")));
+        }
+
+        @Override
+        public void setLocation(String key, GeoLocation location, CompletionListener completionListener) {
+            this.store.setLocation(key, location, completionListener);
+        }
+
+        @Override
+        public void removeLocation(String key, CompletionListener completionListener) {
+            this.store.removeLocation(key, completionListener);
+        }
+
+        @Override
+        public void setLocations(Map<String, GeoLocation> locations, CompletionListener completionListener) {
+            this.store.setLocations(locations, completionListener);
+        }
+    }
+
+    private static final class ErrorListener implements GeoFenceEventListener {
+        private final List<DatabaseError> errors = Collections.synchronizedList(new ArrayList<DatabaseError>());
+
+        @Override
+        public void onKeyEntered(String fenceId, String key, GeoLocation location) {
+        }
+
+        @Override
+        public void onKeyExited(String fenceId, String key) {
+        }
+
+        @Override
+        public void onGeoFencesReady() {
+        }
+
+        @Override
+        public void onGeoFencesError(DatabaseError error) {
+            this.errors.add(error);
+        }
+    }
+
+    private static Set<GeoHashQuery> plan(GeoFire geoFire, GeoFence fence) {
+        return geoFire.getQueryPlanner().plan(fence.getCoverCenter(), fence.getCoverRadius());
+    }
+
+    private static GeoFence square(String id, double south, double west, double size) {
+        return GeoFence.polygon(id, Arrays.asList(new GeoLocation(south, west), new GeoLocation(south, west + size),
+                new GeoLocation(south + size, west + size), new GeoLocation(south + size, west)));
+    }
+
+    @Test
+    public void polygonContains() {
+        // an L shape, the upper right quarter is outside
+        GeoFence fence = GeoFence.polygon("l", Arrays.asList(new GeoLocation(0, 0), new GeoLocation(0, 2),
+                new GeoLocation(1, 2), new GeoLocation(1, 1), new GeoLocation(2, 1), new GeoLocation(2, 0)));
+        Assert.assertTrue(fence.contains(new GeoLocation(0.5, 0.5)));
+        Assert.assertTrue(fence.contains(new GeoLocation(0.5, 1.5)));
+        Assert.assertTrue(fence.contains(new GeoLocation(1.5, 0.5)));
+        Assert.assertFalse(fence.contains(new GeoLocation(1.5, 1.5)));
+        Assert.assertFalse(fence.contains(new GeoLocation(-0.5, 0.5)));
+        Assert.assertFalse(fence.isCircle());
+    }
+
+    @Test
+    public void circleContains() {
+        GeoFence fence = GeoFence.circle("c", new GeoLocation(10, 179.999), 1);
+        Assert.assertTrue(fence.isCircle());
+        Assert.assertTrue(fence.contains(new GeoLocation(10, -179.999)));
+        Assert.assertFalse(fence.contains(new GeoLocation(10.01, 179.999)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void polygonNeedsThreeVertices() {
+        GeoFence.polygon("p", Arrays.asList(new GeoLocation(0, 0), new GeoLocation(1, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateFenceId() {
+        GeoFenceEngine engine = new GeoFire(new InMemoryGeoStore()).createGeoFenceEngine();
+        engine.addFence(GeoFence.circle("c", new GeoLocation(0, 0), 1));
+        engine.addFence(GeoFence.circle("c", new GeoLocation(1, 1), 1));
+    }
+
+    @Test
+    public void duplicateFenceIdInOneList() {
+        GeoFenceEngine engine = new GeoFire(new InMemoryGeoStore()).createGeoFenceEngine();
+        try {
+            engine.addFences(Arrays.asList(GeoFence.circle("c", new GeoLocation(0, 0), 1),
+                    GeoFence.circle("c", new GeoLocation(1, 1), 1)));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // no fence of the list was added
+            Assert.assertEquals(Collections.<GeoFence>emptyList(), engine.getFences());
+        }
+    }
+
+    @Test
+    public void keysEnterAndExitFences() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("a", new GeoLocation(37.0000, -122.0000));
+        geoFire.setLocation("b", new GeoLocation(37.0150, -122.0050));
+        geoFire.setLocation("c", new GeoLocation(37.0001, -122.0001));
+        geoFire.setLocation("far", new GeoLocation(0, 0));
+
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addFence(GeoFence.circle("circle", new GeoLocation(37, -122), 0.5));
+        engine.addFence(square("square", 37.01, -122.01, 0.01));
+        GeoFenceEventTestListener listener = new GeoFenceEventTestListener(true);
+        engine.addGeoFenceEventListener(listener);
+
+        List<String> events = new ArrayList<>();
+        events.add(GeoFenceEventTestListener.keyEntered("circle", "a", 37, -122));
+        events.add(GeoFenceEventTestListener.keyEntered("square", "b", 37.015, -122.005));
+        events.add(GeoFenceEventTestListener.keyEntered("circle", "c", 37.0001, -122.0001));
+        events.add(GeoFenceEventTestListener.ready());
+        listener.expectEvents(events);
+
+        geoFire.setLocation("a", new GeoLocation(37.0160, -122.0060)); // from the circle to the square
+        geoFire.removeLocation("b");
+        events.add(GeoFenceEventTestListener.keyExited("circle", "a"));
+        events.add(GeoFenceEventTestListener.keyEntered("square", "a", 37.016, -122.006));
+        events.add(GeoFenceEventTestListener.keyExited("square", "b"));
+        listener.expectEvents(events);
+        Assert.assertEquals(Collections.singletonList("square"), engine.getFenceIds("a"));
+
+        engine.removeAllListeners();
+    }
+
+    @Test
+    public void fencesAddedAndRemoved() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("a", new GeoLocation(37.0000, -122.0000));
+        geoFire.setLocation("b", new GeoLocation(38.0000, -122.0000));
+
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addFence(GeoFence.circle("first", new GeoLocation(37, -122), 1));
+        GeoFenceEventTestListener listener = new GeoFenceEventTestListener();
+        engine.addGeoFenceEventListener(listener);
+        List<String> events = new ArrayList<>();
+        events.add(GeoFenceEventTestListener.keyEntered("first", "a", 37, -122));
+        listener.expectEvents(events);
+
+        // keys in an added fence enter it
+        engine.addFence(GeoFence.circle("second", new GeoLocation(38, -122), 1));
+        events.add(GeoFenceEventTestListener.keyEntered("second", "b", 38, -122));
+        listener.expectEvents(events);
+
+        // keys in a removed fence don't exit it and are no longer watched
+        Assert.assertTrue(engine.removeFence("first"));
+        Assert.assertFalse(engine.removeFence("first"));
+        Assert.assertNull(engine.getFence("first"));
+        geoFire.setLocation("a", new GeoLocation(38.0001, -122.0000));
+        events.add(GeoFenceEventTestListener.keyEntered("second", "a", 38.0001, -122));
+        listener.expectEvents(events);
+
+        // a late listener gets the keys already in fences
+        GeoFenceEventTestListener lateListener = new GeoFenceEventTestListener();
+        engine.addGeoFenceEventListener(lateListener);
+        lateListener.expectEvents(Arrays.asList(
+                GeoFenceEventTestListener.keyEntered("second", "a", 38.0001, -122),
+                GeoFenceEventTestListener.keyEntered("second", "b", 38, -122)));
+
+        engine.removeAllListeners();
+    }
+
+    @Test
+    public void manyFencesMatchBruteForce() throws InterruptedException {
+        Random random = new Random(7);
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        List<GeoFence> fences = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double latitude = 37 + random.nextDouble() * 0.5;
+            double longitude = -122 + random.nextDouble() * 0.5;
+            if (i % 2 == 0) {
+                fences.add(GeoFence.circle("fence" + i, new GeoLocation(latitude, longitude),
+                        0.1 + random.nextDouble() * 5));
+            } else {
+                fences.add(square("fence" + i, latitude, longitude, random.nextDouble() * 0.05));
+            }
+        }
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            GeoLocation location = new GeoLocation(37 + random.nextDouble() * 0.5, -122 + random.nextDouble() * 0.5);
+            geoFire.setLocation("key" + i, location);
+            for (GeoFence fence: fences) {
+                if (fence.contains(location)) {
+                    expected.add(GeoFenceEventTestListener.keyEntered(fence.getId(), "key" + i,
+                            location.latitude, location.longitude));
+                }
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addFences(fences);
+        GeoFenceEventTestListener listener = new GeoFenceEventTestListener();
+        engine.addGeoFenceEventListener(listener);
+        listener.expectEvents(expected);
+
+        engine.removeAllListeners();
+    }
+
+    @Test
+    public void fenceChangesOnlySubscribeTheirOwnRanges() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        RangeTracer tracer = new RangeTracer();
+        geoFire.setTracer(tracer);
+        geoFire.setLocation("a", new GeoLocation(37.0000, -122.0000));
+        GeoFence first = GeoFence.circle("first", new GeoLocation(37, -122), 1);
+        GeoFence second = GeoFence.circle("second", new GeoLocation(37.015, -122), 1);
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addFence(first);
+        engine.addGeoFenceEventListener(new GeoFenceEventTestListener());
+        Assert.assertEquals(plan(geoFire, first), tracer.subscribed);
+
+        // the ranges of the first fence stay subscribed while the second fence overlaps them
+        Set<GeoHashQuery> secondOnly = new HashSet<>(plan(geoFire, second));
+        secondOnly.removeAll(plan(geoFire, first));
+        Assert.assertFalse(secondOnly.isEmpty());
+        Assert.assertTrue(secondOnly.size() < plan(geoFire, second).size());
+        tracer.clear();
+        engine.addFence(second);
+        Assert.assertEquals(secondOnly, tracer.subscribed);
+        Assert.assertEquals(Collections.<GeoHashQuery>emptySet(), tracer.unsubscribed);
+
+        tracer.clear();
+        engine.removeFence("second");
+        Assert.assertEquals(Collections.<GeoHashQuery>emptySet(), tracer.subscribed);
+        Assert.assertEquals(secondOnly, tracer.unsubscribed);
+        Assert.assertEquals(Collections.singletonList("first"), engine.getFenceIds("a"));
+
+        engine.removeAllListeners();
+    }
+
+    @Test
+    public void failedReadOfARemovedKeyRaisesAnError() throws InterruptedException {
+        FailingReadStore store = new FailingReadStore();
+        GeoFire geoFire = new GeoFire(store);
+        geoFire.setLocation("a", new GeoLocation(37, -122));
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addFence(GeoFence.circle("circle", new GeoLocation(37, -122), 1));
+        ErrorListener listener = new ErrorListener();
+        engine.addGeoFenceEventListener(listener);
+        Assert.assertEquals(Collections.singletonList("circle"), engine.getFenceIds("a"));
+
+        // the engine can't tell whether the key moved to another of its ranges, it keeps the key and reports the error
+        geoFire.setLocation("a", new GeoLocation(0, 0));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (listener.errors.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, listener.errors.size());
+        Assert.assertEquals(Collections.singletonList("circle"), engine.getFenceIds("a"));
+
+        engine.removeAllListeners();
+    }
+
+    @Test
+    public void fenceChurnMatchesBruteForce() {
+        Random random = new Random(11);
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        List<GeoLocation> locations = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            locations.add(new GeoLocation(37 + random.nextDouble() * 0.2, -122 + random.nextDouble() * 0.2));
+            geoFire.setLocation("key" + i, locations.get(i));
+        }
+        GeoFenceEngine engine = geoFire.createGeoFenceEngine();
+        engine.addGeoFenceEventListener(new GeoFenceEventTestListener());
+        List<GeoFence> fences = new ArrayList<>();
+        for (int round = 0; round < 200; round++) {
+            if (fences.isEmpty() || random.nextInt(3) != 0) {
+                double latitude = 37 + random.nextDouble() * 0.2;
+                double longitude = -122 + random.nextDouble() * 0.2;
+                GeoFence fence = round % 2 == 0
+                        ? GeoFence.circle("fence" + round, new GeoLocation(latitude, longitude), random.nextDouble())
+                        : square("fence" + round, latitude, longitude, random.nextDouble() * 0.02);
+                fences.add(fence);
+                engine.addFence(fence);
+            } else {
+                Assert.assertTrue(engine.removeFence(fences.remove(random.nextInt(fences.size())).getId()));
+            }
+            if (round % 10 == 0) {
+                // keys that are still watched follow their moves
+                int i = random.nextInt(locations.size());
+                locations.set(i, new GeoLocation(37 + random.nextDouble() * 0.2, -122 + random.nextDouble() * 0.2));
+                geoFire.setLocation("key" + i, locations.get(i));
+            }
+            for (int i = 0; i < locations.size(); i++) {
+                Set<String> expected = new HashSet<>();
+                for (GeoFence fence: fences) {
+                    if (fence.contains(locations.get(i))) {
+                        expected.add(fence.getId());
+                    }
+                }
+                Assert.assertEquals(expected, new HashSet<>(engine.getFenceIds("key" + i)));
+            }
+        }
+
+        engine.removeAllListeners();
+    }
+}
@@ -171,4 +171,57 @@ public class GeoFireIT {
         geoFire.getLocation("loc", testCallback);
         Assert.assertEquals(TestCallback.location("loc", 1, 2), testCallback.getCallbackValue());
     }
+
+    @Test
+    public void writeBehindCoalescesUpdates() throws InterruptedException, ExecutionException, TimeoutException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        WriteBehindBuffer buffer = geoFire.enableWriteBehind(TimeUnit.HOURS.toMillis(1), 100, 1);
+        geoFireTestingRule.setLocation(geoFire, "loc1", 1, 1);
+        geoFireTestingRule.setLocation(geoFire, "loc1", 2, 2);
+        geoFireTestingRule.setLocation(geoFire, "loc2", 3, 3);
+        geoFireTestingRule.removeLocation(geoFire, "loc2");
+        final SimpleFuture<DatabaseError> future = new SimpleFuture<>();
+        geoFire.setLocation("loc1", new GeoLocation(4, 4), new GeoFire.CompletionListener() {
+            @Override
+            public void onComplete(String key, DatabaseError error) {
+                future.put(error);
+            }
+        });
+        Assert.assertEquals(2, buffer.getPendingCount());
+        buffer.flush();
+        Assert.assertNull(future.get(geoFireTestingRule.timeout, TimeUnit.SECONDS));
+        Assert.assertEquals(3, buffer.getCoalescedCount());
+        Assert.assertEquals(2, buffer.getWrittenCount());
+        Assert.assertEquals(1, buffer.getBatchCount());
+        geoFire.disableWriteBehind();
+
+        TestCallback testCallback1 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback1);
+        Assert.assertEquals(TestCallback.location("loc1", 4, 4), testCallback1.getCallbackValue());
+
+        TestCallback testCallback2 = new TestCallback();
+        geoFire.getLocation("loc2", testCallback2);
+        Assert.assertEquals(TestCallback.noLocation("loc2"), testCallback2.getCallbackValue());
+    }
+
+    @Test
+    public void minimumMovementSuppressesWrites() throws InterruptedException, ExecutionException, TimeoutException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFire.setMinimumMovement(100);
+        geoFireTestingRule.setLocation(geoFire, "loc1", 37, -122, true);
+        geoFireTestingRule.setLocation(geoFire, "loc1", 37.0001, -122.0001, true); // about 14 meters
+        geoFireTestingRule.setLocation(geoFire, "loc1", 37, -122, true);
+        Assert.assertEquals(2, geoFire.getSuppressedWriteCount());
+
+        TestCallback testCallback1 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback1);
+        Assert.assertEquals(TestCallback.location("loc1", 37, -122), testCallback1.getCallbackValue());
+
+        geoFireTestingRule.setLocation(geoFire, "loc1", 37.01, -122, true);
+        Assert.assertEquals(2, geoFire.getSuppressedWriteCount());
+
+        TestCallback testCallback2 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback2);
+        Assert.assertEquals(TestCallback.location("loc1", 37.01, -122), testCallback2.getCallbackValue());
+    }
 }
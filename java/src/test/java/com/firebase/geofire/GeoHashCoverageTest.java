@@ -0,0 +1,76 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCoverage;
+import com.firebase.geofire.core.GeoHashQuery;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GeoHashCoverageTest {
+
+    private static final double EARTH_AREA = GeoHashCoverage.circleArea(Double.MAX_VALUE);
+
+    @Test
+    public void cellsCoverTheEarth() {
+        Assert.assertEquals(EARTH_AREA, GeoHashCoverage.cellArea(0, 0), 1);
+        Assert.assertEquals(EARTH_AREA, GeoHashCoverage.area(new GeoHashQuery("0", "~")), 1);
+        double sum = 0;
+        for (int i = 0; i < 1024; i++) {
+            sum += GeoHashCoverage.cellArea(i, 10);
+        }
+        Assert.assertEquals(EARTH_AREA, sum, EARTH_AREA * 1e-9);
+        // cells shrink towards the poles
+        Assert.assertTrue(GeoHashCoverage.area(new GeoHashQuery("s", "t")) > GeoHashCoverage.area(new GeoHashQuery("u", "v")));
+    }
+
+    @Test
+    public void rangeAreaIsSumOfCells() {
+        double cells = 0;
+        for (char c: "hjkmnpqrstuvwxyz".toCharArray()) {
+            cells += GeoHashCoverage.area(new GeoHashQuery("9q" + c, "9q" + c + "~"));
+        }
+        Assert.assertEquals(cells, GeoHashCoverage.area(new GeoHashQuery("9qh", "9q~")), cells * 1e-9);
+        Assert.assertEquals(GeoHashCoverage.area(new GeoHashQuery("9q8yy", "9q8yz")),
+                GeoHashCoverage.area(new GeoHashQuery("9q8yy", "9q8yy~")), 1e-6);
+    }
+
+    @Test
+    public void plansCoverTheCircle() {
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            GeoLocation center = new GeoLocation(random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180);
+            double radius = Math.pow(10, 1 + random.nextDouble() * 5);
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(center, radius);
+            Assert.assertTrue(GeoHashCoverage.area(queries) >= GeoHashCoverage.circleArea(radius));
+        }
+    }
+
+    @Test
+    public void distanceToRange() {
+        GeoLocation location = new GeoLocation(37, -122);
+        GeoHash hash = new GeoHash(37, -122, 6);
+        Assert.assertEquals(0, GeoHashCoverage.distance(GeoHashQuery.queryForGeoHash(hash, 30), location), 0);
+        // a cell further north starts at the northern border of the cell of the location
+        GeoHash north = new GeoHash(38, -122, 6);
+        double distance = GeoHashCoverage.distance(GeoHashQuery.queryForGeoHash(north, 30), location);
+        Assert.assertTrue(distance < 111000);
+        Assert.assertTrue(distance > 110000);
+        // the range wraps around the 180th meridian
+        Assert.assertEquals(0, GeoHashCoverage.distance(new GeoHashQuery("0", "~"), location), 0);
+        Assert.assertTrue(GeoHashCoverage.distance(GeoHashQuery.queryForGeoHash(new GeoHash(0, 179.9, 3), 15),
+                new GeoLocation(0, -179.9)) < 20000);
+    }
+
+    @Test
+    public void longRangesAreWidened() {
+        GeoHash hash = new GeoHash(37, -122, GeoHash.MAX_PRECISION);
+        GeoHashQuery query = GeoHashQuery.queryForGeoHash(hash, GeoHash.MAX_PRECISION_BITS);
+        double cell = GeoHashCoverage.area(GeoHashQuery.queryForGeoHash(hash, GeoHash.MAX_LONG_PRECISION * 5));
+        Assert.assertEquals(cell, GeoHashCoverage.area(query), 0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.GeoHashRanges;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GeoHashRangesTest {
+
+    @Test
+    public void primitiveBounds() {
+        GeoHashQuery query = new GeoHashQuery("9q8y", "9q8z");
+        Assert.assertEquals(GeoHash.toLong("9q8y000000"), query.getStartLong(10));
+        Assert.assertEquals(GeoHash.toLong("9q8z000000"), query.getEndLong(10));
+        Assert.assertTrue(query.containsGeoHash(GeoHash.toLong("9q8yzzzzzz"), 10));
+        Assert.assertFalse(query.containsGeoHash(GeoHash.toLong("9q8z000000"), 10));
+        Assert.assertEquals(1L << 50, new GeoHashQuery("zz", "~").getEndLong(10));
+    }
+
+    @Test
+    public void mergesOverlappingAndTouchingQueries() {
+        GeoHashRanges ranges = GeoHashRanges.of(Arrays.asList(new GeoHashQuery("9q8y", "9q8z"),
+                new GeoHashQuery("9q8z", "9q9"), new GeoHashQuery("9q8", "9q8y0"), new GeoHashQuery("c2", "c3")), 10);
+        Assert.assertEquals(2, ranges.size());
+        Assert.assertEquals(GeoHash.toLong("9q80000000"), ranges.getStart(0));
+        Assert.assertEquals(GeoHash.toLong("9q90000000"), ranges.getEnd(0));
+        Set<GeoHashQuery> expected = new HashSet<>();
+        expected.add(new GeoHashQuery("9q80000000", "9q90000000"));
+        expected.add(new GeoHashQuery("c200000000", "c300000000"));
+        Assert.assertEquals(expected, ranges.toQueries());
+        Assert.assertEquals(Collections.singleton(new GeoHashQuery("zz00000000", "~")),
+                GeoHashRanges.of(Collections.singleton(new GeoHashQuery("zz", "~")), 10).toQueries());
+        Assert.assertEquals(0, GeoHashRanges.of(Collections.<GeoHashQuery>emptySet(), 10).size());
+        Assert.assertFalse(GeoHashRanges.of(Collections.<GeoHashQuery>emptySet(), 10).contains(0));
+    }
+
+    @Test
+    public void containsMatchesQueries() {
+        Random random = new Random(3);
+        for (int round = 0; round < 20; round++) {
+            List<GeoHashQuery> queries = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                GeoLocation center = new GeoLocation(random.nextDouble() * 170 - 85, random.nextDouble() * 360 - 180);
+                queries.addAll(GeoHashQuery.queriesAtLocation(center, random.nextDouble() * 20000));
+            }
+            GeoHashRanges ranges = GeoHashRanges.of(queries, 10);
+            for (int i = 0; i < 2000; i++) {
+                GeoHash hash = new GeoHash(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+                boolean expected = false;
+                for (GeoHashQuery query: queries) {
+                    expected |= query.containsGeoHash(hash);
+                }
+                Assert.assertEquals(expected, ranges.contains(GeoHash.toLong(hash.getGeoHashString())));
+            }
+        }
+    }
+}
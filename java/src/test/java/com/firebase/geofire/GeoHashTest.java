@@ -66,4 +66,36 @@ public class GeoHashTest {
         new GeoHash("");
         new GeoHash("~");
     }
+
+    @Test
+    public void longValues() {
+        Assert.assertEquals(0, GeoHash.toLong("0000000000"));
+        Assert.assertEquals((1L << 50) - 1, GeoHash.toLong("zzzzzzzzzz"));
+        Assert.assertEquals("9q8yywe56g", GeoHash.fromLong(GeoHash.toLong("9q8yywe56g"), 10));
+        Assert.assertEquals("tj4p5gerfzqu", GeoHash.fromLong(GeoHash.toLong("tj4p5gerfzqu"), 12));
+        Assert.assertTrue(GeoHash.toLong("9q8yywe56g") < GeoHash.toLong("9q8yywe56h"));
+        Assert.assertEquals(GeoHash.toLong("9q8yywe56g"), GeoHash.toLong(37.7853074, -122.4054274, 10));
+        Assert.assertEquals(GeoHash.toLong("4qpzmre"), GeoHash.toLong(-54.933333, -67.616667, 7));
+        Assert.assertEquals(GeoHash.toLong("zzzzzzzzzzzz"), GeoHash.toLong(90, 180, 12));
+    }
+
+    @Test
+    public void longBoundsMatchStringOrder() {
+        String[] bounds = { "", "9", "9q", "9q~", "9q8yy", "9q8yywe56g", "9q8yywe56g~", "9q8~", "z~", "~", "zzz", "zzzz" };
+        for (String bound: bounds) {
+            long lowerBound = GeoHash.lowerBoundToLong(bound, 3);
+            long upperBound = GeoHash.upperBoundToLong(bound, 3);
+            for (long value = 0; value < (1 << 15); value++) {
+                String hash = GeoHash.fromLong(value, 3);
+                Assert.assertEquals(bound + " >= " + hash, hash.compareTo(bound) >= 0, value >= lowerBound);
+                Assert.assertEquals(bound + " <= " + hash, hash.compareTo(bound) <= 0, value <= upperBound);
+            }
+        }
+    }
+
+    @Test
+    public void tooLongForLongException() {
+        exception.expect(IllegalArgumentException.class);
+        GeoHash.toLong("0123456789bcd");
+    }
 }
@@ -159,6 +159,37 @@ public class GeoQueryIT {
         testListener.expectEvents(events);
     }
 
+    @Test
+    public void dataListenerAfterKeyListener() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 0, 0);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0001, -122.0001, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+
+        // the key listener alone keeps no snapshots, they are loaded again for the data listener
+        GeoQueryEventTestListener keyListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(keyListener);
+        Set<String> keyEvents = new HashSet<>();
+        keyEvents.add(GeoQueryEventTestListener.keyEntered("1", 37, -122));
+        keyEvents.add(GeoQueryEventTestListener.keyEntered("2", 37.0001, -122.0001));
+        keyListener.expectEvents(keyEvents);
+
+        GeoQueryDataEventTestListener dataListener = new GeoQueryDataEventTestListener();
+        query.addGeoQueryDataEventListener(dataListener);
+        Set<String> dataEvents = new HashSet<>();
+        dataEvents.add(GeoQueryDataEventTestListener.dataEntered("1", 37, -122));
+        dataEvents.add(GeoQueryDataEventTestListener.dataEntered("2", 37.0001, -122.0001));
+        dataListener.expectEvents(dataEvents);
+
+        geoFireTestingRule.setLocation(geoFire, "1", 0, 0, true);
+        dataEvents.add(GeoQueryDataEventTestListener.dataExited("1"));
+        dataListener.expectEvents(dataEvents);
+
+        query.removeAllListeners();
+    }
+
     @Test
     public void subQueryTriggersKeyMoved() throws InterruptedException {
         GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
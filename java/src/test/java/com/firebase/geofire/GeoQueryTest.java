@@ -0,0 +1,413 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CostModelPlanner;
+import com.firebase.geofire.core.DefaultQueryPlanner;
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.KeyHistogram;
+import com.firebase.geofire.core.QueryPlanner;
+import com.firebase.geofire.core.SplittingQueryPlanner;
+import com.firebase.geofire.core.UniformKeyDensity;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoQueryEventTestListener;
+import com.firebase.geofire.testing.GeoQueryTestSupport;
+import com.firebase.geofire.trace.GeoFireTracer;
+import com.firebase.geofire.trace.NoOpTracer;
+import com.firebase.geofire.util.GeoUtils;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GeoQueryTest {
+
+    @Test
+    public void droppedKeysEnterAfterSetRadius() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("0", new GeoLocation(37.0030, -122.0000));
+        geoFire.setLocation("1", new GeoLocation(37.0060, -122.0000));
+        geoFire.setLocation("2", new GeoLocation(37.0000, -122.0085));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        query.setOutOfRadiusPolicy(OutOfRadiusPolicy.DROP);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37.0030, -122.0000));
+        testListener.expectEvents(events);
+
+        query.setRadius(0.7);
+        events.add(GeoQueryEventTestListener.keyEntered("1", 37.0060, -122.0000));
+        testListener.expectEvents(events);
+
+        geoFire.setLocation("2", new GeoLocation(37.0000, -122.0075));
+        events.add(GeoQueryEventTestListener.keyEntered("2", 37.0000, -122.0075));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void leastRecentlyUpdatedKeysAreEvicted() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        for (int i = 0; i < 10; i++) {
+            geoFire.setLocation("out" + i, new GeoLocation(37.0060, -122.0000 + i * 0.0001));
+        }
+        geoFire.setLocation("in", new GeoLocation(37.0010, -122.0000));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        query.setOutOfRadiusPolicy(OutOfRadiusPolicy.leastRecentlyUpdated(3));
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("in", 37.0010, -122.0000));
+        testListener.expectEvents(events);
+
+        // evicted keys enter once they move into the query
+        geoFire.setLocation("out0", new GeoLocation(37.0020, -122.0000));
+        events.add(GeoQueryEventTestListener.keyEntered("out0", 37.0020, -122.0000));
+        testListener.expectEvents(events);
+
+        query.setCenter(new GeoLocation(37.0070, -122.0000));
+        events.add(GeoQueryEventTestListener.keyExited("in"));
+        events.add(GeoQueryEventTestListener.keyExited("out0"));
+        for (int i = 1; i < 10; i++) {
+            events.add(GeoQueryEventTestListener.keyEntered("out" + i, 37.0060, -122.0000 + i * 0.0001));
+        }
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void readyWithSynchronousStore() throws InterruptedException {
+        // this store loads every range while the query subscribes to it
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        geoFire.setLocation("0", new GeoLocation(0, 0));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(0, 0), 10);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        GeoQueryTestSupport.ReadyListener readyListener = new GeoQueryTestSupport.ReadyListener();
+        query.addGeoQueryEventListener(readyListener);
+        readyListener.awaitReady();
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("0", 0, 0)));
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void keyHistogramLearnsFromQueries() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        KeyHistogram histogram = new KeyHistogram();
+        geoFire.setKeyHistogram(histogram);
+        geoFire.setQueryPlanner(new CostModelPlanner(1, 1, histogram));
+        for (int i = 0; i < 20; i++) {
+            geoFire.setLocation("dense" + i, new GeoLocation(37.0040, -122.0000 + i * 0.00001));
+        }
+        geoFire.setLocation("in", new GeoLocation(37.0000, -122.0000));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.3);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("in", 37, -122)));
+        String dense = new GeoHash(37.0040, -122.0000, KeyHistogram.DEFAULT_PRECISION).getGeoHashString();
+        Assert.assertEquals(20, histogram.getCount(dense), 0);
+
+        // the next plan leaves out the dense cell outside of the radius
+        query.setRadius(0.31);
+        for (GeoHashQuery range: geoFire.getQueryPlanner().plan(query.getCenter(), 310)) {
+            Assert.assertFalse(range.containsGeoHash(new GeoHash(37.0040, -122.0000)));
+        }
+        Assert.assertEquals(20, histogram.getCount(dense), 0);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void distanceOrderedQuery() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        // keys in several geohash cells, added farthest first
+        for (int i = 9; i >= 0; i--) {
+            geoFire.setLocation("key" + i, new GeoLocation(37 + i * 0.0009, -122 + i * 0.0009));
+        }
+        geoFire.setLocation("far", new GeoLocation(38, -122));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 1.5);
+        query.setDistanceOrdered(true);
+        final List<String> entered = Collections.synchronizedList(new ArrayList<String>());
+        final List<Double> distances = Collections.synchronizedList(new ArrayList<Double>());
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch moved = new CountDownLatch(1);
+        query.addGeoQueryDistanceEventListener(new GeoQueryDistanceEventListener() {
+            @Override
+            public void onKeyEntered(String key, GeoLocation location, double distance) {
+                entered.add(key);
+                distances.add(distance);
+                Assert.assertEquals(GeoUtils.distance(location, new GeoLocation(37, -122)), distance, 1e-6);
+            }
+
+            @Override
+            public void onKeyExited(String key) {
+            }
+
+            @Override
+            public void onKeyMoved(String key, GeoLocation location, double distance) {
+                Assert.assertEquals("key9", key);
+                Assert.assertEquals(GeoUtils.distance(location, new GeoLocation(37, -122)), distance, 1e-6);
+                moved.countDown();
+            }
+
+            @Override
+            public void onGeoQueryReady() {
+                ready.countDown();
+            }
+
+            @Override
+            public void onGeoQueryError(DatabaseError error) {
+                throw error.toException();
+            }
+        });
+        Assert.assertTrue(ready.await(10, TimeUnit.SECONDS));
+
+        // the ranges are loaded nearest first and the keys of every range enter nearest first
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("key" + i);
+        }
+        Assert.assertEquals(expected, entered);
+        Assert.assertEquals(expected.subList(0, 3), query.getKeysByDistance(3));
+
+        geoFire.setLocation("key9", new GeoLocation(37.00001, -122));
+        Assert.assertTrue(moved.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("key0", "key9", "key1"), query.getKeysByDistance(3));
+
+        query.setDistanceOrdered(false);
+        Assert.assertEquals(Arrays.asList("key0", "key9", "key1"), query.getKeysByDistance(3));
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void limitedQuery() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        final List<Double> plannedRadii = Collections.synchronizedList(new ArrayList<Double>());
+        geoFire.setQueryPlanner(new QueryPlanner() {
+            @Override
+            public Set<GeoHashQuery> plan(GeoLocation center, double radius) {
+                plannedRadii.add(radius);
+                return DefaultQueryPlanner.INSTANCE.plan(center, radius);
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            geoFire.setLocation("key" + i, new GeoLocation(37 + i * 0.0009, -122 + i * 0.0009));
+        }
+
+        GeoLocation center = new GeoLocation(37, -122);
+        GeoQuery query = geoFire.queryAtLocation(center, 1.5);
+        query.setResultLimit(3);
+        Assert.assertTrue(query.isDistanceOrdered());
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener(true, false, true);
+        query.addGeoQueryEventListener(testListener);
+
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            events.add(GeoQueryEventTestListener.keyEntered("key" + i, 37 + i * 0.0009, -122 + i * 0.0009));
+        }
+        testListener.expectEvents(events);
+        Assert.assertEquals(Arrays.asList("key0", "key1", "key2"), query.getKeysByDistance(10));
+        // the ranges are planned for the radius first, then around the nearest keys
+        Assert.assertEquals(1500, plannedRadii.get(0), 0);
+        double farthest = GeoUtils.distance(new GeoLocation(37 + 2 * 0.0009, -122 + 2 * 0.0009), center);
+        Assert.assertEquals(farthest * 1.5, plannedRadii.get(plannedRadii.size() - 1), 1e-6);
+
+        // the next key enters once a key leaves
+        geoFire.removeLocation("key1");
+        events.add(GeoQueryEventTestListener.keyExited("key1"));
+        events.add(GeoQueryEventTestListener.keyEntered("key3", 37 + 3 * 0.0009, -122 + 3 * 0.0009));
+        testListener.expectEvents(events);
+        Assert.assertEquals(Arrays.asList("key0", "key2", "key3"), query.getKeysByDistance(10));
+
+        // without a limit the ranges cover the radius again
+        query.setResultLimit(0);
+        Assert.assertEquals(9, query.getKeysByDistance(10).size());
+        Assert.assertEquals(1500, plannedRadii.get(plannedRadii.size() - 1), 0);
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void progressOfSplitQuery() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setQueryPlanner(new SplittingQueryPlanner(DefaultQueryPlanner.INSTANCE,
+                new UniformKeyDensity(100), 50));
+        geoFire.setLocation("0", new GeoLocation(37, -122));
+        int totalRanges = geoFire.getQueryPlanner().plan(new GeoLocation(37, -122), 2000).size();
+        Assert.assertTrue(totalRanges > 9);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 2);
+        final List<double[]> progress = Collections.synchronizedList(new ArrayList<double[]>());
+        query.addGeoQueryProgressListener(new GeoQueryProgressListener() {
+            @Override
+            public void onRangeLoaded(GeoHashQuery range, int loadedRanges, int totalRanges, double fractionLoaded) {
+                progress.add(new double[] { loadedRanges, totalRanges, fractionLoaded });
+            }
+        });
+        GeoQueryTestSupport.ReadyListener readyListener = new GeoQueryTestSupport.ReadyListener();
+        query.addGeoQueryEventListener(readyListener);
+        readyListener.awaitReady();
+
+        // every range reported its progress before the query was ready
+        Assert.assertEquals(totalRanges, progress.size());
+        double fraction = 0;
+        for (int i = 0; i < totalRanges; i++) {
+            Assert.assertEquals(i + 1, progress.get(i)[0], 0);
+            Assert.assertEquals(totalRanges, progress.get(i)[1], 0);
+            Assert.assertTrue(progress.get(i)[2] > fraction);
+            fraction = progress.get(i)[2];
+        }
+        Assert.assertEquals(1, fraction, 1e-9);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void primitiveEventListener() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("0", new GeoLocation(37, -122));
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 1);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch ready = new CountDownLatch(1);
+        final CountDownLatch exited = new CountDownLatch(1);
+        GeoQueryPrimitiveEventListener listener = new GeoQueryPrimitiveEventListener() {
+            @Override
+            public void onKeyEvent(String key, double latitude, double longitude, int type) {
+                events.add(key + " " + latitude + " " + longitude + " " + type);
+                if (type == KEY_EXITED) {
+                    exited.countDown();
+                }
+            }
+
+            @Override
+            public void onGeoQueryReady() {
+                events.add("ready");
+                ready.countDown();
+            }
+
+            @Override
+            public void onGeoQueryError(DatabaseError error) {
+            }
+        };
+        query.addGeoQueryPrimitiveEventListener(listener);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        Assert.assertTrue(ready.await(10, TimeUnit.SECONDS));
+
+        geoFire.setLocation("0", new GeoLocation(37.001, -122));
+        geoFire.setLocation("0", new GeoLocation(38, -122));
+        Assert.assertTrue(exited.await(10, TimeUnit.SECONDS));
+        // the key left the ranges of the query, it exits at the last location the query knew
+        Assert.assertEquals(Arrays.asList("0 37.0 -122.0 0", "ready", "0 37.001 -122.0 1", "0 37.001 -122.0 2"),
+                events);
+        // other listeners of the query still receive their events
+        testListener.expectEvents(Arrays.asList(GeoQueryEventTestListener.keyEntered("0", 37, -122),
+                GeoQueryEventTestListener.keyMoved("0", 37.001, -122),
+                GeoQueryEventTestListener.keyExited("0")));
+
+        query.removeGeoQueryPrimitiveEventListener(listener);
+        query.removeAllListeners();
+        // without primitive listeners the thread of the event ring stops
+        long deadline = System.currentTimeMillis() + 10000;
+        while (geoFire.getEventRing().isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(geoFire.getEventRing().isRunning());
+    }
+
+    /**
+     * Records the ready spans of queries.
+     */
+    private static final class ReadyTracer implements GeoFireTracer {
+        private final List<String> spans = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public Span startCover(double latitude, double longitude, double radius) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public Span startReady(final double latitude, double longitude, double radius) {
+            return new Span() {
+                @Override
+                public void end(int count) {
+                    ReadyTracer.this.spans.add("ready " + latitude + " " + count);
+                }
+
+                @Override
+                public void abandon() {
+                    ReadyTracer.this.spans.add("abandoned " + latitude);
+                }
+            };
+        }
+
+        @Override
+        public Span startDispatch(String key) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public Span startChildRemovedRead(String key) {
+            return NoOpTracer.NO_SPAN;
+        }
+
+        @Override
+        public void rangeSubscribed(String startValue, String endValue) {
+        }
+
+        @Override
+        public void rangeUnsubscribed(String startValue, String endValue) {
+        }
+    }
+
+    @Test
+    public void readySpansAreEndedOrAbandoned() throws InterruptedException {
+        // a store that never loads its ranges
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        }));
+        ReadyTracer tracer = new ReadyTracer();
+        geoFire.setTracer(tracer);
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(1, 0), 1);
+        query.addGeoQueryEventListener(new GeoQueryTestSupport.ReadyListener());
+        query.setCenter(new GeoLocation(2, 0));
+        query.removeAllListeners();
+        Assert.assertEquals(Arrays.asList("abandoned 1.0", "abandoned 2.0"), tracer.spans);
+
+        // a limited query adjusts its search radius once it is ready, which doesn't start another span
+        tracer = new ReadyTracer();
+        geoFire = new GeoFire(GeoQueryTestSupport.synchronousStore());
+        geoFire.setTracer(tracer);
+        for (int i = 0; i < 10; i++) {
+            geoFire.setLocation("key" + i, new GeoLocation(37 + i * 0.0009, -122 + i * 0.0009));
+        }
+        query = geoFire.queryAtLocation(new GeoLocation(37, -122), 1.5);
+        query.setResultLimit(3);
+        GeoQueryTestSupport.ReadyListener readyListener = new GeoQueryTestSupport.ReadyListener();
+        query.addGeoQueryEventListener(readyListener);
+        readyListener.awaitReady();
+        query.removeAllListeners();
+        // the span counts the keys within the radius, also the ones beyond the limit
+        Assert.assertEquals(Collections.singletonList("ready 37.0 10"), tracer.spans);
+    }
+}
@@ -0,0 +1,233 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoQueryEventTestListener;
+import com.firebase.geofire.testing.GeoQueryTestSupport;
+import com.firebase.geofire.testing.TestCallback;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class InMemoryGeoStoreTest {
+
+    @Test
+    public void getLocation() throws Exception {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        Assert.assertNull(geoFire.getDatabaseReference());
+
+        TestCallback testCallback1 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback1);
+        Assert.assertEquals(TestCallback.noLocation("loc1"), testCallback1.getCallbackValue());
+
+        geoFire.setLocation("loc1", new GeoLocation(1, 2));
+        TestCallback testCallback2 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback2);
+        Assert.assertEquals(TestCallback.location("loc1", 1, 2), testCallback2.getCallbackValue());
+
+        geoFire.removeLocation("loc1");
+        TestCallback testCallback3 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback3);
+        Assert.assertEquals(TestCallback.noLocation("loc1"), testCallback3.getCallbackValue());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noDatabaseReferenceForKeys() {
+        new GeoFire(new InMemoryGeoStore()).getDatabaseRefForKey("loc1");
+    }
+
+    @Test
+    public void keyEnteredMovedExited() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("0", new GeoLocation(0, 0));
+        geoFire.setLocation("1", new GeoLocation(37.0000, -122.0000));
+        geoFire.setLocation("2", new GeoLocation(37.0001, -122.0001));
+        geoFire.setLocation("3", new GeoLocation(37.1000, -122.0000));
+        geoFire.setLocation("4", new GeoLocation(37.0002, -121.9998));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        GeoQueryEventTestListener enterListener = new GeoQueryEventTestListener(true, false, false);
+        query.addGeoQueryEventListener(enterListener);
+
+        Set<String> entered = new HashSet<>();
+        entered.add(GeoQueryEventTestListener.keyEntered("1", 37, -122));
+        entered.add(GeoQueryEventTestListener.keyEntered("2", 37.0001, -122.0001));
+        entered.add(GeoQueryEventTestListener.keyEntered("4", 37.0002, -121.9998));
+        enterListener.expectEvents(entered);
+
+        GeoQueryEventTestListener moveExitListener = new GeoQueryEventTestListener(false, true, true);
+        query.addGeoQueryEventListener(moveExitListener);
+
+        geoFire.setLocation("0", new GeoLocation(1, 1)); // outside of query
+        geoFire.setLocation("1", new GeoLocation(37.0001, -122.0000)); // moved
+        geoFire.setLocation("2", new GeoLocation(37.0001, -122.0001)); // location stayed the same
+        geoFire.setLocation("4", new GeoLocation(0, 0)); // exited
+        geoFire.removeLocation("1"); // exited
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyMoved("1", 37.0001, -122.0000));
+        events.add(GeoQueryEventTestListener.keyExited("4"));
+        events.add(GeoQueryEventTestListener.keyExited("1"));
+        moveExitListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void setCenterFiresEnteredAndExited() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setLocation("0", new GeoLocation(0, 0));
+        geoFire.setLocation("1", new GeoLocation(1, 1));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(0, 0), 10);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("0", 0, 0)));
+
+        query.setCenter(new GeoLocation(1, 1));
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 0, 0));
+        events.add(GeoQueryEventTestListener.keyExited("0"));
+        events.add(GeoQueryEventTestListener.keyEntered("1", 1, 1));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void overlappingQueriesSeeTheirOwnEvents() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        GeoQuery query1 = geoFire.queryAtLocation(new GeoLocation(37, -122), 1);
+        GeoQuery query2 = geoFire.queryAtLocation(new GeoLocation(37.01, -122), 1);
+        GeoQuery query3 = geoFire.queryAtLocation(new GeoLocation(0, 0), 1);
+        GeoQueryEventTestListener testListener1 = new GeoQueryEventTestListener();
+        GeoQueryEventTestListener testListener2 = new GeoQueryEventTestListener();
+        GeoQueryEventTestListener testListener3 = new GeoQueryEventTestListener();
+        query1.addGeoQueryEventListener(testListener1);
+        query2.addGeoQueryEventListener(testListener2);
+        query3.addGeoQueryEventListener(testListener3);
+
+        geoFire.setLocation("0", new GeoLocation(37.005, -122)); // inside of both
+        geoFire.setLocation("0", new GeoLocation(37.015, -122)); // exits the first, moves in the second
+        geoFire.setLocation("1", new GeoLocation(10, 10)); // outside of all
+        geoFire.removeLocation("0");
+
+        List<String> events1 = new LinkedList<>();
+        events1.add(GeoQueryEventTestListener.keyEntered("0", 37.005, -122));
+        events1.add(GeoQueryEventTestListener.keyExited("0"));
+        testListener1.expectEvents(events1);
+        List<String> events2 = new LinkedList<>();
+        events2.add(GeoQueryEventTestListener.keyEntered("0", 37.005, -122));
+        events2.add(GeoQueryEventTestListener.keyMoved("0", 37.015, -122));
+        events2.add(GeoQueryEventTestListener.keyExited("0"));
+        testListener2.expectEvents(events2);
+        testListener3.expectEvents(Collections.<String>emptyList());
+
+        query1.removeAllListeners();
+        query2.removeAllListeners();
+        query3.removeAllListeners();
+    }
+
+    /**
+     * Records the keys a subscription was told about.
+     */
+    private static final class RangeRecorder implements GeoStore.RangeListener {
+        final String startValue;
+        final String endValue;
+        final Set<String> keys = new HashSet<>();
+        GeoStore.Subscription subscription;
+
+        RangeRecorder(String startValue, String endValue) {
+            this.startValue = startValue;
+            this.endValue = endValue;
+        }
+
+        boolean contains(String geoHash) {
+            return this.startValue.compareTo(geoHash) <= 0 && this.endValue.compareTo(geoHash) >= 0;
+        }
+
+        @Override
+        public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            this.keys.add(key);
+        }
+
+        @Override
+        public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+        }
+
+        @Override
+        public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            this.keys.remove(key);
+        }
+
+        @Override
+        public void onRangeLoaded() {
+        }
+
+        @Override
+        public void onRangeError(DatabaseError error) {
+            Assert.fail(error.toString());
+        }
+    }
+
+    @Test
+    public void subscriptionsMatchTheirRangesWhileOthersComeAndGo() {
+        InMemoryGeoStore store = GeoQueryTestSupport.synchronousStore();
+        Random random = new Random(42);
+        List<RangeRecorder> recorders = new ArrayList<>();
+        List<GeoLocation> locations = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            // nested, overlapping and equal ranges of short geo hashes
+            for (int i = 0; i < 10; i++) {
+                String start = new GeoHash(random.nextDouble() * 20, random.nextDouble() * 20, 2).getGeoHashString();
+                String end = new GeoHash(random.nextDouble() * 20, random.nextDouble() * 20, 2).getGeoHashString();
+                RangeRecorder recorder = start.compareTo(end) <= 0
+                        ? new RangeRecorder(start, end + "~") : new RangeRecorder(end, start + "~");
+                recorder.subscription = store.subscribe(recorder.startValue, recorder.endValue, recorder);
+                recorders.add(recorder);
+            }
+            for (int i = 0; i < 5; i++) {
+                recorders.remove(random.nextInt(recorders.size())).subscription.cancel();
+            }
+            for (int i = 0; i < 10; i++) {
+                int key = random.nextInt(30);
+                GeoLocation location = new GeoLocation(random.nextDouble() * 20, random.nextDouble() * 20);
+                while (locations.size() <= key) {
+                    locations.add(null);
+                }
+                locations.set(key, random.nextInt(5) == 0 ? null : location);
+                if (locations.get(key) == null) {
+                    store.removeLocation(Integer.toString(key), null);
+                } else {
+                    store.setLocation(Integer.toString(key), location, null);
+                }
+            }
+            for (RangeRecorder recorder: recorders) {
+                Set<String> expected = new HashSet<>();
+                for (int key = 0; key < locations.size(); key++) {
+                    GeoLocation location = locations.get(key);
+                    if (location != null && recorder.contains(new GeoHash(location).getGeoHashString())) {
+                        expected.add(Integer.toString(key));
+                    }
+                }
+                Assert.assertEquals(expected, recorder.keys);
+            }
+        }
+        for (RangeRecorder recorder: recorders) {
+            recorder.subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CostModelPlanner;
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCoverage;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.KeyHistogram;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class KeyHistogramTest {
+
+    @Test
+    public void countsAddUpOverPrefixes() {
+        KeyHistogram histogram = new KeyHistogram();
+        histogram.setCount("9q8yy", 10);
+        histogram.setCount("9q8yz", 5);
+        histogram.setCount("9q8z", 100);
+        Assert.assertEquals(10, histogram.getCount("9q8yy"), 0);
+        Assert.assertEquals(15, histogram.getCount("9q8y"), 0);
+        Assert.assertEquals(115, histogram.getCount("9q8"), 0);
+        Assert.assertEquals(0, histogram.getCount("9q9"), 0);
+        Assert.assertEquals(100, histogram.getCount("9q8z0") * 32, 1);
+
+        histogram.setCount("9q8y", 1);
+        Assert.assertEquals(1, histogram.getCount("9q8y"), 0);
+        Assert.assertEquals(101, histogram.getCount("9q8"), 0);
+    }
+
+    @Test
+    public void settingCellWithinCellKeepsTheRest() {
+        KeyHistogram histogram = new KeyHistogram();
+        histogram.setCount("9q", 1000);
+        histogram.setCount("9q8yy", 0);
+        double share = 1000 * GeoHashCoverage.area(new GeoHashQuery("9q8yy", "9q8yz"))
+                / GeoHashCoverage.area(new GeoHashQuery("9q", "9r"));
+        Assert.assertEquals(1000 - share, histogram.getCount("9q"), 1e-6);
+        Assert.assertEquals(0, histogram.getCount("9q8yy"), 0);
+        Assert.assertEquals(histogram.getCount("9q9"), histogram.getCount("9qd"), 1e-6);
+    }
+
+    @Test
+    public void observeReplacesCountsInRanges() {
+        KeyHistogram histogram = new KeyHistogram(6);
+        histogram.setCount("9q8yy", 50);
+        histogram.setCount("9q8yz", 7);
+        long[] geoHashes = {
+                GeoHash.toLong("9q8yy00000"), GeoHash.toLong("9q8yy00001"), GeoHash.toLong("9q8yyk0000"),
+                GeoHash.toLong("9q8yz00000") // outside of the range
+        };
+        histogram.observe(Collections.singleton(new GeoHashQuery("9q8yy", "9q8yz")), geoHashes, 4, 10);
+        Assert.assertEquals(3, histogram.getCount("9q8yy"), 0);
+        Assert.assertEquals(2, histogram.getCount("9q8yy0"), 0);
+        Assert.assertEquals(1, histogram.getCount("9q8yyk"), 0);
+        Assert.assertEquals(7, histogram.getCount("9q8yz"), 0);
+    }
+
+    @Test
+    public void denseCellsAreSubdivided() {
+        GeoLocation center = new GeoLocation(37.7853889, -122.4056973);
+        double radius = 3000;
+        // without keys the cheapest cover is the one with the fewest ranges
+        Set<GeoHashQuery> cover = new CostModelPlanner(100, 1, new KeyHistogram()).plan(center, radius);
+        Assert.assertTrue(cover.size() <= GeoHashQuery.queriesAtLocation(center, radius).size());
+
+        // many keys just outside of the circle to the east, none elsewhere
+        KeyHistogram histogram = new KeyHistogram();
+        String east = new GeoHash(center.latitude, center.longitude + 0.04, 7).getGeoHashString();
+        histogram.setCount(east, 100000);
+        CostModelPlanner planner = new CostModelPlanner(100, 1, histogram);
+        Set<GeoHashQuery> dense = planner.plan(center, radius);
+
+        Assert.assertTrue(planner.cost(dense) < planner.cost(cover));
+        Assert.assertTrue(planner.cost(dense) < planner.cost(GeoHashQuery.queriesAtLocation(center, radius)));
+        for (GeoHashQuery query: dense) {
+            Assert.assertFalse(query.containsGeoHash(new GeoHash(east)));
+        }
+    }
+}
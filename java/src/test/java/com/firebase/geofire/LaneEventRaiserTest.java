@@ -0,0 +1,214 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.SimpleMetrics;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoQueryEventTestListener;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LaneEventRaiserTest {
+
+    @Test
+    public void blockedListenerDoesNotStallOtherLanes() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        SimpleMetrics metrics = new SimpleMetrics();
+        geoFire.setMetrics(metrics);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        geoFire.setDispatchExecutor(executor);
+        geoFire.setLocation("0", new GeoLocation(37, -122));
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> slowEvents = Collections.synchronizedList(new ArrayList<String>());
+        GeoQueryEventListener slowListener = new GeoQueryEventListener() {
+            @Override
+            public void onKeyEntered(String key, GeoLocation location) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                slowEvents.add("entered " + key);
+            }
+
+            @Override
+            public void onKeyExited(String key) {
+            }
+
+            @Override
+            public void onKeyMoved(String key, GeoLocation location) {
+            }
+
+            @Override
+            public void onGeoQueryReady() {
+                slowEvents.add("ready");
+            }
+
+            @Override
+            public void onGeoQueryError(DatabaseError error) {
+            }
+        };
+        geoFire.setDispatchLane(slowListener, "slow");
+        GeoQuery slowQuery = geoFire.queryAtLocation(new GeoLocation(37, -122), 1);
+        slowQuery.addGeoQueryEventListener(slowListener);
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // the other query is delivered while the slow listener blocks the one thread of its lane
+        GeoQuery fastQuery = geoFire.queryAtLocation(new GeoLocation(37, -122), 1);
+        GeoQueryEventTestListener fastListener = new GeoQueryEventTestListener();
+        geoFire.setDispatchLane(fastListener, "fast");
+        fastQuery.addGeoQueryEventListener(fastListener);
+        fastListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("0", 37, -122)));
+        Assert.assertTrue(metrics.getGaugeValue(GeoFireMetrics.LANE_PENDING_EVENTS + "slow") > 0);
+
+        release.countDown();
+        slowQuery.removeAllListeners();
+        fastQuery.removeAllListeners();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("entered 0", "ready"), slowEvents);
+        Assert.assertEquals(0, metrics.getGaugeValue(GeoFireMetrics.LANE_PENDING_EVENTS + "slow"));
+        Assert.assertEquals(2,
+                metrics.getHistograms().get(GeoFireMetrics.LANE_EVENT_LATENCY_NANOS + "slow").getCount());
+        Assert.assertTrue(metrics.getHistograms().get(GeoFireMetrics.LANE_EVENT_LATENCY_NANOS + "fast").getCount() > 0);
+    }
+
+    @Test
+    public void keyPartitionedDispatch() throws InterruptedException {
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        geoFire.setDispatchExecutor(executor, 4);
+        Assert.assertEquals(4, geoFire.getDispatchKeyPartitions());
+        // "a" and "b" are in different partitions
+        geoFire.setLocation("a", new GeoLocation(37, -122));
+        geoFire.setLocation("b", new GeoLocation(37.001, -122));
+        for (int i = 0; i < 100; i++) {
+            geoFire.setLocation("k" + i, new GeoLocation(37 + i * 0.00005, -122));
+        }
+
+        final CountDownLatch enteredB = new CountDownLatch(1);
+        final CountDownLatch ready = new CountDownLatch(1);
+        final AtomicInteger entered = new AtomicInteger();
+        final AtomicInteger enteredAtReady = new AtomicInteger(-1);
+        final AtomicInteger blockedWithoutB = new AtomicInteger();
+        final List<String> moves = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch moved = new CountDownLatch(20);
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 1);
+        query.addGeoQueryEventListener(new GeoQueryEventListener() {
+            @Override
+            public void onKeyEntered(String key, GeoLocation location) {
+                if (key.equals("a")) {
+                    // waits for the partition of "b"
+                    try {
+                        if (!enteredB.await(10, TimeUnit.SECONDS)) {
+                            blockedWithoutB.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                } else if (key.equals("b")) {
+                    enteredB.countDown();
+                }
+                entered.incrementAndGet();
+            }
+
+            @Override
+            public void onKeyExited(String key) {
+            }
+
+            @Override
+            public void onKeyMoved(String key, GeoLocation location) {
+                moves.add(key + " " + location.latitude);
+                moved.countDown();
+            }
+
+            @Override
+            public void onGeoQueryReady() {
+                enteredAtReady.set(entered.get());
+                ready.countDown();
+            }
+
+            @Override
+            public void onGeoQueryError(DatabaseError error) {
+            }
+        });
+        Assert.assertTrue(ready.await(20, TimeUnit.SECONDS));
+        Assert.assertEquals(0, blockedWithoutB.get());
+        // the ready event waits for every entered event raised before it
+        Assert.assertEquals(102, enteredAtReady.get());
+
+        List<String> expectedMoves = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            geoFire.setLocation("k0", new GeoLocation(37 + i * 0.0001, -122));
+            expectedMoves.add("k0 " + (37 + i * 0.0001));
+        }
+        Assert.assertTrue(moved.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(expectedMoves, moves);
+
+        query.removeAllListeners();
+        executor.shutdown();
+    }
+
+    /**
+     * Runs tasks on the calling thread, or rejects them while rejecting is set.
+     */
+    private static final class RejectingExecutor implements Executor {
+        private volatile boolean rejecting;
+
+        @Override
+        public void execute(Runnable command) {
+            if (this.rejecting) {
+                throw new RejectedExecutionException("Rejected for the test");
+            }
+            command.run();
+        }
+    }
+
+    private static Runnable record(final List<String> events, final String event) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                events.add(event);
+            }
+        };
+    }
+
+    @Test
+    public void rejectedLanesTakeLaterEvents() {
+        RejectingExecutor executor = new RejectingExecutor();
+        SimpleMetrics metrics = new SimpleMetrics();
+        LaneEventRaiser raiser = new LaneEventRaiser(executor, 2, Collections.<Object, String>emptyMap(), metrics);
+        Object listener = new Object();
+        List<String> events = new ArrayList<>();
+
+        // the events are dropped instead of throwing into the caller
+        executor.rejecting = true;
+        raiser.raiseEvent(listener, "a", record(events, "a1"));
+        raiser.raiseEvent(listener, null, record(events, "barrier"));
+        Assert.assertEquals(Collections.<String>emptyList(), events);
+        Assert.assertEquals(0, metrics.getGaugeValue(GeoFireMetrics.LANE_PENDING_EVENTS + Object.class.getName()));
+
+        executor.rejecting = false;
+        raiser.raiseEvent(listener, "a", record(events, "a2"));
+        raiser.raiseEvent(listener, "b", record(events, "b1"));
+        raiser.raiseEvent(listener, null, record(events, "ready"));
+        Assert.assertEquals(Arrays.asList("a2", "b1", "ready"), events);
+    }
+}
@@ -0,0 +1,39 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.testing.LoadSimulation;
+import com.firebase.geofire.testing.SimulationReport;
+import com.firebase.geofire.testing.Workload;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LoadSimulationTest {
+
+    @Test
+    public void smallWorkload() throws InterruptedException {
+        Workload workload = new Workload()
+                .objects(300)
+                .queries(5)
+                .area(2)
+                .queryRadius(0.5)
+                .objectSpeed(20)
+                .updateInterval(100)
+                .duration(1000)
+                .latency(1000);
+        SimulationReport report = LoadSimulation.run(workload);
+
+        Assert.assertEquals(300 * 11, report.writes);
+        Assert.assertTrue(report.keyEnteredEvents > 0);
+        Assert.assertTrue(report.keyMovedEvents > 0);
+        Assert.assertTrue(report.downloadedEntries >= report.entriesInRadius);
+        Assert.assertTrue(report.latencyMicrosP50 >= 1000);
+        Assert.assertTrue(report.latencyMicrosP50 <= report.latencyMicrosP99);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSpeed() {
+        new Workload().objectSpeed(-1);
+    }
+}
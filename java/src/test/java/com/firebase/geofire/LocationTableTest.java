@@ -0,0 +1,95 @@
+package com.firebase.geofire;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LocationTableTest {
+
+    @Test
+    public void updatesInPlace() {
+        LocationTable table = new LocationTable();
+        int id = table.add("key");
+        table.set(id, 1, 2, 3, true, null);
+        Assert.assertEquals(id, table.find("key"));
+        table.set(id, 4, 5, 6, false, null);
+        Assert.assertEquals(id, table.find("key"));
+        Assert.assertEquals(4, table.latitude(id), 0);
+        Assert.assertEquals(5, table.longitude(id), 0);
+        Assert.assertEquals(6, table.geoHash(id));
+        Assert.assertFalse(table.isInQuery(id));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void removedIdsAreReused() {
+        LocationTable table = new LocationTable();
+        int id = table.add("key1");
+        table.add("key2");
+        table.remove(id);
+        Assert.assertEquals(LocationTable.NOT_FOUND, table.find("key1"));
+        Assert.assertFalse(table.isUsed(id));
+        Assert.assertEquals(id, table.add("key3"));
+        Assert.assertEquals(2, table.limit());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        LocationTable table = new LocationTable();
+        Map<String, Double> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            String key = "key" + random.nextInt(2000);
+            int id = table.find(key);
+            Assert.assertEquals(expected.containsKey(key), id != LocationTable.NOT_FOUND);
+            if (random.nextInt(3) == 0) {
+                if (id != LocationTable.NOT_FOUND) {
+                    table.remove(id);
+                    expected.remove(key);
+                }
+            } else {
+                double latitude = random.nextDouble();
+                if (id == LocationTable.NOT_FOUND) {
+                    id = table.add(key);
+                }
+                table.set(id, latitude, 0, 0, false, null);
+                expected.put(key, latitude);
+            }
+        }
+        Assert.assertEquals(expected.size(), table.size());
+        for (Map.Entry<String, Double> entry: expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), table.latitude(table.find(entry.getKey())), 0);
+        }
+        table.clear();
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(LocationTable.NOT_FOUND, table.find("key1"));
+    }
+
+    @Test
+    public void keysOutOfQueryInUpdateOrder() {
+        LocationTable table = new LocationTable();
+        int id1 = table.add("key1");
+        int id2 = table.add("key2");
+        int id3 = table.add("key3");
+        table.set(id1, 0, 0, 0, false, null);
+        table.set(id2, 0, 0, 0, false, null);
+        table.set(id3, 0, 0, 0, true, null);
+        Assert.assertEquals(2, table.outOfQueryCount());
+        Assert.assertEquals(id1, table.oldestOutOfQuery());
+
+        table.set(id1, 1, 1, 1, false, null);
+        Assert.assertEquals(id2, table.oldestOutOfQuery());
+        table.set(id2, 1, 1, 1, true, null);
+        Assert.assertEquals(id1, table.oldestOutOfQuery());
+        Assert.assertEquals(1, table.outOfQueryCount());
+
+        table.remove(id1);
+        Assert.assertEquals(LocationTable.NOT_FOUND, table.oldestOutOfQuery());
+        Assert.assertEquals(0, table.outOfQueryCount());
+    }
+}
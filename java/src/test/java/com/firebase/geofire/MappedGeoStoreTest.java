@@ -0,0 +1,122 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.store.MappedGeoStore;
+import com.firebase.geofire.testing.GeoQueryEventTestListener;
+import com.firebase.geofire.testing.TestCallback;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MappedGeoStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String getLocation(GeoFire geoFire, String key) throws Exception {
+        TestCallback testCallback = new TestCallback();
+        geoFire.getLocation(key, testCallback);
+        return testCallback.getCallbackValue();
+    }
+
+    @Test
+    public void locationsSurviveReopening() throws Exception {
+        File file = new File(this.folder.getRoot(), "geofire.store");
+        MappedGeoStore store = new MappedGeoStore(file);
+        GeoFire geoFire = new GeoFire(store);
+        geoFire.setLocation("loc1", new GeoLocation(1, 2));
+        geoFire.setLocation("loc2", new GeoLocation(3, 4));
+        geoFire.setLocation("loc1", new GeoLocation(5, 6));
+        geoFire.removeLocation("loc2");
+        store.close();
+
+        store = new MappedGeoStore(file);
+        geoFire = new GeoFire(store);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(TestCallback.location("loc1", 5, 6), getLocation(geoFire, "loc1"));
+        Assert.assertEquals(TestCallback.noLocation("loc2"), getLocation(geoFire, "loc2"));
+        store.close();
+    }
+
+    @Test
+    public void tornWriteIsDroppedOnRecovery() throws Exception {
+        File file = new File(this.folder.getRoot(), "geofire.store");
+        MappedGeoStore store = new MappedGeoStore(file);
+        GeoFire geoFire = new GeoFire(store);
+        geoFire.setLocation("loc1", new GeoLocation(1, 2));
+        geoFire.setLocation("loc2", new GeoLocation(3, 4));
+        store.close();
+
+        // cut the last record in half, as if the process died while writing it
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        store = new MappedGeoStore(file);
+        geoFire = new GeoFire(store);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(TestCallback.location("loc1", 1, 2), getLocation(geoFire, "loc1"));
+        Assert.assertEquals(TestCallback.noLocation("loc2"), getLocation(geoFire, "loc2"));
+
+        // new writes are appended after the last intact record
+        geoFire.setLocation("loc3", new GeoLocation(5, 6));
+        store.close();
+        store = new MappedGeoStore(file);
+        Assert.assertEquals(TestCallback.location("loc3", 5, 6), getLocation(new GeoFire(store), "loc3"));
+        store.close();
+    }
+
+    @Test
+    public void compactionKeepsLocations() throws Exception {
+        File file = new File(this.folder.getRoot(), "geofire.store");
+        MappedGeoStore store = new MappedGeoStore(file);
+        GeoFire geoFire = new GeoFire(store);
+        Map<String, GeoLocation> locations = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            locations.put("key" + i, new GeoLocation(37 + i * 0.001, -122));
+        }
+        store.setLocations(locations, null);
+        geoFire.removeLocation("key0");
+        store.compact();
+        Assert.assertEquals(0, store.getLogSize());
+        geoFire.setLocation("key1", new GeoLocation(0, 0));
+        store.close();
+
+        store = new MappedGeoStore(file);
+        geoFire = new GeoFire(store);
+        Assert.assertEquals(99, store.size());
+        Assert.assertEquals(TestCallback.noLocation("key0"), getLocation(geoFire, "key0"));
+        Assert.assertEquals(TestCallback.location("key1", 0, 0), getLocation(geoFire, "key1"));
+        Assert.assertEquals(TestCallback.location("key99", 37.099, -122), getLocation(geoFire, "key99"));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener(true, false, false);
+        query.addGeoQueryEventListener(testListener);
+        Set<String> events = new HashSet<>();
+        for (int i = 2; i <= 4; i++) {
+            events.add(GeoQueryEventTestListener.keyEntered("key" + i, 37 + i * 0.001, -122));
+        }
+        testListener.expectEvents(events);
+        query.removeAllListeners();
+        store.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFiles() throws Exception {
+        File file = this.folder.newFile("foreign");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeBytes("this is not a GeoFire store file");
+        }
+        new MappedGeoStore(file);
+    }
+}
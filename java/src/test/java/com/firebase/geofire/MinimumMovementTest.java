@@ -0,0 +1,170 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoQueryTestSupport;
+import com.firebase.geofire.testing.TestCallback;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MinimumMovementTest {
+
+    /**
+     * Fails the writes of single keys while failing is set, and counts the writes that reach it.
+     */
+    private static final class FailingGeoStore implements GeoStore {
+        private final InMemoryGeoStore store = GeoQueryTestSupport.synchronousStore();
+        private volatile boolean failing;
+        private int writes;
+
+        @Override
+        public Subscription subscribe(String startValue, String endValue, RangeListener listener) {
+            return this.store.subscribe(startValue, endValue, listener);
+        }
+
+        @Override
+        public void getLocation(String key, LocationCallback callback) {
+            this.store.getLocation(key, callback);
+        }
+
+        @Override
+        public void setLocation(String key, GeoLocation location, CompletionListener completionListener) {
+            this.writes++;
+            if (this.failing) {
+                // GeoFire passes a completion listener for every write it remembers
+                completionListener.onComplete(DatabaseError.fromException(new Exception("Write failed")));
+            } else {
+                this.store.setLocation(key, location, completionListener);
+            }
+        }
+
+        @Override
+        public void removeLocation(String key, CompletionListener completionListener) {
+            this.store.removeLocation(key, completionListener);
+        }
+
+        @Override
+        public void setLocations(Map<String, GeoLocation> locations, CompletionListener completionListener) {
+            this.store.setLocations(locations, completionListener);
+        }
+    }
+
+    private static final class RecordingListener implements GeoFire.CompletionListener {
+        private final List<DatabaseError> errors = Collections.synchronizedList(new ArrayList<DatabaseError>());
+
+        @Override
+        public void onComplete(String key, DatabaseError error) {
+            this.errors.add(error);
+        }
+    }
+
+    private final FailingGeoStore store = new FailingGeoStore();
+    private final GeoFire geoFire = new GeoFire(this.store);
+
+    private String storedLocation(String key) throws Exception {
+        TestCallback callback = new TestCallback();
+        this.geoFire.getLocation(key, callback);
+        return callback.getCallbackValue();
+    }
+
+    @Test
+    public void perCallMinimumMovement() throws Exception {
+        this.geoFire.setLocation("0", new GeoLocation(37, -122), 100, null);
+        // about 55 meters
+        this.geoFire.setLocation("0", new GeoLocation(37.0005, -122), 100, null);
+        Assert.assertEquals(1, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(TestCallback.location("0", 37, -122), this.storedLocation("0"));
+
+        // a smaller threshold for this call only, the default is still to write every location
+        this.geoFire.setLocation("0", new GeoLocation(37.0005, -122), 50, null);
+        Assert.assertEquals(1, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(TestCallback.location("0", 37.0005, -122), this.storedLocation("0"));
+        Assert.assertEquals(0, this.geoFire.getMinimumMovement(), 0);
+
+        // about 111 meters from the last written location
+        this.geoFire.setLocation("0", new GeoLocation(37.0015, -122), 100, null);
+        Assert.assertEquals(1, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(3, this.store.writes);
+    }
+
+    @Test
+    public void unchangedLocationsAreSuppressed() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        this.geoFire.setMinimumMovement(0.001);
+        this.geoFire.setLocation("0", new GeoLocation(37, -122), 0, listener);
+        // equal once rounded to 7 decimal places
+        this.geoFire.setLocation("0", new GeoLocation(37.00000001, -122), 0, listener);
+        Assert.assertEquals(1, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(1, this.store.writes);
+        // suppressed writes complete without an error
+        Assert.assertEquals(Collections.<DatabaseError>nCopies(2, null), listener.errors);
+
+        this.geoFire.setLocation("0", new GeoLocation(37.000001, -122), 0, listener);
+        Assert.assertEquals(2, this.store.writes);
+        Assert.assertEquals(TestCallback.location("0", 37.000001, -122), this.storedLocation("0"));
+
+        // a removed key is written again
+        this.geoFire.removeLocation("0");
+        this.geoFire.setLocation("0", new GeoLocation(37.000001, -122), 0, listener);
+        Assert.assertEquals(3, this.store.writes);
+    }
+
+    @Test
+    public void failedWritesAreNotSuppressed() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        this.geoFire.setMinimumMovement(100);
+        this.store.failing = true;
+        this.geoFire.setLocation("0", new GeoLocation(37, -122), listener);
+        Assert.assertNotNull(listener.errors.get(0));
+
+        // the server may not hold the location, so the same location is written again
+        this.store.failing = false;
+        this.geoFire.setLocation("0", new GeoLocation(37, -122), listener);
+        Assert.assertNull(listener.errors.get(1));
+        Assert.assertEquals(2, this.store.writes);
+        Assert.assertEquals(0, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(TestCallback.location("0", 37, -122), this.storedLocation("0"));
+
+        this.geoFire.setLocation("0", new GeoLocation(37, -122), listener);
+        Assert.assertEquals(2, this.store.writes);
+        Assert.assertEquals(1, this.geoFire.getSuppressedWriteCount());
+    }
+
+    @Test
+    public void leastRecentlyWrittenLocationsAreForgotten() {
+        this.geoFire.setMinimumMovement(100);
+        this.geoFire.setLastWrittenLocationLimit(2);
+        this.geoFire.setLocation("0", new GeoLocation(37, -122));
+        this.geoFire.setLocation("1", new GeoLocation(37, -122));
+        this.geoFire.setLocation("2", new GeoLocation(37, -122));
+        Assert.assertEquals(3, this.store.writes);
+
+        // "0" was forgotten, its next location is written
+        this.geoFire.setLocation("2", new GeoLocation(37, -122));
+        this.geoFire.setLocation("1", new GeoLocation(37, -122));
+        this.geoFire.setLocation("0", new GeoLocation(37, -122));
+        Assert.assertEquals(2, this.geoFire.getSuppressedWriteCount());
+        Assert.assertEquals(4, this.store.writes);
+
+        this.geoFire.setLastWrittenLocationLimit(1);
+        this.geoFire.setLocation("1", new GeoLocation(37, -122));
+        Assert.assertEquals(5, this.store.writes);
+        this.geoFire.clearLastWrittenLocations();
+        this.geoFire.setLocation("1", new GeoLocation(37, -122));
+        Assert.assertEquals(6, this.store.writes);
+        Assert.assertEquals(2, this.geoFire.getSuppressedWriteCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lastWrittenLocationLimitMustBePositive() {
+        this.geoFire.setLastWrittenLocationLimit(0);
+    }
+}
@@ -0,0 +1,101 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.store.OffHeapGeoStore;
+import com.firebase.geofire.testing.TestCallback;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OffHeapGeoStoreTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Map<String, String> keysInRange(GeoStore store, String startValue, String endValue) {
+        final Map<String, String> keys = new HashMap<>();
+        GeoStore.Subscription subscription = store.subscribe(startValue, endValue, new GeoStore.RangeListener() {
+            @Override
+            public void onEntryAdded(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+                keys.put(key, latitude + "," + longitude);
+            }
+
+            @Override
+            public void onEntryChanged(String key, double latitude, double longitude, DataSnapshot dataSnapshot) {
+            }
+
+            @Override
+            public void onEntryRemoved(String key, DataSnapshot dataSnapshot) {
+            }
+
+            @Override
+            public void onRangeLoaded() {
+            }
+
+            @Override
+            public void onRangeError(DatabaseError error) {
+            }
+        });
+        subscription.cancel();
+        return keys;
+    }
+
+    @Test
+    public void getLocation() throws Exception {
+        GeoFire geoFire = new GeoFire(new OffHeapGeoStore());
+
+        geoFire.setLocation("loc1", new GeoLocation(1, 2));
+        TestCallback testCallback1 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback1);
+        Assert.assertEquals(TestCallback.location("loc1", 1, 2), testCallback1.getCallbackValue());
+
+        geoFire.removeLocation("loc1");
+        TestCallback testCallback2 = new TestCallback();
+        geoFire.getLocation("loc1", testCallback2);
+        Assert.assertEquals(TestCallback.noLocation("loc1"), testCallback2.getCallbackValue());
+    }
+
+    @Test
+    public void rangeScansMatchInMemoryStore() {
+        OffHeapGeoStore offHeapStore = new OffHeapGeoStore(16, DIRECT_EXECUTOR);
+        InMemoryGeoStore inMemoryStore = new InMemoryGeoStore(DIRECT_EXECUTOR);
+        Random random = new Random(42);
+        // enough writes to merge the index a few times, reuse slots and grow every buffer
+        for (int i = 0; i < 50000; i++) {
+            String key = "key" + random.nextInt(5000);
+            if (random.nextInt(10) == 0) {
+                offHeapStore.removeLocation(key, null);
+                inMemoryStore.removeLocation(key, null);
+            } else {
+                GeoLocation location = new GeoLocation(37 + random.nextDouble(), -122 + random.nextDouble());
+                offHeapStore.setLocation(key, location, null);
+                inMemoryStore.setLocation(key, location, null);
+            }
+        }
+        Assert.assertEquals(inMemoryStore.size(), offHeapStore.size());
+
+        for (double radius: new double[] { 500, 5000, 20000 }) {
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(37.5, -121.5), radius);
+            for (GeoHashQuery query: queries) {
+                Map<String, String> expected = keysInRange(inMemoryStore, query.getStartValue(), query.getEndValue());
+                Assert.assertEquals(expected, keysInRange(offHeapStore, query.getStartValue(), query.getEndValue()));
+            }
+        }
+        Assert.assertEquals(inMemoryStore.size(), keysInRange(offHeapStore, "", "~").size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.util.GeoUtils;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class OneShotQueryTest {
+
+    @Test
+    public void queryOnce() throws InterruptedException {
+        final InMemoryGeoStore store = new InMemoryGeoStore();
+        store.setLocation("0", new GeoLocation(0, 0), null);
+        store.setLocation("1", new GeoLocation(37.0000, -122.0000), null);
+        store.setLocation("2", new GeoLocation(37.0001, -122.0001), null);
+        store.setLocation("3", new GeoLocation(37.1000, -122.0000), null);
+        store.setLocation("4", new GeoLocation(37.0002, -121.9998), null);
+        // a store without single reads, its ranges are subscribed until they are loaded
+        final AtomicInteger subscriptions = new AtomicInteger();
+        GeoStore subscribingStore = new GeoStore() {
+            @Override
+            public Subscription subscribe(String startValue, String endValue, RangeListener listener) {
+                final Subscription subscription = store.subscribe(startValue, endValue, listener);
+                subscriptions.incrementAndGet();
+                return new Subscription() {
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                        subscriptions.decrementAndGet();
+                    }
+                };
+            }
+
+            @Override
+            public void getLocation(String key, LocationCallback callback) {
+                store.getLocation(key, callback);
+            }
+
+            @Override
+            public void setLocation(String key, GeoLocation location, CompletionListener completionListener) {
+                store.setLocation(key, location, completionListener);
+            }
+
+            @Override
+            public void removeLocation(String key, CompletionListener completionListener) {
+                store.removeLocation(key, completionListener);
+            }
+
+            @Override
+            public void setLocations(Map<String, GeoLocation> locations, CompletionListener completionListener) {
+                store.setLocations(locations, completionListener);
+            }
+        };
+
+        for (GeoStore geoStore: Arrays.asList(store, subscribingStore)) {
+            final AtomicReference<List<GeoQueryResult>> results = new AtomicReference<>();
+            final CountDownLatch done = new CountDownLatch(1);
+            new GeoFire(geoStore).queryOnce(new GeoLocation(37, -122), 0.5, new GeoQueryResultCallback() {
+                @Override
+                public void onQueryResult(List<GeoQueryResult> queryResults) {
+                    results.set(queryResults);
+                    done.countDown();
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    throw databaseError.toException();
+                }
+            });
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            List<String> keys = new ArrayList<>();
+            for (GeoQueryResult result: results.get()) {
+                keys.add(result.getKey());
+                Assert.assertEquals(GeoUtils.distance(result.getLocation(), new GeoLocation(37, -122)),
+                        result.getDistance(), 1e-6);
+            }
+            Assert.assertEquals(Arrays.asList("1", "2", "4"), keys);
+            Assert.assertEquals(0, subscriptions.get());
+        }
+    }
+}
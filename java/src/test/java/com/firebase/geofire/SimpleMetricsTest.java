@@ -0,0 +1,65 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.SimpleMetrics;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.GeoQueryEventTestListener;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SimpleMetricsTest {
+
+    @Test
+    public void histogram() {
+        SimpleMetrics metrics = new SimpleMetrics();
+        SimpleMetrics.SimpleHistogram histogram = metrics.histogram("test");
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+        histogram.record(5);
+        histogram.record(1);
+        histogram.record(3);
+        Assert.assertSame(histogram, metrics.histogram("test"));
+        Assert.assertEquals(3, histogram.getCount());
+        Assert.assertEquals(9, histogram.getSum());
+        Assert.assertEquals(1, histogram.getMin());
+        Assert.assertEquals(5, histogram.getMax());
+        Assert.assertEquals(3, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void queryMetrics() throws InterruptedException {
+        SimpleMetrics metrics = new SimpleMetrics();
+        GeoFire geoFire = new GeoFire(new InMemoryGeoStore());
+        geoFire.setMetrics(metrics);
+        geoFire.setLocation("0", new GeoLocation(37.0030, -122.0000));
+        geoFire.setLocation("1", new GeoLocation(37.0060, -122.0000));
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37.0030, -122.0000));
+        testListener.expectEvents(events);
+
+        geoFire.setLocation("0", new GeoLocation(37.0031, -122.0000));
+        events.add(GeoQueryEventTestListener.keyMoved("0", 37.0031, -122.0000));
+        testListener.expectEvents(events);
+
+        Assert.assertEquals(1, metrics.getCounterValue(GeoFireMetrics.KEY_ENTERED_EVENTS));
+        Assert.assertEquals(1, metrics.getCounterValue(GeoFireMetrics.KEY_MOVED_EVENTS));
+        Assert.assertEquals(0, metrics.getCounterValue(GeoFireMetrics.DATA_CHANGED_EVENTS));
+        Assert.assertEquals(1, metrics.getHistograms().get(GeoFireMetrics.COVER_RANGES).getCount());
+        Assert.assertTrue(metrics.getCounterValue(GeoFireMetrics.KEYS_RECEIVED)
+                > metrics.getCounterValue(GeoFireMetrics.KEYS_IN_RADIUS));
+        Assert.assertEquals(2, metrics.getCounterValue(GeoFireMetrics.KEYS_IN_RADIUS));
+        Assert.assertTrue(metrics.getGaugeValue(GeoFireMetrics.RANGE_SUBSCRIPTIONS) > 0);
+
+        query.removeAllListeners();
+        Assert.assertEquals(0, metrics.getGaugeValue(GeoFireMetrics.RANGE_SUBSCRIPTIONS));
+    }
+}
@@ -0,0 +1,82 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.DefaultQueryPlanner;
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCoverage;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.KeyDensity;
+import com.firebase.geofire.core.SplittingQueryPlanner;
+import com.firebase.geofire.core.UniformKeyDensity;
+import com.firebase.geofire.util.GeoUtils;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SplittingQueryPlannerTest {
+
+    private static boolean contains(Set<GeoHashQuery> queries, GeoLocation location) {
+        GeoHash hash = new GeoHash(location);
+        for (GeoHashQuery query: queries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void splitPlansContainTheSameLocations() {
+        Random random = new Random(5);
+        SplittingQueryPlanner planner = new SplittingQueryPlanner(DefaultQueryPlanner.INSTANCE,
+                new UniformKeyDensity(100), 1000);
+        for (int i = 0; i < 200; i++) {
+            GeoLocation center = new GeoLocation(random.nextDouble() * 178 - 89, random.nextDouble() * 360 - 180);
+            double radius = Math.pow(10, random.nextDouble() * 6);
+            Set<GeoHashQuery> original = DefaultQueryPlanner.INSTANCE.plan(center, radius);
+            Set<GeoHashQuery> split = planner.plan(center, radius);
+            Assert.assertTrue(split.size() >= original.size());
+            double degrees = Math.min(90, GeoUtils.distanceToLatitudeDegrees(radius) * 2);
+            for (int j = 0; j < 100; j++) {
+                double latitude = center.latitude + (random.nextDouble() * 2 - 1) * degrees;
+                double longitude = center.longitude + (random.nextDouble() * 2 - 1) * degrees * 10;
+                GeoLocation location = new GeoLocation(Math.max(-90, Math.min(90, latitude)),
+                        GeoUtils.wrapLongitude(longitude));
+                Assert.assertEquals(center + " " + radius + " " + location,
+                        contains(original, location), contains(split, location));
+            }
+        }
+    }
+
+    @Test
+    public void largeRangesAreSplit() {
+        KeyDensity density = new UniformKeyDensity(100);
+        GeoLocation center = new GeoLocation(37.7853889, -122.4056973);
+        Set<GeoHashQuery> original = DefaultQueryPlanner.INSTANCE.plan(center, 5000);
+        Set<GeoHashQuery> split = new SplittingQueryPlanner(DefaultQueryPlanner.INSTANCE, density, 500)
+                .plan(center, 5000);
+
+        Assert.assertTrue(split.size() > original.size());
+        Assert.assertEquals(GeoHashCoverage.area(original), GeoHashCoverage.area(split), 1);
+        for (GeoHashQuery query: split) {
+            Assert.assertTrue(query.toString(), GeoHashCoverage.expectedKeys(query, density) <= 500);
+        }
+    }
+
+    @Test
+    public void smallRangesAreKept() {
+        GeoLocation center = new GeoLocation(37.7853889, -122.4056973);
+        Set<GeoHashQuery> original = DefaultQueryPlanner.INSTANCE.plan(center, 5000);
+        SplittingQueryPlanner planner = new SplittingQueryPlanner(DefaultQueryPlanner.INSTANCE,
+                new UniformKeyDensity(100), 1000000);
+        Assert.assertEquals(original, planner.plan(center, 5000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxKeysMustBePositive() {
+        new SplittingQueryPlanner(DefaultQueryPlanner.INSTANCE, new UniformKeyDensity(100), 0);
+    }
+}
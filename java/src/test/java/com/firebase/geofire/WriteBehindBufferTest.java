@@ -0,0 +1,183 @@
+package com.firebase.geofire;
+
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.firebase.geofire.testing.TestCallback;
+import com.google.firebase.database.DatabaseError;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class WriteBehindBufferTest {
+
+    // long enough that the periodic flush never runs during a test
+    private static final long FLUSH_INTERVAL_MILLIS = 3600000;
+
+    /**
+     * Holds the callbacks of the store until the test runs them, so batches stay in flight until then.
+     */
+    private static final class HeldExecutor implements Executor {
+        private final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<Runnable>());
+
+        @Override
+        public void execute(Runnable command) {
+            this.tasks.add(command);
+        }
+
+        void runTasks() {
+            while (!this.tasks.isEmpty()) {
+                this.tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static final class RecordingListener implements GeoFire.CompletionListener {
+        private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onComplete(String key, DatabaseError error) {
+            Assert.assertNull(error);
+            this.completed.add(key);
+        }
+    }
+
+    private final HeldExecutor executor = new HeldExecutor();
+    private final InMemoryGeoStore store = new InMemoryGeoStore(this.executor);
+    private final GeoFire geoFire = new GeoFire(this.store);
+
+    private String storedLocation(String key) throws Exception {
+        TestCallback callback = new TestCallback();
+        this.store.getLocation(key, callback);
+        this.executor.runTasks();
+        return callback.getCallbackValue();
+    }
+
+    @Test
+    public void updatesOfAKeyAreCoalesced() throws Exception {
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 100, 1);
+        RecordingListener listener = new RecordingListener();
+        this.geoFire.setLocation("0", new GeoLocation(1, 1), listener);
+        this.geoFire.setLocation("0", new GeoLocation(2, 2), listener);
+        this.geoFire.setLocation("1", new GeoLocation(3, 3), listener);
+        this.geoFire.setLocation("0", new GeoLocation(4, 4), listener);
+        Assert.assertEquals(2, buffer.getPendingCount());
+        Assert.assertEquals(2, buffer.getCoalescedCount());
+        Assert.assertEquals(TestCallback.noLocation("0"), this.storedLocation("0"));
+
+        buffer.flush();
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(1, buffer.getBatchCount());
+        Assert.assertEquals(2, buffer.getWrittenCount());
+        Assert.assertEquals(TestCallback.location("0", 4, 4), this.storedLocation("0"));
+        Assert.assertEquals(TestCallback.location("1", 3, 3), this.storedLocation("1"));
+        // every call is completed by the batch that wrote its key
+        Assert.assertEquals(Arrays.asList("0", "0", "0", "1"), listener.completed);
+        this.geoFire.disableWriteBehind();
+    }
+
+    @Test
+    public void removalsAreWrittenWithTheBatch() throws Exception {
+        this.store.setLocation("existing", new GeoLocation(1, 1), null);
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 100, 1);
+        RecordingListener listener = new RecordingListener();
+        this.geoFire.removeLocation("existing", listener);
+        this.geoFire.setLocation("added", new GeoLocation(2, 2), listener);
+        this.geoFire.removeLocation("added", listener);
+        this.geoFire.setLocation("readded", new GeoLocation(3, 3), listener);
+        this.geoFire.removeLocation("readded", listener);
+        this.geoFire.setLocation("readded", new GeoLocation(4, 4), listener);
+        Assert.assertEquals(3, buffer.getPendingCount());
+        Assert.assertEquals(TestCallback.location("existing", 1, 1), this.storedLocation("existing"));
+
+        buffer.flush();
+        Assert.assertEquals(1, buffer.getBatchCount());
+        Assert.assertEquals(TestCallback.noLocation("existing"), this.storedLocation("existing"));
+        Assert.assertEquals(TestCallback.noLocation("added"), this.storedLocation("added"));
+        Assert.assertEquals(TestCallback.location("readded", 4, 4), this.storedLocation("readded"));
+        Assert.assertEquals(6, listener.completed.size());
+        this.geoFire.disableWriteBehind();
+    }
+
+    @Test
+    public void updatesWaitForTheInFlightBatches() throws Exception {
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 100, 1);
+        this.geoFire.setLocation("0", new GeoLocation(1, 1));
+        buffer.flush();
+        Assert.assertEquals(1, buffer.getInFlightCount());
+
+        // the first batch did not complete, the updates stay pending and are coalesced
+        this.geoFire.setLocation("1", new GeoLocation(2, 2));
+        buffer.flush();
+        this.geoFire.setLocation("1", new GeoLocation(3, 3));
+        Assert.assertEquals(1, buffer.getBatchCount());
+        Assert.assertEquals(1, buffer.getPendingCount());
+        Assert.assertEquals(1, buffer.getCoalescedCount());
+
+        this.executor.runTasks();
+        Assert.assertEquals(0, buffer.getInFlightCount());
+        buffer.flush();
+        Assert.assertEquals(2, buffer.getBatchCount());
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(TestCallback.location("1", 3, 3), this.storedLocation("1"));
+        this.geoFire.disableWriteBehind();
+    }
+
+    @Test
+    public void reachingTheThresholdFlushes() throws Exception {
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 3, 1);
+        this.geoFire.setLocation("0", new GeoLocation(1, 1));
+        this.geoFire.setLocation("1", new GeoLocation(1, 1));
+        this.geoFire.setLocation("1", new GeoLocation(2, 2));
+        Assert.assertEquals(0, buffer.getBatchCount());
+        this.geoFire.setLocation("2", new GeoLocation(1, 1));
+        Assert.assertEquals(1, buffer.getBatchCount());
+        Assert.assertEquals(0, buffer.getPendingCount());
+
+        // while the batch is in flight the threshold is reached again, the completion of the batch flushes
+        this.geoFire.setLocation("3", new GeoLocation(1, 1));
+        this.geoFire.setLocation("4", new GeoLocation(1, 1));
+        this.geoFire.setLocation("5", new GeoLocation(1, 1));
+        Assert.assertEquals(1, buffer.getBatchCount());
+        Assert.assertEquals(3, buffer.getPendingCount());
+        this.executor.runTasks();
+        Assert.assertEquals(2, buffer.getBatchCount());
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(6, buffer.getWrittenCount());
+        this.geoFire.disableWriteBehind();
+    }
+
+    @Test
+    public void closeFlushesPastTheInFlightLimit() throws Exception {
+        WriteBehindBuffer buffer = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 100, 1);
+        this.geoFire.setLocation("0", new GeoLocation(1, 1));
+        buffer.flush();
+        this.geoFire.setLocation("1", new GeoLocation(2, 2));
+        Assert.assertEquals(1, buffer.getPendingCount());
+
+        this.geoFire.disableWriteBehind();
+        Assert.assertNull(this.geoFire.getWriteBehindBuffer());
+        Assert.assertEquals(2, buffer.getBatchCount());
+        Assert.assertEquals(2, buffer.getInFlightCount());
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals(TestCallback.location("1", 2, 2), this.storedLocation("1"));
+        Assert.assertEquals(0, buffer.getInFlightCount());
+
+        // a closed buffer takes no more updates, they are written straight through
+        Assert.assertFalse(buffer.setLocation("2", new GeoLocation(3, 3), null));
+        this.geoFire.setLocation("2", new GeoLocation(3, 3));
+        Assert.assertEquals(2, buffer.getBatchCount());
+        Assert.assertEquals(TestCallback.location("2", 3, 3), this.storedLocation("2"));
+
+        // write-behind can be enabled again with a new buffer
+        WriteBehindBuffer next = this.geoFire.enableWriteBehind(FLUSH_INTERVAL_MILLIS, 100, 1);
+        Assert.assertNotSame(buffer, next);
+        Assert.assertSame(next, this.geoFire.getWriteBehindBuffer());
+        this.geoFire.disableWriteBehind();
+    }
+}
@@ -0,0 +1,34 @@
+package com.firebase.geofire.jfr;
+
+import com.firebase.geofire.trace.GeoFireTracer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.firebase.geofire.ChildRemovedRead")
+@Label("GeoQuery Child Removed Read")
+@Category("GeoFire")
+@Description("Reading the location of a key that was removed from a range to check whether it left the query")
+final class ChildRemovedReadEvent extends Event implements GeoFireTracer.Span {
+
+    @Label("Key")
+    String key;
+
+    @Label("Left Query")
+    boolean leftQuery;
+
+    @Override
+    public void end(int count) {
+        if (this.shouldCommit()) {
+            this.leftQuery = count > 0;
+            this.commit();
+        }
+    }
+
+    @Override
+    public void abandon() {
+        // only completed operations are recorded
+    }
+}
@@ -0,0 +1,30 @@
+package com.firebase.geofire.jfr;
+
+import com.firebase.geofire.trace.GeoFireTracer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.firebase.geofire.Cover")
+@Label("GeoQuery Cover")
+@Category("GeoFire")
+@Description("Computing the geohash ranges that cover the circle of a query")
+final class CoverEvent extends QueryEvent implements GeoFireTracer.Span {
+
+    @Label("Ranges")
+    int ranges;
+
+    @Override
+    public void end(int count) {
+        if (this.shouldCommit()) {
+            this.ranges = count;
+            this.commit();
+        }
+    }
+
+    @Override
+    public void abandon() {
+        // only completed operations are recorded
+    }
+}
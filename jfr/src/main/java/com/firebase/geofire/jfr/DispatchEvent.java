@@ -0,0 +1,37 @@
+package com.firebase.geofire.jfr;
+
+import com.firebase.geofire.trace.GeoFireTracer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.firebase.geofire.Dispatch")
+@Label("GeoQuery Dispatch")
+@Category("GeoFire")
+@Description("Handling one key update received from the store and raising its events")
+// one event per key update is too much for a default recording
+@Enabled(false)
+final class DispatchEvent extends Event implements GeoFireTracer.Span {
+
+    @Label("Key")
+    String key;
+
+    @Label("Events")
+    int events;
+
+    @Override
+    public void end(int count) {
+        if (this.shouldCommit()) {
+            this.events = count;
+            this.commit();
+        }
+    }
+
+    @Override
+    public void abandon() {
+        // only completed operations are recorded
+    }
+}
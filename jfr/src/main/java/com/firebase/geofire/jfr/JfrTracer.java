@@ -0,0 +1,81 @@
+package com.firebase.geofire.jfr;
+
+import com.firebase.geofire.trace.GeoFireTracer;
+import com.firebase.geofire.trace.NoOpTracer;
+
+/**
+ * Records the work of GeoQuery as JDK Flight Recorder events in the "GeoFire" category. It is registered as a
+ * service, so GeoFire picks it up as soon as this module is on the class path. Which events are recorded is
+ * controlled with the usual JFR settings, e.g. {@code com.firebase.geofire.Dispatch#enabled=true}; events that are
+ * disabled cost a check per operation.
+ */
+public final class JfrTracer implements GeoFireTracer {
+
+    @Override
+    public Span startCover(double latitude, double longitude, double radius) {
+        CoverEvent event = new CoverEvent();
+        if (!event.isEnabled()) {
+            return NoOpTracer.NO_SPAN;
+        }
+        event.latitude = latitude;
+        event.longitude = longitude;
+        event.radius = radius;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span startReady(double latitude, double longitude, double radius) {
+        ReadyEvent event = new ReadyEvent();
+        if (!event.isEnabled()) {
+            return NoOpTracer.NO_SPAN;
+        }
+        event.latitude = latitude;
+        event.longitude = longitude;
+        event.radius = radius;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span startDispatch(String key) {
+        DispatchEvent event = new DispatchEvent();
+        if (!event.isEnabled()) {
+            return NoOpTracer.NO_SPAN;
+        }
+        event.key = key;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public Span startChildRemovedRead(String key) {
+        ChildRemovedReadEvent event = new ChildRemovedReadEvent();
+        if (!event.isEnabled()) {
+            return NoOpTracer.NO_SPAN;
+        }
+        event.key = key;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void rangeSubscribed(String startValue, String endValue) {
+        commitRangeSubscription(startValue, endValue, true);
+    }
+
+    @Override
+    public void rangeUnsubscribed(String startValue, String endValue) {
+        commitRangeSubscription(startValue, endValue, false);
+    }
+
+    private static void commitRangeSubscription(String startValue, String endValue, boolean subscribed) {
+        RangeSubscriptionEvent event = new RangeSubscriptionEvent();
+        if (event.isEnabled()) {
+            event.startValue = startValue;
+            event.endValue = endValue;
+            event.subscribed = subscribed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.firebase.geofire.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * The criteria of the query an event belongs to.
+ */
+abstract class QueryEvent extends Event {
+
+    @Label("Latitude")
+    double latitude;
+
+    @Label("Longitude")
+    double longitude;
+
+    @Label("Radius")
+    @Description("The radius in meters")
+    double radius;
+}
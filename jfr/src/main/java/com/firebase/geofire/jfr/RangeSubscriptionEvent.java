@@ -0,0 +1,24 @@
+package com.firebase.geofire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.firebase.geofire.RangeSubscription")
+@Label("GeoQuery Range Subscription")
+@Category("GeoFire")
+@Description("A query subscribed to or unsubscribed from a geohash range")
+final class RangeSubscriptionEvent extends Event {
+
+    @Label("Start Value")
+    String startValue;
+
+    @Label("End Value")
+    String endValue;
+
+    @Label("Subscribed")
+    @Description("True if the range was subscribed, false if it was unsubscribed")
+    boolean subscribed;
+}
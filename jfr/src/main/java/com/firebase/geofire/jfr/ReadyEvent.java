@@ -0,0 +1,37 @@
+package com.firebase.geofire.jfr;
+
+import com.firebase.geofire.trace.GeoFireTracer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.firebase.geofire.Ready")
+@Label("GeoQuery Ready")
+@Category("GeoFire")
+@Description("From starting a query or changing its center or radius until the query is ready")
+final class ReadyEvent extends QueryEvent implements GeoFireTracer.Span {
+
+    @Label("Keys In Query")
+    int keysInQuery;
+
+    @Label("Abandoned")
+    @Description("The query was stopped or changed again before it was ready")
+    boolean abandoned;
+
+    @Override
+    public void end(int count) {
+        if (this.shouldCommit()) {
+            this.keysInQuery = count;
+            this.commit();
+        }
+    }
+
+    @Override
+    public void abandon() {
+        if (this.shouldCommit()) {
+            this.abandoned = true;
+            this.commit();
+        }
+    }
+}
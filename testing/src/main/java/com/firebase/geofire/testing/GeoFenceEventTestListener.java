@@ -0,0 +1,57 @@
+package com.firebase.geofire.testing;
+
+import com.firebase.geofire.GeoFenceEventListener;
+import com.firebase.geofire.GeoLocation;
+import com.google.firebase.database.DatabaseError;
+
+import static java.util.Locale.US;
+
+/**
+ * This listener can be used for testing a GeoFenceEngine and asserting that certain events were sent.
+ */
+public final class GeoFenceEventTestListener extends TestListener implements GeoFenceEventListener {
+    public static String keyEntered(String fenceId, String key, double latitude, double longitude) {
+        return String.format(US, "KEY_ENTERED(%s,%s,%f,%f)", fenceId, key, latitude, longitude);
+    }
+
+    public static String keyExited(String fenceId, String key) {
+        return String.format("KEY_EXITED(%s,%s)", fenceId, key);
+    }
+
+    public static String ready() {
+        return "READY";
+    }
+
+    private final boolean recordReady;
+
+    /** This will by default record the entered and exited events. */
+    public GeoFenceEventTestListener() {
+        this(false);
+    }
+
+    public GeoFenceEventTestListener(boolean recordReady) {
+        this.recordReady = recordReady;
+    }
+
+    @Override
+    public void onKeyEntered(String fenceId, String key, GeoLocation location) {
+        addEvent(keyEntered(fenceId, key, location.latitude, location.longitude));
+    }
+
+    @Override
+    public void onKeyExited(String fenceId, String key) {
+        addEvent(keyExited(fenceId, key));
+    }
+
+    @Override
+    public void onGeoFencesReady() {
+        if (recordReady) {
+            addEvent(ready());
+        }
+    }
+
+    @Override
+    public void onGeoFencesError(DatabaseError error) {
+        throw error.toException();
+    }
+}
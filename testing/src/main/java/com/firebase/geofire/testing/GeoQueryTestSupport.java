@@ -0,0 +1,71 @@
+package com.firebase.geofire.testing;
+
+import static org.junit.Assert.fail;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoQueryEventListener;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.google.firebase.database.DatabaseError;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores and listeners shared by the tests of queries.
+ */
+public final class GeoQueryTestSupport {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private GeoQueryTestSupport() {
+    }
+
+    /**
+     * A store that calls its listeners on the thread that writes or subscribes, so a query has loaded its ranges
+     * once it was subscribed. Only single threaded tests can use it, see {@link GeoStore}.
+     */
+    public static InMemoryGeoStore synchronousStore() {
+        return new InMemoryGeoStore(DIRECT_EXECUTOR);
+    }
+
+    /**
+     * This listener ignores the keys of a query and allows you to wait until the query is ready.
+     */
+    public static final class ReadyListener implements GeoQueryEventListener {
+        private final CountDownLatch ready = new CountDownLatch(1);
+
+        @Override
+        public void onKeyEntered(String key, GeoLocation location) {
+        }
+
+        @Override
+        public void onKeyExited(String key) {
+        }
+
+        @Override
+        public void onKeyMoved(String key, GeoLocation location) {
+        }
+
+        @Override
+        public void onGeoQueryReady() {
+            this.ready.countDown();
+        }
+
+        @Override
+        public void onGeoQueryError(DatabaseError error) {
+        }
+
+        /** Blocks until the query is ready and fails the test if it doesn't become ready in time. */
+        public void awaitReady() throws InterruptedException {
+            if (!this.ready.await(10, TimeUnit.SECONDS)) {
+                fail("Timeout occured");
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.firebase.geofire.testing;
+
+import com.firebase.geofire.GeoFire;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoQuery;
+import com.firebase.geofire.GeoQueryEventListener;
+import com.firebase.geofire.metrics.GeoFireMetrics;
+import com.firebase.geofire.metrics.SimpleMetrics;
+import com.firebase.geofire.util.GeoUtils;
+import com.google.firebase.database.DatabaseError;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs a {@link Workload} against a {@link SimulatedGeoStore}, so GeoFire can be load tested without a database.
+ *
+ * <pre>
+ * SimulationReport report = LoadSimulation.run(new Workload().objects(10000).queries(100));
+ * </pre>
+ */
+public final class LoadSimulation {
+
+    private static final long READY_TIMEOUT_SECONDS = 60;
+    private static final long DRAIN_TIMEOUT_MILLIS = 10000;
+    private static final int MAX_LATENCY_SAMPLES = 100000;
+    // the writes per object that are remembered to find the write that caused a moved event
+    private static final int WRITE_HISTORY = 8;
+
+    private final Workload workload;
+    private final Random random;
+    private final double metersPerTick;
+    private final double queryMetersPerTick;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] headings;
+    private final AtomicLongArray writtenLatitudes;
+    private final AtomicLongArray writeNanos;
+    private int tick;
+
+    private final AtomicLong keyEnteredEvents = new AtomicLong();
+    private final AtomicLong keyExitedEvents = new AtomicLong();
+    private final AtomicLong keyMovedEvents = new AtomicLong();
+    private final long[] latencySamples = new long[MAX_LATENCY_SAMPLES];
+    private long latencyCount;
+    private final Random sampleRandom = new Random();
+
+    private LoadSimulation(Workload workload) {
+        this.workload = workload;
+        this.random = new Random(workload.seed);
+        this.metersPerTick = workload.objectSpeed * workload.updateIntervalMillis / 1000;
+        this.queryMetersPerTick = workload.querySpeed * workload.updateIntervalMillis / 1000;
+        double halfSide = workload.areaKilometers * 1000 / 2;
+        double latitudeDegrees = GeoUtils.distanceToLatitudeDegrees(halfSide);
+        double longitudeDegrees = GeoUtils.distanceToLongitudeDegrees(halfSide, workload.latitude);
+        this.minLatitude = Math.max(-90, workload.latitude - latitudeDegrees);
+        this.maxLatitude = Math.min(90, workload.latitude + latitudeDegrees);
+        this.minLongitude = Math.max(-180, workload.longitude - longitudeDegrees);
+        this.maxLongitude = Math.min(180, workload.longitude + longitudeDegrees);
+
+        this.latitudes = new double[workload.objects + workload.queries];
+        this.longitudes = new double[workload.objects + workload.queries];
+        this.headings = new double[workload.objects + workload.queries];
+        for (int i = 0; i < this.latitudes.length; i++) {
+            this.latitudes[i] = this.minLatitude + this.random.nextDouble() * (this.maxLatitude - this.minLatitude);
+            this.longitudes[i] = this.minLongitude + this.random.nextDouble() * (this.maxLongitude - this.minLongitude);
+            this.headings[i] = this.random.nextDouble() * 2 * Math.PI;
+        }
+        this.writtenLatitudes = new AtomicLongArray(workload.objects * WRITE_HISTORY);
+        this.writeNanos = new AtomicLongArray(workload.objects * WRITE_HISTORY);
+    }
+
+    /**
+     * Runs the workload and blocks until it is done.
+     *
+     * @param workload The workload to run
+     * @return The results
+     * @throws InterruptedException If the thread was interrupted while running the workload
+     */
+    public static SimulationReport run(Workload workload) throws InterruptedException {
+        return new LoadSimulation(workload).run();
+    }
+
+    private SimulationReport run() throws InterruptedException {
+        long baselineHeap = usedHeap();
+        SimulatedGeoStore store = new SimulatedGeoStore(this.workload.latencyMicros);
+        GeoFire geoFire = new GeoFire(store);
+        SimpleMetrics metrics = new SimpleMetrics();
+        geoFire.setMetrics(metrics);
+        long writes = 0;
+        GeoQuery[] queries = new GeoQuery[this.workload.queries];
+        try {
+            for (int i = 0; i < this.workload.objects; i++) {
+                this.write(geoFire, i);
+                writes++;
+            }
+            CountDownLatch ready = new CountDownLatch(queries.length);
+            for (int i = 0; i < queries.length; i++) {
+                int id = this.workload.objects + i;
+                queries[i] = geoFire.queryAtLocation(new GeoLocation(this.latitudes[id], this.longitudes[id]),
+                        this.workload.queryRadiusKilometers);
+                queries[i].addGeoQueryEventListener(new Listener(ready));
+            }
+            if (!ready.await(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Queries did not become ready!");
+            }
+
+            long start = System.nanoTime();
+            long ticks = this.workload.durationMillis / this.workload.updateIntervalMillis;
+            for (this.tick = 1; this.tick <= ticks; this.tick++) {
+                long sleepNanos = start + this.tick * TimeUnit.MILLISECONDS.toNanos(this.workload.updateIntervalMillis)
+                        - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+                for (int i = 0; i < this.workload.objects; i++) {
+                    this.move(i, this.metersPerTick);
+                    this.write(geoFire, i);
+                    writes++;
+                }
+                for (int i = 0; i < queries.length; i++) {
+                    int id = this.workload.objects + i;
+                    this.move(id, this.queryMetersPerTick);
+                    queries[i].setCenter(new GeoLocation(this.latitudes[id], this.longitudes[id]));
+                }
+            }
+            this.drain(metrics);
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            long retainedHeap = Math.max(0, usedHeap() - baselineHeap);
+            long[] latencies;
+            synchronized (this) {
+                latencies = Arrays.copyOf(this.latencySamples, (int) Math.min(this.latencyCount, MAX_LATENCY_SAMPLES));
+            }
+            Arrays.sort(latencies);
+            return new SimulationReport(durationMillis, writes, this.keyEnteredEvents.get(),
+                    this.keyExitedEvents.get(), this.keyMovedEvents.get(), store.getDeliveredEntries(),
+                    metrics.getCounterValue(GeoFireMetrics.KEYS_IN_RADIUS), latencies, retainedHeap);
+        } finally {
+            for (GeoQuery query: queries) {
+                if (query != null) {
+                    query.removeAllListeners();
+                }
+            }
+            store.shutdown();
+        }
+    }
+
+    private void move(int id, double meters) {
+        // random walk that turns slightly on every step and bounces off the border of the area
+        this.headings[id] += (this.random.nextDouble() - 0.5) * 0.5;
+        double latitude = this.latitudes[id]
+                + GeoUtils.distanceToLatitudeDegrees(meters * Math.cos(this.headings[id]));
+        double longitude = this.longitudes[id]
+                + GeoUtils.distanceToLongitudeDegrees(meters * Math.sin(this.headings[id]), this.latitudes[id]);
+        if (latitude < this.minLatitude || latitude > this.maxLatitude) {
+            this.headings[id] = Math.PI - this.headings[id];
+            latitude = this.latitudes[id];
+        }
+        if (longitude < this.minLongitude || longitude > this.maxLongitude) {
+            this.headings[id] = -this.headings[id];
+            longitude = this.longitudes[id];
+        }
+        this.latitudes[id] = latitude;
+        this.longitudes[id] = longitude;
+    }
+
+    private void write(GeoFire geoFire, int object) {
+        int slot = object * WRITE_HISTORY + this.tick % WRITE_HISTORY;
+        this.writtenLatitudes.set(slot, Double.doubleToLongBits(this.latitudes[object]));
+        this.writeNanos.set(slot, System.nanoTime());
+        geoFire.setLocation(key(object), new GeoLocation(this.latitudes[object], this.longitudes[object]));
+    }
+
+    private static String key(int object) {
+        return "object" + object;
+    }
+
+    private static int object(String key) {
+        return Integer.parseInt(key.substring("object".length()));
+    }
+
+    private void recordLatency(String key, double latitude) {
+        long now = System.nanoTime();
+        int object = object(key);
+        long latitudeBits = Double.doubleToLongBits(latitude);
+        for (int i = 0; i < WRITE_HISTORY; i++) {
+            int slot = object * WRITE_HISTORY + i;
+            if (this.writtenLatitudes.get(slot) == latitudeBits) {
+                long micros = TimeUnit.NANOSECONDS.toMicros(now - this.writeNanos.get(slot));
+                synchronized (this) {
+                    // reservoir sampling keeps a uniform sample of all latencies
+                    long index = this.latencyCount++;
+                    if (index < MAX_LATENCY_SAMPLES) {
+                        this.latencySamples[(int) index] = micros;
+                    } else {
+                        long replaced = (long) (this.sampleRandom.nextDouble() * (index + 1));
+                        if (replaced < MAX_LATENCY_SAMPLES) {
+                            this.latencySamples[(int) replaced] = micros;
+                        }
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void drain(SimpleMetrics metrics) throws InterruptedException {
+        // every write reaches the listeners after two round trips at the latest
+        TimeUnit.MICROSECONDS.sleep(4 * this.workload.latencyMicros);
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (metrics.getGaugeValue(GeoFireMetrics.PENDING_EVENTS) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private final class Listener implements GeoQueryEventListener {
+        private final CountDownLatch ready;
+        private boolean isReady;
+
+        Listener(CountDownLatch ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public void onKeyEntered(String key, GeoLocation location) {
+            LoadSimulation.this.keyEnteredEvents.incrementAndGet();
+        }
+
+        @Override
+        public void onKeyExited(String key) {
+            LoadSimulation.this.keyExitedEvents.incrementAndGet();
+        }
+
+        @Override
+        public void onKeyMoved(String key, GeoLocation location) {
+            LoadSimulation.this.keyMovedEvents.incrementAndGet();
+            LoadSimulation.this.recordLatency(key, location.latitude);
+        }
+
+        @Override
+        public void onGeoQueryReady() {
+            // ready is raised again after every change of the center
+            if (!this.isReady) {
+                this.isReady = true;
+                this.ready.countDown();
+            }
+        }
+
+        @Override
+        public void onGeoQueryError(DatabaseError error) {
+            throw error.toException();
+        }
+    }
+}
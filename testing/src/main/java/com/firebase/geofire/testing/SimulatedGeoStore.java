@@ -0,0 +1,238 @@
+package com.firebase.geofire.testing;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.LocationCallback;
+import com.firebase.geofire.store.GeoStore;
+import com.firebase.geofire.store.InMemoryGeoStore;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the Realtime Database, for load tests that run without a database URL or service
+ * account. Subscribed ranges behave like a query with orderByChild("g").startAt(start).endAt(end): the keys in the
+ * range are delivered as added entries followed by onRangeLoaded, then keys that move into, within and out of the
+ * range are delivered as added, changed and removed entries. Every write and every callback is delayed by a fixed
+ * latency to simulate the round trip to the server. Callbacks keep the order in which the store produced them.
+ */
+public final class SimulatedGeoStore implements GeoStore {
+
+    private final GeoStore store = new InMemoryGeoStore();
+    private final long latencyMicros;
+    private final ScheduledExecutorService network;
+    private final AtomicLong deliveredEntries = new AtomicLong();
+
+    /**
+     * @param latencyMicros The time in microseconds every write and every callback is delayed
+     */
+    public SimulatedGeoStore(long latencyMicros) {
+        this.latencyMicros = latencyMicros;
+        this.network = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "GeoFire-SimulatedGeoStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return The number of added and changed entries that were delivered to range listeners, i.e. the keys a client
+     * would have downloaded
+     */
+    public long getDeliveredEntries() {
+        return this.deliveredEntries.get();
+    }
+
+    /**
+     * Stops delivering callbacks.
+     */
+    public void shutdown() {
+        this.network.shutdownNow();
+    }
+
+    private void delay(Runnable runnable) {
+        if (!this.network.isShutdown()) {
+            this.network.schedule(runnable, this.latencyMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    public Subscription subscribe(final String startValue, final String endValue, final RangeListener listener) {
+        final DelayedRangeListener delayedListener = new DelayedRangeListener(listener);
+        this.delay(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (delayedListener) {
+                    if (!delayedListener.cancelled) {
+                        delayedListener.subscription = SimulatedGeoStore.this.store.subscribe(startValue, endValue,
+                                delayedListener);
+                    }
+                }
+            }
+        });
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                synchronized (delayedListener) {
+                    delayedListener.cancelled = true;
+                    if (delayedListener.subscription != null) {
+                        delayedListener.subscription.cancel();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public void getLocation(final String key, final LocationCallback callback) {
+        this.store.getLocation(key, new LocationCallback() {
+            @Override
+            public void onLocationResult(final String key, final GeoLocation location) {
+                SimulatedGeoStore.this.delay(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLocationResult(key, location);
+                    }
+                });
+            }
+
+            @Override
+            public void onCancelled(final DatabaseError databaseError) {
+                SimulatedGeoStore.this.delay(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCancelled(databaseError);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void setLocation(final String key, final GeoLocation location, final CompletionListener listener) {
+        this.delay(new Runnable() {
+            @Override
+            public void run() {
+                SimulatedGeoStore.this.store.setLocation(key, location, SimulatedGeoStore.this.delayed(listener));
+            }
+        });
+    }
+
+    @Override
+    public void removeLocation(final String key, final CompletionListener listener) {
+        this.delay(new Runnable() {
+            @Override
+            public void run() {
+                SimulatedGeoStore.this.store.removeLocation(key, SimulatedGeoStore.this.delayed(listener));
+            }
+        });
+    }
+
+    @Override
+    public void setLocations(final Map<String, GeoLocation> locations, final CompletionListener listener) {
+        this.delay(new Runnable() {
+            @Override
+            public void run() {
+                SimulatedGeoStore.this.store.setLocations(locations, SimulatedGeoStore.this.delayed(listener));
+            }
+        });
+    }
+
+    private CompletionListener delayed(final CompletionListener listener) {
+        if (listener == null) {
+            return null;
+        }
+        return new CompletionListener() {
+            @Override
+            public void onComplete(final DatabaseError error) {
+                SimulatedGeoStore.this.delay(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onComplete(error);
+                    }
+                });
+            }
+        };
+    }
+
+    private final class DelayedRangeListener implements RangeListener {
+        private final RangeListener listener;
+        private Subscription subscription;
+        private volatile boolean cancelled;
+
+        DelayedRangeListener(RangeListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onEntryAdded(final String key, final double latitude, final double longitude,
+                                 final DataSnapshot dataSnapshot) {
+            SimulatedGeoStore.this.deliveredEntries.incrementAndGet();
+            SimulatedGeoStore.this.delay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!DelayedRangeListener.this.cancelled) {
+                        DelayedRangeListener.this.listener.onEntryAdded(key, latitude, longitude, dataSnapshot);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onEntryChanged(final String key, final double latitude, final double longitude,
+                                   final DataSnapshot dataSnapshot) {
+            SimulatedGeoStore.this.deliveredEntries.incrementAndGet();
+            SimulatedGeoStore.this.delay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!DelayedRangeListener.this.cancelled) {
+                        DelayedRangeListener.this.listener.onEntryChanged(key, latitude, longitude, dataSnapshot);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onEntryRemoved(final String key, final DataSnapshot dataSnapshot) {
+            SimulatedGeoStore.this.delay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!DelayedRangeListener.this.cancelled) {
+                        DelayedRangeListener.this.listener.onEntryRemoved(key, dataSnapshot);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onRangeLoaded() {
+            SimulatedGeoStore.this.delay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!DelayedRangeListener.this.cancelled) {
+                        DelayedRangeListener.this.listener.onRangeLoaded();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onRangeError(final DatabaseError error) {
+            SimulatedGeoStore.this.delay(new Runnable() {
+                @Override
+                public void run() {
+                    if (!DelayedRangeListener.this.cancelled) {
+                        DelayedRangeListener.this.listener.onRangeError(error);
+                    }
+                }
+            });
+        }
+    }
+}
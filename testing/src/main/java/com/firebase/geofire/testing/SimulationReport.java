@@ -0,0 +1,80 @@
+package com.firebase.geofire.testing;
+
+import static java.util.Locale.US;
+
+/**
+ * The results of a {@link LoadSimulation} run.
+ */
+public final class SimulationReport {
+    /** The time the objects and queries moved, in milliseconds */
+    public final long durationMillis;
+    /** The number of locations written */
+    public final long writes;
+    public final long keyEnteredEvents;
+    public final long keyExitedEvents;
+    public final long keyMovedEvents;
+    /** The entries the simulated database delivered to the queries, i.e. the keys a client would have downloaded */
+    public final long downloadedEntries;
+    /** The entries the queries received for keys inside of their radius */
+    public final long entriesInRadius;
+    /**
+     * Percentiles of the time in microseconds from writing a location until a listener received the key moved event
+     */
+    public final long latencyMicrosP50;
+    public final long latencyMicrosP90;
+    public final long latencyMicrosP99;
+    public final long latencyMicrosMax;
+    /** The heap that was retained by GeoFire and the simulated database at the end of the run */
+    public final long retainedHeapBytes;
+
+    SimulationReport(long durationMillis, long writes, long keyEnteredEvents, long keyExitedEvents, long keyMovedEvents,
+                     long downloadedEntries, long entriesInRadius, long[] sortedLatenciesMicros,
+                     long retainedHeapBytes) {
+        this.durationMillis = durationMillis;
+        this.writes = writes;
+        this.keyEnteredEvents = keyEnteredEvents;
+        this.keyExitedEvents = keyExitedEvents;
+        this.keyMovedEvents = keyMovedEvents;
+        this.downloadedEntries = downloadedEntries;
+        this.entriesInRadius = entriesInRadius;
+        this.latencyMicrosP50 = percentile(sortedLatenciesMicros, 0.5);
+        this.latencyMicrosP90 = percentile(sortedLatenciesMicros, 0.9);
+        this.latencyMicrosP99 = percentile(sortedLatenciesMicros, 0.99);
+        this.latencyMicrosMax = sortedLatenciesMicros.length == 0 ? 0
+                : sortedLatenciesMicros[sortedLatenciesMicros.length - 1];
+        this.retainedHeapBytes = retainedHeapBytes;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(percentile * sorted.length))];
+    }
+
+    /**
+     * @return The number of events delivered to the listeners
+     */
+    public long getEvents() {
+        return this.keyEnteredEvents + this.keyExitedEvents + this.keyMovedEvents;
+    }
+
+    /**
+     * @return The number of events delivered per second
+     */
+    public double getEventsPerSecond() {
+        return this.durationMillis == 0 ? 0 : this.getEvents() * 1000.0 / this.durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(US, "%d writes, %d events (%.1f/s: %d entered, %d exited, %d moved) in %dms%n"
+                        + "downloaded %d entries, %d of them in radius%n"
+                        + "latency p50 %dus, p90 %dus, p99 %dus, max %dus%n"
+                        + "retained heap %d KB",
+                this.writes, this.getEvents(), this.getEventsPerSecond(), this.keyEnteredEvents, this.keyExitedEvents,
+                this.keyMovedEvents, this.durationMillis, this.downloadedEntries, this.entriesInRadius,
+                this.latencyMicrosP50, this.latencyMicrosP90, this.latencyMicrosP99, this.latencyMicrosMax,
+                this.retainedHeapBytes / 1024);
+    }
+}
@@ -0,0 +1,127 @@
+package com.firebase.geofire.testing;
+
+/**
+ * Describes the load a {@link LoadSimulation} generates: objects and queries that move with a constant speed in a
+ * square area. Every object writes its location once per update interval and every query moves its center once per
+ * update interval.
+ */
+public final class Workload {
+    int objects = 1000;
+    int queries = 10;
+    double latitude = 37.7749;
+    double longitude = -122.4194;
+    double areaKilometers = 10;
+    double queryRadiusKilometers = 1;
+    double objectSpeed = 10;
+    double querySpeed = 2;
+    long updateIntervalMillis = 200;
+    long durationMillis = 10000;
+    long latencyMicros = 20000;
+    long seed = 1;
+
+    private static void checkPositive(double value, String name) {
+        if (!(value > 0)) {
+            throw new IllegalArgumentException(name + " must be positive!");
+        }
+    }
+
+    private static void checkNotNegative(double value, String name) {
+        if (!(value >= 0)) {
+            throw new IllegalArgumentException(name + " must not be negative!");
+        }
+    }
+
+    /** @param objects The number of moving objects, 1000 by default */
+    public Workload objects(int objects) {
+        checkPositive(objects, "The number of objects");
+        this.objects = objects;
+        return this;
+    }
+
+    /** @param queries The number of moving queries, 10 by default */
+    public Workload queries(int queries) {
+        checkNotNegative(queries, "The number of queries");
+        this.queries = queries;
+        return this;
+    }
+
+    /** Sets the center of the area, San Francisco by default. */
+    public Workload center(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        return this;
+    }
+
+    /**
+     * @param areaKilometers The side length of the square area in kilometers, 10 by default. Together with the
+     *                       number of objects it determines their density.
+     */
+    public Workload area(double areaKilometers) {
+        checkPositive(areaKilometers, "The area");
+        this.areaKilometers = areaKilometers;
+        return this;
+    }
+
+    /** @param queryRadiusKilometers The radius of the queries in kilometers, 1 by default */
+    public Workload queryRadius(double queryRadiusKilometers) {
+        checkPositive(queryRadiusKilometers, "The query radius");
+        this.queryRadiusKilometers = queryRadiusKilometers;
+        return this;
+    }
+
+    /** @param metersPerSecond The speed of the objects, 10 m/s by default */
+    public Workload objectSpeed(double metersPerSecond) {
+        checkNotNegative(metersPerSecond, "The object speed");
+        this.objectSpeed = metersPerSecond;
+        return this;
+    }
+
+    /** @param metersPerSecond The speed of the query centers, 2 m/s by default */
+    public Workload querySpeed(double metersPerSecond) {
+        checkNotNegative(metersPerSecond, "The query speed");
+        this.querySpeed = metersPerSecond;
+        return this;
+    }
+
+    /** @param updateIntervalMillis The time between two updates of every object and query, 200ms by default */
+    public Workload updateInterval(long updateIntervalMillis) {
+        checkPositive(updateIntervalMillis, "The update interval");
+        this.updateIntervalMillis = updateIntervalMillis;
+        return this;
+    }
+
+    /** @param durationMillis How long the objects and queries move, 10s by default */
+    public Workload duration(long durationMillis) {
+        checkNotNegative(durationMillis, "The duration");
+        this.durationMillis = durationMillis;
+        return this;
+    }
+
+    /** @param latencyMicros The simulated one way latency to the database, 20ms by default */
+    public Workload latency(long latencyMicros) {
+        checkNotNegative(latencyMicros, "The latency");
+        this.latencyMicros = latencyMicros;
+        return this;
+    }
+
+    /** @param seed The seed for the random positions and headings */
+    public Workload seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @return The number of objects per square kilometer
+     */
+    public double getDensity() {
+        return this.objects / (this.areaKilometers * this.areaKilometers);
+    }
+
+    @Override
+    public String toString() {
+        return "Workload{objects=" + this.objects + ", queries=" + this.queries + ", density=" + this.getDensity()
+                + "/km2, queryRadius=" + this.queryRadiusKilometers + "km, objectSpeed=" + this.objectSpeed
+                + "m/s, querySpeed=" + this.querySpeed + "m/s, updateInterval=" + this.updateIntervalMillis
+                + "ms, duration=" + this.durationMillis + "ms, latency=" + this.latencyMicros + "us}";
+    }
+}
@@ -0,0 +1,99 @@
+package com.firebase.geofire.vector;
+
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.DistanceKernel;
+import com.firebase.geofire.util.GeoUtils;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Computes the haversine distance of {@link GeoUtils#distance(double, double, double, double)} for as many locations
+ * at once as the preferred vector shape of the CPU holds, e.g. 4 with AVX2 and 8 with AVX-512. It is registered as
+ * a service, so GeoFire picks it up as soon as this module is on the class path and the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * The vectorized sine, cosine and arc tangent may differ from {@link Math} in the last bits. Locations whose
+ * distance is that close to the radius are tested again with {@link GeoUtils#distance(double, double, double, double)},
+ * so {@link #withinRadius} agrees with it exactly.
+ */
+public final class VectorDistanceKernel implements DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // the same as GeoUtils.distance
+    private static final double EARTH_MEAN_RADIUS = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS)/2;
+    private static final double DEGREES_TO_RADIANS = Math.PI/180;
+    // far larger than the error of the vectorized functions, distances closer to the radius are computed again
+    private static final double RELATIVE_TOLERANCE = 1e-9;
+    private static final double ABSOLUTE_TOLERANCE = 1e-6;
+
+    @Override
+    public void distances(double latitude, double longitude, double[] latitudes, double[] longitudes, int count,
+                          double[] distances) {
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            distance(latitude, longitude, cosLatitude, latitudes, longitudes, i).intoArray(distances, i);
+        }
+        for (; i < count; i++) {
+            distances[i] = GeoUtils.distance(latitudes[i], longitudes[i], latitude, longitude);
+        }
+    }
+
+    @Override
+    public int withinRadius(double latitude, double longitude, double radius, double[] latitudes,
+                            double[] longitudes, int count, boolean[] within) {
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        double tolerance = radius * RELATIVE_TOLERANCE + ABSOLUTE_TOLERANCE;
+        int result = 0;
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector distance = distance(latitude, longitude, cosLatitude, latitudes, longitudes, i);
+            VectorMask<Double> mask = distance.compare(VectorOperators.LE, radius);
+            mask.intoArray(within, i);
+            result += mask.trueCount();
+            VectorMask<Double> uncertain = distance.sub(radius).abs().compare(VectorOperators.LE, tolerance);
+            if (uncertain.anyTrue()) {
+                for (int lane = uncertain.firstTrue(); lane < SPECIES.length(); lane++) {
+                    if (uncertain.laneIsSet(lane)) {
+                        boolean exact = GeoUtils.distance(latitudes[i + lane], longitudes[i + lane], latitude,
+                                longitude) <= radius;
+                        if (exact != within[i + lane]) {
+                            within[i + lane] = exact;
+                            result += exact ? 1 : -1;
+                        }
+                    }
+                }
+            }
+        }
+        for (; i < count; i++) {
+            within[i] = GeoUtils.distance(latitudes[i], longitudes[i], latitude, longitude) <= radius;
+            if (within[i]) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The haversine distance of the locations from an offset, in the order of operations of GeoUtils.distance.
+     */
+    private static DoubleVector distance(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                                         double[] longitudes, int offset) {
+        DoubleVector latitudeVector = DoubleVector.fromArray(SPECIES, latitudes, offset);
+        DoubleVector longitudeVector = DoubleVector.fromArray(SPECIES, longitudes, offset);
+        DoubleVector latitudeSin = latitudeVector.sub(latitude).mul(DEGREES_TO_RADIANS).div(2)
+                .lanewise(VectorOperators.SIN);
+        DoubleVector longitudeSin = longitudeVector.sub(longitude).mul(DEGREES_TO_RADIANS).div(2)
+                .lanewise(VectorOperators.SIN);
+        DoubleVector cos = latitudeVector.mul(DEGREES_TO_RADIANS).lanewise(VectorOperators.COS);
+        DoubleVector a = latitudeSin.mul(latitudeSin)
+                .add(cos.mul(cosLatitude).mul(longitudeSin).mul(longitudeSin));
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        return a.sqrt().lanewise(VectorOperators.ATAN2, one.sub(a).sqrt()).mul(EARTH_MEAN_RADIUS * 2);
+    }
+}
@@ -0,0 +1,73 @@
+package com.firebase.geofire.vector;
+
+import com.firebase.geofire.util.GeoUtils;
+import com.firebase.geofire.util.ScalarDistanceKernel;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class VectorDistanceKernelTest {
+
+    private static final int COUNT = 1003;
+
+    @Test
+    public void loadedAsService() {
+        Assert.assertTrue(GeoUtils.getDistanceKernel() instanceof VectorDistanceKernel);
+    }
+
+    @Test
+    public void distancesMatchScalar() {
+        Random random = new Random(1);
+        VectorDistanceKernel kernel = new VectorDistanceKernel();
+        double[] latitudes = new double[COUNT];
+        double[] longitudes = new double[COUNT];
+        double[] distances = new double[COUNT];
+        double[] expected = new double[COUNT];
+        for (int round = 0; round < 20; round++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            for (int i = 0; i < COUNT; i++) {
+                latitudes[i] = random.nextDouble() * 180 - 90;
+                longitudes[i] = random.nextDouble() * 360 - 180;
+            }
+            kernel.distances(latitude, longitude, latitudes, longitudes, COUNT, distances);
+            ScalarDistanceKernel.INSTANCE.distances(latitude, longitude, latitudes, longitudes, COUNT, expected);
+            for (int i = 0; i < COUNT; i++) {
+                Assert.assertEquals(expected[i], distances[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void withinRadiusMatchesScalarExactly() {
+        Random random = new Random(2);
+        VectorDistanceKernel kernel = new VectorDistanceKernel();
+        double[] latitudes = new double[COUNT];
+        double[] longitudes = new double[COUNT];
+        boolean[] within = new boolean[COUNT];
+        boolean[] expected = new boolean[COUNT];
+        for (int round = 0; round < 20; round++) {
+            double latitude = random.nextDouble() * 160 - 80;
+            double longitude = random.nextDouble() * 360 - 180;
+            double radius = random.nextDouble() * 100000;
+            for (int i = 0; i < COUNT; i++) {
+                latitudes[i] = latitude + random.nextGaussian();
+                longitudes[i] = GeoUtils.wrapLongitude(longitude + random.nextGaussian());
+                latitudes[i] = Math.max(-90, Math.min(90, latitudes[i]));
+            }
+            // locations exactly on the radius
+            for (int i = 0; i < COUNT; i += 7) {
+                latitudes[i] = latitude + GeoUtils.distanceToLatitudeDegrees(radius);
+                longitudes[i] = longitude;
+            }
+            int count = kernel.withinRadius(latitude, longitude, radius, latitudes, longitudes, COUNT, within);
+            int expectedCount = ScalarDistanceKernel.INSTANCE.withinRadius(latitude, longitude, radius, latitudes,
+                    longitudes, COUNT, expected);
+            Assert.assertArrayEquals(expected, within);
+            Assert.assertEquals(expectedCount, count);
+        }
+    }
+}